@@ -0,0 +1,116 @@
+package at.rovo.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process HTTP server on the loopback interface which serves the pages read by the benchmarks, so they run
+ * offline and are not skewed by the network.
+ * <ul>
+ * <li><em>/page?lines=n</em> returns a HTML page with the given number of lines</li>
+ * <li><em>/redirect/n</em> redirects to <em>/redirect/n-1</em> and sets a cookie on each hop, until <em>/redirect/0</em>
+ * returns a short page</li>
+ * </ul>
+ */
+final class BenchmarkServer implements AutoCloseable
+{
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Map<Integer, byte[]> pages = new ConcurrentHashMap<>();
+
+    BenchmarkServer() throws IOException
+    {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/page", this::page);
+        this.server.createContext("/redirect/", this::redirect);
+        this.server.start();
+    }
+
+    /**
+     * Returns the URL of the given path on this server.
+     *
+     * @param path
+     *         The path and query to request
+     *
+     * @return The absolute URL
+     */
+    String url(String path)
+    {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + path;
+    }
+
+    private void page(HttpExchange exchange) throws IOException
+    {
+        String query = exchange.getRequestURI().getQuery();
+        int lines = null != query && query.startsWith("lines=") ? Integer.parseInt(query.substring(6)) : 100;
+        this.send(exchange, this.pages.computeIfAbsent(lines, BenchmarkServer::createPage));
+    }
+
+    private void redirect(HttpExchange exchange) throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        int remaining = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+        if (remaining == 0)
+        {
+            this.send(exchange, this.pages.computeIfAbsent(10, BenchmarkServer::createPage));
+            return;
+        }
+        exchange.getResponseHeaders().add("Location", "/redirect/" + (remaining - 1));
+        exchange.getResponseHeaders().add("Set-Cookie", "hop" + remaining + "=" + remaining
+                                                        + "; Path=/; Max-Age=3600; HttpOnly");
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private void send(HttpExchange exchange, byte[] body) throws IOException
+    {
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    static byte[] createPage(int lines)
+    {
+        StringBuilder sb = new StringBuilder(lines * 80);
+        sb.append("<html>\n<head><title>Benchmark</title></head>\n<body>\n");
+        for (int i = 3; i < lines - 2; i++)
+        {
+            // a mix of indented, blank and plain lines, like pages produced by template engines
+            switch (i % 4)
+            {
+                case 0:
+                    sb.append("    <p>Paragraph ").append(i).append(" with <a href=\"/page/").append(i)
+                            .append("\">a link</a> and some text.</p>\n");
+                    break;
+                case 1:
+                    sb.append('\n');
+                    break;
+                default:
+                    sb.append("<div class=\"item\">Item ").append(i).append(" of the benchmark page</div>\n");
+                    break;
+            }
+        }
+        sb.append("</body>\n</html>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close()
+    {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,232 @@
+package at.rovo.common;
+
+import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures parsing <em>Set-Cookie</em> headers, de-duplicating cookies in a hash set and building the <em>Cookie</em>
+ * header sent along with each request. Parsing and de-duplicating is also measured with {@link SplitCookie}, a copy of
+ * the parser {@link Cookie} used before, as baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CookieBenchmark
+{
+    private static final String SIMPLE = "session=abc123";
+    private static final String FULL = "session=38afes7a8; Domain=.example.com; Path=/shop; "
+                                       + "Expires=Wed, 21 Oct 2037 07:28:00 GMT; Secure; HttpOnly; SameSite=Lax";
+
+    private String[] headers;
+    private CookieJar jar;
+    private URL url;
+    private Cookie changed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MalformedURLException
+    {
+        this.url = new URL("https://www.example.com/shop/cart");
+        this.headers = new String[64];
+        this.jar = new CookieJar();
+        for (int i = 0; i < this.headers.length; i++)
+        {
+            // every cookie is set twice, so half of the cookies are duplicates
+            this.headers[i] = "c" + i / 2 + "=" + i + "; Domain=example.com; Path=/shop; Max-Age=3600";
+            if (i % 4 == 0)
+            {
+                this.jar.store(this.url, new Cookie(this.headers[i]));
+            }
+        }
+        this.changed = new Cookie("counter=1; Path=/");
+    }
+
+    @Benchmark
+    public Cookie parseSimple()
+    {
+        return new Cookie(SIMPLE);
+    }
+
+    @Benchmark
+    public SplitCookie parseSimpleSplit()
+    {
+        return new SplitCookie(SIMPLE);
+    }
+
+    @Benchmark
+    public long parseFull()
+    {
+        return new Cookie(FULL).getExpiresAt();
+    }
+
+    /**
+     * Parses the full header with the previous parser, which did not convert the expiry date, so this baseline does
+     * less work than {@link #parseFull()}.
+     */
+    @Benchmark
+    public String parseFullSplit()
+    {
+        return new SplitCookie(FULL).getExpires();
+    }
+
+    /**
+     * Adds 64 cookies of which 32 are distinct to a hash set.
+     */
+    @Benchmark
+    public int deduplicate()
+    {
+        Set<Cookie> cookies = new HashSet<>();
+        for (String header : this.headers)
+        {
+            cookies.add(new Cookie(header));
+        }
+        return cookies.size();
+    }
+
+    /**
+     * Adds the same 64 cookies parsed by the previous parser to a hash set. As its cookies were only equal to
+     * themselves, none of them is detected as duplicate.
+     */
+    @Benchmark
+    public int deduplicateSplit()
+    {
+        Set<SplitCookie> cookies = new HashSet<>();
+        for (String header : this.headers)
+        {
+            cookies.add(new SplitCookie(header));
+        }
+        return cookies.size();
+    }
+
+    /**
+     * Builds the header of a request while the stored cookies don't change, which is served from the cache of the jar.
+     */
+    @Benchmark
+    public String cookieHeader()
+    {
+        return this.jar.getCookieHeader(this.url);
+    }
+
+    /**
+     * Builds the header of a request after a cookie was stored, which invalidates the cached header.
+     */
+    @Benchmark
+    public String cookieHeaderAfterStore()
+    {
+        this.jar.store(this.url, this.changed);
+        return this.jar.getCookieHeader(this.url);
+    }
+
+    /**
+     * The parser {@link Cookie} used before it parsed headers in a single pass. The header is split at each semicolon
+     * and each segment at each equals sign, and all attributes are extracted eagerly.
+     */
+    static final class SplitCookie
+    {
+        private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+        // Netscape cookie values
+        private String domain = null;
+        private String expires = null;
+        private String path = null;
+        // RFC 2109
+        private String maxAge = null;
+        private String comment = null;
+        private String secure = null;
+        private String version = null;
+        private Map<String, String> customValues = new HashMap<>();
+
+        SplitCookie(String cookieString)
+        {
+            String[] segments = cookieString.split(";");
+            for (String segment : segments)
+            {
+                LOG.trace("Parsing cookie segment: {}", segment.trim());
+                String[] kv = segment.trim().split("=");
+                switch (kv[0].toLowerCase())
+                {
+                    case "domain":
+                        this.domain = this.getValue(kv);
+                        break;
+                    case "expires":
+                        this.expires = this.getValue(kv);
+                        break;
+                    case "path":
+                        this.path = this.getValue(kv);
+                        break;
+                    case "max-age":
+                        this.maxAge = this.getValue(kv);
+                        break;
+                    case "comment":
+                        this.comment = this.getValue(kv);
+                        break;
+                    case "secure":
+                        this.secure = this.getValue(kv);
+                        break;
+                    case "version":
+                        this.version = this.getValue(kv);
+                        break;
+                    default:
+                        LOG.trace("Adding custom cookie value {}={}", kv[0], this.getValue(kv));
+                        this.customValues.put(kv[0], this.getValue(kv));
+                }
+            }
+        }
+
+        private String getValue(String[] kv)
+        {
+            return kv.length > 1 ? kv[1] : "";
+        }
+
+        String getExpires()
+        {
+            return this.expires;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = 1;
+            hash = hash * 17 + (this.domain == null ? 0 : this.domain.hashCode());
+            hash = hash * 31 + (this.expires == null ? 0 : this.expires.hashCode());
+            hash = hash * 13 + (this.path == null ? 0 : this.path.hashCode());
+            hash = hash * 17 + (this.maxAge == null ? 0 : this.maxAge.hashCode());
+            hash = hash * 31 + (this.comment == null ? 0 : this.comment.hashCode());
+            hash = hash * 13 + (this.secure == null ? 0 : this.secure.hashCode());
+            hash = hash * 17 + (this.version == null ? 0 : this.version.hashCode());
+            for (String key : this.customValues.keySet())
+            {
+                hash = hash * 31 + this.customValues.get(key).hashCode();
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            // the previous implementation returned false for any other instance
+            return other == this;
+        }
+    }
+}
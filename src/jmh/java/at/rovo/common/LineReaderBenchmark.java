@@ -0,0 +1,121 @@
+package at.rovo.common;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares splitting multi-MB pages into lines via a {@link Scanner}, as returned by {@link UrlReader#read(String)},
+ * with a {@link LineReader}, as returned by {@link UrlReader#readLines(String)}, and a plain {@link BufferedReader} as
+ * baseline. The pages are decoded from memory, so only the splitting and the decoding of the characters are measured.
+ * Reading and assembling a whole page from a local server is measured by {@link #readPage()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineReaderBenchmark
+{
+    /** About 1 MB and 5 MB of HTML */
+    @Param({"20000", "100000"})
+    public int lines;
+
+    private BenchmarkServer server;
+    private UrlReader reader;
+    private String pageUrl;
+    private byte[] page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        this.server = new BenchmarkServer();
+        this.reader = new UrlReader();
+        this.pageUrl = this.server.url("/page?lines=" + this.lines);
+        this.page = BenchmarkServer.createPage(this.lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        this.server.close();
+    }
+
+    private Reader newReader()
+    {
+        return new InputStreamReader(new ByteArrayInputStream(this.page), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long scanner()
+    {
+        long chars = 0L;
+        try (Scanner scanner = new Scanner(this.newReader()))
+        {
+            while (scanner.hasNextLine())
+            {
+                chars += scanner.nextLine().length();
+            }
+        }
+        return chars;
+    }
+
+    @Benchmark
+    public long lineReader() throws IOException
+    {
+        long chars = 0L;
+        try (LineReader lineReader = new LineReader(this.newReader()))
+        {
+            CharSequence line;
+            while (null != (line = lineReader.readLine()))
+            {
+                chars += line.length();
+            }
+        }
+        return chars;
+    }
+
+    @Benchmark
+    public long bufferedReader() throws IOException
+    {
+        long chars = 0L;
+        try (BufferedReader bufferedReader = new BufferedReader(this.newReader()))
+        {
+            String line;
+            while (null != (line = bufferedReader.readLine()))
+            {
+                chars += line.length();
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Reads and assembles the page via {@link UrlReader#readPage(String)}, which splits the page via a {@link
+     * LineReader}.
+     */
+    @Benchmark
+    public String readPage()
+    {
+        return this.reader.readPage(this.pageUrl);
+    }
+}
@@ -0,0 +1,120 @@
+package at.rovo.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares boxed {@link Pair}s with the primitive pair types and the parallel array lists on building and summing up
+ * lists of pairs and on looking up pairs as map keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PairBenchmark
+{
+    @Param({"100000"})
+    public int size;
+
+    private Map<Pair<Integer, Integer>, Integer> boxedMap;
+    private Map<IntPair, Integer> primitiveMap;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        this.boxedMap = new HashMap<>();
+        this.primitiveMap = new HashMap<>();
+        for (int i = 0; i < 1024; i++)
+        {
+            this.boxedMap.put(Pair.of(i, i * 7), i);
+            this.primitiveMap.put(new IntPair(i, i * 7), i);
+        }
+    }
+
+    @Benchmark
+    public long boxedList()
+    {
+        List<Pair<Integer, Integer>> pairs = new ArrayList<>();
+        for (int i = 0; i < this.size; i++)
+        {
+            pairs.add(new Pair<>(i, i * 31));
+        }
+        long sum = 0L;
+        for (Pair<Integer, Integer> pair : pairs)
+        {
+            sum += pair.getFirst() + pair.getLast();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long intPairObjects()
+    {
+        List<IntPair> pairs = new ArrayList<>();
+        for (int i = 0; i < this.size; i++)
+        {
+            pairs.add(new IntPair(i, i * 31));
+        }
+        long sum = 0L;
+        for (IntPair pair : pairs)
+        {
+            sum += pair.getFirst() + pair.getLast();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long intPairList()
+    {
+        IntPairList pairs = new IntPairList();
+        for (int i = 0; i < this.size; i++)
+        {
+            pairs.add(i, i * 31);
+        }
+        long sum = 0L;
+        for (int i = 0; i < pairs.size(); i++)
+        {
+            sum += pairs.getFirst(i) + pairs.getLast(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long boxedMapLookup()
+    {
+        long sum = 0L;
+        for (int i = 0; i < 1024; i++)
+        {
+            sum += this.boxedMap.get(Pair.of(i, i * 7));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long intPairMapLookup()
+    {
+        long sum = 0L;
+        for (int i = 0; i < 1024; i++)
+        {
+            sum += this.primitiveMap.get(new IntPair(i, i * 7));
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,103 @@
+package at.rovo.common;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading pages via {@link UrlReader} from a local server, including following a chain of redirects which set
+ * cookies, as well as assembling the lines of a page into a string without any I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlReaderBenchmark
+{
+    @Param({"100", "10000"})
+    public int lines;
+
+    private BenchmarkServer server;
+    private UrlReader reader;
+    private String pageUrl;
+    private String redirectUrl;
+    private List<String> pageLines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        this.server = new BenchmarkServer();
+        this.reader = new UrlReader();
+        this.pageUrl = this.server.url("/page?lines=" + this.lines);
+        this.redirectUrl = this.server.url("/redirect/5");
+        this.pageLines = new ArrayList<>(this.lines);
+        byte[] page = BenchmarkServer.createPage(this.lines);
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while (null != (line = in.readLine()))
+            {
+                this.pageLines.add(line);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        this.server.close();
+    }
+
+    /**
+     * Reads a page of the given number of lines via the pooled transport.
+     */
+    @Benchmark
+    public String readPage()
+    {
+        return this.reader.readPage(this.pageUrl);
+    }
+
+    /**
+     * Follows five redirects, each of which sets a further cookie which has to be sent on the following hops.
+     */
+    @Benchmark
+    public String followRedirects()
+    {
+        return this.reader.readPage(this.redirectUrl);
+    }
+
+    /**
+     * Joins the lines of a page like {@link UrlReader#readPage(String)} does, without reading them.
+     */
+    @Benchmark
+    public String assemblePage()
+    {
+        PageAssembler page = new PageAssembler(false);
+        for (String line : this.pageLines)
+        {
+            page.appendLine(line);
+        }
+        return page.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package at.rovo.common;
+
+/**
+ * Base class of the pair lists which store the elements of their pairs in parallel arrays instead of one object per
+ * pair. It manages the size of the list and the growth of its arrays.
+ */
+abstract class AbstractPairList
+{
+    /** The capacity of a list which was created without an initial capacity */
+    static final int DEFAULT_CAPACITY = 16;
+    /** The largest capacity a list can grow to, as some virtual machines reserve a few words in arrays */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /** The number of pairs in the list */
+    int size = 0;
+
+    /**
+     * Returns the number of pairs in this list.
+     *
+     * @return The number of pairs
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Specifies whether this list contains no pairs.
+     *
+     * @return <em>true</em> if the list is empty
+     */
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the capacity the arrays of a list have to grow to in order to hold the given number of pairs.
+     *
+     * @param capacity
+     *         The current capacity of the arrays
+     * @param required
+     *         The number of pairs the arrays have to hold
+     *
+     * @return The new capacity, which grows by half of the current capacity at least
+     */
+    static int grow(int capacity, int required)
+    {
+        if (required < 0 || required > MAX_CAPACITY)
+        {
+            throw new OutOfMemoryError("A pair list can't hold more than " + MAX_CAPACITY + " pairs");
+        }
+        long grown = Math.max(DEFAULT_CAPACITY, capacity + ((long) capacity >> 1));
+        return (int) Math.min(MAX_CAPACITY, Math.max(grown, required));
+    }
+
+    void checkIndex(int index)
+    {
+        if (index < 0 || index >= this.size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.size + " pairs");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of asynchronous tasks which are in flight at the same time without blocking any thread. Tasks
+ * submitted while the limit is reached are queued and started as soon as a running task completes.
+ * <p>
+ * A task which got cancelled while it was still queued is never started.
+ */
+@ThreadSafe
+final class AsyncLimiter
+{
+    private final int maxConcurrent;
+    private final AtomicInteger running = new AtomicInteger();
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    /** The number of requests to drain the queue which were not served yet, only one thread drains at a time */
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    AsyncLimiter(int maxConcurrent)
+    {
+        if (maxConcurrent < 1)
+        {
+            throw new IllegalArgumentException("At least one concurrent task is required");
+        }
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    int getMaxConcurrent()
+    {
+        return this.maxConcurrent;
+    }
+
+    /**
+     * Returns the number of tasks which are currently in flight.
+     *
+     * @return The number of running tasks
+     */
+    int getRunning()
+    {
+        return this.running.get();
+    }
+
+    /**
+     * Submits a task which is started once less than the maximum number of tasks are in flight.
+     *
+     * @param task
+     *         Starts the asynchronous task and returns its future
+     * @param <T>
+     *         The type of the result of the task
+     *
+     * @return A future which completes with the result of the task
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        this.pending.add(() -> {
+            if (result.isDone())
+            {
+                // cancelled while queued
+                this.release();
+                return;
+            }
+            CompletableFuture<T> future;
+            try
+            {
+                future = task.get();
+            }
+            catch (RuntimeException rtEx)
+            {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(rtEx);
+            }
+            future.whenComplete((value, failure) -> {
+                this.release();
+                if (null != failure)
+                {
+                    result.completeExceptionally(unwrap(failure));
+                }
+                else
+                {
+                    result.complete(value);
+                }
+            });
+        });
+        this.drain();
+        return result;
+    }
+
+    private void release()
+    {
+        this.running.decrementAndGet();
+        this.drain();
+    }
+
+    /**
+     * Starts queued tasks while less than the maximum number of tasks are in flight. A task which completes while it
+     * is started, for example as it failed right away, releases its slot and thereby requests another drain. Such
+     * requests, like those of other threads, are served by the loop of the thread already draining the queue instead
+     * of recursing, so a long run of failing tasks can not overflow the stack.
+     */
+    private void drain()
+    {
+        if (this.drainRequests.getAndIncrement() != 0)
+        {
+            return;
+        }
+        int requests = 1;
+        do
+        {
+            while (!this.pending.isEmpty())
+            {
+                int current = this.running.get();
+                if (current >= this.maxConcurrent)
+                {
+                    break;
+                }
+                if (!this.running.compareAndSet(current, current + 1))
+                {
+                    continue;
+                }
+                Runnable next = this.pending.poll();
+                if (null == next)
+                {
+                    // nothing left to start
+                    this.running.decrementAndGet();
+                    continue;
+                }
+                next.run();
+            }
+            requests = this.drainRequests.addAndGet(-requests);
+        }
+        while (requests != 0);
+    }
+
+    private static Throwable unwrap(Throwable failure)
+    {
+        return failure instanceof CompletionException && null != failure.getCause() ? failure.getCause() : failure;
+    }
+}
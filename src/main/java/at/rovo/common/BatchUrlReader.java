@@ -0,0 +1,474 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.GuardedBy;
+import at.rovo.common.annotations.ThreadSafe;
+import at.rovo.common.http.HttpTransport;
+import at.rovo.common.http.PooledHttpTransport;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <em>BatchUrlReader</em> reads a large number of pages concurrently, where each page is read by its own
+ * {@link UrlReader}. Every page is read on a dedicated virtual thread if the runtime supports virtual threads, otherwise
+ * platform threads are used. The number of pages read at the same time is limited globally as well as per host, so a
+ * batch containing many URLs of the same host does not overwhelm that host or starve the remaining hosts.
+ * <p>
+ * The results are returned as a stream in the order the pages finished loading, so consumers can process the first
+ * pages while the remaining ones are still being read. Closing the stream before all results were consumed aborts the
+ * remaining requests. A consumer which is slower than the pages are read holds back further requests, so the results
+ * waiting to be consumed are bounded.
+ */
+@ThreadSafe
+public class BatchUrlReader
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default number of pages which are read at the same time */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 256;
+    /** The default number of pages of a single host which are read at the same time */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST =
+            PooledHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    /** The maximum number of URLs which are taken from the input before their results were consumed */
+    private static final int MAX_QUEUED_URLS = 65536;
+
+    private final int maxConcurrentRequests;
+    private final int maxConcurrentRequestsPerHost;
+    private final boolean includeLineBreaks;
+    private final HttpTransport transport;
+    /** Is notified once a page was read */
+    private volatile FetchListener fetchListener = null;
+
+    /**
+     * Creates a new instance which reads at most {@link #DEFAULT_MAX_CONCURRENT_REQUESTS} pages at the same time, of
+     * which at most {@link #DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST} may belong to the same host.
+     */
+    public BatchUrlReader()
+    {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * Creates a new instance which reads at most <em>maxConcurrentRequests</em> pages at the same time, of which at
+     * most <em>maxConcurrentRequestsPerHost</em> may belong to the same host.
+     *
+     * @param maxConcurrentRequests
+     *         The maximum number of pages read at the same time
+     * @param maxConcurrentRequestsPerHost
+     *         The maximum number of pages of a single host read at the same time
+     */
+    public BatchUrlReader(int maxConcurrentRequests, int maxConcurrentRequestsPerHost)
+    {
+        this(maxConcurrentRequests, maxConcurrentRequestsPerHost, false, UrlReader.getDefaultTransport());
+    }
+
+    /**
+     * Creates a new instance which reads at most <em>maxConcurrentRequests</em> pages at the same time, of which at
+     * most <em>maxConcurrentRequestsPerHost</em> may belong to the same host.
+     *
+     * @param maxConcurrentRequests
+     *         The maximum number of pages read at the same time
+     * @param maxConcurrentRequestsPerHost
+     *         The maximum number of pages of a single host read at the same time
+     * @param includeLineBreaks
+     *         If set to true specifies to include line breaks within the content of the pages, otherwise line breaks
+     *         will be omitted
+     * @param transport
+     *         The transport to send requests with
+     */
+    public BatchUrlReader(int maxConcurrentRequests, int maxConcurrentRequestsPerHost, boolean includeLineBreaks,
+                          HttpTransport transport)
+    {
+        if (maxConcurrentRequests < 1 || maxConcurrentRequestsPerHost < 1)
+        {
+            throw new IllegalArgumentException("At least one concurrent request is required");
+        }
+        if (null == transport)
+        {
+            throw new IllegalArgumentException("No transport provided");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxConcurrentRequestsPerHost = maxConcurrentRequestsPerHost;
+        this.includeLineBreaks = includeLineBreaks;
+        this.transport = transport;
+    }
+
+    /**
+     * Reads all pages referenced by the provided URLs.
+     *
+     * @param urls
+     *         The URLs of the pages to read
+     *
+     * @return The results of the pages in the order they finished loading
+     */
+    public Stream<FetchResult> read(Collection<String> urls)
+    {
+        return this.read(urls.stream());
+    }
+
+    /**
+     * Reads all pages referenced by the provided URLs. The URLs are consumed lazily, so only as many URLs are taken from
+     * the stream as can be processed.
+     *
+     * @param urls
+     *         The URLs of the pages to read
+     *
+     * @return The results of the pages in the order they finished loading
+     */
+    public Stream<FetchResult> read(Stream<String> urls)
+    {
+        Batch batch = new Batch(urls.iterator());
+        batch.start();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batch, Spliterator.NONNULL), false)
+                            .onClose(batch::cancel);
+    }
+
+    /**
+     * Sets the listener which is notified with the figures of each page read by this instance.
+     *
+     * @param fetchListener
+     *         The listener to notify or <em>null</em> to stop notifying a listener
+     */
+    public void setFetchListener(FetchListener fetchListener)
+    {
+        this.fetchListener = fetchListener;
+    }
+
+    private FetchResult readPage(String url)
+    {
+        UrlReader reader = new UrlReader(this.includeLineBreaks, this.transport);
+        reader.setFetchListener(this.fetchListener);
+        long start = System.nanoTime();
+        String content = null;
+        Exception failure = null;
+        try
+        {
+            content = reader.loadPage(url);
+        }
+        catch (Exception ex)
+        {
+            LOG.debug("Could not read {}! Reason: {}", url, ex.getLocalizedMessage());
+            failure = ex;
+        }
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        return new FetchResult(url, reader.getRealURL(), reader.getStatusCode(), content, failure, duration);
+    }
+
+    static String getHost(String url)
+    {
+        try
+        {
+            return new URL(url).getHost().toLowerCase(Locale.ROOT);
+        }
+        catch (MalformedURLException muEx)
+        {
+            return "";
+        }
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread per task if virtual threads are supported by the runtime,
+     * otherwise a cached pool of platform threads is used.
+     *
+     * @param threadName
+     *         The prefix of the names of the platform threads
+     *
+     * @return The executor to read the pages on
+     */
+    static ExecutorService newExecutor(String threadName)
+    {
+        try
+        {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex)
+        {
+            LOG.trace("Virtual threads are not available, falling back to platform threads");
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, threadName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * The URLs of a single host which are waiting to be read and the number of pages of that host being read.
+     */
+    private static final class HostQueue
+    {
+        private final String host;
+        private final Deque<String> urls = new ArrayDeque<>();
+        private int running = 0;
+        /** Whether the host is contained in the queue of hosts which are ready to read a further page */
+        private boolean ready = false;
+
+        private HostQueue(String host)
+        {
+            this.host = host;
+        }
+    }
+
+    /**
+     * The state of a single invocation of {@link #read(Stream)}. A producer thread takes the URLs from the input and
+     * queues them per host. Hosts which have queued URLs and did not reach their limit are served in round-robin order
+     * whenever a global slot is free, so a host with many URLs does not block the URLs of further hosts. Each task
+     * adds its result to the queue the returned stream is backed by. A URL keeps its slot in the backlog until its
+     * result was consumed, so the queued URLs and the unconsumed results together never exceed the backlog.
+     */
+    private final class Batch implements Iterator<FetchResult>
+    {
+        /** Marks the end of the results */
+        private final FetchResult endOfResults = new FetchResult(null, null, -1, null, null, Duration.ZERO);
+
+        private final Iterator<String> urls;
+        private final ExecutorService executor = newExecutor("batch-url-reader");
+        /** Limits the number of URLs taken from the input whose results were not consumed yet */
+        private final Semaphore backlog = new Semaphore(MAX_QUEUED_URLS);
+        private final BlockingQueue<FetchResult> results = new LinkedBlockingQueue<>();
+        private final Object lock = new Object();
+        @GuardedBy("lock")
+        private final Map<String, HostQueue> hosts = new HashMap<>();
+        @GuardedBy("lock")
+        private final Deque<HostQueue> readyHosts = new ArrayDeque<>();
+        @GuardedBy("lock")
+        private int running = 0;
+        @GuardedBy("lock")
+        private int pending = 0;
+        @GuardedBy("lock")
+        private boolean allQueued = false;
+        @GuardedBy("lock")
+        private boolean finished = false;
+        private volatile boolean cancelled = false;
+        private volatile Thread producer = null;
+        private FetchResult next = null;
+
+        private Batch(Iterator<String> urls)
+        {
+            this.urls = urls;
+        }
+
+        private void start()
+        {
+            this.producer = new Thread(this::produce, "batch-url-reader-producer");
+            this.producer.setDaemon(true);
+            this.producer.start();
+        }
+
+        private void produce()
+        {
+            try
+            {
+                while (!this.cancelled && this.urls.hasNext())
+                {
+                    String url = this.urls.next();
+                    this.backlog.acquire();
+                    this.enqueue(url);
+                }
+            }
+            catch (InterruptedException iEx)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (RuntimeException rtEx)
+            {
+                LOG.warn("Could not take further URLs from the input! Reason: {}", rtEx.getLocalizedMessage());
+            }
+            finally
+            {
+                synchronized (this.lock)
+                {
+                    this.allQueued = true;
+                    this.checkFinished();
+                }
+            }
+        }
+
+        private void enqueue(String url)
+        {
+            synchronized (this.lock)
+            {
+                String host = getHost(url);
+                HostQueue hostQueue = this.hosts.get(host);
+                if (null == hostQueue)
+                {
+                    hostQueue = new HostQueue(host);
+                    this.hosts.put(host, hostQueue);
+                }
+                hostQueue.urls.add(url);
+                this.pending++;
+                this.markReady(hostQueue);
+                this.dispatch();
+            }
+        }
+
+        @GuardedBy("lock")
+        private void markReady(HostQueue hostQueue)
+        {
+            if (!hostQueue.ready && !hostQueue.urls.isEmpty() && hostQueue.running < maxConcurrentRequestsPerHost)
+            {
+                hostQueue.ready = true;
+                this.readyHosts.add(hostQueue);
+            }
+        }
+
+        @GuardedBy("lock")
+        private void dispatch()
+        {
+            while (!this.cancelled && this.running < maxConcurrentRequests && !this.readyHosts.isEmpty())
+            {
+                HostQueue hostQueue = this.readyHosts.poll();
+                hostQueue.ready = false;
+                String url = hostQueue.urls.poll();
+                hostQueue.running++;
+                this.running++;
+                // the host is appended to the end of the queue so the remaining hosts are served first
+                this.markReady(hostQueue);
+                try
+                {
+                    this.executor.execute(() -> this.fetch(hostQueue, url));
+                }
+                catch (RejectedExecutionException reEx)
+                {
+                    // the batch got cancelled in the meantime
+                    this.completed(hostQueue, false);
+                }
+            }
+        }
+
+        private void fetch(HostQueue hostQueue, String url)
+        {
+            boolean resultQueued = false;
+            try
+            {
+                if (!this.cancelled)
+                {
+                    this.results.add(readPage(url));
+                    resultQueued = true;
+                }
+            }
+            finally
+            {
+                synchronized (this.lock)
+                {
+                    this.completed(hostQueue, resultQueued);
+                    this.dispatch();
+                }
+            }
+        }
+
+        /**
+         * Releases the slots of a page which was read.
+         *
+         * @param hostQueue
+         *         The host the page belongs to
+         * @param resultQueued
+         *         Whether a result was queued for the page, which keeps its backlog slot until it was consumed
+         */
+        @GuardedBy("lock")
+        private void completed(HostQueue hostQueue, boolean resultQueued)
+        {
+            hostQueue.running--;
+            this.running--;
+            this.pending--;
+            if (!resultQueued)
+            {
+                this.backlog.release();
+            }
+            if (hostQueue.running == 0 && hostQueue.urls.isEmpty())
+            {
+                this.hosts.remove(hostQueue.host);
+            }
+            else
+            {
+                this.markReady(hostQueue);
+            }
+            this.checkFinished();
+        }
+
+        @GuardedBy("lock")
+        private void checkFinished()
+        {
+            if (!this.finished && this.allQueued && (this.pending == 0 || this.cancelled) && this.running == 0)
+            {
+                this.finished = true;
+                this.results.add(this.endOfResults);
+                this.executor.shutdown();
+            }
+        }
+
+        private void cancel()
+        {
+            this.cancelled = true;
+            this.executor.shutdownNow();
+            // the producer might wait for URLs to be read which will never be read now
+            this.producer.interrupt();
+            synchronized (this.lock)
+            {
+                this.checkFinished();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (null == this.next)
+            {
+                try
+                {
+                    this.next = this.results.take();
+                    if (this.next != this.endOfResults)
+                    {
+                        // the producer may take a further URL from the input
+                        this.backlog.release();
+                    }
+                }
+                catch (InterruptedException iEx)
+                {
+                    Thread.currentThread().interrupt();
+                    this.cancel();
+                    this.next = this.endOfResults;
+                }
+            }
+            return this.next != this.endOfResults;
+        }
+
+        @Override
+        public FetchResult next()
+        {
+            if (!this.hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            FetchResult result = this.next;
+            this.next = null;
+            return result;
+        }
+    }
+}
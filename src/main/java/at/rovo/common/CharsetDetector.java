@@ -0,0 +1,368 @@
+package at.rovo.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Determines the charset of a document before any of its characters are decoded. Following the encoding sniffing
+ * algorithm of the HTML standard, the charset is taken from the first of the following sources which declares a
+ * supported charset:
+ * <ol>
+ *     <li>A byte order mark at the start of the content</li>
+ *     <li>The <em>charset</em> parameter of the <em>Content-Type</em> header</li>
+ *     <li>A <em>&lt;meta charset&gt;</em> or <em>&lt;meta http-equiv="Content-Type"&gt;</em> tag, or the encoding of
+ *     an XML declaration, within the first {@value #LOOKAHEAD} bytes of the content</li>
+ * </ol>
+ * If none of them declares a charset, UTF-8 is assumed. Only the first {@value #LOOKAHEAD} bytes are inspected, which
+ * are pushed back onto the stream afterwards, so the content is never buffered as a whole.
+ */
+final class CharsetDetector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The number of bytes which are inspected for a declaration of the charset */
+    static final int LOOKAHEAD = 1024;
+
+    private CharsetDetector()
+    {
+
+    }
+
+    /**
+     * Creates a reader which decodes the given content with its detected charset. A byte order mark is not part of the
+     * decoded characters.
+     *
+     * @param content
+     *         The content to decode
+     * @param contentType
+     *         The value of the <em>Content-Type</em> header the content was received with or <em>null</em> if the
+     *         content was received without such a header
+     *
+     * @return The reader providing the characters of the content
+     *
+     * @throws IOException
+     *         If the start of the content could not be read
+     */
+    static Reader newReader(InputStream content, String contentType) throws IOException
+    {
+        PushbackInputStream in = new PushbackInputStream(content, LOOKAHEAD);
+        return new InputStreamReader(in, detect(in, contentType));
+    }
+
+    /**
+     * Detects the charset of the given content. The stream is positioned after the byte order mark, if any, once this
+     * method returns.
+     *
+     * @param in
+     *         The content whose charset should be detected, which has to be able to push back {@value #LOOKAHEAD}
+     *         bytes
+     * @param contentType
+     *         The value of the <em>Content-Type</em> header the content was received with or <em>null</em> if the
+     *         content was received without such a header
+     *
+     * @return The charset to decode the content with
+     *
+     * @throws IOException
+     *         If the start of the content could not be read
+     */
+    static Charset detect(PushbackInputStream in, String contentType) throws IOException
+    {
+        byte[] head = new byte[LOOKAHEAD];
+        int length = 0;
+        int read;
+        while (length < head.length && (read = in.read(head, length, head.length - length)) != -1)
+        {
+            read = length + read;
+            // the declarations are expected right at the beginning, so don't wait for further bytes once the head
+            // element was closed
+            boolean headClosed = indexOf(head, length, read, "</head") != -1;
+            length = read;
+            if (headClosed)
+            {
+                break;
+            }
+        }
+
+        // byte order marks take precedence over any declaration
+        int bomLength = 0;
+        Charset charset = null;
+        if (length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF)
+        {
+            charset = StandardCharsets.UTF_8;
+            bomLength = 3;
+        }
+        else if (length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF)
+        {
+            charset = StandardCharsets.UTF_16BE;
+            bomLength = 2;
+        }
+        else if (length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE)
+        {
+            charset = StandardCharsets.UTF_16LE;
+            bomLength = 2;
+        }
+        if (length > bomLength)
+        {
+            in.unread(head, bomLength, length - bomLength);
+        }
+        if (null != charset)
+        {
+            return charset;
+        }
+
+        charset = forName(parameter(contentType, "charset"), false);
+        if (null != charset)
+        {
+            return charset;
+        }
+        charset = prescan(head, length);
+        return null != charset ? charset : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Returns the value of the parameter with the given name of a header value like <em>text/html;
+     * charset="UTF-8"</em>, or <em>null</em> if the header does not contain such a parameter.
+     */
+    private static String parameter(String headerValue, String name)
+    {
+        if (null == headerValue)
+        {
+            return null;
+        }
+        int pos = headerValue.indexOf(';');
+        while (pos != -1 && pos < headerValue.length())
+        {
+            int end = headerValue.indexOf(';', pos + 1);
+            if (end == -1)
+            {
+                end = headerValue.length();
+            }
+            String parameter = headerValue.substring(pos + 1, end).trim();
+            int equals = parameter.indexOf('=');
+            if (equals != -1 && parameter.substring(0, equals).trim().equalsIgnoreCase(name))
+            {
+                return unquote(parameter.substring(equals + 1).trim());
+            }
+            pos = end;
+        }
+        return null;
+    }
+
+    private static String unquote(String value)
+    {
+        if (value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+            && value.charAt(value.length() - 1) == value.charAt(0))
+        {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * Resolves the charset of the given name. As demanded by the HTML standard, the Latin-1 and ASCII labels are
+     * treated as windows-1252, which is a superset of them. A declaration of UTF-16 within the content is treated as
+     * UTF-8, as the content could not have been scanned for it if it was actually UTF-16 encoded.
+     */
+    private static Charset forName(String name, boolean declaredInContent)
+    {
+        if (null == name || name.trim().isEmpty())
+        {
+            return null;
+        }
+        String label = name.trim().toLowerCase(Locale.ROOT);
+        if (declaredInContent && label.startsWith("utf-16"))
+        {
+            return StandardCharsets.UTF_8;
+        }
+        if ("iso-8859-1".equals(label) || "latin1".equals(label) || "us-ascii".equals(label)
+            || "ascii".equals(label))
+        {
+            label = "windows-1252";
+        }
+        try
+        {
+            return Charset.forName(label);
+        }
+        catch (IllegalCharsetNameException | UnsupportedCharsetException ex)
+        {
+            LOG.debug("Ignoring unsupported charset {}", name);
+            return null;
+        }
+    }
+
+    /**
+     * Scans the start of the content for a meta tag or an XML declaration which declares the charset of the content.
+     */
+    private static Charset prescan(byte[] head, int length)
+    {
+        if (startsWith(head, 0, length, "<?xml"))
+        {
+            int end = indexOf(head, 0, length, "?>");
+            String encoding = attribute(head, 5, end == -1 ? length : end, "encoding");
+            Charset charset = forName(encoding, true);
+            if (null != charset)
+            {
+                return charset;
+            }
+        }
+
+        int pos = 0;
+        while (pos < length)
+        {
+            if (startsWith(head, pos, length, "<!--"))
+            {
+                int end = indexOf(head, pos + 4, length, "-->");
+                if (end == -1)
+                {
+                    return null;
+                }
+                pos = end + 3;
+            }
+            else if (startsWith(head, pos, length, "<meta") && pos + 5 < length && isSpaceOrSlash(head[pos + 5]))
+            {
+                int end = indexOf(head, pos + 5, length, ">");
+                if (end == -1)
+                {
+                    return null;
+                }
+                Charset charset = forName(attribute(head, pos + 5, end, "charset"), true);
+                if (null == charset)
+                {
+                    String httpEquiv = attribute(head, pos + 5, end, "http-equiv");
+                    if ("content-type".equalsIgnoreCase(httpEquiv))
+                    {
+                        charset = forName(parameter(attribute(head, pos + 5, end, "content"), "charset"), true);
+                    }
+                }
+                if (null != charset)
+                {
+                    return charset;
+                }
+                pos = end + 1;
+            }
+            else
+            {
+                pos++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the attribute with the given name which is declared between the given positions, or
+     * <em>null</em> if no such attribute is declared.
+     */
+    private static String attribute(byte[] bytes, int start, int end, String name)
+    {
+        int pos = start;
+        while (pos < end)
+        {
+            while (pos < end && (isSpaceOrSlash(bytes[pos]) || bytes[pos] == '?'))
+            {
+                pos++;
+            }
+            int nameStart = pos;
+            while (pos < end && bytes[pos] != '=' && !isSpaceOrSlash(bytes[pos]))
+            {
+                pos++;
+            }
+            int nameEnd = pos;
+            while (pos < end && bytes[pos] <= ' ')
+            {
+                pos++;
+            }
+            String value = null;
+            if (pos < end && bytes[pos] == '=')
+            {
+                pos++;
+                while (pos < end && bytes[pos] <= ' ')
+                {
+                    pos++;
+                }
+                int valueStart;
+                int valueEnd;
+                if (pos < end && (bytes[pos] == '"' || bytes[pos] == '\''))
+                {
+                    byte quote = bytes[pos];
+                    valueStart = ++pos;
+                    while (pos < end && bytes[pos] != quote)
+                    {
+                        pos++;
+                    }
+                    valueEnd = pos++;
+                }
+                else
+                {
+                    valueStart = pos;
+                    while (pos < end && !isSpaceOrSlash(bytes[pos]))
+                    {
+                        pos++;
+                    }
+                    valueEnd = pos;
+                }
+                value = new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+            }
+            if (nameEnd - nameStart == name.length() && startsWith(bytes, nameStart, nameEnd, name))
+            {
+                return value;
+            }
+            if (nameEnd == nameStart && null == value)
+            {
+                pos++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSpaceOrSlash(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == '/';
+    }
+
+    /**
+     * Checks whether the bytes at the given position match the given ASCII string while ignoring the case.
+     */
+    private static boolean startsWith(byte[] bytes, int pos, int end, String prefix)
+    {
+        if (end - pos < prefix.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            int b = bytes[pos + i];
+            if (b >= 'A' && b <= 'Z')
+            {
+                b += 'a' - 'A';
+            }
+            if (b != prefix.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int start, int end, String string)
+    {
+        for (int i = start; i <= end - string.length(); i++)
+        {
+            if (startsWith(bytes, i, end, string))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,307 @@
+package at.rovo.common;
+
+import at.rovo.common.http.Response;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes the body of a response which was transferred with a <em>gzip</em> or <em>deflate</em> content coding. The
+ * body is decoded while it is read, so neither the compressed nor the decoded content is buffered as a whole.
+ * <p>
+ * Although RFC 7230 defines <em>deflate</em> as a zlib stream, some servers send raw deflate data instead. The format
+ * is therefore detected from the zlib header of the body.
+ */
+final class ContentDecoder
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The value of the <em>Accept-Encoding</em> header listing the content codings which can be decoded */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentDecoder()
+    {
+
+    }
+
+    /**
+     * Returns a response whose body provides the decoded content of the given response. The returned response does not
+     * contain the <em>Content-Encoding</em> and <em>Content-Length</em> headers of the original response anymore, as
+     * they only describe the encoded content. Closing the returned response closes the given response.
+     *
+     * @param response
+     *         The response to decode
+     * @param recorder
+     *         Records the number of bytes read from the body of the given and the returned response and is notified
+     *         once the end of the content was reached, the content was closed or reading it failed
+     *
+     * @return A response providing the decoded content, or the content as received if the response does not declare a
+     * supported content coding
+     *
+     * @throws IOException
+     *         If the body of the response could not be read
+     */
+    static Response decode(Response response, FetchRecorder recorder) throws IOException
+    {
+        String contentEncoding = response.getHeader("Content-Encoding");
+        String[] codings = null == contentEncoding ? new String[0] : contentEncoding.split(",");
+        for (String coding : codings)
+        {
+            String name = coding.trim().toLowerCase(Locale.ROOT);
+            if (!isSupported(name))
+            {
+                LOG.debug("Unsupported content coding {} received from {}", name, response.getUrl());
+                return new Response(response.getUrl(), response.getStatusCode(), response.getStatusMessage(),
+                                    response.getHeaders(), new ContentInputStream(response.getBody(), recorder, true));
+            }
+        }
+
+        boolean encoded = false;
+        InputStream body = new CompressedInputStream(response.getBody(), recorder);
+        // the codings are listed in the order they were applied, so they have to be removed in the reverse order
+        for (int i = codings.length - 1; i >= 0; i--)
+        {
+            String name = codings[i].trim().toLowerCase(Locale.ROOT);
+            if ("gzip".equals(name) || "x-gzip".equals(name))
+            {
+                body = gunzip(body);
+                encoded = true;
+            }
+            else if ("deflate".equals(name))
+            {
+                body = inflate(body);
+                encoded = true;
+            }
+        }
+        if (!encoded)
+        {
+            return new Response(response.getUrl(), response.getStatusCode(), response.getStatusMessage(),
+                                response.getHeaders(), new ContentInputStream(response.getBody(), recorder, true));
+        }
+
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(response.getHeaders());
+        headers.remove("Content-Encoding");
+        headers.remove("Content-Length");
+        return new Response(response.getUrl(), response.getStatusCode(), response.getStatusMessage(), headers,
+                            new ContentInputStream(body, recorder, false));
+    }
+
+    private static boolean isSupported(String coding)
+    {
+        return coding.isEmpty() || "identity".equals(coding) || "gzip".equals(coding) || "x-gzip".equals(coding)
+               || "deflate".equals(coding);
+    }
+
+    private static InputStream gunzip(InputStream body) throws IOException
+    {
+        PushbackInputStream in = new PushbackInputStream(body, 1);
+        int first = in.read();
+        if (first == -1)
+        {
+            // responses without content, like the ones to HEAD requests, still declare their coding
+            return in;
+        }
+        in.unread(first);
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+
+    private static InputStream inflate(InputStream body) throws IOException
+    {
+        PushbackInputStream in = new PushbackInputStream(body, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+        int n;
+        while (read < 2 && (n = in.read(header, read, 2 - read)) != -1)
+        {
+            read += n;
+        }
+        if (read == 0)
+        {
+            return in;
+        }
+        in.unread(header, 0, read);
+        // a zlib stream starts with a header declaring the deflate method whose 16-bit value is a multiple of 31
+        boolean zlib = read == 2 && (header[0] & 0x0F) == 8
+                       && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+        Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE)
+        {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException
+            {
+                if (!this.closed)
+                {
+                    this.closed = true;
+                    // an inflater passed to the stream is not released by the stream itself
+                    inflater.end();
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Records the number of bytes read from the body of a response before it gets decoded.
+     */
+    private static final class CompressedInputStream extends FilterInputStream
+    {
+        private final FetchRecorder recorder;
+
+        private CompressedInputStream(InputStream in, FetchRecorder recorder)
+        {
+            super(in);
+            this.recorder = recorder;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int read = super.read();
+            if (read != -1)
+            {
+                this.recorder.compressedContent(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = super.read(b, off, len);
+            if (read > 0)
+            {
+                this.recorder.compressedContent(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            if (skipped > 0)
+            {
+                this.recorder.compressedContent(skipped);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Records the number of content bytes provided to the caller and signals the end of the content to the recorder.
+     */
+    private static final class ContentInputStream extends FilterInputStream
+    {
+        private final FetchRecorder recorder;
+        /** Whether the content was not encoded, so each byte read was received as is */
+        private final boolean identity;
+
+        private ContentInputStream(InputStream in, FetchRecorder recorder, boolean identity)
+        {
+            super(in);
+            this.recorder = recorder;
+            this.identity = identity;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            try
+            {
+                int read = super.read();
+                if (read != -1)
+                {
+                    this.count(1);
+                }
+                else
+                {
+                    this.recorder.completed();
+                }
+                return read;
+            }
+            catch (IOException ioEx)
+            {
+                this.recorder.failed(ioEx);
+                throw ioEx;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            try
+            {
+                int read = super.read(b, off, len);
+                if (read > 0)
+                {
+                    this.count(read);
+                }
+                else if (read == -1)
+                {
+                    this.recorder.completed();
+                }
+                return read;
+            }
+            catch (IOException ioEx)
+            {
+                this.recorder.failed(ioEx);
+                throw ioEx;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            if (skipped > 0)
+            {
+                this.count(skipped);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        private void count(long bytes)
+        {
+            if (this.identity)
+            {
+                this.recorder.compressedContent(bytes);
+            }
+            this.recorder.decompressedContent(bytes);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.recorder.completed();
+            super.close();
+        }
+    }
+}
@@ -1,137 +1,451 @@
 package at.rovo.common;
 
-import java.lang.invoke.MethodHandles;
-import java.util.HashMap;
+import at.rovo.common.annotations.Immutable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * HTTP cookie received from a connected HTP endpoint
+ * <p>
+ * The <em>Set-Cookie</em> header is parsed in a single pass which only records where the name, the value and the
+ * attributes of the cookie are located within the header. Attribute values are extracted only when they are requested,
+ * and the <em>Expires</em> attribute is converted into milliseconds since the epoch without creating an intermediary
+ * string. As required by RFC 6265 the name-value pair is split at the first <em>=</em> only, so values containing
+ * further <em>=</em> characters are retained as is.
+ * <p>
+ * Like a cookie store, cookies are identified by their name, domain and path, so a set of cookies holds at most one
+ * cookie per identity. The hash code is computed once while parsing the header, and two cookies with different hash
+ * codes are told apart without comparing any strings.
  */
+@Immutable
 public class Cookie
 {
-    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-
-    // Netscape cookie values
-    private String domain = null;
-    private String expires = null;
-    private String path = null;
-    // RFC 2109
-    private String maxAge = null;
-    private String comment = null;
-    private String secure = null;
-    private String version = null;
-    private Map<String, String> customValues = new HashMap<>();
-
-    public Cookie(String cookieString) {
-        String[] segments = cookieString.split(";");
-        for (String segment : segments)
-        {
-            LOG.trace("Parsing cookie segment: {}", segment.trim());
-            String[] kv = segment.trim().split("=");
-            switch (kv[0].toLowerCase())
+    // indices of the known attributes within the attribute ranges
+    private static final int DOMAIN = 0;
+    private static final int EXPIRES = 1;
+    private static final int PATH = 2;
+    private static final int MAX_AGE = 3;
+    private static final int COMMENT = 4;
+    private static final int SECURE = 5;
+    private static final int VERSION = 6;
+    private static final int SAME_SITE = 7;
+    private static final int HTTP_ONLY = 8;
+    private static final int ATTRIBUTES = 9;
+
+    /** Marks the expiry date as not yet parsed */
+    private static final long NOT_PARSED = Long.MIN_VALUE;
+
+    /** The Set-Cookie header this cookie was parsed from */
+    private final String header;
+    private final String name;
+    private final String value;
+    /** The start and end index of the value of each known attribute within the header or -1 if not present */
+    private final int[] attributes = new int[ATTRIBUTES * 2];
+    /** The start and end indices of the names and values of unknown attributes or null if there are none */
+    private final int[] extensions;
+    /** The hash code of the name, domain and path of the cookie */
+    private final int hash;
+
+    // lazily computed values, which might be computed more than once by concurrent threads but always to the same
+    // result. Both are volatile, so a thread never sees a torn expiry date or a partially constructed map
+    private volatile long expiresAt = NOT_PARSED;
+    private volatile Map<String, String> customValues = null;
+
+    public Cookie(String cookieString)
+    {
+        this.header = cookieString;
+        int length = cookieString.length();
+        Arrays.fill(this.attributes, -1);
+
+        // the name-value pair ends at the first semicolon and is split at its first equals sign
+        int pairEnd = indexOf(cookieString, ';', 0, length);
+        int equals = indexOf(cookieString, '=', 0, pairEnd);
+        if (equals == pairEnd)
+        {
+            this.name = "";
+            this.value = substringTrimmed(cookieString, 0, pairEnd);
+        }
+        else
+        {
+            this.name = substringTrimmed(cookieString, 0, equals);
+            this.value = substringTrimmed(cookieString, equals + 1, pairEnd);
+        }
+
+        int[] extensions = null;
+        int extensionCount = 0;
+        int pos = pairEnd + 1;
+        while (pos < length)
+        {
+            int segmentEnd = indexOf(cookieString, ';', pos, length);
+            int attrEquals = indexOf(cookieString, '=', pos, segmentEnd);
+            int nameStart = skipWhitespace(cookieString, pos, attrEquals);
+            int nameEnd = trimEnd(cookieString, nameStart, attrEquals);
+            int valueStart = attrEquals < segmentEnd ? skipWhitespace(cookieString, attrEquals + 1, segmentEnd)
+                                                     : segmentEnd;
+            int valueEnd = trimEnd(cookieString, valueStart, segmentEnd);
+
+            if (nameEnd > nameStart)
             {
-                case "domain": this.domain = getValue(kv); break;
-                case "expires": this.expires = getValue(kv); break;
-                case "path": this.path = getValue(kv); break;
-                case "max-age": this.maxAge = getValue(kv); break;
-                case "comment": this.comment = getValue(kv); break;
-                case "secure": this.secure = getValue(kv); break;
-                case "version": this.version = getValue(kv); break;
-                default:
+                int attribute = knownAttribute(cookieString, nameStart, nameEnd);
+                if (attribute != -1)
+                {
+                    this.attributes[attribute * 2] = valueStart;
+                    this.attributes[attribute * 2 + 1] = valueEnd;
+                }
+                else
                 {
-                    LOG.trace("Adding custom cookie value {}={}", kv[0], getValue(kv));
-                    customValues.put(kv[0], getValue(kv));
+                    if (null == extensions)
+                    {
+                        extensions = new int[8];
+                    }
+                    else if (extensionCount * 4 == extensions.length)
+                    {
+                        int[] grown = new int[extensions.length * 2];
+                        System.arraycopy(extensions, 0, grown, 0, extensions.length);
+                        extensions = grown;
+                    }
+                    extensions[extensionCount * 4] = nameStart;
+                    extensions[extensionCount * 4 + 1] = nameEnd;
+                    extensions[extensionCount * 4 + 2] = valueStart;
+                    extensions[extensionCount * 4 + 3] = valueEnd;
+                    extensionCount++;
                 }
             }
+            pos = segmentEnd + 1;
+        }
+        if (null != extensions && extensions.length != extensionCount * 4)
+        {
+            int[] trimmed = new int[extensionCount * 4];
+            System.arraycopy(extensions, 0, trimmed, 0, trimmed.length);
+            extensions = trimmed;
         }
+        this.extensions = extensions;
+        this.hash = this.computeHash();
+    }
+
+    private static int knownAttribute(String header, int start, int end)
+    {
+        switch (end - start)
+        {
+            case 4:
+                return header.regionMatches(true, start, "path", 0, 4) ? PATH : -1;
+            case 6:
+                if (header.regionMatches(true, start, "domain", 0, 6))
+                {
+                    return DOMAIN;
+                }
+                return header.regionMatches(true, start, "secure", 0, 6) ? SECURE : -1;
+            case 7:
+                if (header.regionMatches(true, start, "expires", 0, 7))
+                {
+                    return EXPIRES;
+                }
+                if (header.regionMatches(true, start, "max-age", 0, 7))
+                {
+                    return MAX_AGE;
+                }
+                if (header.regionMatches(true, start, "comment", 0, 7))
+                {
+                    return COMMENT;
+                }
+                return header.regionMatches(true, start, "version", 0, 7) ? VERSION : -1;
+            case 8:
+                if (header.regionMatches(true, start, "samesite", 0, 8))
+                {
+                    return SAME_SITE;
+                }
+                return header.regionMatches(true, start, "httponly", 0, 8) ? HTTP_ONLY : -1;
+            default:
+                return -1;
+        }
+    }
+
+    private static int indexOf(String string, char c, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (string.charAt(i) == c)
+            {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int skipWhitespace(String string, int from, int to)
+    {
+        while (from < to && string.charAt(from) <= ' ')
+        {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(String string, int from, int to)
+    {
+        while (to > from && string.charAt(to - 1) <= ' ')
+        {
+            to--;
+        }
+        return to;
+    }
+
+    private static String substringTrimmed(String string, int from, int to)
+    {
+        int start = skipWhitespace(string, from, to);
+        return string.substring(start, trimEnd(string, start, to));
+    }
+
+    private String attribute(int attribute)
+    {
+        int start = this.attributes[attribute * 2];
+        return start == -1 ? null : this.header.substring(start, this.attributes[attribute * 2 + 1]);
     }
 
-    private String getValue(String[] kv) {
-        return kv.length > 1 ? kv[1] : "";
+    private boolean hasAttribute(int attribute)
+    {
+        return this.attributes[attribute * 2] != -1;
+    }
+
+    /**
+     * Returns the name of this cookie.
+     *
+     * @return The name of the cookie, which is empty if the header did not specify a name
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * Returns the value of this cookie.
+     *
+     * @return The value of the cookie
+     */
+    public String getValue()
+    {
+        return this.value;
     }
 
     public String getDomain()
     {
-        return this.domain;
+        return this.attribute(DOMAIN);
     }
 
     public String getExpires()
     {
+        return this.attribute(EXPIRES);
+    }
+
+    /**
+     * Returns the date of the <em>Expires</em> attribute as milliseconds since the epoch. The date is parsed on the
+     * first invocation.
+     *
+     * @return The point in time the cookie expires or -1 if the cookie has no or an invalid <em>Expires</em> attribute
+     */
+    public long getExpiresAt()
+    {
+        long expires = this.expiresAt;
+        if (expires == NOT_PARSED)
+        {
+            int start = this.attributes[EXPIRES * 2];
+            expires = start == -1 ? -1L : CookieDates.parse(this.header, start, this.attributes[EXPIRES * 2 + 1]);
+            this.expiresAt = expires;
+        }
         return expires;
     }
 
     public String getPath()
     {
-        return path;
+        return this.attribute(PATH);
     }
 
     public String getMaxAge()
     {
-        return maxAge;
+        return this.attribute(MAX_AGE);
     }
 
     public String getComment()
     {
-        return comment;
+        return this.attribute(COMMENT);
     }
 
     public String getSecure()
     {
-        return secure;
+        return this.attribute(SECURE);
+    }
+
+    /**
+     * Specifies whether the cookie should only be sent via secure connections.
+     *
+     * @return <em>true</em> if the cookie has a <em>Secure</em> attribute
+     */
+    public boolean isSecure()
+    {
+        return this.hasAttribute(SECURE);
+    }
+
+    /**
+     * Specifies whether the cookie should be hidden from client side scripts.
+     *
+     * @return <em>true</em> if the cookie has a <em>HttpOnly</em> attribute
+     */
+    public boolean isHttpOnly()
+    {
+        return this.hasAttribute(HTTP_ONLY);
+    }
+
+    /**
+     * Returns the value of the <em>SameSite</em> attribute.
+     *
+     * @return The value of the attribute or <em>null</em> if the cookie has no such attribute
+     */
+    public String getSameSite()
+    {
+        return this.attribute(SAME_SITE);
     }
 
     public String getVersion()
     {
-        return version;
+        return this.attribute(VERSION);
     }
 
+    /**
+     * Returns the name-value pair of this cookie along with all attributes which are not known to this class.
+     *
+     * @return An unmodifiable map containing the name and value of this cookie and any unknown attributes
+     */
     public Map<String, String> getCustomValues()
     {
-        return customValues;
+        Map<String, String> values = this.customValues;
+        if (null == values)
+        {
+            if (null == this.extensions)
+            {
+                values = Collections.singletonMap(this.name, this.value);
+            }
+            else
+            {
+                values = new LinkedHashMap<>();
+                values.put(this.name, this.value);
+                for (int i = 0; i < this.extensions.length; i += 4)
+                {
+                    values.put(this.header.substring(this.extensions[i], this.extensions[i + 1]),
+                               this.header.substring(this.extensions[i + 2], this.extensions[i + 3]));
+                }
+                values = Collections.unmodifiableMap(values);
+            }
+            this.customValues = values;
+        }
+        return values;
     }
 
+    /**
+     * Returns the hash code of the identity of this cookie, which consists of its name, domain and path. The hash code
+     * is computed once on creating the cookie.
+     *
+     * @return The hash code of this cookie
+     */
     @Override
     public int hashCode()
     {
-        int hash = 1;
-        hash = hash * 17 + (domain == null ? 0 : domain.hashCode());
-        hash = hash * 31 + (expires == null ? 0 : expires.hashCode());
-        hash = hash * 13 + (path == null ? 0 : path.hashCode());
-        hash = hash * 17 + (maxAge == null ? 0 : maxAge.hashCode());
-        hash = hash * 31 + (comment == null ? 0 : comment.hashCode());
-        hash = hash * 13 + (secure == null ? 0 : secure.hashCode());
-        hash = hash * 17 + (version == null ? 0 : version.hashCode());
-        for (String key : customValues.keySet())
+        return this.hash;
+    }
+
+    private int computeHash()
+    {
+        int hash = this.name.hashCode();
+        int domainStart = this.domainStart();
+        int domainEnd = this.attributes[DOMAIN * 2 + 1];
+        for (int i = domainStart; i != -1 && i < domainEnd; i++)
         {
-            hash = hash * 31 + customValues.get(key).hashCode();
+            // folded like String.regionMatches does on ignoring the case, so equal domains have equal hashes
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(this.header.charAt(i)));
         }
+        hash = 31 * hash + (domainStart == -1 ? 0 : 1);
+        int pathStart = this.attributes[PATH * 2];
+        for (int i = pathStart; i != -1 && i < this.attributes[PATH * 2 + 1]; i++)
+        {
+            hash = 31 * hash + this.header.charAt(i);
+        }
+        return 31 * hash + (pathStart == -1 ? 0 : 1);
+    }
 
-        return hash;
+    /**
+     * Returns the start of the domain within the header, without the leading dot which is ignored by RFC 6265.
+     *
+     * @return The index of the first character of the domain or -1 if the cookie has no or an empty domain
+     */
+    private int domainStart()
+    {
+        int start = this.attributes[DOMAIN * 2];
+        int end = this.attributes[DOMAIN * 2 + 1];
+        if (start != -1 && start < end && this.header.charAt(start) == '.')
+        {
+            start++;
+        }
+        return start < end ? start : -1;
     }
 
+    /**
+     * Two cookies are equal if they have the same identity as defined by RFC 6265, which consists of the name, the
+     * domain and the path of a cookie. A newer cookie with the same identity replaces an older one, so the value and
+     * all other attributes are not compared. Domains are compared case-insensitive and without a leading dot, names
+     * and paths are compared case-sensitive.
+     *
+     * @param other
+     *         The object to compare this cookie to
+     *
+     * @return <em>true</em> if the other object is a cookie with the same name, domain and path
+     */
     @Override
     public boolean equals(Object other)
     {
-        if (other != this)
+        if (other == this)
+        {
+            return true;
+        }
+        if (!(other instanceof Cookie))
+        {
+            return false;
+        }
+        Cookie otherCookie = (Cookie) other;
+        if (this.hash != otherCookie.hash || !this.name.equals(otherCookie.name))
         {
             return false;
         }
 
-        if (!(other instanceof Cookie))
+        int domainStart = this.domainStart();
+        int otherDomainStart = otherCookie.domainStart();
+        if (!regionEquals(this.header, domainStart, this.attributes[DOMAIN * 2 + 1], otherCookie.header,
+                          otherDomainStart, otherCookie.attributes[DOMAIN * 2 + 1], true))
         {
             return false;
         }
+        return regionEquals(this.header, this.attributes[PATH * 2], this.attributes[PATH * 2 + 1], otherCookie.header,
+                            otherCookie.attributes[PATH * 2], otherCookie.attributes[PATH * 2 + 1], false);
+    }
 
-        Cookie otherCookie = (Cookie) other;
-        return (!(this.domain != null && !this.domain.equals(otherCookie.domain))
-                || (this.expires != null && !this.expires.equals(otherCookie.expires))
-                || (this.path != null && !this.path.equals(otherCookie.path))
-                || (this.maxAge != null && !this.maxAge.equals(otherCookie.maxAge))
-                || (this.comment != null && !this.comment.equals(otherCookie.comment))
-                || (this.secure != null && !this.secure.equals(otherCookie.secure))
-                || (this.version != null && !this.version.equals(otherCookie.version)))
-                || (this.customValues.equals(otherCookie.customValues));
+    /**
+     * Compares two regions of which either may be absent, as signaled by a start index of -1.
+     */
+    private static boolean regionEquals(String string, int start, int end, String otherString, int otherStart,
+                                        int otherEnd, boolean ignoreCase)
+    {
+        if (start == -1 || otherStart == -1)
+        {
+            return start == otherStart;
+        }
+        int length = end - start;
+        return length == otherEnd - otherStart
+               && string.regionMatches(ignoreCase, start, otherString, otherStart, length);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.header;
     }
 }
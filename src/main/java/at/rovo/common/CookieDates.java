@@ -0,0 +1,213 @@
+package at.rovo.common;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Parses the date of an <em>Expires</em> cookie attribute according to the lenient algorithm of RFC 6265 section
+ * 5.1.1, which accepts the various date formats found in practice, like <em>Wed, 21 Oct 2015 07:28:00 GMT</em>,
+ * <em>Wednesday, 21-Oct-15 07:28:00 GMT</em> or <em>Wed Oct 21 07:28:00 2015</em>. The date is scanned in a single pass
+ * without splitting it into separate strings.
+ */
+final class CookieDates
+{
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    private CookieDates()
+    {
+
+    }
+
+    /**
+     * Parses the given cookie date.
+     *
+     * @param date
+     *         The date to parse
+     *
+     * @return The date as milliseconds since the epoch or -1 if the date could not be parsed
+     */
+    static long parse(CharSequence date)
+    {
+        return parse(date, 0, date.length());
+    }
+
+    /**
+     * Parses the cookie date contained in the given range of characters.
+     *
+     * @param date
+     *         The characters containing the date
+     * @param start
+     *         The index of the first character of the date
+     * @param end
+     *         The index after the last character of the date
+     *
+     * @return The date as milliseconds since the epoch or -1 if the date could not be parsed
+     */
+    static long parse(CharSequence date, int start, int end)
+    {
+        int hour = -1;
+        int minute = -1;
+        int second = -1;
+        int dayOfMonth = -1;
+        int month = -1;
+        int year = -1;
+
+        int pos = start;
+        while (pos < end)
+        {
+            // skip delimiters
+            while (pos < end && isDelimiter(date.charAt(pos)))
+            {
+                pos++;
+            }
+            int tokenStart = pos;
+            while (pos < end && !isDelimiter(date.charAt(pos)))
+            {
+                pos++;
+            }
+            int tokenEnd = pos;
+            if (tokenStart == tokenEnd)
+            {
+                continue;
+            }
+
+            if (hour == -1)
+            {
+                int[] time = parseTime(date, tokenStart, tokenEnd);
+                if (null != time)
+                {
+                    hour = time[0];
+                    minute = time[1];
+                    second = time[2];
+                    continue;
+                }
+            }
+            int digits = countDigits(date, tokenStart, tokenEnd);
+            if (dayOfMonth == -1 && (digits == 1 || digits == 2) && !isDigitAt(date, tokenStart + digits, tokenEnd))
+            {
+                dayOfMonth = parseNumber(date, tokenStart, tokenStart + digits);
+                continue;
+            }
+            if (month == -1 && tokenEnd - tokenStart >= 3)
+            {
+                int index = monthIndex(date, tokenStart);
+                if (index != -1)
+                {
+                    month = index + 1;
+                    continue;
+                }
+            }
+            if (year == -1 && digits >= 2 && digits <= 4 && !isDigitAt(date, tokenStart + digits, tokenEnd))
+            {
+                year = parseNumber(date, tokenStart, tokenStart + digits);
+            }
+        }
+
+        if (year >= 70 && year <= 99)
+        {
+            year += 1900;
+        }
+        else if (year >= 0 && year <= 69)
+        {
+            year += 2000;
+        }
+        if (hour == -1 || dayOfMonth < 1 || dayOfMonth > 31 || month == -1 || year < 1601 || hour > 23
+            || minute > 59 || second > 59)
+        {
+            return -1L;
+        }
+        try
+        {
+            return LocalDateTime.of(year, month, dayOfMonth, hour, minute, second).toEpochSecond(ZoneOffset.UTC)
+                   * 1000L;
+        }
+        catch (DateTimeException dtEx)
+        {
+            // for example the 31st of a month with only 30 days
+            return -1L;
+        }
+    }
+
+    /**
+     * Parses a token of the form <em>1*2DIGIT ":" 1*2DIGIT ":" 1*2DIGIT</em> optionally followed by non-digits.
+     */
+    private static int[] parseTime(CharSequence date, int start, int end)
+    {
+        int[] time = new int[3];
+        int pos = start;
+        for (int field = 0; field < 3; field++)
+        {
+            int digits = countDigits(date, pos, end);
+            if (digits < 1 || digits > 2)
+            {
+                return null;
+            }
+            time[field] = parseNumber(date, pos, pos + digits);
+            pos += digits;
+            if (field < 2)
+            {
+                if (pos >= end || date.charAt(pos) != ':')
+                {
+                    return null;
+                }
+                pos++;
+            }
+        }
+        return isDigitAt(date, pos, end) ? null : time;
+    }
+
+    private static int monthIndex(CharSequence date, int start)
+    {
+        for (int i = 0; i < MONTHS.length(); i += 3)
+        {
+            if (Character.toLowerCase(date.charAt(start)) == MONTHS.charAt(i)
+                && Character.toLowerCase(date.charAt(start + 1)) == MONTHS.charAt(i + 1)
+                && Character.toLowerCase(date.charAt(start + 2)) == MONTHS.charAt(i + 2))
+            {
+                return i / 3;
+            }
+        }
+        return -1;
+    }
+
+    private static int countDigits(CharSequence date, int start, int end)
+    {
+        int pos = start;
+        while (pos < end && isDigit(date.charAt(pos)))
+        {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private static int parseNumber(CharSequence date, int start, int end)
+    {
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            value = value * 10 + (date.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigitAt(CharSequence date, int pos, int end)
+    {
+        return pos < end && isDigit(date.charAt(pos));
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Checks whether the character is a delimiter as defined by RFC 6265: %x09 / %x20-2F / %x3B-40 / %x5B-60 /
+     * %x7B-7E
+     */
+    private static boolean isDelimiter(char c)
+    {
+        return c == 0x09 || (c >= 0x20 && c <= 0x2F) || (c >= 0x3B && c <= 0x40) || (c >= 0x5B && c <= 0x60)
+               || (c >= 0x7B && c <= 0x7E);
+    }
+}
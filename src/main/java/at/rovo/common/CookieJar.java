@@ -0,0 +1,492 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import at.rovo.common.annotations.ThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread-safe store for the cookies received by a {@link UrlReader}. Cookies are indexed by the domain they belong
+ * to and matched against requests according to the domain, path and secure rules of RFC 6265. A cookie replaces a
+ * previously received cookie with the same name, domain and path, and cookies are evicted once their <em>Max-Age</em>
+ * or <em>Expires</em> attribute marks them as expired. Cookies whose domain attribute names a public suffix, like
+ * <em>com</em> or <em>co.uk</em>, are rejected unless they were received from that very host, so a site can not set
+ * cookies for all sites registered below the suffix.
+ * <p>
+ * The cookies applicable to a host are cached together with the serialized <em>Cookie</em> header until a further
+ * cookie is stored for the host or one of its parent domains, or one of the cached cookies expires. Building the header
+ * for a request therefore only touches the cookies matching the request, and cookies received from one host do not
+ * invalidate the cached headers of unrelated hosts.
+ */
+@ThreadSafe
+public class CookieJar
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The maximum number of hosts whose cookie header is cached */
+    private static final int MAX_CACHED_HOSTS = 1024;
+
+    /** Orders cookies with longer paths first and cookies with the same path length by their creation */
+    private static final Comparator<StoredCookie> HEADER_ORDER = (a, b) -> {
+        int byPath = Integer.compare(b.path.length(), a.path.length());
+        return byPath != 0 ? byPath : Long.compare(a.sequence, b.sequence);
+    };
+
+    /**
+     * A single name-value pair stored for a domain and path.
+     */
+    @Immutable
+    private static final class StoredCookie
+    {
+        private final String name;
+        private final String value;
+        private final String domain;
+        private final String path;
+        private final boolean hostOnly;
+        private final boolean secure;
+        private final long expiresAt;
+        private final long sequence;
+
+        private StoredCookie(String name, String value, String domain, String path, boolean hostOnly, boolean secure,
+                             long expiresAt, long sequence)
+        {
+            this.name = name;
+            this.value = value;
+            this.domain = domain;
+            this.path = path;
+            this.hostOnly = hostOnly;
+            this.secure = secure;
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+
+        private String key()
+        {
+            return this.name + ';' + this.path;
+        }
+
+        /**
+         * Returns this cookie with the sequence of the given cookie it replaces, as a replacing cookie keeps the
+         * creation time of the old cookie according to RFC 6265 section 5.3.
+         */
+        private StoredCookie replacing(StoredCookie previous)
+        {
+            return new StoredCookie(this.name, this.value, this.domain, this.path, this.hostOnly, this.secure,
+                                    this.expiresAt, previous.sequence);
+        }
+    }
+
+    /**
+     * The cookies stored for a single domain.
+     */
+    private static final class DomainCookies
+    {
+        /** The cookies keyed by their name and path */
+        private final ConcurrentMap<String, StoredCookie> cookies = new ConcurrentHashMap<>();
+        /** Changes whenever a cookie of the domain is added, replaced or removed */
+        private volatile long version;
+    }
+
+    /**
+     * The cookies applicable to a host, ordered as they have to appear in the <em>Cookie</em> header.
+     */
+    @Immutable
+    private static final class HostCookies
+    {
+        /** The host and its parent domains the cookies were collected from */
+        private final String[] domains;
+        /** The cookies found for the domain at the same position or null if no cookies were stored for it */
+        private final DomainCookies[] sources;
+        /** The version of the domain at the same position the cookies were collected at */
+        private final long[] versions;
+        private final List<StoredCookie> cookies;
+        /** The point in time the first of the cookies expires */
+        private final long expiresAt;
+        /** The header for secure requests if all cookies are valid for the root path, otherwise null */
+        private final String secureHeader;
+        /** The header for non-secure requests if all cookies are valid for the root path, otherwise null */
+        private final String plainHeader;
+
+        private HostCookies(String[] domains, DomainCookies[] sources, long[] versions, List<StoredCookie> cookies)
+        {
+            this.domains = domains;
+            this.sources = sources;
+            this.versions = versions;
+            this.cookies = cookies;
+            long expiresAt = Long.MAX_VALUE;
+            boolean rootOnly = true;
+            for (StoredCookie cookie : cookies)
+            {
+                expiresAt = Math.min(expiresAt, cookie.expiresAt);
+                rootOnly &= "/".equals(cookie.path);
+            }
+            this.expiresAt = expiresAt;
+            this.secureHeader = rootOnly ? serialize(cookies, "/", true) : null;
+            this.plainHeader = rootOnly ? serialize(cookies, "/", false) : null;
+        }
+
+        /**
+         * Checks whether none of the domains the cookies were collected from changed since.
+         */
+        private boolean isCurrent(ConcurrentMap<String, DomainCookies> stored)
+        {
+            for (int i = 0; i < this.domains.length; i++)
+            {
+                DomainCookies current = stored.get(this.domains[i]);
+                if (current != this.sources[i] || (null != current && current.version != this.versions[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** The domains cookies must not be set for by their subdomains */
+    private final PublicSuffixList publicSuffixes;
+    /** The cookies per domain */
+    private final ConcurrentMap<String, DomainCookies> domains = new ConcurrentHashMap<>();
+    /** The cached cookies per host */
+    private final ConcurrentMap<String, HostCookies> hosts = new ConcurrentHashMap<>();
+    /** Orders the cookies by their creation and provides the versions of the domains */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates a new jar which rejects cookies for the public suffixes of the {@link PublicSuffixList#getDefault()
+     * bundled list}.
+     */
+    public CookieJar()
+    {
+        this(PublicSuffixList.getDefault());
+    }
+
+    /**
+     * Creates a new jar which rejects cookies for the public suffixes of the given list.
+     *
+     * @param publicSuffixes
+     *         The domains cookies must not be set for by their subdomains
+     */
+    public CookieJar(PublicSuffixList publicSuffixes)
+    {
+        if (null == publicSuffixes)
+        {
+            throw new IllegalArgumentException("No public suffix list provided");
+        }
+        this.publicSuffixes = publicSuffixes;
+    }
+
+    /**
+     * Stores the cookie received in response to a request of the given URL. A cookie whose domain attribute does not
+     * match the host of the URL or names a public suffix other than the host is rejected. A cookie which is already
+     * expired removes a stored cookie with the same name, domain and path.
+     *
+     * @param url
+     *         The URL of the request the cookie was received for
+     * @param cookie
+     *         The cookie received
+     */
+    public void store(URL url, Cookie cookie)
+    {
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        if (cookie.getName().isEmpty())
+        {
+            LOG.trace("Ignoring cookie without a name received from {}", host);
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        String domain = host;
+        boolean hostOnly = true;
+        if (null != cookie.getDomain() && !cookie.getDomain().isEmpty())
+        {
+            domain = cookie.getDomain().toLowerCase(Locale.ROOT);
+            if (domain.startsWith("."))
+            {
+                domain = domain.substring(1);
+            }
+            if (!domainMatches(host, domain))
+            {
+                LOG.trace("Rejecting cookie for domain {} received from {}", domain, host);
+                return;
+            }
+            // RFC 6265 section 5.3 step 5
+            if (this.publicSuffixes.isPublicSuffix(domain))
+            {
+                if (!domain.equals(host))
+                {
+                    LOG.trace("Rejecting cookie for public suffix {} received from {}", domain, host);
+                    return;
+                }
+            }
+            else
+            {
+                hostOnly = false;
+            }
+        }
+
+        String path = cookie.getPath();
+        if (null == path || !path.startsWith("/"))
+        {
+            path = defaultPath(url.getPath());
+        }
+        long expiresAt = expiresAt(cookie, now);
+
+        StoredCookie stored = new StoredCookie(cookie.getName(), cookie.getValue(), domain, path, hostOnly,
+                                               cookie.isSecure(), expiresAt, this.sequence.incrementAndGet());
+        // the cookie is stored within compute, so evictExpired can not remove the domain in the meantime
+        this.domains.compute(domain, (d, current) -> {
+            DomainCookies cookies = null != current ? current : new DomainCookies();
+            if (expiresAt <= now)
+            {
+                cookies.cookies.remove(stored.key());
+            }
+            else
+            {
+                StoredCookie previous = cookies.cookies.get(stored.key());
+                cookies.cookies.put(stored.key(), null == previous ? stored : stored.replacing(previous));
+                LOG.trace("{} cookie {} for domain {} and path {}", null == previous ? "Storing" : "Replacing",
+                          stored.name, d, stored.path);
+            }
+            cookies.version = this.sequence.incrementAndGet();
+            return cookies.cookies.isEmpty() ? null : cookies;
+        });
+    }
+
+    /**
+     * Returns the value of the <em>Cookie</em> header which should be sent along with a request of the given URL.
+     *
+     * @param url
+     *         The URL to request
+     *
+     * @return The value of the header or <em>null</em> if no cookie matches the URL
+     */
+    public String getCookieHeader(URL url)
+    {
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        HostCookies hostCookies = this.hosts.get(host);
+        if (null == hostCookies || now >= hostCookies.expiresAt || !hostCookies.isCurrent(this.domains))
+        {
+            hostCookies = this.collect(host, now);
+            if (this.hosts.size() >= MAX_CACHED_HOSTS)
+            {
+                this.hosts.clear();
+            }
+            this.hosts.put(host, hostCookies);
+        }
+        if (hostCookies.cookies.isEmpty())
+        {
+            return null;
+        }
+
+        boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+        String header = secure ? hostCookies.secureHeader : hostCookies.plainHeader;
+        if (null == header)
+        {
+            String path = url.getPath();
+            header = serialize(hostCookies.cookies, null == path || path.isEmpty() ? "/" : path, secure);
+        }
+        return header.isEmpty() ? null : header;
+    }
+
+    /**
+     * Collects all cookies which are applicable to the given host, that are the cookies of the host itself and the
+     * cookies of its parent domains which are not restricted to their host.
+     */
+    private HostCookies collect(String host, long now)
+    {
+        List<String> names = new ArrayList<>();
+        for (String domain = host; null != domain; domain = parentDomain(domain))
+        {
+            names.add(domain);
+        }
+        String[] domains = names.toArray(new String[0]);
+        DomainCookies[] sources = new DomainCookies[domains.length];
+        long[] versions = new long[domains.length];
+        List<StoredCookie> cookies = new ArrayList<>();
+        for (int i = 0; i < domains.length; i++)
+        {
+            DomainCookies stored = this.domains.get(domains[i]);
+            if (null == stored)
+            {
+                continue;
+            }
+            sources[i] = stored;
+            // read the version before collecting so concurrent changes will invalidate the result
+            versions[i] = stored.version;
+            for (StoredCookie cookie : stored.cookies.values())
+            {
+                if (cookie.expiresAt <= now)
+                {
+                    stored.cookies.remove(cookie.key(), cookie);
+                }
+                else if (i == 0 || !cookie.hostOnly)
+                {
+                    cookies.add(cookie);
+                }
+            }
+        }
+        cookies.sort(HEADER_ORDER);
+        return new HostCookies(domains, sources, versions, Collections.unmodifiableList(cookies));
+    }
+
+    private static String serialize(List<StoredCookie> cookies, String path, boolean secure)
+    {
+        StringBuilder header = new StringBuilder();
+        for (StoredCookie cookie : cookies)
+        {
+            if ((!cookie.secure || secure) && pathMatches(path, cookie.path))
+            {
+                if (header.length() > 0)
+                {
+                    header.append("; ");
+                }
+                header.append(cookie.name).append('=').append(cookie.value);
+            }
+        }
+        return header.toString();
+    }
+
+    /**
+     * Removes all cookies which are expired.
+     */
+    public void evictExpired()
+    {
+        long now = System.currentTimeMillis();
+        for (String domain : this.domains.keySet())
+        {
+            // a domain is only removed atomically with the check, so a cookie stored concurrently is never lost
+            this.domains.computeIfPresent(domain, (d, cookies) -> {
+                if (cookies.cookies.values().removeIf(cookie -> cookie.expiresAt <= now))
+                {
+                    cookies.version = this.sequence.incrementAndGet();
+                }
+                return cookies.cookies.isEmpty() ? null : cookies;
+            });
+        }
+    }
+
+    /**
+     * Returns the number of cookies stored, which might include cookies that expired but were not evicted yet.
+     *
+     * @return The number of cookies stored
+     */
+    public int size()
+    {
+        int size = 0;
+        for (DomainCookies cookies : this.domains.values())
+        {
+            size += cookies.cookies.size();
+        }
+        return size;
+    }
+
+    /**
+     * Removes all cookies.
+     */
+    public void clear()
+    {
+        this.domains.clear();
+        this.hosts.clear();
+    }
+
+    private static long expiresAt(Cookie cookie, long now)
+    {
+        String maxAge = cookie.getMaxAge();
+        if (null != maxAge && !maxAge.isEmpty())
+        {
+            try
+            {
+                long seconds = Long.parseLong(maxAge.trim());
+                if (seconds <= 0)
+                {
+                    return Long.MIN_VALUE;
+                }
+                return seconds >= (Long.MAX_VALUE - now) / 1000L ? Long.MAX_VALUE : now + seconds * 1000L;
+            }
+            catch (NumberFormatException nfEx)
+            {
+                // RFC 6265 demands to ignore an invalid Max-Age attribute
+            }
+        }
+        long expires = cookie.getExpiresAt();
+        // a cookie without a valid expiry date is a session cookie
+        return expires != -1L ? expires : Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether the host domain-matches the domain as defined by RFC 6265 section 5.1.3.
+     */
+    private static boolean domainMatches(String host, String domain)
+    {
+        if (host.equals(domain))
+        {
+            return true;
+        }
+        return host.endsWith(domain) && host.charAt(host.length() - domain.length() - 1) == '.' && !isIpAddress(host);
+    }
+
+    /**
+     * Checks whether the request path path-matches the cookie path as defined by RFC 6265 section 5.1.4.
+     */
+    private static boolean pathMatches(String requestPath, String cookiePath)
+    {
+        if (!requestPath.startsWith(cookiePath))
+        {
+            return false;
+        }
+        return requestPath.length() == cookiePath.length() || cookiePath.endsWith("/")
+               || requestPath.charAt(cookiePath.length()) == '/';
+    }
+
+    /**
+     * Returns the default path of a cookie as defined by RFC 6265 section 5.1.4, which is the directory of the request
+     * path.
+     */
+    private static String defaultPath(String requestPath)
+    {
+        if (null == requestPath || !requestPath.startsWith("/"))
+        {
+            return "/";
+        }
+        int lastSlash = requestPath.lastIndexOf('/');
+        return lastSlash == 0 ? "/" : requestPath.substring(0, lastSlash);
+    }
+
+    private static String parentDomain(String domain)
+    {
+        if (isIpAddress(domain))
+        {
+            return null;
+        }
+        int dot = domain.indexOf('.');
+        return dot == -1 || dot == domain.length() - 1 ? null : domain.substring(dot + 1);
+    }
+
+    private static boolean isIpAddress(String host)
+    {
+        if (host.indexOf(':') != -1 || host.startsWith("["))
+        {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++)
+        {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9'))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+/**
+ * The point in time reading a page has to be completed by, which covers all hops, retries and the transfer of the
+ * content. As blocking reads cannot be interrupted, the deadline is enforced by capping the timeouts of the requests
+ * to the remaining time and by checking the deadline before each further read. A read which is already blocked may
+ * therefore exceed the deadline by at most the read timeout. Closing the content once the deadline expired may take
+ * a little longer, as the transport skips a short remainder of the content in order to reuse the connection.
+ */
+@Immutable
+final class Deadline
+{
+    /** A deadline which never expires */
+    static final Deadline NONE = new Deadline(0L, false);
+
+    private final long expiresAt;
+    private final boolean limited;
+
+    private Deadline(long expiresAt, boolean limited)
+    {
+        this.expiresAt = expiresAt;
+        this.limited = limited;
+    }
+
+    /**
+     * Creates a deadline which expires once the given time passed.
+     *
+     * @param timeout
+     *         The time until the deadline expires or <em>null</em> for a deadline which never expires
+     *
+     * @return The deadline
+     */
+    static Deadline after(Duration timeout)
+    {
+        if (null == timeout)
+        {
+            return NONE;
+        }
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    /**
+     * Returns the time left until the deadline expires.
+     *
+     * @return The remaining time, which is zero for expired deadlines, or <em>null</em> if the deadline never expires
+     */
+    Duration remaining()
+    {
+        if (!this.limited)
+        {
+            return null;
+        }
+        long remaining = this.expiresAt - System.nanoTime();
+        return Duration.ofNanos(Math.max(0L, remaining));
+    }
+
+    /**
+     * Limits the given timeout to the time left until the deadline expires.
+     *
+     * @param timeout
+     *         The timeout to limit or <em>null</em> if no timeout applies
+     *
+     * @return The shorter of the timeout and the remaining time, or <em>null</em> if neither limits the time
+     */
+    Duration cap(Duration timeout)
+    {
+        Duration remaining = this.remaining();
+        if (null == remaining)
+        {
+            return timeout;
+        }
+        return null == timeout || remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    /**
+     * Checks whether the remaining time suffices to wait for the given time.
+     *
+     * @param delay
+     *         The time to wait for
+     *
+     * @return <em>true</em> if the deadline does not expire before the given time passed
+     */
+    boolean allows(Duration delay)
+    {
+        Duration remaining = this.remaining();
+        return null == remaining || remaining.compareTo(delay) > 0;
+    }
+
+    /**
+     * Fails if the deadline expired.
+     *
+     * @param url
+     *         The URL which is being read, used to describe the failure
+     *
+     * @throws SocketTimeoutException
+     *         If the deadline expired
+     */
+    void check(String url) throws SocketTimeoutException
+    {
+        if (this.limited && this.expiresAt - System.nanoTime() <= 0)
+        {
+            throw new SocketTimeoutException("Deadline for reading " + url + " exceeded");
+        }
+    }
+
+    /**
+     * Wraps the content of a page so that reading it fails once the deadline expired.
+     *
+     * @param content
+     *         The content of the page
+     * @param url
+     *         The URL of the page
+     *
+     * @return The guarded content, or the content itself if the deadline never expires
+     */
+    InputStream guard(InputStream content, String url)
+    {
+        return this.limited ? new GuardedInputStream(content, url) : content;
+    }
+
+    private final class GuardedInputStream extends FilterInputStream
+    {
+        private final String url;
+
+        private GuardedInputStream(InputStream in, String url)
+        {
+            super(in);
+            this.url = url;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            check(this.url);
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            check(this.url);
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            check(this.url);
+            return super.skip(n);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package at.rovo.common;
+
+/**
+ * Is notified by a {@link UrlReader} once reading a page completed. For methods returning the content as stream, like
+ * {@link UrlReader#read(String)}, reading completes once the end of the content was reached or the stream got closed.
+ * <p>
+ * Listeners are invoked on the thread which completed the read and should therefore return quickly.
+ */
+public interface FetchListener
+{
+    /**
+     * Invoked once a page was read or reading the page failed.
+     *
+     * @param metrics
+     *         The figures recorded while reading the page
+     */
+    void fetchCompleted(FetchMetrics metrics);
+}
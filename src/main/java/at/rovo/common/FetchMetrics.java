@@ -0,0 +1,194 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import java.time.Duration;
+
+/**
+ * The figures recorded while a {@link UrlReader} read a single page, including all redirects which were followed.
+ */
+@Immutable
+public final class FetchMetrics
+{
+    /** The URL the page was requested with */
+    private final String originURL;
+    /** The URL of the last hop */
+    private final String realURL;
+    /** The host of the last hop */
+    private final String host;
+    /** The HTTP status code of the last response received */
+    private final int statusCode;
+    /** The number of redirects followed */
+    private final int redirects;
+    /** The number of cookies received on all hops */
+    private final int cookies;
+    /** The number of content bytes received */
+    private final long compressedBytes;
+    /** The number of content bytes after any compression was removed */
+    private final long decompressedBytes;
+    /** The time between sending the request of the last hop and receiving its response headers */
+    private final Duration timeToFirstByte;
+    /** The time between receiving the response headers of the last hop and reaching the end of its content */
+    private final Duration bodyDuration;
+    /** The time between sending the first request and reaching the end of the content */
+    private final Duration totalDuration;
+    /** The exception which prevented the page from being read */
+    private final Throwable failure;
+
+    FetchMetrics(String originURL, String realURL, String host, int statusCode, int redirects, int cookies,
+                 long compressedBytes, long decompressedBytes, Duration timeToFirstByte, Duration bodyDuration,
+                 Duration totalDuration, Throwable failure)
+    {
+        this.originURL = originURL;
+        this.realURL = realURL;
+        this.host = host;
+        this.statusCode = statusCode;
+        this.redirects = redirects;
+        this.cookies = cookies;
+        this.compressedBytes = compressedBytes;
+        this.decompressedBytes = decompressedBytes;
+        this.timeToFirstByte = timeToFirstByte;
+        this.bodyDuration = bodyDuration;
+        this.totalDuration = totalDuration;
+        this.failure = failure;
+    }
+
+    /**
+     * Returns the URL the page was requested with.
+     *
+     * @return The original URL as provided by a caller
+     */
+    public String getOriginURL()
+    {
+        return this.originURL;
+    }
+
+    /**
+     * Returns the URL of the last hop, which is the URL of the page after any redirect occurred.
+     *
+     * @return The URL of the last hop
+     */
+    public String getRealURL()
+    {
+        return this.realURL;
+    }
+
+    /**
+     * Returns the host of the last hop.
+     *
+     * @return The host the content was read from
+     */
+    public String getHost()
+    {
+        return this.host;
+    }
+
+    /**
+     * Returns the HTTP status code of the last response received.
+     *
+     * @return The status code of the last response or -1 if no response was received
+     */
+    public int getStatusCode()
+    {
+        return this.statusCode;
+    }
+
+    /**
+     * Returns the number of redirects followed.
+     *
+     * @return The number of redirects
+     */
+    public int getRedirects()
+    {
+        return this.redirects;
+    }
+
+    /**
+     * Returns the number of cookies received on all hops.
+     *
+     * @return The number of cookies received
+     */
+    public int getCookies()
+    {
+        return this.cookies;
+    }
+
+    /**
+     * Returns the number of content bytes received, which is the number of compressed bytes for compressed content.
+     *
+     * @return The number of content bytes received
+     */
+    public long getCompressedBytes()
+    {
+        return this.compressedBytes;
+    }
+
+    /**
+     * Returns the number of content bytes after any compression was removed.
+     *
+     * @return The number of decoded content bytes
+     */
+    public long getDecompressedBytes()
+    {
+        return this.decompressedBytes;
+    }
+
+    /**
+     * Returns the time between sending the request of the last hop and receiving its response headers.
+     *
+     * @return The time to the first byte of the last hop or <em>null</em> if no response was received
+     */
+    public Duration getTimeToFirstByte()
+    {
+        return this.timeToFirstByte;
+    }
+
+    /**
+     * Returns the time between receiving the response headers of the last hop and reaching the end of the content,
+     * which includes the time the caller took to process the content while reading it.
+     *
+     * @return The time the content was read or <em>null</em> if no content was read
+     */
+    public Duration getBodyDuration()
+    {
+        return this.bodyDuration;
+    }
+
+    /**
+     * Returns the time between sending the first request and reaching the end of the content or the failure.
+     *
+     * @return The time it took to read the page
+     */
+    public Duration getTotalDuration()
+    {
+        return this.totalDuration;
+    }
+
+    /**
+     * Returns the exception which prevented the page from being read.
+     *
+     * @return The failure or <em>null</em> if the page was read successfully
+     */
+    public Throwable getFailure()
+    {
+        return this.failure;
+    }
+
+    /**
+     * Specifies whether the page was read successfully.
+     *
+     * @return <em>true</em> if the page was read, <em>false</em> otherwise
+     */
+    public boolean isSuccess()
+    {
+        return null == this.failure;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FetchMetrics[" + this.originURL + " -> " + this.realURL + ", status=" + this.statusCode
+               + ", redirects=" + this.redirects + ", bytes=" + this.compressedBytes + "/" + this.decompressedBytes
+               + ", ttfb=" + this.timeToFirstByte + ", body=" + this.bodyDuration + ", total=" + this.totalDuration
+               + (null != this.failure ? ", failure=" + this.failure : "") + "]";
+    }
+}
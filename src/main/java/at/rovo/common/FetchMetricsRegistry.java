@@ -0,0 +1,220 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.ThreadSafe;
+import at.rovo.common.http.ExchangeListener;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the figures of the pages read by {@link UrlReader} and the connections established by a transport into
+ * {@link HostMetrics} per host, so slow or failing hosts can be spotted while a crawl is running. The registry is
+ * registered as {@link FetchListener} of the readers and as {@link ExchangeListener} of the transport:
+ * <pre>
+ * FetchMetricsRegistry registry = new FetchMetricsRegistry();
+ * PooledHttpTransport transport = new PooledHttpTransport();
+ * transport.setExchangeListener(registry);
+ * UrlReader reader = new UrlReader(transport);
+ * reader.setFetchListener(registry);
+ * </pre>
+ * The figures of all hosts are furthermore aggregated in {@link #getTotal()}. To bound the memory used by the registry,
+ * at most <em>maxHosts</em> hosts get figures of their own. Once this number is reached, hosts which were idle for the
+ * idle timeout, by default 5 minutes, are dropped to make room for new hosts, so a long running crawl keeps tracking
+ * the hosts it currently reads from. Hosts which find no room are accounted to {@link #getOtherHosts()}.
+ */
+@ThreadSafe
+public class FetchMetricsRegistry implements FetchListener, ExchangeListener
+{
+    /** The default number of hosts which are tracked individually */
+    public static final int DEFAULT_MAX_HOSTS = 1024;
+    /** The default time after which a host which was not used anymore may be dropped */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5L);
+    /** The name under which the hosts beyond the maximum number of tracked hosts are aggregated */
+    public static final String OTHER_HOSTS = "*";
+    /** The minimum time between two searches for idle hosts, so untracked hosts do not search on every event */
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final int maxHosts;
+    private final long idleNanos;
+    private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+    private final HostMetrics total = new HostMetrics("");
+    private final HostMetrics otherHosts = new HostMetrics(OTHER_HOSTS);
+    /** The time idle hosts were searched for the last time in nanoseconds */
+    private final AtomicLong lastEviction;
+
+    /**
+     * Creates a new registry tracking up to {@link #DEFAULT_MAX_HOSTS} hosts individually.
+     */
+    public FetchMetricsRegistry()
+    {
+        this(DEFAULT_MAX_HOSTS);
+    }
+
+    /**
+     * Creates a new registry tracking up to the given number of hosts individually, which drops hosts idle for {@link
+     * #DEFAULT_IDLE_TIMEOUT} to make room for further hosts.
+     *
+     * @param maxHosts
+     *         The maximum number of hosts to track individually
+     */
+    public FetchMetricsRegistry(int maxHosts)
+    {
+        this(maxHosts, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Creates a new registry tracking up to the given number of hosts individually.
+     *
+     * @param maxHosts
+     *         The maximum number of hosts to track individually
+     * @param idleTimeout
+     *         The time after which a host which was not used anymore may be dropped to make room for further hosts
+     */
+    public FetchMetricsRegistry(int maxHosts, Duration idleTimeout)
+    {
+        if (maxHosts < 0)
+        {
+            throw new IllegalArgumentException("The maximum number of hosts must not be negative");
+        }
+        if (null == idleTimeout || idleTimeout.isNegative())
+        {
+            throw new IllegalArgumentException("The idle timeout must not be negative, found " + idleTimeout);
+        }
+        this.maxHosts = maxHosts;
+        this.idleNanos = idleTimeout.toNanos();
+        this.lastEviction = new AtomicLong(System.nanoTime() - EVICTION_INTERVAL_NANOS);
+    }
+
+    private HostMetrics metricsOf(String host)
+    {
+        if (null == host)
+        {
+            return this.otherHosts;
+        }
+        long now = System.nanoTime();
+        String key = host.toLowerCase(Locale.ROOT);
+        HostMetrics metrics = this.hosts.get(key);
+        if (null == metrics)
+        {
+            // the limit might be exceeded slightly by concurrently added hosts
+            if (this.hosts.size() >= this.maxHosts && !this.evictIdleHosts(now))
+            {
+                return this.otherHosts;
+            }
+            metrics = this.hosts.computeIfAbsent(key, HostMetrics::new);
+        }
+        metrics.touch(now);
+        return metrics;
+    }
+
+    /**
+     * Drops the hosts which were not used within the idle timeout, unless another thread searched for idle hosts
+     * recently.
+     *
+     * @return <em>true</em> if at least one host was dropped
+     */
+    private boolean evictIdleHosts(long now)
+    {
+        long last = this.lastEviction.get();
+        if (now - last < EVICTION_INTERVAL_NANOS || !this.lastEviction.compareAndSet(last, now))
+        {
+            return false;
+        }
+        boolean removed = false;
+        for (Map.Entry<String, HostMetrics> entry : this.hosts.entrySet())
+        {
+            if (now - entry.getValue().getLastUsed() >= this.idleNanos)
+            {
+                removed |= this.hosts.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void fetchCompleted(FetchMetrics metrics)
+    {
+        this.metricsOf(metrics.getHost()).record(metrics);
+        this.total.record(metrics);
+    }
+
+    @Override
+    public void dnsResolved(String host, long durationNanos)
+    {
+        this.metricsOf(host).recordDns(durationNanos);
+        this.total.recordDns(durationNanos);
+    }
+
+    @Override
+    public void connected(String host, long durationNanos)
+    {
+        this.metricsOf(host).recordConnect(durationNanos);
+        this.total.recordConnect(durationNanos);
+    }
+
+    @Override
+    public void tlsHandshakeCompleted(String host, long durationNanos)
+    {
+        this.metricsOf(host).recordTls(durationNanos);
+        this.total.recordTls(durationNanos);
+    }
+
+    @Override
+    public void connectFailed(String host, long durationNanos)
+    {
+        this.metricsOf(host).recordConnectFailure();
+        this.total.recordConnectFailure();
+    }
+
+    /**
+     * Returns the figures of the given host.
+     *
+     * @param host
+     *         The host to return the figures for
+     *
+     * @return The figures of the host or <em>null</em> if nothing was recorded for the host, the host is not tracked
+     * individually or was dropped as it was idle
+     */
+    public HostMetrics getHostMetrics(String host)
+    {
+        return this.hosts.get(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the figures of all hosts tracked individually.
+     *
+     * @return A snapshot of the figures of the tracked hosts
+     */
+    public List<HostMetrics> getHostMetrics()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(this.hosts.values()));
+    }
+
+    /**
+     * Returns the figures of the hosts which are not tracked individually, as the maximum number of hosts was reached
+     * and no tracked host was idle.
+     *
+     * @return The figures of the hosts which are not tracked individually
+     */
+    public HostMetrics getOtherHosts()
+    {
+        return this.otherHosts;
+    }
+
+    /**
+     * Returns the figures aggregated over all hosts.
+     *
+     * @return The figures of all hosts
+     */
+    public HostMetrics getTotal()
+    {
+        return this.total;
+    }
+}
@@ -0,0 +1,151 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import at.rovo.common.http.Response;
+import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the figures of reading a single page and hands them to a {@link FetchListener} once the page was read or
+ * reading it failed. The hops of a page are recorded one after another, possibly by different threads for asynchronous
+ * reads, but never concurrently. Only the completion may be signaled concurrently, for example by a failing read and a
+ * cancellation, in which case the listener is notified only once.
+ */
+@NotThreadSafe
+final class FetchRecorder
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final String originURL;
+    private final FetchListener listener;
+    /** The content bytes received by the reader across all pages */
+    private final AtomicLong totalCompressedBytes;
+    /** The decoded content bytes provided by the reader across all pages */
+    private final AtomicLong totalDecompressedBytes;
+    private final long start = System.nanoTime();
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private String realURL;
+    private String host;
+    private int statusCode = -1;
+    private int hops = 0;
+    private int cookies = 0;
+    private long compressedBytes = 0L;
+    private long decompressedBytes = 0L;
+    private long requestSent = 0L;
+    private long headersReceived = 0L;
+
+    /**
+     * Creates a new recorder.
+     *
+     * @param originURL
+     *         The URL of the page to read
+     * @param listener
+     *         The listener to notify or <em>null</em> if the figures only need to be added to the byte totals
+     * @param totalCompressedBytes
+     *         The total number of content bytes received, which is increased on receiving content
+     * @param totalDecompressedBytes
+     *         The total number of decoded content bytes, which is increased on decoding content
+     */
+    FetchRecorder(String originURL, FetchListener listener, AtomicLong totalCompressedBytes,
+                  AtomicLong totalDecompressedBytes)
+    {
+        this.originURL = originURL;
+        this.listener = listener;
+        this.totalCompressedBytes = totalCompressedBytes;
+        this.totalDecompressedBytes = totalDecompressedBytes;
+        this.realURL = originURL;
+        try
+        {
+            this.host = new URL(originURL).getHost();
+        }
+        catch (MalformedURLException muEx)
+        {
+            this.host = null;
+        }
+    }
+
+    /**
+     * Forgets the hops recorded so far, as the redirects are followed again from the start.
+     */
+    void restart()
+    {
+        this.hops = 0;
+    }
+
+    void requestSent(URL url)
+    {
+        this.requestSent = System.nanoTime();
+        this.realURL = url.toExternalForm();
+        this.host = url.getHost();
+    }
+
+    void responseReceived(Response response)
+    {
+        this.headersReceived = System.nanoTime();
+        this.statusCode = response.getStatusCode();
+        this.hops++;
+        this.cookies += response.getHeaders("Set-Cookie").size();
+    }
+
+    void compressedContent(long bytes)
+    {
+        this.compressedBytes += bytes;
+        this.totalCompressedBytes.addAndGet(bytes);
+    }
+
+    void decompressedContent(long bytes)
+    {
+        this.decompressedBytes += bytes;
+        this.totalDecompressedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Signals that the content of the page was read completely or the caller stopped reading it.
+     */
+    void completed()
+    {
+        this.finish(null);
+    }
+
+    /**
+     * Signals that reading the page failed.
+     *
+     * @param failure
+     *         The exception which prevented the page from being read
+     */
+    void failed(Throwable failure)
+    {
+        this.finish(failure);
+    }
+
+    private void finish(Throwable failure)
+    {
+        if (null == this.listener || !this.completed.compareAndSet(false, true))
+        {
+            return;
+        }
+        long now = System.nanoTime();
+        boolean received = this.headersReceived != 0L;
+        FetchMetrics metrics =
+                new FetchMetrics(this.originURL, this.realURL, this.host, this.statusCode, Math.max(0, this.hops - 1),
+                                 this.cookies, this.compressedBytes, this.decompressedBytes,
+                                 received ? Duration.ofNanos(this.headersReceived - this.requestSent) : null,
+                                 received && null == failure ? Duration.ofNanos(now - this.headersReceived) : null,
+                                 Duration.ofNanos(now - this.start), failure);
+        try
+        {
+            this.listener.fetchCompleted(metrics);
+        }
+        catch (RuntimeException rEx)
+        {
+            LOG.warn("Fetch listener failed on processing {}. Reason: {}", metrics, rEx.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import java.time.Duration;
+
+/**
+ * The outcome of reading a single page via {@link BatchUrlReader}. A result either contains the content of the page or
+ * the exception which prevented the page from being read.
+ */
+@Immutable
+public final class FetchResult
+{
+    /** The URL the page was requested with */
+    private final String originURL;
+    /** The URL of the page after any redirects */
+    private final String realURL;
+    /** The HTTP status code of the last response received */
+    private final int statusCode;
+    /** The content of the page */
+    private final String content;
+    /** The exception which prevented the page from being read */
+    private final Exception failure;
+    /** The time it took to read the page */
+    private final Duration duration;
+
+    FetchResult(String originURL, String realURL, int statusCode, String content, Exception failure, Duration duration)
+    {
+        this.originURL = originURL;
+        this.realURL = realURL;
+        this.statusCode = statusCode;
+        this.content = content;
+        this.failure = failure;
+        this.duration = duration;
+    }
+
+    /**
+     * Returns the URL the page was requested with.
+     *
+     * @return The original URL as provided by a caller
+     */
+    public String getOriginURL()
+    {
+        return this.originURL;
+    }
+
+    /**
+     * Returns the URL of the page after any redirect occurred.
+     *
+     * @return The real URL of the document or <em>null</em> if no request could be sent
+     */
+    public String getRealURL()
+    {
+        return this.realURL;
+    }
+
+    /**
+     * Returns the HTTP status code of the last response received while reading the page.
+     *
+     * @return The status code of the last response or -1 if no response was received
+     */
+    public int getStatusCode()
+    {
+        return this.statusCode;
+    }
+
+    /**
+     * Returns the content of the page as it would have been returned by {@link UrlReader#readPage(String)}.
+     *
+     * @return The content of the page or <em>null</em> if the page could not be read
+     */
+    public String getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * Returns the exception which prevented the page from being read.
+     *
+     * @return The cause of the failure or <em>null</em> if the page was read successfully
+     */
+    public Exception getFailure()
+    {
+        return this.failure;
+    }
+
+    /**
+     * Specifies whether the page was read successfully.
+     *
+     * @return <em>true</em> if the content of the page is available
+     */
+    public boolean isSuccess()
+    {
+        return null == this.failure;
+    }
+
+    /**
+     * Returns the time it took to read the page, including the time spent on following redirects but excluding the
+     * time the request was waiting for a free slot.
+     *
+     * @return The time it took to read the page
+     */
+    public Duration getDuration()
+    {
+        return this.duration;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.originURL + " -> " + this.realURL + " [" + this.statusCode + ", " + this.duration.toMillis() + " ms"
+               + (null != this.failure ? ", " + this.failure : "") + "]";
+    }
+}
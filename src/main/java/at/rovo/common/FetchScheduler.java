@@ -0,0 +1,677 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.ThreadSafe;
+import at.rovo.common.http.HttpTransport;
+import java.lang.invoke.MethodHandles;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <em>FetchScheduler</em> reads pages submitted by any number of threads while being polite to the hosts serving them.
+ * The requests sent to a host are limited by a token bucket, which allows a short burst of requests but otherwise
+ * enforces a steady rate, as well as by a maximum number of concurrent requests per host. Hosts which have URLs queued
+ * and are allowed to receive a further request are served in round-robin order, so a host with many URLs neither
+ * starves the remaining hosts nor gets hammered while they sit idle.
+ * <p>
+ * If a host responds with <em>429 Too Many Requests</em> or <em>503 Service Unavailable</em>, no further requests are
+ * sent to it for the time it asked for via its <em>Retry-After</em> header, or an exponentially growing time if it did
+ * not send one, and the page is requested again up to {@link #getMaxRetries()} times.
+ * <p>
+ * Submitting a URL never blocks and does not contend on a global lock: the URLs are kept in a lock-free queue per host
+ * and the hosts are looked up in a concurrent map. The decisions which host to serve next are made by a single
+ * dispatcher thread which owns the rate limiting state, so this state needs no synchronization at all. Pages are read
+ * on virtual threads if the runtime supports them.
+ */
+@ThreadSafe
+public class FetchScheduler implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default number of pages which are read at the same time */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = BatchUrlReader.DEFAULT_MAX_CONCURRENT_REQUESTS;
+    /** The default number of pages of a single host which are read at the same time */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST = 1;
+    /** The default number of requests per second sent to a single host */
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 1.0;
+    /** The default number of requests which may be sent to a single host at once after it was idle */
+    public static final int DEFAULT_BURST = 1;
+    /** The default number of times a page is requested again after the host signaled it is overloaded */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    /** The longest time a host is not sent any requests after it signaled it is overloaded */
+    public static final Duration MAX_RETRY_AFTER = Duration.ofHours(1);
+    /** The retries performed by the readers, which leave responses asking to slow down to the scheduler */
+    private static final RetryPolicy READER_RETRY_POLICY =
+            RetryPolicy.DEFAULT.withRetryableStatusCodes(408, 500, 502, 504);
+
+    private final int maxConcurrentRequests;
+    private final int maxConcurrentRequestsPerHost;
+    private final RateLimit defaultRateLimit;
+    private final boolean includeLineBreaks;
+    private final HttpTransport transport;
+    private final ConcurrentMap<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    /** The hosts which received further URLs since the dispatcher looked at them */
+    private final Queue<HostQueue> signaledHosts = new ConcurrentLinkedQueue<>();
+    /** The reads which finished since the dispatcher looked at them */
+    private final Queue<Completion> completions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final ExecutorService executor = BatchUrlReader.newExecutor("fetch-scheduler");
+    private final Thread dispatcher;
+    private volatile boolean closed = false;
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+    /** Is notified once a page was read */
+    private volatile FetchListener fetchListener = null;
+
+    // the following fields are only accessed by the dispatcher thread
+    /** The hosts which may be sent a further request right away */
+    private final Deque<HostQueue> readyHosts = new ArrayDeque<>();
+    /** The hosts which have to wait for a further token or their Retry-After, ordered by the time they may proceed */
+    private final PriorityQueue<Wakeup> delayedHosts =
+            new PriorityQueue<>(Comparator.comparingLong((Wakeup wakeup) -> wakeup.at));
+    private int running = 0;
+
+    /**
+     * Creates a new instance which reads at most {@link #DEFAULT_MAX_CONCURRENT_REQUESTS} pages at the same time and
+     * sends at most {@link #DEFAULT_REQUESTS_PER_SECOND} requests per second to a single host.
+     */
+    public FetchScheduler()
+    {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST, DEFAULT_REQUESTS_PER_SECOND,
+             DEFAULT_BURST);
+    }
+
+    /**
+     * Creates a new instance which applies the given limits.
+     *
+     * @param maxConcurrentRequests
+     *         The maximum number of pages read at the same time
+     * @param maxConcurrentRequestsPerHost
+     *         The maximum number of pages of a single host read at the same time
+     * @param requestsPerSecond
+     *         The number of requests per second sent to a host which was not assigned a rate limit of its own
+     * @param burst
+     *         The number of requests which may be sent at once to a host which was idle for a while
+     */
+    public FetchScheduler(int maxConcurrentRequests, int maxConcurrentRequestsPerHost, double requestsPerSecond,
+                          int burst)
+    {
+        this(maxConcurrentRequests, maxConcurrentRequestsPerHost, requestsPerSecond, burst, false,
+             UrlReader.getDefaultTransport());
+    }
+
+    /**
+     * Creates a new instance which applies the given limits.
+     *
+     * @param maxConcurrentRequests
+     *         The maximum number of pages read at the same time
+     * @param maxConcurrentRequestsPerHost
+     *         The maximum number of pages of a single host read at the same time
+     * @param requestsPerSecond
+     *         The number of requests per second sent to a host which was not assigned a rate limit of its own
+     * @param burst
+     *         The number of requests which may be sent at once to a host which was idle for a while
+     * @param includeLineBreaks
+     *         If set to true specifies to include line breaks within the content of the pages, otherwise line breaks
+     *         will be omitted
+     * @param transport
+     *         The transport to send requests with
+     */
+    public FetchScheduler(int maxConcurrentRequests, int maxConcurrentRequestsPerHost, double requestsPerSecond,
+                          int burst, boolean includeLineBreaks, HttpTransport transport)
+    {
+        if (maxConcurrentRequests < 1 || maxConcurrentRequestsPerHost < 1)
+        {
+            throw new IllegalArgumentException("At least one concurrent request is required");
+        }
+        if (null == transport)
+        {
+            throw new IllegalArgumentException("No transport provided");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxConcurrentRequestsPerHost = maxConcurrentRequestsPerHost;
+        this.defaultRateLimit = new RateLimit(requestsPerSecond, burst);
+        this.includeLineBreaks = includeLineBreaks;
+        this.transport = transport;
+        this.dispatcher = new Thread(this::dispatch, "fetch-scheduler-dispatcher");
+        this.dispatcher.setDaemon(true);
+    }
+
+    /**
+     * Assigns the given host a rate limit which differs from the default one, for example to follow the crawl delay
+     * the host declared in its <em>robots.txt</em>.
+     *
+     * @param host
+     *         The host to limit the requests for
+     * @param requestsPerSecond
+     *         The number of requests per second sent to the host
+     * @param burst
+     *         The number of requests which may be sent at once to the host after it was idle for a while
+     */
+    public void setRateLimit(String host, double requestsPerSecond, int burst)
+    {
+        this.rateLimits.put(host.toLowerCase(Locale.ROOT), new RateLimit(requestsPerSecond, burst));
+    }
+
+    /**
+     * Limits the requests sent to the given host to one per crawl delay, as declared by the host in its
+     * <em>robots.txt</em> and available via {@link RobotsCache#getCrawlDelay(String)}.
+     *
+     * @param host
+     *         The host to limit the requests for
+     * @param crawlDelay
+     *         The time to wait between two requests to the host or <em>null</em> or zero to apply the default rate
+     *         limit
+     */
+    public void setCrawlDelay(String host, Duration crawlDelay)
+    {
+        if (null == crawlDelay || crawlDelay.isZero() || crawlDelay.isNegative())
+        {
+            this.rateLimits.remove(host.toLowerCase(Locale.ROOT));
+            return;
+        }
+        this.setRateLimit(host, 1d / (crawlDelay.getSeconds() + crawlDelay.getNano() / 1_000_000_000d), 1);
+    }
+
+    /**
+     * Returns the number of times a page is requested again after its host responded with <em>429</em> or
+     * <em>503</em>.
+     *
+     * @return The maximum number of retries
+     */
+    public int getMaxRetries()
+    {
+        return this.maxRetries;
+    }
+
+    /**
+     * Sets the number of times a page is requested again after its host responded with <em>429</em> or <em>503</em>.
+     *
+     * @param maxRetries
+     *         The maximum number of retries, zero disables retries
+     */
+    public void setMaxRetries(int maxRetries)
+    {
+        if (maxRetries < 0)
+        {
+            throw new IllegalArgumentException("The maximum number of retries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the listener which is notified with the figures of each page read by this instance.
+     *
+     * @param fetchListener
+     *         The listener to notify or <em>null</em> to stop notifying a listener
+     */
+    public void setFetchListener(FetchListener fetchListener)
+    {
+        this.fetchListener = fetchListener;
+    }
+
+    /**
+     * Returns the number of submitted pages which were not read yet, including the pages currently being read.
+     *
+     * @return The number of pending pages
+     */
+    public int getPendingCount()
+    {
+        return this.pending.get();
+    }
+
+    /**
+     * Returns the number of hosts the scheduler currently keeps state for.
+     *
+     * @return The number of known hosts
+     */
+    public int getHostCount()
+    {
+        return this.hosts.size();
+    }
+
+    /**
+     * Queues the page of the given URL to be read once the limits of its host allow it.
+     *
+     * @param url
+     *         The URL of the page to read
+     *
+     * @return A future which completes with the result of the page, or is cancelled if the scheduler is closed before
+     * the page was read. Cancelling the future before the page is read removes it from the queue
+     *
+     * @throws IllegalArgumentException
+     *         If no URL is provided
+     * @throws IllegalStateException
+     *         If the scheduler was already closed
+     */
+    public CompletableFuture<FetchResult> submit(String url)
+    {
+        if (null == url)
+        {
+            throw new IllegalArgumentException("No URL provided");
+        }
+        if (this.closed)
+        {
+            throw new IllegalStateException("The scheduler was closed");
+        }
+        if (!this.started.get() && this.started.compareAndSet(false, true))
+        {
+            this.dispatcher.start();
+        }
+        Task task = new Task(url);
+        String host = BatchUrlReader.getHost(url);
+        this.pending.incrementAndGet();
+        // adding the URL within compute prevents the dispatcher from removing the host at the same time
+        HostQueue hostQueue = this.hosts.compute(host, (key, existing) -> {
+            HostQueue queue = null != existing ? existing : new HostQueue(key, this.rateLimitOf(key));
+            queue.tasks.add(task);
+            return queue;
+        });
+        if (hostQueue.signaled.compareAndSet(false, true))
+        {
+            this.signaledHosts.add(hostQueue);
+            LockSupport.unpark(this.dispatcher);
+        }
+        return task.future;
+    }
+
+    /**
+     * Stops reading further pages. Pages which are currently being read are aborted and the futures of all pages which
+     * were not read yet are cancelled.
+     */
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        this.executor.shutdownNow();
+        LockSupport.unpark(this.dispatcher);
+        for (HostQueue hostQueue : this.hosts.values())
+        {
+            Task task;
+            while (null != (task = hostQueue.tasks.poll()))
+            {
+                task.future.cancel(false);
+                this.pending.decrementAndGet();
+            }
+        }
+    }
+
+    private RateLimit rateLimitOf(String host)
+    {
+        RateLimit rateLimit = this.rateLimits.get(host);
+        return null != rateLimit ? rateLimit : this.defaultRateLimit;
+    }
+
+    private void dispatch()
+    {
+        while (!this.closed)
+        {
+            try
+            {
+                long now = System.nanoTime();
+                Completion completion;
+                while (null != (completion = this.completions.poll()))
+                {
+                    this.completed(completion, now);
+                }
+                HostQueue hostQueue;
+                while (null != (hostQueue = this.signaledHosts.poll()))
+                {
+                    // cleared before the URLs are inspected, so a URL added meanwhile signals the host again
+                    hostQueue.signaled.set(false);
+                    this.schedule(hostQueue, now);
+                }
+                while (!this.delayedHosts.isEmpty() && this.delayedHosts.peek().at - now <= 0)
+                {
+                    Wakeup wakeup = this.delayedHosts.poll();
+                    // skips wakeups which were superseded by an earlier one
+                    if (wakeup.hostQueue.wakeup == wakeup)
+                    {
+                        wakeup.hostQueue.wakeup = null;
+                        this.schedule(wakeup.hostQueue, now);
+                    }
+                }
+                while (this.running < this.maxConcurrentRequests && !this.readyHosts.isEmpty())
+                {
+                    hostQueue = this.readyHosts.poll();
+                    hostQueue.ready = false;
+                    this.start(hostQueue, now);
+                }
+                if (this.completions.isEmpty() && this.signaledHosts.isEmpty())
+                {
+                    if (this.delayedHosts.isEmpty())
+                    {
+                        LockSupport.park(this);
+                    }
+                    else
+                    {
+                        LockSupport.parkNanos(this, this.delayedHosts.peek().at - now);
+                    }
+                }
+            }
+            catch (RuntimeException rtEx)
+            {
+                LOG.warn("Could not dispatch further pages! Reason: {}", rtEx.getLocalizedMessage(), rtEx);
+            }
+        }
+    }
+
+    /**
+     * Adds the host to the ready or delayed hosts if it has URLs queued and its limits allow a further request. Hosts
+     * without URLs are forgotten once their token bucket is full again, so the state kept for hosts which were crawled
+     * completely does not accumulate.
+     */
+    private void schedule(HostQueue hostQueue, long now)
+    {
+        if (hostQueue.ready || this.closed)
+        {
+            return;
+        }
+        RateLimit rateLimit = this.rateLimitOf(hostQueue.host);
+        hostQueue.refill(rateLimit, now);
+        if (hostQueue.tasks.isEmpty())
+        {
+            if (hostQueue.running > 0)
+            {
+                // the host is looked at again once the running reads complete
+                return;
+            }
+            long idle = Math.max(hostQueue.pausedUntil - now, hostQueue.fullAt(rateLimit, now) - now);
+            if (idle > 0)
+            {
+                this.delay(hostQueue, now + idle);
+                return;
+            }
+            hostQueue.wakeup = null;
+            this.hosts.computeIfPresent(hostQueue.host, (key, existing) ->
+                    existing == hostQueue && existing.tasks.isEmpty() ? null : existing);
+            return;
+        }
+        if (hostQueue.running >= this.maxConcurrentRequestsPerHost)
+        {
+            return;
+        }
+        long wait = Math.max(hostQueue.pausedUntil - now, hostQueue.nextTokenAt(rateLimit, now) - now);
+        if (wait > 0)
+        {
+            this.delay(hostQueue, now + wait);
+            return;
+        }
+        hostQueue.wakeup = null;
+        hostQueue.ready = true;
+        this.readyHosts.add(hostQueue);
+    }
+
+    /**
+     * Lets the host be scheduled again at the given time unless it is already woken up earlier. A wakeup which gets
+     * superseded remains in the delayed hosts until it is due, where it is skipped, as removing it would require a
+     * linear scan.
+     */
+    private void delay(HostQueue hostQueue, long at)
+    {
+        if (null != hostQueue.wakeup && hostQueue.wakeup.at - at <= 0)
+        {
+            return;
+        }
+        hostQueue.wakeup = new Wakeup(hostQueue, at);
+        this.delayedHosts.add(hostQueue.wakeup);
+    }
+
+    /**
+     * Starts reading the next URL of a ready host and appends the host to the end of the queue again, so the remaining
+     * hosts are served first.
+     */
+    private void start(HostQueue hostQueue, long now)
+    {
+        RateLimit rateLimit = this.rateLimitOf(hostQueue.host);
+        hostQueue.refill(rateLimit, now);
+        if (hostQueue.pausedUntil - now > 0 || hostQueue.tokens < 1.0
+            || hostQueue.running >= this.maxConcurrentRequestsPerHost)
+        {
+            // the host got paused or its rate limit changed while it was waiting
+            this.schedule(hostQueue, now);
+            return;
+        }
+        Task task;
+        while (null != (task = hostQueue.tasks.poll()) && task.future.isDone())
+        {
+            // cancelled while queued
+            this.pending.decrementAndGet();
+        }
+        if (null != task)
+        {
+            Task next = task;
+            hostQueue.tokens -= 1.0;
+            hostQueue.running++;
+            this.running++;
+            try
+            {
+                this.executor.execute(() -> this.fetch(hostQueue, next));
+            }
+            catch (RejectedExecutionException reEx)
+            {
+                // the scheduler got closed in the meantime
+                hostQueue.running--;
+                this.running--;
+                next.future.cancel(false);
+                this.pending.decrementAndGet();
+            }
+        }
+        this.schedule(hostQueue, now);
+    }
+
+    private void fetch(HostQueue hostQueue, Task task)
+    {
+        UrlReader reader = new UrlReader(this.includeLineBreaks, this.transport);
+        reader.setFetchListener(this.fetchListener);
+        // 429 and 503 responses are retried by the scheduler itself, as they affect the rate of the whole host
+        reader.setRetryPolicy(READER_RETRY_POLICY);
+        long start = System.nanoTime();
+        String content = null;
+        Exception failure = null;
+        try
+        {
+            content = reader.loadPage(task.url);
+        }
+        catch (Exception ex)
+        {
+            LOG.debug("Could not read {}! Reason: {}", task.url, ex.getLocalizedMessage());
+            failure = ex;
+        }
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        FetchResult result =
+                new FetchResult(task.url, reader.getRealURL(), reader.getStatusCode(), content, failure, duration);
+
+        int statusCode = reader.getStatusCode();
+        Duration pause = null;
+        boolean retry = false;
+        if (statusCode == 429 || statusCode == 503)
+        {
+            pause = reader.getRetryAfter();
+            if (null == pause)
+            {
+                pause = Duration.ofSeconds(1L << Math.min(task.attempts, 10));
+            }
+            if (pause.compareTo(MAX_RETRY_AFTER) > 0)
+            {
+                pause = MAX_RETRY_AFTER;
+            }
+            retry = task.attempts < this.maxRetries && !this.closed;
+            LOG.debug("{} responded with {}, pausing the host for {}", task.url, statusCode, pause);
+        }
+        if (retry)
+        {
+            task.attempts++;
+        }
+        this.completions.add(new Completion(hostQueue, retry ? task : null, pause));
+        LockSupport.unpark(this.dispatcher);
+        if (!retry)
+        {
+            this.pending.decrementAndGet();
+            task.future.complete(result);
+        }
+    }
+
+    private void completed(Completion completion, long now)
+    {
+        HostQueue hostQueue = completion.hostQueue;
+        hostQueue.running--;
+        this.running--;
+        if (null != completion.pause)
+        {
+            long pausedUntil = now + completion.pause.toNanos();
+            if (pausedUntil - hostQueue.pausedUntil > 0)
+            {
+                hostQueue.pausedUntil = pausedUntil;
+            }
+        }
+        if (null != completion.retry)
+        {
+            hostQueue.tasks.addFirst(completion.retry);
+        }
+        this.schedule(hostQueue, now);
+    }
+
+    /**
+     * The rate at which requests are sent to a host.
+     */
+    private static final class RateLimit
+    {
+        private final double requestsPerSecond;
+        private final int burst;
+
+        private RateLimit(double requestsPerSecond, int burst)
+        {
+            if (!(requestsPerSecond > 0.0) || Double.isInfinite(requestsPerSecond))
+            {
+                throw new IllegalArgumentException("The number of requests per second has to be positive");
+            }
+            if (burst < 1)
+            {
+                throw new IllegalArgumentException("The burst has to allow at least one request");
+            }
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * The time a delayed host should be scheduled again.
+     */
+    private static final class Wakeup
+    {
+        private final HostQueue hostQueue;
+        private final long at;
+
+        private Wakeup(HostQueue hostQueue, long at)
+        {
+            this.hostQueue = hostQueue;
+            this.at = at;
+        }
+    }
+
+    /**
+     * A page waiting to be read.
+     */
+    private static final class Task
+    {
+        private final String url;
+        private final CompletableFuture<FetchResult> future = new CompletableFuture<>();
+        /** The number of times the page was read before, only accessed by the thread reading the page */
+        private int attempts = 0;
+
+        private Task(String url)
+        {
+            this.url = url;
+        }
+    }
+
+    /**
+     * The outcome of reading a page as seen by the dispatcher.
+     */
+    private static final class Completion
+    {
+        private final HostQueue hostQueue;
+        /** The page to read again or <em>null</em> if the page was read */
+        private final Task retry;
+        /** The time the host asked not to be sent further requests for or <em>null</em> */
+        private final Duration pause;
+
+        private Completion(HostQueue hostQueue, Task retry, Duration pause)
+        {
+            this.hostQueue = hostQueue;
+            this.retry = retry;
+            this.pause = pause;
+        }
+    }
+
+    /**
+     * The URLs of a single host which are waiting to be read and the state of the token bucket of that host. Except
+     * for the URLs and the signal flag, the state is only accessed by the dispatcher thread.
+     */
+    private static final class HostQueue
+    {
+        private final String host;
+        private final Deque<Task> tasks = new ConcurrentLinkedDeque<>();
+        /** Whether the host is contained in the queue of signaled hosts */
+        private final AtomicBoolean signaled = new AtomicBoolean();
+
+        private int running = 0;
+        /** Whether the host is contained in the ready hosts */
+        private boolean ready = false;
+        /** The pending wakeup of the host while it is delayed */
+        private Wakeup wakeup = null;
+        private double tokens;
+        private long lastRefill;
+        private long pausedUntil;
+
+        private HostQueue(String host, RateLimit rateLimit)
+        {
+            this.host = host;
+            this.tokens = rateLimit.burst;
+            this.lastRefill = System.nanoTime();
+            this.pausedUntil = this.lastRefill;
+        }
+
+        private void refill(RateLimit rateLimit, long now)
+        {
+            double refilled = (now - this.lastRefill) * rateLimit.requestsPerSecond / 1_000_000_000d;
+            this.tokens = Math.min(rateLimit.burst, this.tokens + refilled);
+            this.lastRefill = now;
+        }
+
+        /** Returns the time the next token is available, which requires the bucket to be refilled before */
+        private long nextTokenAt(RateLimit rateLimit, long now)
+        {
+            if (this.tokens >= 1.0)
+            {
+                return now;
+            }
+            return now + (long) Math.ceil((1.0 - this.tokens) * 1_000_000_000d / rateLimit.requestsPerSecond);
+        }
+
+        /** Returns the time the bucket is full, which requires the bucket to be refilled before */
+        private long fullAt(RateLimit rateLimit, long now)
+        {
+            return now + (long) Math.ceil((rateLimit.burst - this.tokens) * 1_000_000_000d
+                                          / rateLimit.requestsPerSecond);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values which records values in constant time and without locking. Like HdrHistogram,
+ * values are counted in buckets whose width grows with the magnitude of the value: each power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so any percentile is reported with a relative error of at most 1/{@value
+ * #SUB_BUCKETS} while the histogram covers values from 0 to {@value #MAX_VALUE} in a fixed number of buckets.
+ * <p>
+ * Values above {@link #MAX_VALUE} are counted as {@link #MAX_VALUE}, negative values are counted as 0. The unit of the
+ * values is up to the caller, {@link FetchMetricsRegistry} records durations in microseconds.
+ */
+@ThreadSafe
+public final class Histogram
+{
+    /** The number of linear sub-buckets per power of two */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** The largest value which is distinguished from larger values */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(-1L);
+
+    /**
+     * Returns the bucket of the given value. Values below {@link #SUB_BUCKETS} have a bucket of their own, larger values
+     * share a bucket with the values which only differ in the bits below the {@link #SUB_BUCKET_BITS} bits following
+     * their most significant bit.
+     */
+    private static int indexOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest value which is counted in the given bucket.
+     */
+    private static long highestValueOf(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value
+     *         The value to record
+     */
+    public void record(long value)
+    {
+        long bounded = Math.max(0L, Math.min(MAX_VALUE, value));
+        this.counts.incrementAndGet(indexOf(bounded));
+        this.count.increment();
+        this.sum.add(bounded);
+        if (bounded < this.min.get())
+        {
+            this.min.accumulateAndGet(bounded, Math::min);
+        }
+        if (bounded > this.max.get())
+        {
+            this.max.accumulateAndGet(bounded, Math::max);
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return The number of values recorded
+     */
+    public long getCount()
+    {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the smallest value recorded.
+     *
+     * @return The smallest value or 0 if no value was recorded yet
+     */
+    public long getMin()
+    {
+        long min = this.min.get();
+        return min == Long.MAX_VALUE ? 0L : min;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return The largest value or 0 if no value was recorded yet
+     */
+    public long getMax()
+    {
+        return Math.max(0L, this.max.get());
+    }
+
+    /**
+     * Returns the arithmetic mean of the values recorded.
+     *
+     * @return The mean of the values or 0 if no value was recorded yet
+     */
+    public double getMean()
+    {
+        long count = this.count.sum();
+        return count == 0 ? 0d : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values falls. The returned value is the
+     * largest value of the bucket containing the percentile, but never larger than the largest value recorded.
+     *
+     * @param percentile
+     *         The percentile to return, between 0 and 100
+     *
+     * @return The value at the given percentile or 0 if no value was recorded yet
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (percentile < 0d || percentile > 100d)
+        {
+            throw new IllegalArgumentException("The percentile has to be between 0 and 100, found " + percentile);
+        }
+        // the counts of the buckets are summed up instead of relying on the total count, which might already include
+        // concurrently recorded values not yet visible in their bucket
+        long total = 0L;
+        for (int i = 0; i < this.counts.length(); i++)
+        {
+            total += this.counts.get(i);
+        }
+        if (total == 0L)
+        {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100d * total));
+        long seen = 0L;
+        for (int i = 0; i < this.counts.length(); i++)
+        {
+            seen += this.counts.get(i);
+            if (seen >= rank)
+            {
+                return Math.min(highestValueOf(i), this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + this.getCount() + ", min=" + this.getMin() + ", mean=" + (long) this.getMean() + ", p50="
+               + this.getValueAtPercentile(50d) + ", p90=" + this.getValueAtPercentile(90d) + ", p99="
+               + this.getValueAtPercentile(99d) + ", max=" + this.getMax();
+    }
+}
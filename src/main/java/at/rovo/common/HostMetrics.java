@@ -0,0 +1,275 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The figures a {@link FetchMetricsRegistry} aggregated for a single host. All durations are recorded in microseconds.
+ * The getters only read the current state of the counters and histograms, so they are cheap enough to be polled
+ * periodically by a JMX or Micrometer binding.
+ */
+@ThreadSafe
+public final class HostMetrics
+{
+    private final String host;
+
+    private final Histogram dnsDurations = new Histogram();
+    private final Histogram connectDurations = new Histogram();
+    private final Histogram tlsDurations = new Histogram();
+    private final Histogram timeToFirstByte = new Histogram();
+    private final Histogram bodyDurations = new Histogram();
+    private final Histogram totalDurations = new Histogram();
+
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder redirects = new LongAdder();
+    private final LongAdder cookies = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder decompressedBytes = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    /** The time the host was used the last time in nanoseconds, which allows to drop idle hosts */
+    private volatile long lastUsed = System.nanoTime();
+
+    HostMetrics(String host)
+    {
+        this.host = host;
+    }
+
+    void touch(long now)
+    {
+        this.lastUsed = now;
+    }
+
+    long getLastUsed()
+    {
+        return this.lastUsed;
+    }
+
+    private static long toMicros(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static long toMicros(Duration duration)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(duration.toNanos());
+    }
+
+    void recordDns(long durationNanos)
+    {
+        this.dnsDurations.record(toMicros(durationNanos));
+    }
+
+    void recordConnect(long durationNanos)
+    {
+        this.connectDurations.record(toMicros(durationNanos));
+    }
+
+    void recordTls(long durationNanos)
+    {
+        this.tlsDurations.record(toMicros(durationNanos));
+    }
+
+    void recordConnectFailure()
+    {
+        this.connectFailures.increment();
+    }
+
+    void record(FetchMetrics metrics)
+    {
+        this.fetches.increment();
+        if (!metrics.isSuccess())
+        {
+            this.failures.increment();
+        }
+        if (metrics.getStatusCode() != -1)
+        {
+            this.statusCodes.computeIfAbsent(metrics.getStatusCode(), code -> new LongAdder()).increment();
+        }
+        this.redirects.add(metrics.getRedirects());
+        this.cookies.add(metrics.getCookies());
+        this.compressedBytes.add(metrics.getCompressedBytes());
+        this.decompressedBytes.add(metrics.getDecompressedBytes());
+        if (null != metrics.getTimeToFirstByte())
+        {
+            this.timeToFirstByte.record(toMicros(metrics.getTimeToFirstByte()));
+        }
+        if (null != metrics.getBodyDuration())
+        {
+            this.bodyDurations.record(toMicros(metrics.getBodyDuration()));
+        }
+        this.totalDurations.record(toMicros(metrics.getTotalDuration()));
+    }
+
+    /**
+     * Returns the host these figures were recorded for.
+     *
+     * @return The host of these figures
+     */
+    public String getHost()
+    {
+        return this.host;
+    }
+
+    /**
+     * Returns the durations of the DNS lookups of the host in microseconds.
+     *
+     * @return The histogram of the DNS lookup durations
+     */
+    public Histogram getDnsDurations()
+    {
+        return this.dnsDurations;
+    }
+
+    /**
+     * Returns the durations of establishing TCP connections to the host in microseconds.
+     *
+     * @return The histogram of the connect durations
+     */
+    public Histogram getConnectDurations()
+    {
+        return this.connectDurations;
+    }
+
+    /**
+     * Returns the durations of the TLS handshakes with the host in microseconds.
+     *
+     * @return The histogram of the TLS handshake durations
+     */
+    public Histogram getTlsDurations()
+    {
+        return this.tlsDurations;
+    }
+
+    /**
+     * Returns the times between sending the request of the final hop of a page and receiving its response headers in
+     * microseconds.
+     *
+     * @return The histogram of the times to the first byte
+     */
+    public Histogram getTimeToFirstByte()
+    {
+        return this.timeToFirstByte;
+    }
+
+    /**
+     * Returns the durations of reading the content of pages in microseconds.
+     *
+     * @return The histogram of the content transfer durations
+     */
+    public Histogram getBodyDurations()
+    {
+        return this.bodyDurations;
+    }
+
+    /**
+     * Returns the durations of reading pages, including all redirects, in microseconds.
+     *
+     * @return The histogram of the total durations
+     */
+    public Histogram getTotalDurations()
+    {
+        return this.totalDurations;
+    }
+
+    /**
+     * Returns the number of pages read from the host, including the pages which could not be read.
+     *
+     * @return The number of pages read
+     */
+    public long getFetchCount()
+    {
+        return this.fetches.sum();
+    }
+
+    /**
+     * Returns the number of pages which could not be read from the host.
+     *
+     * @return The number of failed reads
+     */
+    public long getFailureCount()
+    {
+        return this.failures.sum();
+    }
+
+    /**
+     * Returns the number of failed attempts to establish a connection to the host.
+     *
+     * @return The number of failed connection attempts
+     */
+    public long getConnectFailureCount()
+    {
+        return this.connectFailures.sum();
+    }
+
+    /**
+     * Returns the number of redirects followed on reading pages whose final hop was served by the host.
+     *
+     * @return The number of redirects
+     */
+    public long getRedirectCount()
+    {
+        return this.redirects.sum();
+    }
+
+    /**
+     * Returns the number of cookies received on reading pages whose final hop was served by the host.
+     *
+     * @return The number of cookies received
+     */
+    public long getCookieCount()
+    {
+        return this.cookies.sum();
+    }
+
+    /**
+     * Returns the number of content bytes received from the host.
+     *
+     * @return The number of content bytes received, which might have been compressed
+     */
+    public long getCompressedBytes()
+    {
+        return this.compressedBytes.sum();
+    }
+
+    /**
+     * Returns the number of content bytes received from the host after any compression was removed.
+     *
+     * @return The number of decoded content bytes
+     */
+    public long getDecompressedBytes()
+    {
+        return this.decompressedBytes.sum();
+    }
+
+    /**
+     * Returns the number of final responses received from the host per status code.
+     *
+     * @return An unmodifiable snapshot of the number of responses per status code
+     */
+    public Map<Integer, Long> getStatusCodeCounts()
+    {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> count : this.statusCodes.entrySet())
+        {
+            counts.put(count.getKey(), count.getValue().sum());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "HostMetrics[" + this.host + ", fetches=" + this.getFetchCount() + ", failures="
+               + this.getFailureCount() + ", statusCodes=" + this.getStatusCodeCounts() + ", ttfb=("
+               + this.timeToFirstByte + "), total=(" + this.totalDurations + ")]";
+    }
+}
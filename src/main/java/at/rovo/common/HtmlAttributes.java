@@ -0,0 +1,143 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * The attributes of a start tag as provided by {@link HtmlTokenizer}. A single instance is reused for all tags of a
+ * document, so the attributes are only valid while {@link HtmlHandler#startTag(String, HtmlAttributes, boolean)} is
+ * executed. Attribute names are lower case, and if an attribute is declared more than once only its first declaration
+ * is kept, as browsers do.
+ */
+@NotThreadSafe
+public final class HtmlAttributes
+{
+    private String[] names = new String[8];
+    private String[] values = new String[8];
+    private int size = 0;
+
+    HtmlAttributes()
+    {
+
+    }
+
+    void clear()
+    {
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+    }
+
+    void add(String name, String value)
+    {
+        if (this.indexOf(name) != -1)
+        {
+            return;
+        }
+        if (this.size == this.names.length)
+        {
+            this.names = Arrays.copyOf(this.names, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.names[this.size] = name;
+        this.values[this.size] = value;
+        this.size++;
+    }
+
+    private int indexOf(String name)
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            if (this.names[i].equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of attributes of the tag.
+     *
+     * @return The number of attributes
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the name of the attribute at the given position.
+     *
+     * @param index
+     *         The position of the attribute within the tag
+     *
+     * @return The lower case name of the attribute
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the tag has no attribute at the given position
+     */
+    public String getName(int index)
+    {
+        if (index < 0 || index >= this.size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.size + " attributes");
+        }
+        return this.names[index];
+    }
+
+    /**
+     * Returns the value of the attribute at the given position.
+     *
+     * @param index
+     *         The position of the attribute within the tag
+     *
+     * @return The value of the attribute, which is empty for attributes without a value
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the tag has no attribute at the given position
+     */
+    public String getValue(int index)
+    {
+        if (index < 0 || index >= this.size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.size + " attributes");
+        }
+        return this.values[index];
+    }
+
+    /**
+     * Returns the value of the attribute with the given name.
+     *
+     * @param name
+     *         The name of the attribute, which is matched case insensitive
+     *
+     * @return The value of the attribute or <em>null</em> if the tag has no such attribute
+     */
+    public String get(String name)
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            if (this.names[i].equalsIgnoreCase(name))
+            {
+                return this.values[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < this.size; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(this.names[i]).append("=\"").append(this.values[i]).append('"');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,72 @@
+package at.rovo.common;
+
+/**
+ * Receives the tokens of a HTML document while it is read by a {@link HtmlTokenizer}. Each callback returns whether
+ * the tokenizer should continue, so a handler which found what it was looking for, like the title of a page, can stop
+ * reading the remainder of the document. All callbacks continue by default, so a handler only needs to implement the
+ * callbacks it is interested in.
+ * <p>
+ * The attributes and character sequences handed to the callbacks are reused by the tokenizer and are therefore only
+ * valid until the callback returns. Handlers which need to retain them have to copy them, e.g. via {@link
+ * Object#toString()}.
+ */
+public interface HtmlHandler
+{
+    /**
+     * Invoked for each start tag of the document.
+     *
+     * @param name
+     *         The lower case name of the tag
+     * @param attributes
+     *         The attributes of the tag
+     * @param selfClosing
+     *         Whether the tag was closed with <em>/&gt;</em>
+     *
+     * @return <em>true</em> to continue tokenizing, <em>false</em> to stop
+     */
+    default boolean startTag(String name, HtmlAttributes attributes, boolean selfClosing)
+    {
+        return true;
+    }
+
+    /**
+     * Invoked for each end tag of the document.
+     *
+     * @param name
+     *         The lower case name of the tag
+     *
+     * @return <em>true</em> to continue tokenizing, <em>false</em> to stop
+     */
+    default boolean endTag(String name)
+    {
+        return true;
+    }
+
+    /**
+     * Invoked for the text between tags with any character references already resolved. Long runs of text are
+     * delivered in several consecutive chunks. The content of <em>script</em> and <em>style</em> elements is delivered
+     * as is.
+     *
+     * @param text
+     *         The next chunk of text
+     *
+     * @return <em>true</em> to continue tokenizing, <em>false</em> to stop
+     */
+    default boolean text(CharSequence text)
+    {
+        return true;
+    }
+
+    /**
+     * Invoked for each comment of the document.
+     *
+     * @param comment
+     *         The content of the comment without the enclosing <em>&lt;!--</em> and <em>--&gt;</em>
+     *
+     * @return <em>true</em> to continue tokenizing, <em>false</em> to stop
+     */
+    default boolean comment(CharSequence comment)
+    {
+        return true;
+    }
+}
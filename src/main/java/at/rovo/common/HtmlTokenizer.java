@@ -0,0 +1,562 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits a HTML document into start tags, end tags, text and comments and reports them to a {@link HtmlHandler} while
+ * the document is read. Unlike a DOM parser, the tokenizer neither builds a tree nor retains any part of the document
+ * which was already reported, so documents of any size are processed in constant memory. Text is reported in chunks of
+ * at most {@value #TEXT_CHUNK_LENGTH} characters, attribute values and comments longer than {@value
+ * #MAX_VALUE_LENGTH} characters are truncated.
+ * <p>
+ * The tokenizer is lenient like a browser: it never fails on malformed markup but reports a <em>&lt;</em> which does
+ * not start a tag as text, skips doctype declarations and processing instructions, reports the content of
+ * <em>script</em> and <em>style</em> elements as raw text and resolves numeric as well as the common named character
+ * references. It does not balance tags, so a handler sees the tags exactly as they appear in the document.
+ * <p>
+ * A tokenizer may be reused for several documents, but not concurrently.
+ */
+@NotThreadSafe
+public final class HtmlTokenizer
+{
+    /** The maximum number of characters of text reported at once */
+    public static final int TEXT_CHUNK_LENGTH = 8192;
+    /** The maximum number of characters of an attribute value or a comment */
+    public static final int MAX_VALUE_LENGTH = 64 * 1024;
+    /** The maximum number of characters of a character reference which is resolved */
+    private static final int MAX_REFERENCE_LENGTH = 32;
+    /** The named character references which are resolved */
+    private static final Map<String, Character> ENTITIES = new HashMap<>();
+
+    static
+    {
+        ENTITIES.put("amp", '&');
+        ENTITIES.put("lt", '<');
+        ENTITIES.put("gt", '>');
+        ENTITIES.put("quot", '"');
+        ENTITIES.put("apos", '\'');
+        ENTITIES.put("nbsp", '\u00A0');
+        ENTITIES.put("copy", '\u00A9');
+        ENTITIES.put("reg", '\u00AE');
+        ENTITIES.put("trade", '\u2122');
+        ENTITIES.put("laquo", '\u00AB');
+        ENTITIES.put("raquo", '\u00BB');
+        ENTITIES.put("ndash", '\u2013');
+        ENTITIES.put("mdash", '\u2014');
+        ENTITIES.put("lsquo", '\u2018');
+        ENTITIES.put("rsquo", '\u2019');
+        ENTITIES.put("ldquo", '\u201C');
+        ENTITIES.put("rdquo", '\u201D');
+        ENTITIES.put("hellip", '\u2026');
+        ENTITIES.put("euro", '\u20AC');
+        ENTITIES.put("middot", '\u00B7');
+        ENTITIES.put("auml", '\u00E4');
+        ENTITIES.put("ouml", '\u00F6');
+        ENTITIES.put("uuml", '\u00FC');
+        ENTITIES.put("Auml", '\u00C4');
+        ENTITIES.put("Ouml", '\u00D6');
+        ENTITIES.put("Uuml", '\u00DC');
+        ENTITIES.put("szlig", '\u00DF');
+    }
+
+    private final HtmlHandler handler;
+    private final HtmlAttributes attributes = new HtmlAttributes();
+    private final StringBuilder text = new StringBuilder(TEXT_CHUNK_LENGTH);
+    private final StringBuilder token = new StringBuilder(64);
+    private final char[] buffer = new char[8192];
+
+    private Reader reader;
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Creates a new tokenizer reporting the tokens to the given handler.
+     *
+     * @param handler
+     *         The handler to report the tokens of a document to
+     */
+    public HtmlTokenizer(HtmlHandler handler)
+    {
+        if (null == handler)
+        {
+            throw new IllegalArgumentException("No handler provided");
+        }
+        this.handler = handler;
+    }
+
+    /**
+     * Reads the given document and reports its tokens to the handler of this tokenizer. The reader is not closed by
+     * this method.
+     *
+     * @param reader
+     *         The reader providing the characters of the document
+     *
+     * @return <em>true</em> if the whole document was tokenized, <em>false</em> if the handler stopped tokenizing
+     * before the end of the document was reached
+     *
+     * @throws IOException
+     *         If the document could not be read
+     */
+    public boolean tokenize(Reader reader) throws IOException
+    {
+        this.reader = reader;
+        this.position = 0;
+        this.limit = 0;
+        this.text.setLength(0);
+        try
+        {
+            int c;
+            while ((c = this.read()) != -1)
+            {
+                if (c == '<')
+                {
+                    if (!this.markup())
+                    {
+                        return false;
+                    }
+                }
+                else if (c == '&')
+                {
+                    this.appendReference(this.text);
+                }
+                else
+                {
+                    this.text.append((char) c);
+                }
+                if (this.text.length() >= TEXT_CHUNK_LENGTH && !this.flushText())
+                {
+                    return false;
+                }
+            }
+            return this.flushText();
+        }
+        finally
+        {
+            this.reader = null;
+            this.attributes.clear();
+        }
+    }
+
+    private int read() throws IOException
+    {
+        if (this.position == this.limit)
+        {
+            int read = this.reader.read(this.buffer, 0, this.buffer.length);
+            if (read <= 0)
+            {
+                return -1;
+            }
+            this.position = 0;
+            this.limit = read;
+        }
+        return this.buffer[this.position++];
+    }
+
+    /**
+     * Pushes the character returned by the last invocation of {@link #read()} back, which is always possible as the
+     * buffer is only refilled once all of its characters were read.
+     */
+    private void unread(int c)
+    {
+        if (c != -1)
+        {
+            this.position--;
+        }
+    }
+
+    private boolean flushText()
+    {
+        if (this.text.length() == 0)
+        {
+            return true;
+        }
+        boolean proceed = this.handler.text(this.text);
+        this.text.setLength(0);
+        return proceed;
+    }
+
+    /**
+     * Processes the markup following a <em>&lt;</em>.
+     *
+     * @return <em>false</em> if the handler stopped tokenizing
+     */
+    private boolean markup() throws IOException
+    {
+        int c = this.read();
+        if (isLetter(c))
+        {
+            return this.flushText() && this.startTag(c);
+        }
+        if (c == '/')
+        {
+            int next = this.read();
+            if (isLetter(next))
+            {
+                return this.flushText() && this.endTag(next);
+            }
+            // "</>" is ignored, anything else is treated as bogus comment
+            if (next != '>')
+            {
+                this.skipTag();
+            }
+            return true;
+        }
+        if (c == '!')
+        {
+            if (!this.flushText())
+            {
+                return false;
+            }
+            int next = this.read();
+            if (next == '-')
+            {
+                next = this.read();
+                if (next == '-')
+                {
+                    return this.comment();
+                }
+            }
+            this.unread(next);
+            this.skipTag();
+            return true;
+        }
+        if (c == '?')
+        {
+            this.skipTag();
+            return true;
+        }
+        this.text.append('<');
+        this.unread(c);
+        return true;
+    }
+
+    private void skipTag() throws IOException
+    {
+        int c;
+        do
+        {
+            c = this.read();
+        }
+        while (c != -1 && c != '>');
+    }
+
+    private boolean comment() throws IOException
+    {
+        this.token.setLength(0);
+        int dashes = 0;
+        int c;
+        while ((c = this.read()) != -1)
+        {
+            // "<!-->" and "<!--->" are closed right away like browsers do
+            if (c == '>' && (dashes >= 2 || this.token.length() == dashes))
+            {
+                this.token.setLength(this.token.length() - Math.min(dashes, 2));
+                break;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+            if (this.token.length() < MAX_VALUE_LENGTH + 2)
+            {
+                this.token.append((char) c);
+            }
+        }
+        if (this.token.length() > MAX_VALUE_LENGTH)
+        {
+            this.token.setLength(MAX_VALUE_LENGTH);
+        }
+        return this.handler.comment(this.token);
+    }
+
+    private String tagName(int first) throws IOException
+    {
+        this.token.setLength(0);
+        this.token.append(toLowerCase(first));
+        int c;
+        while ((c = this.read()) != -1 && !isWhitespace(c) && c != '/' && c != '>')
+        {
+            if (this.token.length() < MAX_VALUE_LENGTH)
+            {
+                this.token.append(toLowerCase(c));
+            }
+        }
+        this.unread(c);
+        return this.token.toString();
+    }
+
+    private boolean startTag(int first) throws IOException
+    {
+        String name = this.tagName(first);
+        this.attributes.clear();
+        boolean selfClosing = false;
+        while (true)
+        {
+            int c = this.read();
+            while (isWhitespace(c))
+            {
+                c = this.read();
+            }
+            if (c == -1)
+            {
+                // a tag cut off by the end of the document is dropped
+                return true;
+            }
+            if (c == '>')
+            {
+                break;
+            }
+            if (c == '/')
+            {
+                int next = this.read();
+                if (next == '>')
+                {
+                    selfClosing = true;
+                    break;
+                }
+                this.unread(next);
+                continue;
+            }
+            this.attribute(c);
+        }
+        if (!this.handler.startTag(name, this.attributes, selfClosing))
+        {
+            return false;
+        }
+        if (!selfClosing)
+        {
+            if ("script".equals(name) || "style".equals(name))
+            {
+                return this.rawText(name, false);
+            }
+            if ("title".equals(name) || "textarea".equals(name))
+            {
+                return this.rawText(name, true);
+            }
+        }
+        return true;
+    }
+
+    private void attribute(int first) throws IOException
+    {
+        this.token.setLength(0);
+        this.token.append(toLowerCase(first));
+        int c;
+        while ((c = this.read()) != -1 && !isWhitespace(c) && c != '/' && c != '>' && c != '=')
+        {
+            if (this.token.length() < MAX_VALUE_LENGTH)
+            {
+                this.token.append(toLowerCase(c));
+            }
+        }
+        String name = this.token.toString();
+        while (isWhitespace(c))
+        {
+            c = this.read();
+        }
+        if (c != '=')
+        {
+            this.unread(c);
+            this.attributes.add(name, "");
+            return;
+        }
+        c = this.read();
+        while (isWhitespace(c))
+        {
+            c = this.read();
+        }
+        this.token.setLength(0);
+        if (c == '"' || c == '\'')
+        {
+            int quote = c;
+            while ((c = this.read()) != -1 && c != quote)
+            {
+                this.appendValue(c);
+            }
+        }
+        else
+        {
+            while (c != -1 && !isWhitespace(c) && c != '>')
+            {
+                this.appendValue(c);
+                c = this.read();
+            }
+            this.unread(c);
+        }
+        if (this.token.length() > MAX_VALUE_LENGTH)
+        {
+            this.token.setLength(MAX_VALUE_LENGTH);
+        }
+        this.attributes.add(name, this.token.toString());
+    }
+
+    private void appendValue(int c) throws IOException
+    {
+        if (this.token.length() > MAX_VALUE_LENGTH)
+        {
+            return;
+        }
+        if (c == '&')
+        {
+            this.appendReference(this.token);
+        }
+        else
+        {
+            this.token.append((char) c);
+        }
+    }
+
+    private boolean endTag(int first) throws IOException
+    {
+        String name = this.tagName(first);
+        this.skipTag();
+        return this.handler.endTag(name);
+    }
+
+    /**
+     * Reports the content of an element, which ends only with the matching end tag, as text.
+     */
+    private boolean rawText(String name, boolean resolveReferences) throws IOException
+    {
+        int c;
+        while ((c = this.read()) != -1)
+        {
+            if (c == '<')
+            {
+                int mark = this.text.length();
+                this.text.append('<');
+                if (this.endTagFollows(name))
+                {
+                    this.text.setLength(mark);
+                    if (!this.flushText())
+                    {
+                        return false;
+                    }
+                    this.skipTag();
+                    return this.handler.endTag(name);
+                }
+            }
+            else if (c == '&' && resolveReferences)
+            {
+                this.appendReference(this.text);
+            }
+            else
+            {
+                this.text.append((char) c);
+            }
+            if (this.text.length() >= TEXT_CHUNK_LENGTH && !this.flushText())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the characters following a <em>&lt;</em> close the element of the given name. Any characters
+     * consumed are appended to the text.
+     */
+    private boolean endTagFollows(String name) throws IOException
+    {
+        int c = this.read();
+        if (c != '/')
+        {
+            this.unread(c);
+            return false;
+        }
+        this.text.append('/');
+        for (int i = 0; i < name.length(); i++)
+        {
+            c = this.read();
+            if (toLowerCase(c) != name.charAt(i))
+            {
+                this.unread(c);
+                return false;
+            }
+            this.text.append((char) c);
+        }
+        c = this.read();
+        this.unread(c);
+        return c == -1 || isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    /**
+     * Resolves the character reference following a <em>&amp;</em> and appends its character to the given buffer. If
+     * the characters do not form a known reference, they are appended as is.
+     */
+    private void appendReference(StringBuilder target) throws IOException
+    {
+        int start = target.length();
+        target.append('&');
+        int c = this.read();
+        if (c == '#')
+        {
+            target.append('#');
+            c = this.read();
+            int radix = 10;
+            if (c == 'x' || c == 'X')
+            {
+                target.append((char) c);
+                radix = 16;
+                c = this.read();
+            }
+            int codePoint = 0;
+            int digits = 0;
+            int digit;
+            while (c != -1 && (digit = Character.digit(c, radix)) != -1 && digits < 8)
+            {
+                codePoint = codePoint * radix + digit;
+                target.append((char) c);
+                digits++;
+                c = this.read();
+            }
+            if (c == ';' && digits > 0)
+            {
+                target.setLength(start);
+                if (codePoint == 0 || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+                {
+                    codePoint = 0xFFFD;
+                }
+                target.appendCodePoint(codePoint);
+                return;
+            }
+            this.unread(c);
+            return;
+        }
+        while (c != -1 && (isLetter(c) || (c >= '0' && c <= '9')) && target.length() - start < MAX_REFERENCE_LENGTH)
+        {
+            target.append((char) c);
+            c = this.read();
+        }
+        if (c == ';' && target.length() - start > 1)
+        {
+            Character resolved = ENTITIES.get(target.substring(start + 1));
+            if (null != resolved)
+            {
+                target.setLength(start);
+                target.append(resolved.charValue());
+                return;
+            }
+            target.append(';');
+            return;
+        }
+        this.unread(c);
+    }
+
+    private static boolean isLetter(int c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(int c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static char toLowerCase(int c)
+    {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : (char) c;
+    }
+}
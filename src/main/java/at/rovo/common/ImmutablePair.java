@@ -0,0 +1,45 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+
+/**
+ * A {@link Pair} whose elements can't be changed once it was created, so it can safely be used as key of a map,
+ * provided its elements are immutable as well. Instances are created via {@link Pair#of(Object, Object)}.
+ *
+ * @param <A>
+ *         The type of the first element
+ * @param <B>
+ *         The type of the last element
+ */
+@Immutable
+final class ImmutablePair<A, B> extends Pair<A, B>
+{
+    ImmutablePair(A a, B b)
+    {
+        super(a, b);
+    }
+
+    /**
+     * Not supported, as the elements of this pair can't be changed.
+     *
+     * @throws UnsupportedOperationException
+     *         Always
+     */
+    @Override
+    public void setFirst(A a)
+    {
+        throw new UnsupportedOperationException("The pair can't be modified");
+    }
+
+    /**
+     * Not supported, as the elements of this pair can't be changed.
+     *
+     * @throws UnsupportedOperationException
+     *         Always
+     */
+    @Override
+    public void setLast(B b)
+    {
+        throw new UnsupportedOperationException("The pair can't be modified");
+    }
+}
@@ -0,0 +1,157 @@
+package at.rovo.common;
+
+/**
+ * Sorts data which is addressed by position, like the parallel arrays of a pair list, in place via introsort: a
+ * quicksort which switches to heapsort if the partitions turn out to be unbalanced, so the running time is bounded by
+ * O(n log n). Implementations only define how two positions are compared and swapped, so all arrays holding the parts
+ * of an element are reordered together without copying the elements into objects.
+ */
+abstract class IndexSorter
+{
+    /** Ranges with fewer elements are sorted via insertion sort */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Compares the elements at the given positions.
+     *
+     * @return A negative number, zero or a positive number if the first element is less than, equal to or greater
+     *         than the second element
+     */
+    abstract int compare(int i, int j);
+
+    /**
+     * Exchanges the elements at the given positions.
+     */
+    abstract void swap(int i, int j);
+
+    /**
+     * Sorts the elements in the given range in place. The sort is not stable.
+     *
+     * @param from
+     *         The position of the first element to sort
+     * @param to
+     *         The position after the last element to sort
+     */
+    void sort(int from, int to)
+    {
+        int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        this.introsort(from, to, depthLimit);
+    }
+
+    private void introsort(int from, int to, int depthLimit)
+    {
+        while (to - from > INSERTION_SORT_THRESHOLD)
+        {
+            if (depthLimit-- == 0)
+            {
+                this.heapsort(from, to);
+                return;
+            }
+            int pivot = this.partition(from, to);
+            // recurse into the smaller partition only, so the stack depth stays logarithmic
+            if (pivot - from < to - pivot - 1)
+            {
+                this.introsort(from, pivot, depthLimit);
+                from = pivot + 1;
+            }
+            else
+            {
+                this.introsort(pivot + 1, to, depthLimit);
+                to = pivot;
+            }
+        }
+        this.insertionSort(from, to);
+    }
+
+    /**
+     * Partitions the range around the median of its first, middle and last element and returns the final position of
+     * the pivot.
+     */
+    private int partition(int from, int to)
+    {
+        int last = to - 1;
+        int middle = (from + last) >>> 1;
+        if (this.compare(middle, from) < 0)
+        {
+            this.swap(middle, from);
+        }
+        if (this.compare(last, from) < 0)
+        {
+            this.swap(last, from);
+        }
+        if (this.compare(last, middle) < 0)
+        {
+            this.swap(last, middle);
+        }
+        // the pivot is parked at the end of the range while the range is partitioned. Both scans stop at elements
+        // equal to the pivot, which keeps the partitions balanced if many elements are equal
+        this.swap(middle, last);
+        int i = from - 1;
+        int j = last;
+        while (true)
+        {
+            while (this.compare(++i, last) < 0)
+            {
+                // skip elements which already belong to the lower partition
+            }
+            while (j > from && this.compare(last, --j) < 0)
+            {
+                // skip elements which already belong to the upper partition
+            }
+            if (i >= j)
+            {
+                break;
+            }
+            this.swap(i, j);
+        }
+        this.swap(i, last);
+        return i;
+    }
+
+    private void insertionSort(int from, int to)
+    {
+        for (int i = from + 1; i < to; i++)
+        {
+            for (int j = i; j > from && this.compare(j - 1, j) > 0; j--)
+            {
+                this.swap(j - 1, j);
+            }
+        }
+    }
+
+    private void heapsort(int from, int to)
+    {
+        int count = to - from;
+        for (int i = count / 2 - 1; i >= 0; i--)
+        {
+            this.siftDown(from, i, count);
+        }
+        for (int end = count - 1; end > 0; end--)
+        {
+            this.swap(from, from + end);
+            this.siftDown(from, 0, end);
+        }
+    }
+
+    private void siftDown(int offset, int root, int count)
+    {
+        while (true)
+        {
+            int child = 2 * root + 1;
+            if (child >= count)
+            {
+                return;
+            }
+            if (child + 1 < count && this.compare(offset + child, offset + child + 1) < 0)
+            {
+                child++;
+            }
+            if (this.compare(offset + root, offset + child) >= 0)
+            {
+                return;
+            }
+            this.swap(offset + root, offset + child);
+            root = child;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+
+/**
+ * An immutable pair of two <em>int</em> values, which avoids boxing both values like a {@code Pair<Integer, Integer>}
+ * does. Pairs are ordered by their first and then by their last value.
+ */
+@Immutable
+public final class IntPair implements Comparable<IntPair>
+{
+    private final int first;
+    private final int last;
+
+    /**
+     * Creates a new pair of the given values.
+     *
+     * @param first
+     *         The first value of the pair
+     * @param last
+     *         The last value of the pair
+     */
+    public IntPair(int first, int last)
+    {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Returns the first value of this pair.
+     *
+     * @return The first value of this pair
+     */
+    public int getFirst()
+    {
+        return this.first;
+    }
+
+    /**
+     * Returns the last value of this pair.
+     *
+     * @return The last value of this pair
+     */
+    public int getLast()
+    {
+        return this.last;
+    }
+
+    @Override
+    public int compareTo(IntPair other)
+    {
+        int result = Integer.compare(this.first, other.first);
+        return result != 0 ? result : Integer.compare(this.last, other.last);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof IntPair))
+        {
+            return false;
+        }
+        IntPair other = (IntPair) obj;
+        return this.first == other.first && this.last == other.last;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * this.first + this.last;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "(" + this.first + ", " + this.last + ")";
+    }
+}
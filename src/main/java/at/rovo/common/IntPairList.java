@@ -0,0 +1,179 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * A growable list of pairs of <em>int</em> values, which stores the first and the last values in two parallel arrays
+ * instead of creating an object per pair. A million pairs take 8 MB, while a list of {@code Pair<Integer, Integer>}
+ * takes about five times as much and scatters the pairs across the heap.
+ * <p>
+ * Pairs are accessed by their index via {@link #getFirst(int)} and {@link #getLast(int)}, which don't create any
+ * objects, or via {@link #get(int)}, which returns an {@link IntPair}.
+ */
+@NotThreadSafe
+public final class IntPairList extends AbstractPairList
+{
+    private int[] firsts;
+    private int[] lasts;
+
+    /**
+     * Creates a new empty list.
+     */
+    public IntPairList()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty list which can hold the given number of pairs before it has to grow.
+     *
+     * @param initialCapacity
+     *         The number of pairs the list can hold initially
+     */
+    public IntPairList(int initialCapacity)
+    {
+        if (initialCapacity < 0)
+        {
+            throw new IllegalArgumentException("The capacity must not be negative, found " + initialCapacity);
+        }
+        this.firsts = new int[initialCapacity];
+        this.lasts = new int[initialCapacity];
+    }
+
+    /**
+     * Appends a pair of the given values to the end of this list.
+     *
+     * @param first
+     *         The first value of the pair
+     * @param last
+     *         The last value of the pair
+     */
+    public void add(int first, int last)
+    {
+        if (this.size == this.firsts.length)
+        {
+            int capacity = grow(this.firsts.length, this.size + 1);
+            this.firsts = Arrays.copyOf(this.firsts, capacity);
+            this.lasts = Arrays.copyOf(this.lasts, capacity);
+        }
+        this.firsts[this.size] = first;
+        this.lasts[this.size] = last;
+        this.size++;
+    }
+
+    /**
+     * Returns the first value of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return The first value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public int getFirst(int index)
+    {
+        this.checkIndex(index);
+        return this.firsts[index];
+    }
+
+    /**
+     * Returns the last value of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return The last value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public int getLast(int index)
+    {
+        this.checkIndex(index);
+        return this.lasts[index];
+    }
+
+    /**
+     * Returns the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return A new object holding the values of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public IntPair get(int index)
+    {
+        this.checkIndex(index);
+        return new IntPair(this.firsts[index], this.lasts[index]);
+    }
+
+    /**
+     * Replaces the values of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     * @param first
+     *         The new first value of the pair
+     * @param last
+     *         The new last value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public void set(int index, int first, int last)
+    {
+        this.checkIndex(index);
+        this.firsts[index] = first;
+        this.lasts[index] = last;
+    }
+
+    /**
+     * Removes all pairs from this list. The capacity of the list is kept.
+     */
+    public void clear()
+    {
+        this.size = 0;
+    }
+
+    /**
+     * Sorts the pairs of this list by their first and then by their last value, like {@link IntPair#compareTo(IntPair)}
+     * does.
+     */
+    public void sort()
+    {
+        // both values are packed into a long whose signed order matches the order of the pairs, so the pairs are
+        // sorted by a primitive sort instead of comparing them one by one
+        long[] packed = new long[this.size];
+        for (int i = 0; i < this.size; i++)
+        {
+            packed[i] = (long) this.firsts[i] << 32 | (this.lasts[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < this.size; i++)
+        {
+            this.firsts[i] = (int) (packed[i] >> 32);
+            this.lasts[i] = (int) packed[i] ^ Integer.MIN_VALUE;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < this.size; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append('(').append(this.firsts[i]).append(", ").append(this.lasts[i]).append(')');
+        }
+        return sb.append(']').toString();
+    }
+}
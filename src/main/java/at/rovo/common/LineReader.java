@@ -0,0 +1,175 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Splits the characters of a {@link Reader} into lines like {@link java.util.Scanner#nextLine()} does, but without
+ * matching regular expressions and without creating a string per line. Characters are read into a large buffer, and
+ * each line is handed out as a view of that buffer, which is only valid until the next line is read. Callers which need
+ * to keep a line have to copy it, for example via {@link CharSequence#toString()}.
+ * <p>
+ * A line is terminated by <em>\n</em>, <em>\r\n</em>, <em>\r</em> or one of the unicode line separators U+0085,
+ * U+2028 and U+2029, and the terminator is not part of the line. Like with a scanner, a terminator at the end of the
+ * input does not start a further empty line. Lines longer than the buffer grow the buffer.
+ */
+@NotThreadSafe
+public final class LineReader implements Closeable
+{
+    /** The default number of characters which are read at once */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private char[] buffer;
+    /** The view of the current line, which is reused for each line */
+    private CharBuffer line;
+    /** The position of the first character in the buffer which was not handed out yet */
+    private int position = 0;
+    /** The position after the last character read into the buffer */
+    private int limit = 0;
+    /** Whether the last line ended with a <em>\r</em>, so a leading <em>\n</em> belongs to that line */
+    private boolean skipLineFeed = false;
+    private boolean endOfInput = false;
+
+    /**
+     * Creates a new instance which reads the lines of the given reader with a buffer of {@value #DEFAULT_BUFFER_SIZE}
+     * characters.
+     *
+     * @param reader
+     *         The reader providing the characters to split into lines
+     */
+    public LineReader(Reader reader)
+    {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance which reads the lines of the given reader.
+     *
+     * @param reader
+     *         The reader providing the characters to split into lines
+     * @param bufferSize
+     *         The number of characters which are read at once
+     */
+    public LineReader(Reader reader, int bufferSize)
+    {
+        if (null == reader)
+        {
+            throw new IllegalArgumentException("No reader provided");
+        }
+        if (bufferSize < 1)
+        {
+            throw new IllegalArgumentException("The buffer size has to be positive, found " + bufferSize);
+        }
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        this.line = CharBuffer.wrap(this.buffer);
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return A view of the next line without its terminator, which is only valid until the next invocation of this
+     *         method, or <em>null</em> if the end of the input was reached
+     *
+     * @throws IOException
+     *         If the characters could not be read
+     */
+    public CharSequence readLine() throws IOException
+    {
+        int scanned = this.position;
+        while (true)
+        {
+            if (scanned == this.limit)
+            {
+                if (this.endOfInput)
+                {
+                    break;
+                }
+                // filling the buffer moves the pending characters to its start
+                scanned -= this.position;
+                this.fill();
+                continue;
+            }
+            if (this.skipLineFeed)
+            {
+                this.skipLineFeed = false;
+                if (this.buffer[scanned] == '\n')
+                {
+                    this.position++;
+                    scanned++;
+                    continue;
+                }
+            }
+            char c = this.buffer[scanned];
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+            {
+                this.skipLineFeed = c == '\r';
+                return this.handOut(scanned, scanned + 1);
+            }
+            scanned++;
+        }
+        if (scanned == this.position)
+        {
+            return null;
+        }
+        return this.handOut(scanned, scanned);
+    }
+
+    /**
+     * Hands out the characters from the current position up to the given end as the next line and continues after it.
+     */
+    private CharSequence handOut(int end, int next)
+    {
+        this.line.clear();
+        this.line.position(this.position).limit(end);
+        this.position = next;
+        return this.line;
+    }
+
+    /**
+     * Moves the characters which were not handed out yet to the start of the buffer, grows the buffer if it is full and
+     * reads further characters into the remaining space.
+     */
+    private void fill() throws IOException
+    {
+        int pending = this.limit - this.position;
+        if (this.position > 0)
+        {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, pending);
+        }
+        else if (pending == this.buffer.length)
+        {
+            char[] grown = new char[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, grown, 0, pending);
+            this.buffer = grown;
+            this.line = CharBuffer.wrap(this.buffer);
+        }
+        this.position = 0;
+        this.limit = pending;
+        int read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+        if (read == -1)
+        {
+            this.endOfInput = true;
+        }
+        else
+        {
+            this.limit += read;
+        }
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException
+     *         If the reader could not be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.reader.close();
+    }
+}
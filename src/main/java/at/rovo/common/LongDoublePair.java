@@ -0,0 +1,85 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+
+/**
+ * An immutable pair of a <em>long</em> and a <em>double</em> value, which avoids boxing both values like a {@code
+ * Pair<Long, Double>} does. Pairs are ordered by their first and then by their last value. Like {@link Double#equals(
+ * Object)}, the last values are compared by their bit pattern, so <em>NaN</em> equals itself and <em>0.0</em> differs
+ * from <em>-0.0</em>.
+ */
+@Immutable
+public final class LongDoublePair implements Comparable<LongDoublePair>
+{
+    private final long first;
+    private final double last;
+
+    /**
+     * Creates a new pair of the given values.
+     *
+     * @param first
+     *         The first value of the pair
+     * @param last
+     *         The last value of the pair
+     */
+    public LongDoublePair(long first, double last)
+    {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Returns the first value of this pair.
+     *
+     * @return The first value of this pair
+     */
+    public long getFirst()
+    {
+        return this.first;
+    }
+
+    /**
+     * Returns the last value of this pair.
+     *
+     * @return The last value of this pair
+     */
+    public double getLast()
+    {
+        return this.last;
+    }
+
+    @Override
+    public int compareTo(LongDoublePair other)
+    {
+        int result = Long.compare(this.first, other.first);
+        return result != 0 ? result : Double.compare(this.last, other.last);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof LongDoublePair))
+        {
+            return false;
+        }
+        LongDoublePair other = (LongDoublePair) obj;
+        return this.first == other.first
+               && Double.doubleToLongBits(this.last) == Double.doubleToLongBits(other.last);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Long.hashCode(this.first) + Double.hashCode(this.last);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "(" + this.first + ", " + this.last + ")";
+    }
+}
@@ -0,0 +1,188 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * A growable list of pairs of a <em>long</em> and a <em>double</em> value, which stores the first and the last values
+ * in two parallel arrays instead of creating an object per pair. A million pairs take 16 MB, while a list of {@code
+ * Pair<Long, Double>} takes about four times as much and scatters the pairs across the heap.
+ * <p>
+ * Pairs are accessed by their index via {@link #getFirst(int)} and {@link #getLast(int)}, which don't create any
+ * objects, or via {@link #get(int)}, which returns a {@link LongDoublePair}.
+ */
+@NotThreadSafe
+public final class LongDoublePairList extends AbstractPairList
+{
+    private long[] firsts;
+    private double[] lasts;
+
+    /**
+     * Creates a new empty list.
+     */
+    public LongDoublePairList()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty list which can hold the given number of pairs before it has to grow.
+     *
+     * @param initialCapacity
+     *         The number of pairs the list can hold initially
+     */
+    public LongDoublePairList(int initialCapacity)
+    {
+        if (initialCapacity < 0)
+        {
+            throw new IllegalArgumentException("The capacity must not be negative, found " + initialCapacity);
+        }
+        this.firsts = new long[initialCapacity];
+        this.lasts = new double[initialCapacity];
+    }
+
+    /**
+     * Appends a pair of the given values to the end of this list.
+     *
+     * @param first
+     *         The first value of the pair
+     * @param last
+     *         The last value of the pair
+     */
+    public void add(long first, double last)
+    {
+        if (this.size == this.firsts.length)
+        {
+            int capacity = grow(this.firsts.length, this.size + 1);
+            this.firsts = Arrays.copyOf(this.firsts, capacity);
+            this.lasts = Arrays.copyOf(this.lasts, capacity);
+        }
+        this.firsts[this.size] = first;
+        this.lasts[this.size] = last;
+        this.size++;
+    }
+
+    /**
+     * Returns the first value of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return The first value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public long getFirst(int index)
+    {
+        this.checkIndex(index);
+        return this.firsts[index];
+    }
+
+    /**
+     * Returns the last value of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return The last value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public double getLast(int index)
+    {
+        this.checkIndex(index);
+        return this.lasts[index];
+    }
+
+    /**
+     * Returns the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return A new object holding the values of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public LongDoublePair get(int index)
+    {
+        this.checkIndex(index);
+        return new LongDoublePair(this.firsts[index], this.lasts[index]);
+    }
+
+    /**
+     * Replaces the values of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     * @param first
+     *         The new first value of the pair
+     * @param last
+     *         The new last value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the list holds no pair at the given position
+     */
+    public void set(int index, long first, double last)
+    {
+        this.checkIndex(index);
+        this.firsts[index] = first;
+        this.lasts[index] = last;
+    }
+
+    /**
+     * Removes all pairs from this list. The capacity of the list is kept.
+     */
+    public void clear()
+    {
+        this.size = 0;
+    }
+
+    /**
+     * Sorts the pairs of this list by their first and then by their last value, like {@link
+     * LongDoublePair#compareTo(LongDoublePair)} does.
+     */
+    public void sort()
+    {
+        long[] firsts = this.firsts;
+        double[] lasts = this.lasts;
+        new IndexSorter()
+        {
+            @Override
+            int compare(int i, int j)
+            {
+                int result = Long.compare(firsts[i], firsts[j]);
+                return result != 0 ? result : Double.compare(lasts[i], lasts[j]);
+            }
+
+            @Override
+            void swap(int i, int j)
+            {
+                long first = firsts[i];
+                firsts[i] = firsts[j];
+                firsts[j] = first;
+                double last = lasts[i];
+                lasts[i] = lasts[j];
+                lasts[j] = last;
+            }
+        }.sort(0, this.size);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < this.size; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append('(').append(this.firsts[i]).append(", ").append(this.lasts[i]).append(')');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,541 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A growable list of pairs of <em>long</em> values, like the edges of a graph or a mapping of IDs, which keeps its
+ * pairs in a memory-mapped file instead of on the heap. Hundreds of millions of pairs therefore neither add to the heap
+ * nor to the work of the garbage collector, and the operating system pages them in and out as needed. A store which
+ * was closed is reopened via {@link #open(Path)} in no time, as the file is only mapped and not read.
+ * <p>
+ * Each pair takes 16 bytes, while a {@code Pair<Long, Long>} with its boxed values takes about 56 bytes of heap. The
+ * pairs are stored in segments of {@value #PAIRS_PER_SEGMENT} pairs, as a single mapping can't exceed 2 GB, and at
+ * most {@link Integer#MAX_VALUE} pairs can be stored. {@link #get(long)} and {@link #asList()} make the pairs available
+ * as {@link Pair}s, while {@link #getFirst(long)} and {@link #getLast(long)} access them without creating any objects.
+ * <p>
+ * A store created via {@link #createTemporary()} keeps its pairs in a temporary file which is deleted on {@link
+ * #close()}, unless the pairs were saved via {@link #saveTo(Path)}.
+ * <p>
+ * As the last segment is always mapped in full, the file is larger than the stored pairs while the store is open. On
+ * closing, the store drops its mappings and shrinks the file to the space the pairs need. Java can't unmap a file
+ * before its buffers were garbage collected though, and Windows refuses to shrink a file which is still mapped. There
+ * the file keeps the size of its segments, which does not affect reopening it as the header records the number of
+ * pairs.
+ */
+@NotThreadSafe
+public final class LongPairStore implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The marker at the start of a store file */
+    private static final long MAGIC = 0x4C50535430303031L;
+    /** The space reserved for the header, which keeps the pairs aligned to pages */
+    private static final int HEADER_SIZE = 4096;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_SIZE = 8;
+    private static final int PAIR_BYTES = 16;
+    private static final int SEGMENT_BITS = 26;
+    /** The number of pairs mapped by a single buffer, which takes 1 GB */
+    public static final int PAIRS_PER_SEGMENT = 1 << SEGMENT_BITS;
+
+    private final Path file;
+    private final boolean temporary;
+    private final FileChannel channel;
+    /** The binary logarithm of the number of pairs per segment, which does not affect the layout of the file */
+    private final int segmentBits;
+    private final int pairsPerSegment;
+    private final int segmentMask;
+    /** The mapping of the header, which is released on closing the store */
+    private MappedByteBuffer header;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long size;
+    private boolean closed = false;
+
+    private LongPairStore(Path file, boolean temporary, FileChannel channel, boolean create, int segmentBits)
+            throws IOException
+    {
+        this.file = file;
+        this.temporary = temporary;
+        this.channel = channel;
+        this.segmentBits = segmentBits;
+        this.pairsPerSegment = 1 << segmentBits;
+        this.segmentMask = this.pairsPerSegment - 1;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        this.header.order(ByteOrder.LITTLE_ENDIAN);
+        if (create)
+        {
+            this.header.putLong(OFFSET_SIZE, 0L);
+            this.header.putLong(OFFSET_MAGIC, MAGIC);
+        }
+        else if (this.header.getLong(OFFSET_MAGIC) != MAGIC)
+        {
+            throw new IOException(file + " is no pair store");
+        }
+        this.size = this.header.getLong(OFFSET_SIZE);
+        if (channel.size() < HEADER_SIZE + this.size * PAIR_BYTES)
+        {
+            throw new IOException("Pair store " + file + " is truncated");
+        }
+        while ((long) this.segments.size() * this.pairsPerSegment < this.size)
+        {
+            this.mapSegment();
+        }
+    }
+
+    /**
+     * Creates a new store in the given file, replacing any existing file.
+     *
+     * @param file
+     *         The file to store the pairs in
+     *
+     * @return The empty store, which has to be closed once it is not needed anymore
+     *
+     * @throws IOException
+     *         If the file could not be created
+     */
+    public static LongPairStore create(Path file) throws IOException
+    {
+        return create(file, SEGMENT_BITS);
+    }
+
+    /**
+     * Creates a new store in the given file which maps segments of <em>2<sup>segmentBits</sup></em> pairs, so tests
+     * can cross segment boundaries without writing gigabytes.
+     */
+    static LongPairStore create(Path file, int segmentBits) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return newStore(file, false, channel, true, segmentBits);
+    }
+
+    /**
+     * Creates a new store in a temporary file, which is deleted once the store is closed.
+     *
+     * @return The empty store, which has to be closed once it is not needed anymore
+     *
+     * @throws IOException
+     *         If the temporary file could not be created
+     */
+    public static LongPairStore createTemporary() throws IOException
+    {
+        return createTemporary(SEGMENT_BITS);
+    }
+
+    /**
+     * Creates a new store in a temporary file which maps segments of <em>2<sup>segmentBits</sup></em> pairs.
+     */
+    static LongPairStore createTemporary(int segmentBits) throws IOException
+    {
+        Path file = Files.createTempFile("pairs", ".store");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return newStore(file, true, channel, true, segmentBits);
+    }
+
+    /**
+     * Opens the store kept in the given file. Pairs appended to the store are added to the file.
+     *
+     * @param file
+     *         The file the pairs are stored in
+     *
+     * @return The store, which has to be closed once it is not needed anymore
+     *
+     * @throws IOException
+     *         If the file could not be opened or is no store file
+     */
+    public static LongPairStore open(Path file) throws IOException
+    {
+        return open(file, SEGMENT_BITS);
+    }
+
+    /**
+     * Opens the store kept in the given file and maps it in segments of <em>2<sup>segmentBits</sup></em> pairs.
+     */
+    static LongPairStore open(Path file, int segmentBits) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return newStore(file, false, channel, false, segmentBits);
+    }
+
+    private static LongPairStore newStore(Path file, boolean temporary, FileChannel channel, boolean create,
+                                          int segmentBits) throws IOException
+    {
+        if (segmentBits < 0 || segmentBits > SEGMENT_BITS)
+        {
+            channel.close();
+            throw new IllegalArgumentException("Segments of 2^" + segmentBits + " pairs are not supported");
+        }
+        try
+        {
+            return new LongPairStore(file, temporary, channel, create, segmentBits);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            if (temporary)
+            {
+                Files.deleteIfExists(file);
+            }
+            throw ex;
+        }
+    }
+
+    private void mapSegment() throws IOException
+    {
+        long position = HEADER_SIZE + (long) this.segments.size() * this.pairsPerSegment * PAIR_BYTES;
+        MappedByteBuffer segment = this.channel.map(FileChannel.MapMode.READ_WRITE, position,
+                                                    (long) this.pairsPerSegment * PAIR_BYTES);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        this.segments.add(segment);
+    }
+
+    /**
+     * Appends a pair of the given values to the end of this store.
+     *
+     * @param first
+     *         The first value of the pair
+     * @param last
+     *         The last value of the pair
+     *
+     * @throws IOException
+     *         If the file could not be grown to hold further pairs
+     */
+    public void append(long first, long last) throws IOException
+    {
+        this.checkOpen();
+        if (this.size == Integer.MAX_VALUE)
+        {
+            throw new IOException("Pair store " + this.file + " can't hold more than " + Integer.MAX_VALUE + " pairs");
+        }
+        if (this.size == (long) this.segments.size() * this.pairsPerSegment)
+        {
+            this.mapSegment();
+        }
+        MappedByteBuffer segment = this.segments.get((int) (this.size >>> this.segmentBits));
+        int offset = (int) (this.size & this.segmentMask) * PAIR_BYTES;
+        segment.putLong(offset, first);
+        segment.putLong(offset + 8, last);
+        this.size++;
+    }
+
+    /**
+     * Appends the given pair to the end of this store.
+     *
+     * @param pair
+     *         The pair to append, whose elements must not be <em>null</em>
+     *
+     * @throws IOException
+     *         If the file could not be grown to hold further pairs
+     */
+    public void append(Pair<Long, Long> pair) throws IOException
+    {
+        this.append(pair.getFirst(), pair.getLast());
+    }
+
+    /**
+     * Returns the number of pairs in this store.
+     *
+     * @return The number of pairs
+     */
+    public long size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the first value of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return The first value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the store holds no pair at the given position
+     */
+    public long getFirst(long index)
+    {
+        this.checkIndex(index);
+        return this.segments.get((int) (index >>> this.segmentBits))
+                .getLong((int) (index & this.segmentMask) * PAIR_BYTES);
+    }
+
+    /**
+     * Returns the last value of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return The last value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the store holds no pair at the given position
+     */
+    public long getLast(long index)
+    {
+        this.checkIndex(index);
+        return this.segments.get((int) (index >>> this.segmentBits))
+                .getLong((int) (index & this.segmentMask) * PAIR_BYTES + 8);
+    }
+
+    /**
+     * Returns the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     *
+     * @return A new pair holding the values of the stored pair, which can't be modified
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the store holds no pair at the given position
+     */
+    public Pair<Long, Long> get(long index)
+    {
+        return Pair.of(this.getFirst(index), this.getLast(index));
+    }
+
+    /**
+     * Replaces the values of the pair at the given position.
+     *
+     * @param index
+     *         The position of the pair
+     * @param first
+     *         The new first value of the pair
+     * @param last
+     *         The new last value of the pair
+     *
+     * @throws IndexOutOfBoundsException
+     *         If the store holds no pair at the given position
+     */
+    public void set(long index, long first, long last)
+    {
+        this.checkIndex(index);
+        MappedByteBuffer segment = this.segments.get((int) (index >>> this.segmentBits));
+        int offset = (int) (index & this.segmentMask) * PAIR_BYTES;
+        segment.putLong(offset, first);
+        segment.putLong(offset + 8, last);
+    }
+
+    /**
+     * Returns a view of this store as a list of pairs. The view reflects any changes of the store but does not support
+     * any modification itself.
+     *
+     * @return The pairs of this store as a list
+     */
+    public List<Pair<Long, Long>> asList()
+    {
+        return new AbstractList<Pair<Long, Long>>()
+        {
+            @Override
+            public Pair<Long, Long> get(int index)
+            {
+                return LongPairStore.this.get(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return (int) LongPairStore.this.size;
+            }
+        };
+    }
+
+    /**
+     * Sorts the pairs of this store in place by their first and then by their last value.
+     */
+    public void sortByFirst()
+    {
+        this.sort(0);
+    }
+
+    /**
+     * Sorts the pairs of this store in place by their last and then by their first value.
+     */
+    public void sortByLast()
+    {
+        this.sort(8);
+    }
+
+    /**
+     * Sorts the pairs by the value at the given offset within a pair and then by the other value.
+     */
+    private void sort(int keyOffset)
+    {
+        this.checkOpen();
+        MappedByteBuffer[] segments = this.segments.toArray(new MappedByteBuffer[0]);
+        int segmentBits = this.segmentBits;
+        int segmentMask = this.segmentMask;
+        int otherOffset = 8 - keyOffset;
+        new IndexSorter()
+        {
+            @Override
+            int compare(int i, int j)
+            {
+                MappedByteBuffer x = segments[i >>> segmentBits];
+                MappedByteBuffer y = segments[j >>> segmentBits];
+                int xOffset = (i & segmentMask) * PAIR_BYTES;
+                int yOffset = (j & segmentMask) * PAIR_BYTES;
+                int result = Long.compare(x.getLong(xOffset + keyOffset), y.getLong(yOffset + keyOffset));
+                return result != 0 ? result
+                                   : Long.compare(x.getLong(xOffset + otherOffset), y.getLong(yOffset + otherOffset));
+            }
+
+            @Override
+            void swap(int i, int j)
+            {
+                MappedByteBuffer x = segments[i >>> segmentBits];
+                MappedByteBuffer y = segments[j >>> segmentBits];
+                int xOffset = (i & segmentMask) * PAIR_BYTES;
+                int yOffset = (j & segmentMask) * PAIR_BYTES;
+                long first = x.getLong(xOffset);
+                long last = x.getLong(xOffset + 8);
+                x.putLong(xOffset, y.getLong(yOffset));
+                x.putLong(xOffset + 8, y.getLong(yOffset + 8));
+                y.putLong(yOffset, first);
+                y.putLong(yOffset + 8, last);
+            }
+        }.sort(0, (int) this.size);
+    }
+
+    /**
+     * Writes the number of pairs and all modified pairs to the file.
+     */
+    public void flush()
+    {
+        this.checkOpen();
+        this.header.putLong(OFFSET_SIZE, this.size);
+        this.header.force();
+        for (MappedByteBuffer segment : this.segments)
+        {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes the pairs of this store to the given file, which can be opened via {@link #open(Path)} afterwards. This is
+     * mostly useful for temporary stores, which would otherwise be deleted on closing them.
+     *
+     * @param target
+     *         The file to write the pairs to, which is replaced if it exists
+     *
+     * @throws IOException
+     *         If the pairs could not be written
+     */
+    public void saveTo(Path target) throws IOException
+    {
+        this.flush();
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long length = HEADER_SIZE + this.size * PAIR_BYTES;
+            long position = 0L;
+            while (position < length)
+            {
+                position += this.channel.transferTo(position, length - position, out);
+            }
+        }
+    }
+
+    private void checkIndex(long index)
+    {
+        this.checkOpen();
+        if (index < 0 || index >= this.size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.size + " pairs");
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (this.closed)
+        {
+            throw new IllegalStateException("Pair store " + this.file + " was already closed");
+        }
+    }
+
+    /**
+     * Writes all pairs to the file and closes it. The file is shrunk to the space needed by the pairs if the platform
+     * allows it, while a temporary store is deleted instead.
+     *
+     * @throws IOException
+     *         If the file could not be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        try
+        {
+            if (!this.temporary)
+            {
+                this.flush();
+            }
+        }
+        finally
+        {
+            // drop the mappings before shrinking the file, so they can be released and are never accessed beyond the
+            // end of the shrunk file
+            this.closed = true;
+            this.segments.clear();
+            this.header = null;
+            if (!this.temporary)
+            {
+                this.shrink();
+            }
+            this.channel.close();
+            if (this.temporary)
+            {
+                try
+                {
+                    Files.deleteIfExists(this.file);
+                }
+                catch (IOException ioEx)
+                {
+                    LOG.warn("Could not delete temporary pair store {}. Reason: {}", this.file,
+                             ioEx.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Truncates the file to the space needed by the pairs, as the last segment was mapped in full, which grew the file
+     * beyond the stored pairs. This fails on Windows as long as the dropped mappings were not garbage collected, in
+     * which case the file is left as it is.
+     */
+    private void shrink()
+    {
+        try
+        {
+            this.channel.truncate(HEADER_SIZE + this.size * PAIR_BYTES);
+        }
+        catch (IOException ioEx)
+        {
+            LOG.debug("Could not shrink pair store {} while it is still mapped. Reason: {}", this.file,
+                      ioEx.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LongPairStore[file=" + this.file + ", size=" + this.size + "]";
+    }
+}
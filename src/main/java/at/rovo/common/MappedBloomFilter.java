@@ -0,0 +1,434 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter of strings whose bits are kept in a memory-mapped file instead of on the heap, so its content survives
+ * restarts and does not add to the work of the garbage collector. A Bloom filter answers whether a string was added
+ * before in a small fixed amount of memory: it never misses a string which was added, but reports a string which was
+ * not added as contained with the configured false-positive probability, as long as no more strings than expected are
+ * added. About 1.25 bytes per expected string are needed for a false-positive probability of 1%, so a filter for 500
+ * million URLs takes about 625 MB of disk space and page cache, regardless of the length of the URLs.
+ * <p>
+ * The filter is <em>blocked</em>: all bits of a string lie within a single 64 byte block, the size of a cache line,
+ * so a lookup touches a single cache line or page instead of one per bit. As some blocks are fuller than others by
+ * chance, a blocked filter needs a few more bits than a classic one to reach the same false-positive probability,
+ * which is accounted for on sizing the filter. Bits are set with atomic operations, so the filter can be used from
+ * multiple threads without locking.
+ * <p>
+ * The file is locked while the filter is open. The number of added strings is written to the file on {@link #flush()}
+ * and {@link #close()}, the bits themselves are written back by the operating system and are therefore kept even if
+ * the process is killed. Note that the mapping itself is only released once the filter was garbage collected.
+ */
+@ThreadSafe
+public final class MappedBloomFilter implements Closeable
+{
+    /** The marker at the start of a filter file */
+    private static final long MAGIC = 0x4D424C4F4F4D0001L;
+    /** The space reserved for the header, which keeps the blocks aligned to pages */
+    private static final int HEADER_SIZE = 4096;
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_BYTES = BLOCK_BITS / 8;
+    /** The number of blocks mapped by a single buffer, as buffers are limited to 2 GB */
+    private static final int BLOCKS_PER_SEGMENT = 1 << 24;
+    /** The largest number of bits set per string */
+    private static final int MAX_HASHES = 24;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_BLOCKS = 8;
+    private static final int OFFSET_HASHES = 16;
+    private static final int OFFSET_EXPECTED = 24;
+    private static final int OFFSET_FPP = 32;
+    private static final int OFFSET_COUNT = 40;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final long numBlocks;
+    private final int numHashes;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private final LongAdder count = new LongAdder();
+    private volatile boolean closed = false;
+
+    private MappedBloomFilter(Path file, FileChannel channel, FileLock lock, MappedByteBuffer header,
+                              MappedByteBuffer[] segments)
+    {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.header = header;
+        this.segments = segments;
+        this.numBlocks = header.getLong(OFFSET_BLOCKS);
+        this.numHashes = header.getInt(OFFSET_HASHES);
+        this.expectedInsertions = header.getLong(OFFSET_EXPECTED);
+        this.falsePositiveProbability = header.getDouble(OFFSET_FPP);
+        this.count.add(header.getLong(OFFSET_COUNT));
+    }
+
+    /**
+     * Opens the filter stored in the given file, or creates a new filter sized for the given number of strings and
+     * false-positive probability if the file does not exist yet. An existing filter keeps the dimensions it was
+     * created with.
+     *
+     * @param file
+     *         The file the filter is stored in
+     * @param expectedInsertions
+     *         The number of strings which are expected to be added to a new filter
+     * @param falsePositiveProbability
+     *         The probability of a new filter to report a string which was not added as contained, once the expected
+     *         number of strings was added
+     *
+     * @return The opened filter, which has to be closed once it is not needed anymore
+     *
+     * @throws IOException
+     *         If the file could not be created, is no filter file or is already used by another filter
+     */
+    public static MappedBloomFilter open(Path file, long expectedInsertions, double falsePositiveProbability)
+            throws IOException
+    {
+        if (expectedInsertions < 1)
+        {
+            throw new IllegalArgumentException("At least one insertion has to be expected");
+        }
+        if (falsePositiveProbability <= 0d || falsePositiveProbability >= 1d)
+        {
+            throw new IllegalArgumentException("The false-positive probability has to be between 0 and 1, found "
+                                               + falsePositiveProbability);
+        }
+        boolean created = !Files.exists(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try
+        {
+            FileLock lock;
+            try
+            {
+                lock = channel.tryLock();
+            }
+            catch (OverlappingFileLockException olEx)
+            {
+                lock = null;
+            }
+            if (null == lock)
+            {
+                throw new IOException("Bloom filter " + file + " is already in use");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            boolean initialize = created || channel.size() == HEADER_SIZE && header.getLong(OFFSET_MAGIC) == 0L;
+            if (initialize)
+            {
+                initHeader(header, expectedInsertions, falsePositiveProbability);
+            }
+            else if (header.getLong(OFFSET_MAGIC) != MAGIC)
+            {
+                throw new IOException(file + " is no Bloom filter");
+            }
+            long numBlocks = header.getLong(OFFSET_BLOCKS);
+            // mapping the blocks of a new filter grows the file to its full size
+            if (!initialize && channel.size() < HEADER_SIZE + numBlocks * BLOCK_BYTES)
+            {
+                throw new IOException("Bloom filter " + file + " is truncated");
+            }
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((numBlocks - 1) / BLOCKS_PER_SEGMENT + 1)];
+            for (int i = 0; i < segments.length; i++)
+            {
+                long first = (long) i * BLOCKS_PER_SEGMENT;
+                long blocks = Math.min(BLOCKS_PER_SEGMENT, numBlocks - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * BLOCK_BYTES,
+                                          blocks * BLOCK_BYTES);
+            }
+            return new MappedBloomFilter(file, channel, lock, header, segments);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static void initHeader(MappedByteBuffer header, long expectedInsertions, double falsePositiveProbability)
+    {
+        // start with the size of a classic filter and grow it until the blocked filter reaches the probability
+        double ln2 = Math.log(2d);
+        double bitsPerEntry = -Math.log(falsePositiveProbability) / (ln2 * ln2);
+        int numHashes = getNumHashes(bitsPerEntry);
+        while (getFalsePositiveProbability(bitsPerEntry, numHashes) > falsePositiveProbability
+               && bitsPerEntry < BLOCK_BITS)
+        {
+            bitsPerEntry *= 1.02d;
+            numHashes = getNumHashes(bitsPerEntry);
+        }
+        long numBlocks = Math.max(1L, (long) Math.ceil(expectedInsertions * bitsPerEntry / BLOCK_BITS));
+        header.putLong(OFFSET_BLOCKS, numBlocks);
+        header.putInt(OFFSET_HASHES, numHashes);
+        header.putLong(OFFSET_EXPECTED, expectedInsertions);
+        header.putDouble(OFFSET_FPP, falsePositiveProbability);
+        header.putLong(OFFSET_COUNT, 0L);
+        // the marker is written last, so a filter whose creation was interrupted is initialized again
+        header.putLong(OFFSET_MAGIC, MAGIC);
+    }
+
+    private static int getNumHashes(double bitsPerEntry)
+    {
+        return (int) Math.max(1L, Math.min(MAX_HASHES, Math.round(bitsPerEntry * Math.log(2d))));
+    }
+
+    /**
+     * Returns the false-positive probability of a blocked filter. The number of strings per block follows a Poisson
+     * distribution, so the probability is the average of the false-positive probabilities of classic filters of the
+     * size of a block, weighted by the probability of the block holding the respective number of strings.
+     */
+    private static double getFalsePositiveProbability(double bitsPerEntry, int numHashes)
+    {
+        double stringsPerBlock = BLOCK_BITS / bitsPerEntry;
+        double weight = Math.exp(-stringsPerBlock);
+        double probability = 0d;
+        for (int strings = 0; strings < 3 * stringsPerBlock + 100; strings++)
+        {
+            double bitSet = 1d - Math.pow(1d - 1d / BLOCK_BITS, (double) numHashes * strings);
+            probability += weight * Math.pow(bitSet, numHashes);
+            weight *= stringsPerBlock / (strings + 1);
+        }
+        return probability;
+    }
+
+    /**
+     * Adds the given string to the filter. If the same string is added by several threads at the same time, more than
+     * one of them may be told that the string was not contained before.
+     *
+     * @param value
+     *         The string to add
+     *
+     * @return <em>true</em> if the string was not contained in the filter before, <em>false</em> if it was added
+     *         before or is a false positive
+     */
+    public boolean put(CharSequence value)
+    {
+        this.checkOpen();
+        long hash = hash(value);
+        MappedByteBuffer segment = this.segmentOf(hash);
+        int base = this.offsetOf(hash);
+        long seed = hash;
+        long probe = 0L;
+        boolean changed = false;
+        for (int i = 0; i < this.numHashes; i++)
+        {
+            // each hash provides the bits of seven probes
+            if (i % 7 == 0)
+            {
+                seed = mix(seed ^ 0x9E3779B97F4A7C15L);
+                probe = seed;
+            }
+            else
+            {
+                probe <<= 9;
+            }
+            int bit = (int) (probe >>> 55);
+            int offset = base + (bit >>> 6 << 3);
+            long mask = 1L << (bit & 63);
+            long previous = (long) LONGS.getAndBitwiseOr(segment, offset, mask);
+            changed |= (previous & mask) == 0L;
+        }
+        if (changed)
+        {
+            this.count.increment();
+        }
+        return changed;
+    }
+
+    /**
+     * Checks whether the given string was added to the filter.
+     *
+     * @param value
+     *         The string to look up
+     *
+     * @return <em>false</em> if the string was definitely not added, <em>true</em> if it was added or is a false
+     *         positive
+     */
+    public boolean mightContain(CharSequence value)
+    {
+        this.checkOpen();
+        long hash = hash(value);
+        MappedByteBuffer segment = this.segmentOf(hash);
+        int base = this.offsetOf(hash);
+        long seed = hash;
+        long probe = 0L;
+        for (int i = 0; i < this.numHashes; i++)
+        {
+            // each hash provides the bits of seven probes
+            if (i % 7 == 0)
+            {
+                seed = mix(seed ^ 0x9E3779B97F4A7C15L);
+                probe = seed;
+            }
+            else
+            {
+                probe <<= 9;
+            }
+            int bit = (int) (probe >>> 55);
+            long word = (long) LONGS.getOpaque(segment, base + (bit >>> 6 << 3));
+            if ((word & 1L << (bit & 63)) == 0L)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long blockOf(long hash)
+    {
+        return Long.remainderUnsigned(hash, this.numBlocks);
+    }
+
+    private MappedByteBuffer segmentOf(long hash)
+    {
+        return this.segments[(int) (this.blockOf(hash) / BLOCKS_PER_SEGMENT)];
+    }
+
+    private int offsetOf(long hash)
+    {
+        return (int) (this.blockOf(hash) % BLOCKS_PER_SEGMENT) * BLOCK_BYTES;
+    }
+
+    /**
+     * A 64 bit hash of the characters of the given string, which mixes four characters at once using the finalizer of
+     * MurmurHash3.
+     */
+    private static long hash(CharSequence value)
+    {
+        int length = value.length();
+        long h = 0x1F3D5B79L * length;
+        int i = 0;
+        for (; i + 4 <= length; i += 4)
+        {
+            long chunk = value.charAt(i) | (long) value.charAt(i + 1) << 16 | (long) value.charAt(i + 2) << 32
+                         | (long) value.charAt(i + 3) << 48;
+            h = Long.rotateLeft(h ^ mix(chunk), 27) * 0x52DCE729L + 0x38495AB5L;
+        }
+        long rest = 0L;
+        for (int shift = 0; i < length; i++, shift += 16)
+        {
+            rest |= (long) value.charAt(i) << shift;
+        }
+        return mix(h ^ mix(rest));
+    }
+
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private void checkOpen()
+    {
+        if (this.closed)
+        {
+            throw new IllegalStateException("Bloom filter " + this.file + " was already closed");
+        }
+    }
+
+    /**
+     * Returns the number of strings added to the filter, including those added before the filter was reopened. Strings
+     * which were reported as already contained are not counted.
+     *
+     * @return The number of strings added
+     */
+    public long getCount()
+    {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the number of strings the filter was sized for.
+     *
+     * @return The expected number of strings
+     */
+    public long getExpectedInsertions()
+    {
+        return this.expectedInsertions;
+    }
+
+    /**
+     * Returns the false-positive probability the filter was sized for.
+     *
+     * @return The configured false-positive probability
+     */
+    public double getFalsePositiveProbability()
+    {
+        return this.falsePositiveProbability;
+    }
+
+    /**
+     * Returns the size of the filter in bytes.
+     *
+     * @return The number of bytes taken by the bits of the filter
+     */
+    public long getSizeInBytes()
+    {
+        return this.numBlocks * BLOCK_BYTES;
+    }
+
+    /**
+     * Writes the number of added strings and all modified bits to the file.
+     */
+    public void flush()
+    {
+        this.checkOpen();
+        this.header.putLong(OFFSET_COUNT, this.count.sum());
+        this.header.force();
+        for (MappedByteBuffer segment : this.segments)
+        {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        this.flush();
+        this.closed = true;
+        try
+        {
+            this.lock.release();
+        }
+        finally
+        {
+            this.channel.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MappedBloomFilter[file=" + this.file + ", count=" + this.getCount() + ", expected="
+               + this.expectedInsertions + ", fpp=" + this.falsePositiveProbability + ", bytes="
+               + this.getSizeInBytes() + "]";
+    }
+}
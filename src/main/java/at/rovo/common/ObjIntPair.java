@@ -0,0 +1,115 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import java.util.Objects;
+
+/**
+ * An immutable pair of an object and an <em>int</em> value, like a word and its frequency, which avoids boxing the
+ * value like a {@code Pair<String, Integer>} does. Pairs are ordered by the natural ordering of their first element and
+ * then by their last value, where a first element which is <em>null</em> is ordered before all other elements.
+ *
+ * @param <A>
+ *         The type of the first element
+ */
+@Immutable
+public final class ObjIntPair<A> implements Comparable<ObjIntPair<A>>
+{
+    private final A first;
+    private final int last;
+
+    /**
+     * Creates a new pair of the given element and value.
+     *
+     * @param first
+     *         The first element of the pair
+     * @param last
+     *         The last value of the pair
+     */
+    public ObjIntPair(A first, int last)
+    {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Returns the first element of this pair.
+     *
+     * @return The first element of this pair
+     */
+    public A getFirst()
+    {
+        return this.first;
+    }
+
+    /**
+     * Returns the last value of this pair.
+     *
+     * @return The last value of this pair
+     */
+    public int getLast()
+    {
+        return this.last;
+    }
+
+    /**
+     * Compares the first elements of both pairs and, if they are equal, the last values.
+     *
+     * @param other
+     *         The pair to compare this pair to
+     *
+     * @return A negative number, zero or a positive number if this pair is less than, equal to or greater than the
+     *         other pair
+     *
+     * @throws ClassCastException
+     *         If the first elements of the pairs are not {@link Comparable} to each other
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compareTo(ObjIntPair<A> other)
+    {
+        if (this.first != other.first)
+        {
+            if (null == this.first)
+            {
+                return -1;
+            }
+            if (null == other.first)
+            {
+                return 1;
+            }
+            int result = ((Comparable<Object>) this.first).compareTo(other.first);
+            if (result != 0)
+            {
+                return result;
+            }
+        }
+        return Integer.compare(this.last, other.last);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof ObjIntPair))
+        {
+            return false;
+        }
+        ObjIntPair<?> other = (ObjIntPair<?>) obj;
+        return this.last == other.last && Objects.equals(this.first, other.first);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Objects.hashCode(this.first) + this.last;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "(" + this.first + ", " + this.last + ")";
+    }
+}
@@ -0,0 +1,119 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+
+/**
+ * Assembles the lines of a page into a single string while normalizing the whitespace between consecutive lines. A
+ * line is separated from the content assembled so far by a single blank unless either side already provides one, and
+ * blank lines are dropped unless line breaks should be retained.
+ * <p>
+ * Only the last character appended is remembered to decide how to join the next line, so each line is processed in
+ * time linear to its length and without copying the content assembled so far.
+ */
+@NotThreadSafe
+final class PageAssembler
+{
+    private final StringBuilder buffer;
+    private final boolean includeLineBreaks;
+    /** Whether the content assembled so far ends with a blank */
+    private boolean endsWithBlank = false;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param includeLineBreaks
+     *         If set to true a line break is appended after each line
+     */
+    PageAssembler(boolean includeLineBreaks)
+    {
+        this(includeLineBreaks, 8192);
+    }
+
+    /**
+     * Creates a new instance which expects a page of roughly the given size.
+     *
+     * @param includeLineBreaks
+     *         If set to true a line break is appended after each line
+     * @param expectedLength
+     *         The expected number of characters of the page
+     */
+    PageAssembler(boolean includeLineBreaks, int expectedLength)
+    {
+        this.buffer = new StringBuilder(Math.max(16, expectedLength));
+        this.includeLineBreaks = includeLineBreaks;
+    }
+
+    /**
+     * Appends the next line of the page, which must not contain the line terminator.
+     *
+     * @param line
+     *         The line to append
+     */
+    void appendLine(CharSequence line)
+    {
+        int length = line.length();
+        boolean startsWithBlank = length > 0 && line.charAt(0) == ' ';
+        if (this.endsWithBlank && startsWithBlank)
+        {
+            // equivalent to String.trim(), which removes all leading and trailing control characters and blanks
+            int start = 0;
+            int end = length;
+            while (start < end && line.charAt(start) <= ' ')
+            {
+                start++;
+            }
+            while (end > start && line.charAt(end - 1) <= ' ')
+            {
+                end--;
+            }
+            this.append(line, start, end);
+        }
+        else if (this.endsWithBlank || startsWithBlank)
+        {
+            this.append(line, 0, length);
+        }
+        else if (!isBlank(line))
+        {
+            this.buffer.append(' ');
+            this.append(line, 0, length);
+        }
+        // add a line break if requested
+        if (this.includeLineBreaks)
+        {
+            this.buffer.append('\n');
+            this.endsWithBlank = false;
+        }
+    }
+
+    private void append(CharSequence line, int start, int end)
+    {
+        if (end > start)
+        {
+            this.buffer.append(line, start, end);
+            this.endsWithBlank = line.charAt(end - 1) == ' ';
+        }
+    }
+
+    private static boolean isBlank(CharSequence line)
+    {
+        for (int i = 0; i < line.length(); i++)
+        {
+            if (line.charAt(i) > ' ')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the page assembled so far.
+     *
+     * @return The content of the page
+     */
+    @Override
+    public String toString()
+    {
+        return this.buffer.toString();
+    }
+}
@@ -1,8 +1,16 @@
 package at.rovo.common;
 
+import java.util.Objects;
+
 /**
  * Defines a simple pair class that stores two elements and provides access to both of them via according getter- and
  * setter-methods.
+ * <p>
+ * Two pairs are equal if both of their elements are equal. As the elements of a pair can be changed, a pair which is
+ * used as key of a map or element of a set must not be modified; {@link #of(Object, Object)} returns pairs which can't
+ * be modified at all. Pairs whose elements are primitives should use {@link IntPair}, {@link LongDoublePair} or {@link
+ * ObjIntPair} instead, and large numbers of pairs are stored more compactly in a {@link IntPairList}, {@link
+ * LongDoublePairList} or {@link ObjIntPairList}.
  *
  * @param <A>
  *         The type of the first element
@@ -11,7 +19,7 @@ package at.rovo.common;
  *
  * @author Roman Vottner
  */
-public class Pair<A, B>
+public class Pair<A, B> implements Comparable<Pair<A, B>>
 {
     private A a = null;
     private B b = null;
@@ -77,4 +85,88 @@ public class Pair<A, B>
     {
         this.b = b;
     }
+
+    /**
+     * Creates a pair of the given elements which can't be modified.
+     *
+     * @param a
+     *         The first element of the pair
+     * @param b
+     *         The last element of the pair
+     * @param <A>
+     *         The type of the first element
+     * @param <B>
+     *         The type of the last element
+     *
+     * @return The pair whose setter-methods throw an {@link UnsupportedOperationException}
+     */
+    public static <A, B> Pair<A, B> of(A a, B b)
+    {
+        return new ImmutablePair<>(a, b);
+    }
+
+    /**
+     * Compares the first elements of both pairs and, if they are equal, the last elements by their natural ordering.
+     * Elements which are <em>null</em> are ordered before all other elements.
+     *
+     * @param other
+     *         The pair to compare this pair to
+     *
+     * @return A negative number, zero or a positive number if this pair is less than, equal to or greater than the
+     *         other pair
+     *
+     * @throws ClassCastException
+     *         If the elements of the pairs are not {@link Comparable} to each other
+     */
+    @Override
+    public int compareTo(Pair<A, B> other)
+    {
+        int result = compare(this.getFirst(), other.getFirst());
+        return result != 0 ? result : compare(this.getLast(), other.getLast());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object x, Object y)
+    {
+        if (x == y)
+        {
+            return 0;
+        }
+        if (null == x)
+        {
+            return -1;
+        }
+        if (null == y)
+        {
+            return 1;
+        }
+        return ((Comparable<Object>) x).compareTo(y);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof Pair))
+        {
+            return false;
+        }
+        Pair<?, ?> other = (Pair<?, ?>) obj;
+        return Objects.equals(this.getFirst(), other.getFirst()) && Objects.equals(this.getLast(), other.getLast());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Objects.hashCode(this.getFirst()) + Objects.hashCode(this.getLast());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "(" + this.getFirst() + ", " + this.getLast() + ")";
+    }
 }
@@ -0,0 +1,162 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The domains below which names are registered by the public, like <em>com</em> or <em>co.uk</em>, in the format of
+ * the <a href="https://publicsuffix.org/list/">Public Suffix List</a>. A {@link CookieJar} rejects cookies set for such
+ * a domain, as RFC 6265 section 5.3 demands, since they would be sent to all sites registered below it.
+ * <p>
+ * Each line of the list holds a rule: a domain, a wildcard rule like <em>*.ck</em> declaring all domains directly below
+ * <em>ck</em> as public suffixes, or an exception like <em>!www.ck</em> taking a domain out of a wildcard rule. Lines
+ * starting with <em>//</em> are comments. As demanded by the list, a top-level domain is a public suffix even if it is
+ * not listed.
+ * <p>
+ * The {@link #getDefault() default list} is a subset bundled with this library, which covers the top-level domains and
+ * the common registry suffixes below them. Crawls which need the complete list can {@link #parse(Reader) parse} a copy
+ * of it and pass it to the cookie jar.
+ */
+@Immutable
+public final class PublicSuffixList
+{
+    /** The name of the bundled list, relative to this class */
+    private static final String DEFAULT_LIST = "public_suffix_list.dat";
+
+    /** The domains listed as public suffixes */
+    private final Set<String> rules;
+    /** The domains whose direct subdomains are public suffixes */
+    private final Set<String> wildcards;
+    /** The domains which are no public suffixes although a wildcard rule matches them */
+    private final Set<String> exceptions;
+
+    private PublicSuffixList(Set<String> rules, Set<String> wildcards, Set<String> exceptions)
+    {
+        this.rules = Collections.unmodifiableSet(rules);
+        this.wildcards = Collections.unmodifiableSet(wildcards);
+        this.exceptions = Collections.unmodifiableSet(exceptions);
+    }
+
+    /**
+     * Holds the bundled list, which is only read once it is needed.
+     */
+    private static final class DefaultList
+    {
+        private static final PublicSuffixList INSTANCE = load();
+
+        private static PublicSuffixList load()
+        {
+            try (InputStream in = PublicSuffixList.class.getResourceAsStream(DEFAULT_LIST))
+            {
+                if (null == in)
+                {
+                    throw new IllegalStateException("Could not find the bundled list " + DEFAULT_LIST);
+                }
+                return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+            catch (IOException ioEx)
+            {
+                throw new IllegalStateException("Could not read the bundled list " + DEFAULT_LIST, ioEx);
+            }
+        }
+    }
+
+    /**
+     * Returns the list of public suffixes bundled with this library.
+     *
+     * @return The bundled list
+     */
+    public static PublicSuffixList getDefault()
+    {
+        return DefaultList.INSTANCE;
+    }
+
+    /**
+     * Parses a list in the format of the Public Suffix List. Internationalized domains are converted to their ASCII
+     * form, so they are matched against the hosts of URLs. The reader is not closed.
+     *
+     * @param reader
+     *         The reader providing the list
+     *
+     * @return The parsed list
+     *
+     * @throws IOException
+     *         If the list could not be read
+     */
+    public static PublicSuffixList parse(Reader reader) throws IOException
+    {
+        Set<String> rules = new HashSet<>();
+        Set<String> wildcards = new HashSet<>();
+        Set<String> exceptions = new HashSet<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while (null != (line = lines.readLine()))
+        {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//"))
+            {
+                continue;
+            }
+            // only the text up to the first white space is part of the rule
+            String rule = line.split("\\s", 2)[0];
+            if (rule.startsWith("!"))
+            {
+                exceptions.add(toAscii(rule.substring(1)));
+            }
+            else if (rule.startsWith("*."))
+            {
+                wildcards.add(toAscii(rule.substring(2)));
+            }
+            else
+            {
+                rules.add(toAscii(rule));
+            }
+        }
+        return new PublicSuffixList(rules, wildcards, exceptions);
+    }
+
+    private static String toAscii(String domain)
+    {
+        try
+        {
+            return IDN.toASCII(domain, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+        }
+        catch (IllegalArgumentException iaEx)
+        {
+            return domain.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Checks whether the given domain is a public suffix, so no cookies may be set for it by its subdomains.
+     *
+     * @param domain
+     *         The domain in lower case and in its ASCII form
+     *
+     * @return <em>true</em> if the domain is a public suffix
+     */
+    public boolean isPublicSuffix(String domain)
+    {
+        if (this.exceptions.contains(domain))
+        {
+            return false;
+        }
+        if (this.rules.contains(domain))
+        {
+            return true;
+        }
+        int dot = domain.indexOf('.');
+        // a domain without a matching rule is only a public suffix if it is a top-level domain
+        return dot == -1 || this.wildcards.contains(domain.substring(dot + 1));
+    }
+}
@@ -0,0 +1,156 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.GuardedBy;
+import at.rovo.common.annotations.Immutable;
+import at.rovo.common.annotations.ThreadSafe;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the final target of URLs which were permanently redirected via a <em>301 Moved Permanently</em> or a
+ * <em>308 Permanent Redirect</em> response, so a {@link UrlReader} can request the final target right away on the next
+ * read of such an URL instead of following the whole chain of redirects again.
+ * <p>
+ * The cache holds up to a fixed number of URLs and evicts the least recently used URL once the limit is reached. A
+ * cached redirect is furthermore only used within a limited time after it was observed, as a permanent redirect is not
+ * necessarily permanent forever.
+ */
+@ThreadSafe
+public class RedirectCache
+{
+    /** The default number of redirects which are remembered */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    /** The default time in milliseconds a redirect is remembered */
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(1L);
+
+    /**
+     * The target of a redirect together with the point in time it expires.
+     */
+    @Immutable
+    private static final class Target
+    {
+        private final String url;
+        private final long expiresAt;
+
+        private Target(String url, long expiresAt)
+        {
+            this.url = url;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    /** The cached redirects ordered from the least to the most recently used one */
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Target> targets = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Creates a new cache which remembers up to {@link #DEFAULT_MAX_ENTRIES} redirects for {@link
+     * #DEFAULT_TIME_TO_LIVE_MILLIS} milliseconds.
+     */
+    public RedirectCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new cache which remembers up to <em>maxEntries</em> redirects for the given time.
+     *
+     * @param maxEntries
+     *         The maximum number of redirects to remember
+     * @param timeToLive
+     *         The time a redirect is remembered after it was observed
+     * @param unit
+     *         The time unit of the time to live
+     */
+    public RedirectCache(int maxEntries, long timeToLive, TimeUnit unit)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("The cache has to hold at least one redirect");
+        }
+        if (timeToLive < 0)
+        {
+            throw new IllegalArgumentException("The time to live must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+    }
+
+    /**
+     * Returns the final target the given URL was permanently redirected to.
+     *
+     * @param url
+     *         The URL to look up
+     *
+     * @return The final target of the URL or <em>null</em> if no valid redirect is known for the URL
+     */
+    public synchronized String getTarget(String url)
+    {
+        Target target = this.targets.get(url);
+        if (null == target)
+        {
+            return null;
+        }
+        if (target.expiresAt <= System.currentTimeMillis())
+        {
+            this.targets.remove(url);
+            return null;
+        }
+        return target.url;
+    }
+
+    /**
+     * Remembers that the given URL is permanently redirected to the provided target.
+     *
+     * @param url
+     *         The URL which got redirected
+     * @param target
+     *         The final target the URL was redirected to
+     */
+    public synchronized void put(String url, String target)
+    {
+        if (url.equals(target))
+        {
+            return;
+        }
+        this.targets.put(url, new Target(target, System.currentTimeMillis() + this.timeToLiveMillis));
+        if (this.targets.size() > this.maxEntries)
+        {
+            Iterator<Target> eldest = this.targets.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Forgets the redirect of the given URL.
+     *
+     * @param url
+     *         The URL whose redirect should be forgotten
+     */
+    public synchronized void remove(String url)
+    {
+        this.targets.remove(url);
+    }
+
+    /**
+     * Returns the number of redirects remembered, which might include redirects that expired but were not evicted yet.
+     *
+     * @return The number of redirects remembered
+     */
+    public synchronized int size()
+    {
+        return this.targets.size();
+    }
+
+    /**
+     * Forgets all redirects.
+     */
+    public synchronized void clear()
+    {
+        this.targets.clear();
+    }
+}
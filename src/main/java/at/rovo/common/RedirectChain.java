@@ -0,0 +1,141 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the hops followed while reading a single page. A chain refuses to follow more than a configured number
+ * of redirects and detects redirect loops. As some sites redirect to a page which sets a cookie and back to the
+ * original page, revisiting a URL is only considered a loop if the same cookies are sent along as on the previous
+ * visit.
+ * <p>
+ * Once the final response was received, the permanent redirects of the chain are stored in a {@link RedirectCache}
+ * which maps each permanently redirected URL to the last URL reached via permanent redirects only. A redirect whose
+ * response sets cookies is not cached, as skipping it on the next read would skip the cookies as well, which the
+ * following hops might depend on.
+ */
+@NotThreadSafe
+final class RedirectChain
+{
+    private final int maxRedirects;
+    /** The URLs requested so far */
+    private final List<String> urls = new ArrayList<>();
+    /** Whether the response of the URL at the same position was a permanent redirect which may be cached */
+    private final List<Boolean> permanent = new ArrayList<>();
+    /** The URLs requested so far along with the cookies sent */
+    private final Set<String> visited = new HashSet<>();
+
+    /**
+     * Creates a new chain.
+     *
+     * @param maxRedirects
+     *         The maximum number of redirects to follow
+     */
+    RedirectChain(int maxRedirects)
+    {
+        this.maxRedirects = maxRedirects;
+    }
+
+    /**
+     * Registers a request of the given URL.
+     *
+     * @param url
+     *         The URL to request
+     * @param cookieHeader
+     *         The cookies sent along with the request or <em>null</em> if no cookies are sent
+     *
+     * @throws IOException
+     *         If too many redirects were followed or the URL was already requested with the same cookies
+     */
+    void visit(String url, String cookieHeader) throws IOException
+    {
+        if (this.urls.size() > this.maxRedirects)
+        {
+            throw new IOException("Exceeded the maximum of " + this.maxRedirects + " redirects on reading "
+                                  + this.urls.get(0));
+        }
+        if (!this.visited.add(url + '\n' + (null != cookieHeader ? cookieHeader : "")))
+        {
+            throw new IOException("Detected a redirect loop on reading " + this.urls.get(0) + " at " + url);
+        }
+        this.urls.add(url);
+        this.permanent.add(Boolean.FALSE);
+    }
+
+    /**
+     * Records the response received for the URL visited last.
+     *
+     * @param statusCode
+     *         The status code of the response
+     * @param setsCookies
+     *         Whether the response contained <em>Set-Cookie</em> headers
+     */
+    void received(int statusCode, boolean setsCookies)
+    {
+        this.permanent.set(this.permanent.size() - 1, (statusCode == 301 || statusCode == 308) && !setsCookies);
+    }
+
+    /**
+     * Stores the permanent redirects of this chain in the given cache.
+     *
+     * @param cache
+     *         The cache to store the redirects in
+     * @param origin
+     *         The URL a caller requested, which differs from the first URL of this chain if the chain started at the
+     *         cached target of the origin
+     */
+    void storeIn(RedirectCache cache, String origin)
+    {
+        String target = null;
+        for (int i = this.urls.size() - 2; i >= 0; i--)
+        {
+            if (!this.permanent.get(i))
+            {
+                target = null;
+                continue;
+            }
+            if (null == target)
+            {
+                target = this.urls.get(i + 1);
+            }
+            cache.put(this.urls.get(i), target);
+        }
+        if (null != target && !origin.equals(this.urls.get(0)))
+        {
+            // the cached target of the origin got moved permanently as well
+            cache.put(origin, target);
+        }
+    }
+
+    /**
+     * Resolves the location a response redirects to against the URL it was received for, as the location might be
+     * relative.
+     *
+     * @param url
+     *         The URL of the response
+     * @param location
+     *         The content of the <em>Location</em> header
+     *
+     * @return The absolute URL to redirect to
+     *
+     * @throws IOException
+     *         If the location is not a valid URL
+     */
+    static String resolve(String url, String location) throws IOException
+    {
+        try
+        {
+            return new URL(new URL(url), location.trim()).toExternalForm();
+        }
+        catch (MalformedURLException muEx)
+        {
+            throw new IOException("Invalid redirect location " + location + " received for " + url, muEx);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import at.rovo.common.http.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Exposes the body of a {@link Response} as {@link ReadableByteChannel}. Heap buffers are filled directly from the
+ * body, while direct buffers are filled via a small transfer array which is reused for every read. Closing the channel
+ * closes the response and releases its connection.
+ */
+@NotThreadSafe
+final class ResponseChannel implements ReadableByteChannel
+{
+    private static final int TRANSFER_SIZE = 8192;
+
+    private final Response response;
+    private final InputStream body;
+    private byte[] transfer = null;
+    private boolean open = true;
+
+    ResponseChannel(Response response)
+    {
+        this.response = response;
+        this.body = response.getBody();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        if (!this.open)
+        {
+            throw new ClosedChannelException();
+        }
+        int length = dst.remaining();
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (dst.hasArray())
+        {
+            int read = this.body.read(dst.array(), dst.arrayOffset() + dst.position(), length);
+            if (read > 0)
+            {
+                dst.position(dst.position() + read);
+            }
+            return read;
+        }
+
+        if (null == this.transfer)
+        {
+            this.transfer = new byte[TRANSFER_SIZE];
+        }
+        int read = this.body.read(this.transfer, 0, Math.min(length, TRANSFER_SIZE));
+        if (read > 0)
+        {
+            dst.put(this.transfer, 0, read);
+        }
+        return read;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.open;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.open)
+        {
+            this.open = false;
+            this.response.close();
+        }
+    }
+}
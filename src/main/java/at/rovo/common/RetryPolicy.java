@@ -0,0 +1,171 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.net.ssl.SSLException;
+
+/**
+ * Decides whether reading a page is attempted again after it failed and how long to wait before doing so. Only
+ * failures which are likely to be transient are retried: responses with a retryable status code, like <em>503 Service
+ * Unavailable</em>, and exchanges which failed due to a refused or reset connection or a timeout. Failures like an
+ * unknown host, a TLS error or a <em>404 Not Found</em> will not go away by trying again.
+ * <p>
+ * The delay between two attempts grows exponentially from the initial backoff up to the maximum backoff. To prevent
+ * clients which failed at the same time from retrying in lockstep, the actual delay is drawn at random between zero and
+ * the exponential delay ("full jitter"). A <em>Retry-After</em> header sent by the server is honored instead, unless it
+ * asks to wait for longer than the maximum backoff, in which case the page is not retried.
+ */
+@Immutable
+public final class RetryPolicy
+{
+    /** The status codes which are retried by default */
+    private static final int[] DEFAULT_RETRYABLE_STATUS_CODES = {408, 429, 500, 502, 503, 504};
+
+    /** A policy which never retries */
+    public static final RetryPolicy NONE = new RetryPolicy(0, Duration.ZERO, Duration.ZERO);
+    /** Retries a page twice, waiting for up to 200 ms before the first and 400 ms before the second retry */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(2, Duration.ofMillis(200), Duration.ofSeconds(10));
+
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final int[] retryableStatusCodes;
+
+    /**
+     * Creates a new policy which retries requests with the status codes 408, 429, 500, 502, 503 and 504.
+     *
+     * @param maxRetries
+     *         The maximum number of times a page is attempted again
+     * @param initialBackoff
+     *         The maximum delay before the first retry
+     * @param maxBackoff
+     *         The maximum delay before any retry
+     */
+    public RetryPolicy(int maxRetries, Duration initialBackoff, Duration maxBackoff)
+    {
+        this(maxRetries, initialBackoff, maxBackoff, DEFAULT_RETRYABLE_STATUS_CODES);
+    }
+
+    private RetryPolicy(int maxRetries, Duration initialBackoff, Duration maxBackoff, int[] retryableStatusCodes)
+    {
+        if (maxRetries < 0)
+        {
+            throw new IllegalArgumentException("The maximum number of retries must not be negative");
+        }
+        if (null == initialBackoff || null == maxBackoff || initialBackoff.isNegative()
+            || maxBackoff.compareTo(initialBackoff) < 0)
+        {
+            throw new IllegalArgumentException("The maximum backoff must not be shorter than the initial backoff");
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryableStatusCodes = retryableStatusCodes.clone();
+        Arrays.sort(this.retryableStatusCodes);
+    }
+
+    /**
+     * Returns a copy of this policy which retries the given status codes instead.
+     *
+     * @param statusCodes
+     *         The status codes of the responses to retry
+     *
+     * @return The policy retrying the given status codes
+     */
+    public RetryPolicy withRetryableStatusCodes(int... statusCodes)
+    {
+        return new RetryPolicy(this.maxRetries, this.initialBackoff, this.maxBackoff, statusCodes);
+    }
+
+    /**
+     * Returns the maximum number of times a page is attempted again.
+     *
+     * @return The maximum number of retries
+     */
+    public int getMaxRetries()
+    {
+        return this.maxRetries;
+    }
+
+    /**
+     * Specifies whether a response with the given status code is retried.
+     *
+     * @param statusCode
+     *         The status code of the response
+     *
+     * @return <em>true</em> if the status code signals a transient failure
+     */
+    public boolean isRetryable(int statusCode)
+    {
+        return Arrays.binarySearch(this.retryableStatusCodes, statusCode) >= 0;
+    }
+
+    /**
+     * Specifies whether an exchange which failed with the given exception before a response was received is retried.
+     *
+     * @param failure
+     *         The exception the exchange failed with
+     *
+     * @return <em>true</em> if the exception signals a transient failure
+     */
+    public boolean isRetryable(IOException failure)
+    {
+        if (failure instanceof SocketTimeoutException || failure instanceof HttpTimeoutException)
+        {
+            return true;
+        }
+        if (failure instanceof InterruptedIOException || failure instanceof UnknownHostException
+            || failure instanceof NoRouteToHostException || failure instanceof SSLException)
+        {
+            return false;
+        }
+        // refused or reset connections as well as connections closed before the response was complete
+        return failure instanceof ConnectException || failure instanceof SocketException
+               || failure instanceof EOFException;
+    }
+
+    /**
+     * Returns the time to wait for before the next attempt.
+     *
+     * @param retries
+     *         The number of retries performed so far
+     * @param retryAfter
+     *         The time the server asked to wait for or <em>null</em> if the server did not ask for a specific time
+     *
+     * @return The time to wait for or <em>null</em> if the page should not be attempted again
+     */
+    public Duration getDelay(int retries, Duration retryAfter)
+    {
+        if (retries >= this.maxRetries)
+        {
+            return null;
+        }
+        if (null != retryAfter)
+        {
+            return retryAfter.compareTo(this.maxBackoff) <= 0 ? retryAfter : null;
+        }
+        long initial = this.initialBackoff.toNanos();
+        long exponential = retries >= 62 || initial > (this.maxBackoff.toNanos() >> retries)
+                           ? this.maxBackoff.toNanos() : initial << retries;
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(exponential + 1));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RetryPolicy[maxRetries=" + this.maxRetries + ", initialBackoff=" + this.initialBackoff
+               + ", maxBackoff=" + this.maxBackoff + ", statusCodes=" + Arrays.toString(this.retryableStatusCodes)
+               + "]";
+    }
+}
@@ -0,0 +1,477 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.GuardedBy;
+import at.rovo.common.annotations.ThreadSafe;
+import at.rovo.common.http.HttpTransport;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.invoke.MethodHandles;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the <em>robots.txt</em> file of each host once via a {@link UrlReader} and keeps the {@link RobotsTxt rules}
+ * which apply to a crawler for a fixed time, so any number of threads can check whether they may read an URL via
+ * {@link #isAllowed(String)} without fetching the file again.
+ * <p>
+ * The rules are cached per scheme, host and port for up to <em>maxEntries</em> hosts. Looking up the rules of an URL
+ * neither parses the URL nor creates a key for it: the origin part of the URL is hashed and compared in place against
+ * the cached origins, and the rules match the path in place too. Hence checking an URL of a cached host does not
+ * allocate and does not lock. Only on a miss the origin is extracted and the file is fetched, where concurrent checks
+ * of the same host wait for a single fetch.
+ * <p>
+ * As specified by RFC 9309, a host which answers with a <em>4xx</em> status, except <em>429</em>, has no rules, and
+ * everything of a host whose file could not be read due to a server or network error is disallowed. The latter is only
+ * cached for the shorter <em>errorTtl</em>, so the file is requested again soon.
+ * <p>
+ * The crawl delay of a host is available via {@link #getCrawlDelay(String)} and can be applied to a {@link
+ * FetchScheduler} via {@link FetchScheduler#setCrawlDelay(String, Duration)}.
+ */
+@ThreadSafe
+public class RobotsCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default number of hosts whose rules are cached */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    /** The default time in milliseconds the rules of a host are cached, which RFC 9309 recommends as maximum */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24L);
+    /** The default time in milliseconds the rules are cached if the file could not be read */
+    public static final long DEFAULT_ERROR_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10L);
+    /** The number of redirects followed on fetching a file, as recommended by RFC 9309 */
+    private static final int MAX_REDIRECTS = 5;
+
+    private final String userAgent;
+    private final HttpTransport transport;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long errorTtlNanos;
+    /** The cached rules, read without locking and replaced under the lock of this instance */
+    private final AtomicReferenceArray<Node> table;
+    /** The fetches which are currently in progress by their origin */
+    private final ConcurrentMap<String, CompletableFuture<RobotsTxt>> fetches = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    @GuardedBy("this")
+    private int size = 0;
+
+    /**
+     * A cached entry, which forms an immutable chain with the other entries of the same bucket.
+     */
+    private static final class Node
+    {
+        /** The origin in lower case, like <em>https://example.com:8443</em> */
+        private final String origin;
+        private final int hash;
+        private final RobotsTxt robots;
+        private final long expiresAt;
+        private final Node next;
+
+        private Node(String origin, int hash, RobotsTxt robots, long expiresAt, Node next)
+        {
+            this.origin = origin;
+            this.hash = hash;
+            this.robots = robots;
+            this.expiresAt = expiresAt;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Creates a new instance which fetches the files via the transport shared by {@link UrlReader} instances and caches
+     * the rules of up to {@link #DEFAULT_MAX_ENTRIES} hosts for {@link #DEFAULT_TTL_MILLIS} milliseconds.
+     *
+     * @param userAgent
+     *         The product token of the crawler the rules are selected for, like <em>examplebot</em>, which is also
+     *         sent as <em>User-Agent</em> header when fetching the files
+     */
+    public RobotsCache(String userAgent)
+    {
+        this(userAgent, UrlReader.getDefaultTransport(), DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS,
+             DEFAULT_ERROR_TTL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new instance which fetches the files via the given transport.
+     *
+     * @param userAgent
+     *         The product token of the crawler the rules are selected for, which is also sent as <em>User-Agent</em>
+     *         header when fetching the files
+     * @param transport
+     *         The transport to fetch the files with
+     * @param maxEntries
+     *         The maximum number of hosts whose rules are cached
+     * @param ttl
+     *         The time the rules of a host are cached
+     * @param errorTtl
+     *         The time the rules are cached if the file could not be read due to a server or network error
+     * @param unit
+     *         The time unit of both TTLs
+     */
+    public RobotsCache(String userAgent, HttpTransport transport, int maxEntries, long ttl, long errorTtl,
+                       TimeUnit unit)
+    {
+        if (null == userAgent || userAgent.isBlank())
+        {
+            throw new IllegalArgumentException("No user agent provided");
+        }
+        if (null == transport)
+        {
+            throw new IllegalArgumentException("No transport provided");
+        }
+        if (maxEntries < 1 || maxEntries > 1 << 24)
+        {
+            throw new IllegalArgumentException("Between 1 and " + (1 << 24) + " entries have to be cached, found "
+                                               + maxEntries);
+        }
+        if (ttl < 0L || errorTtl < 0L)
+        {
+            throw new IllegalArgumentException("TTLs must not be negative, found " + ttl + " and " + errorTtl);
+        }
+        this.userAgent = userAgent;
+        this.transport = transport;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.errorTtlNanos = unit.toNanos(errorTtl);
+        // at most half of the buckets are used, so the chains stay short
+        this.table = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(16, maxEntries) * 2 - 1) * 2);
+    }
+
+    /**
+     * Returns whether the crawler may read the given URL according to the <em>robots.txt</em> file of its host. The
+     * file is fetched if the rules of the host are not cached yet, which blocks the calling thread.
+     *
+     * @param url
+     *         The URL to check
+     *
+     * @return <em>true</em> if the URL may be read, <em>false</em> if it is disallowed
+     *
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    public boolean isAllowed(String url) throws IllegalArgumentException
+    {
+        return this.getRobotsTxt(url).isAllowed(url);
+    }
+
+    /**
+     * Returns the time the crawler should wait between two requests to the host of the given URL, as declared in the
+     * <em>robots.txt</em> file of the host.
+     *
+     * @param url
+     *         An URL of the host
+     *
+     * @return The crawl delay of the host or <em>null</em> if the host declared none
+     *
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    public Duration getCrawlDelay(String url) throws IllegalArgumentException
+    {
+        return this.getRobotsTxt(url).getCrawlDelay();
+    }
+
+    /**
+     * Returns the rules of the host of the given URL, which are fetched if they are not cached yet.
+     *
+     * @param url
+     *         An URL of the host
+     *
+     * @return The rules which apply to the crawler on the host
+     *
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    public RobotsTxt getRobotsTxt(String url) throws IllegalArgumentException
+    {
+        int originEnd = originEnd(url);
+        int hash = hash(url, originEnd);
+        RobotsTxt robots = this.lookup(url, originEnd, hash, System.nanoTime());
+        if (null != robots)
+        {
+            this.hits.increment();
+            return robots;
+        }
+        this.misses.increment();
+        return this.fetch(url.substring(0, originEnd).toLowerCase(Locale.ROOT), hash);
+    }
+
+    /**
+     * Returns the end of the scheme, host and port of the URL.
+     */
+    private static int originEnd(String url)
+    {
+        int start;
+        if (url.regionMatches(true, 0, "http://", 0, 7))
+        {
+            start = 7;
+        }
+        else if (url.regionMatches(true, 0, "https://", 0, 8))
+        {
+            start = 8;
+        }
+        else
+        {
+            throw new IllegalArgumentException("No valid URL provided! Found " + url);
+        }
+        int end = start;
+        while (end < url.length())
+        {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#')
+            {
+                break;
+            }
+            if (c == '@')
+            {
+                throw new IllegalArgumentException("URLs with user info are not supported, found " + url);
+            }
+            end++;
+        }
+        if (end == start)
+        {
+            throw new IllegalArgumentException("No host found in " + url);
+        }
+        return end;
+    }
+
+    /**
+     * Hashes the first <em>length</em> characters of the URL ignoring the case of ASCII letters.
+     */
+    private static int hash(String url, int length)
+    {
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+        {
+            char c = url.charAt(i);
+            hash = 31 * hash + (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+        }
+        // spread the higher bits, as only the lower bits select the bucket
+        return hash ^ (hash >>> 16);
+    }
+
+    private RobotsTxt lookup(String url, int originEnd, int hash, long now)
+    {
+        for (Node node = this.table.get(hash & (this.table.length() - 1)); null != node; node = node.next)
+        {
+            if (node.hash == hash && node.origin.length() == originEnd
+                && url.regionMatches(true, 0, node.origin, 0, originEnd))
+            {
+                return now - node.expiresAt < 0L ? node.robots : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetches the rules of the given origin, unless another thread is already fetching them, in which case its result
+     * is awaited.
+     */
+    private RobotsTxt fetch(String origin, int hash)
+    {
+        CompletableFuture<RobotsTxt> created = new CompletableFuture<>();
+        CompletableFuture<RobotsTxt> running = this.fetches.putIfAbsent(origin, created);
+        if (null != running)
+        {
+            return running.join();
+        }
+        try
+        {
+            // the rules might have been cached after the lookup of the caller missed them
+            RobotsTxt robots = this.lookup(origin, origin.length(), hash, System.nanoTime());
+            if (null == robots)
+            {
+                robots = this.load(origin);
+                // DISALLOW_ALL is never the result of parsing a file, only of failing to read it
+                long ttl = robots == RobotsTxt.DISALLOW_ALL ? this.errorTtlNanos : this.ttlNanos;
+                this.put(origin, hash, robots, System.nanoTime() + ttl);
+            }
+            created.complete(robots);
+            return robots;
+        }
+        catch (RuntimeException rEx)
+        {
+            created.completeExceptionally(rEx);
+            throw rEx;
+        }
+        finally
+        {
+            this.fetches.remove(origin, created);
+        }
+    }
+
+    private RobotsTxt load(String origin)
+    {
+        String url = origin + "/robots.txt";
+        UrlReader reader = new UrlReader(this.transport);
+        reader.setMaxRedirects(MAX_REDIRECTS);
+        reader.setUserAgent(this.userAgent);
+        try (Reader content = reader.readCharacters(url))
+        {
+            RobotsTxt robots = RobotsTxt.parse(content, this.userAgent);
+            LOG.trace("Fetched {}: {}", url, robots);
+            return robots;
+        }
+        catch (IOException ioEx)
+        {
+            int status = reader.getStatusCode();
+            if (status >= 400 && status < 500 && status != 429)
+            {
+                LOG.trace("{} is unavailable with status {}, allowing all", url, status);
+                return RobotsTxt.ALLOW_ALL;
+            }
+            LOG.debug("Could not read {}, disallowing all. Reason: {}", url, ioEx.getLocalizedMessage());
+            return RobotsTxt.DISALLOW_ALL;
+        }
+    }
+
+    private synchronized void put(String origin, int hash, RobotsTxt robots, long expiresAt)
+    {
+        int index = hash & (this.table.length() - 1);
+        Node head = this.table.get(index);
+        Node chain = without(head, origin);
+        if (chain == head)
+        {
+            this.size++;
+        }
+        this.table.set(index, new Node(origin, hash, robots, expiresAt, chain));
+        if (this.size > this.maxEntries)
+        {
+            this.evict(System.nanoTime());
+        }
+    }
+
+    /**
+     * Returns the chain without the entry of the given origin, or the chain itself if it has no such entry.
+     */
+    private static Node without(Node head, String origin)
+    {
+        for (Node node = head; null != node; node = node.next)
+        {
+            if (node.origin.equals(origin))
+            {
+                // the entries in front of the removed one are copied, as the chain is shared with concurrent readers
+                Node chain = node.next;
+                for (Node copy = head; copy != node; copy = copy.next)
+                {
+                    chain = new Node(copy.origin, copy.hash, copy.robots, copy.expiresAt, chain);
+                }
+                return chain;
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Removes the expired entries and, if still too many hosts are cached, the entries expiring next until a tenth of
+     * the capacity is free again.
+     */
+    @GuardedBy("this")
+    private void evict(long now)
+    {
+        List<Node> nodes = new ArrayList<>(this.size);
+        for (int i = 0; i < this.table.length(); i++)
+        {
+            for (Node node = this.table.get(i); null != node; node = node.next)
+            {
+                if (now - node.expiresAt < 0L)
+                {
+                    nodes.add(node);
+                }
+            }
+        }
+        int target = this.maxEntries - this.maxEntries / 10;
+        if (nodes.size() > target)
+        {
+            nodes.sort(Comparator.comparingLong((Node node) -> node.expiresAt - now).reversed());
+            nodes = nodes.subList(0, target);
+        }
+        Node[] buckets = new Node[this.table.length()];
+        for (Node node : nodes)
+        {
+            int index = node.hash & (buckets.length - 1);
+            buckets[index] = new Node(node.origin, node.hash, node.robots, node.expiresAt, buckets[index]);
+        }
+        for (int i = 0; i < buckets.length; i++)
+        {
+            this.table.set(i, buckets[i]);
+        }
+        this.size = nodes.size();
+    }
+
+    /**
+     * Removes the cached rules of the host of the given URL, so its <em>robots.txt</em> file is fetched again on the
+     * next check.
+     *
+     * @param url
+     *         An URL of the host
+     *
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    public synchronized void invalidate(String url) throws IllegalArgumentException
+    {
+        String origin = url.substring(0, originEnd(url)).toLowerCase(Locale.ROOT);
+        int index = hash(origin, origin.length()) & (this.table.length() - 1);
+        Node head = this.table.get(index);
+        Node chain = without(head, origin);
+        if (chain != head)
+        {
+            this.table.set(index, chain);
+            this.size--;
+        }
+    }
+
+    /**
+     * Removes the cached rules of all hosts.
+     */
+    public synchronized void clear()
+    {
+        for (int i = 0; i < this.table.length(); i++)
+        {
+            this.table.set(i, null);
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of hosts whose rules are cached, including expired ones.
+     *
+     * @return The number of cached hosts
+     */
+    public synchronized int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of checks which were answered from the cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getHitCount()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of checks which had to fetch the <em>robots.txt</em> file or wait for its fetch.
+     *
+     * @return The number of cache misses
+     */
+    public long getMissCount()
+    {
+        return this.misses.sum();
+    }
+}
@@ -0,0 +1,533 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.Immutable;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules of a <em>robots.txt</em> file which apply to a single crawler, as specified by RFC 9309. The rules of the
+ * groups naming the product token of the crawler are used, or the rules of the <em>*</em> groups if no group names the
+ * crawler. Of all rules matching the path of an URL the most specific one, the one with the longest pattern, decides
+ * whether the URL may be crawled. If an <em>allow</em> and a <em>disallow</em> rule are equally specific, the URL is
+ * allowed. URLs no rule matches and <em>/robots.txt</em> itself are always allowed.
+ * <p>
+ * Patterns may contain <em>*</em>, which matches any sequence of characters, and may end with <em>$</em>, which
+ * anchors the pattern at the end of the path. Characters outside of printable ASCII are percent-encoded as UTF-8, so
+ * the patterns match the encoded paths of URLs. The rules are sorted by their specificity on parsing, so a check stops
+ * at the first matching rule and neither allocates nor uses regular expressions.
+ * <p>
+ * The non-standard <em>crawl-delay</em> of the selected groups is available via {@link #getCrawlDelay()}.
+ */
+@Immutable
+public final class RobotsTxt
+{
+    /** The number of characters which are parsed at most, further content is ignored */
+    public static final int MAX_SIZE = 500 * 1024;
+    /** The rules of a host without a <em>robots.txt</em> file */
+    public static final RobotsTxt ALLOW_ALL = new RobotsTxt(new Rule[0], null);
+    /** The rules of a host whose <em>robots.txt</em> file could not be read due to a server or network error */
+    public static final RobotsTxt DISALLOW_ALL = new RobotsTxt(new Rule[] {new Rule("/", false)}, null);
+
+    private static final String ROBOTS_TXT = "/robots.txt";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /** The rules ordered by their specificity, the first matching rule decides */
+    private final Rule[] rules;
+    private final Duration crawlDelay;
+
+    /**
+     * An <em>allow</em> or <em>disallow</em> rule.
+     */
+    @Immutable
+    private static final class Rule
+    {
+        private final String pattern;
+        private final boolean allow;
+        /** Whether the pattern ended with <em>$</em>, which is not part of {@link #pattern} */
+        private final boolean anchored;
+        /** Whether the pattern contains no wildcard and can be matched as a plain prefix */
+        private final boolean literal;
+
+        private Rule(String pattern, boolean allow)
+        {
+            this.anchored = pattern.endsWith("$");
+            this.pattern = this.anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            this.allow = allow;
+            this.literal = this.pattern.indexOf('*') < 0;
+        }
+
+        /**
+         * Returns whether the pattern matches the path between <em>start</em> and <em>end</em> of the given URL.
+         */
+        private boolean matches(String url, int start, int end)
+        {
+            int length = this.pattern.length();
+            if (this.literal)
+            {
+                return (this.anchored ? end - start == length : end - start >= length)
+                       && url.startsWith(this.pattern, start);
+            }
+            // greedy wildcard matching which backtracks to the last '*' only
+            int p = 0;
+            int s = start;
+            int star = -1;
+            int starMatch = -1;
+            while (s < end)
+            {
+                if (p < length)
+                {
+                    char c = this.pattern.charAt(p);
+                    if (c == '*')
+                    {
+                        star = p++;
+                        starMatch = s;
+                        continue;
+                    }
+                    if (c == url.charAt(s))
+                    {
+                        p++;
+                        s++;
+                        continue;
+                    }
+                }
+                else if (!this.anchored)
+                {
+                    return true;
+                }
+                if (star < 0)
+                {
+                    return false;
+                }
+                p = star + 1;
+                s = ++starMatch;
+            }
+            while (p < length && this.pattern.charAt(p) == '*')
+            {
+                p++;
+            }
+            return p == length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return (this.allow ? "Allow: " : "Disallow: ") + this.pattern + (this.anchored ? "$" : "");
+        }
+    }
+
+    private RobotsTxt(Rule[] rules, Duration crawlDelay)
+    {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+    }
+
+    /**
+     * Parses the given <em>robots.txt</em> content and keeps the rules which apply to the given crawler.
+     *
+     * @param content
+     *         The content of the <em>robots.txt</em> file
+     * @param userAgent
+     *         The product token of the crawler, like <em>examplebot</em>
+     *
+     * @return The rules which apply to the crawler
+     *
+     * @throws IllegalArgumentException
+     *         If no user agent is provided
+     */
+    public static RobotsTxt parse(String content, String userAgent) throws IllegalArgumentException
+    {
+        try
+        {
+            return parse(new StringReader(content), userAgent);
+        }
+        catch (IOException ioEx)
+        {
+            throw new IllegalStateException("Reading from a string failed", ioEx);
+        }
+    }
+
+    /**
+     * Parses the <em>robots.txt</em> content provided by the given reader, of which at most {@link #MAX_SIZE}
+     * characters are read, and keeps the rules which apply to the given crawler. A line which is cut off by the limit
+     * is ignored, so a huge file can neither exhaust the memory nor yield a truncated rule.
+     *
+     * @param reader
+     *         The reader providing the content of the <em>robots.txt</em> file
+     * @param userAgent
+     *         The product token of the crawler
+     *
+     * @return The rules which apply to the crawler
+     *
+     * @throws IOException
+     *         If the content could not be read
+     */
+    static RobotsTxt parse(Reader reader, String userAgent) throws IOException
+    {
+        if (null == userAgent || userAgent.isBlank())
+        {
+            throw new IllegalArgumentException("No user agent provided");
+        }
+        String agent = productToken(userAgent);
+        List<Rule> agentRules = new ArrayList<>();
+        List<Rule> defaultRules = new ArrayList<>();
+        Duration agentDelay = null;
+        Duration defaultDelay = null;
+        boolean agentFound = false;
+        boolean defaultFound = false;
+        // the current group and whether it applies to the crawler or is a '*' group
+        boolean inAgentGroup = false;
+        boolean inDefaultGroup = false;
+        boolean groupHasRules = true;
+
+        LimitedReader limited = new LimitedReader(reader, MAX_SIZE);
+        LineReader lines = new LineReader(limited);
+        CharSequence line = lines.readLine();
+        while (null != line)
+        {
+            String record = line.toString();
+            line = lines.readLine();
+            if (null == line && limited.isTruncated())
+            {
+                // the last line was cut off by the limit
+                break;
+            }
+            int comment = record.indexOf('#');
+            if (comment >= 0)
+            {
+                record = record.substring(0, comment);
+            }
+            int colon = record.indexOf(':');
+            if (colon < 0)
+            {
+                continue;
+            }
+            String key = record.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = record.substring(colon + 1).trim();
+            if ("user-agent".equals(key))
+            {
+                if (groupHasRules)
+                {
+                    // a user-agent line following rules starts a new group
+                    inAgentGroup = false;
+                    inDefaultGroup = false;
+                    groupHasRules = false;
+                }
+                if ("*".equals(value))
+                {
+                    inDefaultGroup = true;
+                    defaultFound = true;
+                }
+                else if (!value.isEmpty() && productToken(value).equals(agent))
+                {
+                    inAgentGroup = true;
+                    agentFound = true;
+                }
+                continue;
+            }
+            if ("allow".equals(key) || "disallow".equals(key))
+            {
+                groupHasRules = true;
+                if (value.isEmpty())
+                {
+                    // an empty rule matches nothing
+                    continue;
+                }
+                Rule rule = new Rule(normalize(value), "allow".equals(key));
+                if (inAgentGroup)
+                {
+                    agentRules.add(rule);
+                }
+                if (inDefaultGroup)
+                {
+                    defaultRules.add(rule);
+                }
+            }
+            else if ("crawl-delay".equals(key))
+            {
+                groupHasRules = true;
+                Duration delay = parseDelay(value);
+                if (inAgentGroup && null == agentDelay)
+                {
+                    agentDelay = delay;
+                }
+                if (inDefaultGroup && null == defaultDelay)
+                {
+                    defaultDelay = delay;
+                }
+            }
+        }
+
+        List<Rule> rules = agentFound ? agentRules : defaultRules;
+        Duration crawlDelay = agentFound ? agentDelay : defaultFound ? defaultDelay : null;
+        if (rules.isEmpty() && null == crawlDelay)
+        {
+            return ALLOW_ALL;
+        }
+        rules.sort(Comparator.comparingInt((Rule rule) -> rule.pattern.length() + (rule.anchored ? 1 : 0)).reversed()
+                             .thenComparing(rule -> !rule.allow));
+        return new RobotsTxt(rules.toArray(new Rule[0]), crawlDelay);
+    }
+
+    /**
+     * Passes at most a given number of characters of a reader on and remembers whether further content, which does not
+     * start a new line, was cut off.
+     */
+    private static final class LimitedReader extends FilterReader
+    {
+        private long remaining;
+        private int lastChar = '\n';
+        private boolean truncated = false;
+
+        private LimitedReader(Reader reader, long limit)
+        {
+            super(reader);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            char[] c = new char[1];
+            return this.read(c, 0, 1) == 1 ? c[0] : -1;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (this.remaining <= 0L)
+            {
+                if (!this.truncated && !isLineEnd(this.lastChar) && this.in.read() != -1)
+                {
+                    this.truncated = true;
+                }
+                return -1;
+            }
+            int read = this.in.read(buffer, offset, (int) Math.min(length, this.remaining));
+            if (read > 0)
+            {
+                this.remaining -= read;
+                this.lastChar = buffer[offset + read - 1];
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = this.in.skip(Math.min(n, this.remaining));
+            this.remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException
+        {
+            throw new IOException("mark() not supported");
+        }
+
+        @Override
+        public void reset() throws IOException
+        {
+            throw new IOException("reset() not supported");
+        }
+
+        private boolean isTruncated()
+        {
+            return this.truncated;
+        }
+
+        private static boolean isLineEnd(int c)
+        {
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+    }
+
+    /**
+     * Returns the product token of a user agent, which is the part in front of a version or comment, in lower case.
+     */
+    private static String productToken(String userAgent)
+    {
+        String token = userAgent.trim();
+        for (int i = 0; i < token.length(); i++)
+        {
+            char c = token.charAt(i);
+            if (c == '/' || Character.isWhitespace(c))
+            {
+                token = token.substring(0, i);
+                break;
+            }
+        }
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Prefixes the pattern with a slash if necessary and percent-encodes characters outside of printable ASCII as
+     * UTF-8, while existing escapes are upper-cased.
+     */
+    private static String normalize(String pattern)
+    {
+        StringBuilder normalized = new StringBuilder(pattern.length() + 1);
+        if (pattern.charAt(0) != '/' && pattern.charAt(0) != '*')
+        {
+            normalized.append('/');
+        }
+        for (int i = 0; i < pattern.length(); i++)
+        {
+            char c = pattern.charAt(i);
+            if (c == '%' && i + 2 < pattern.length() && isHex(pattern.charAt(i + 1)) && isHex(pattern.charAt(i + 2)))
+            {
+                normalized.append('%').append(Character.toUpperCase(pattern.charAt(i + 1)))
+                          .append(Character.toUpperCase(pattern.charAt(i + 2)));
+                i += 2;
+            }
+            else if (c > ' ' && c < 0x7f)
+            {
+                normalized.append(c);
+            }
+            else
+            {
+                int end = Character.isHighSurrogate(c) && i + 1 < pattern.length() ? i + 2 : i + 1;
+                for (byte b : pattern.substring(i, end).getBytes(StandardCharsets.UTF_8))
+                {
+                    normalized.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+                }
+                i = end - 1;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static boolean isHex(char c)
+    {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * Parses a crawl delay given in seconds, which may have a fraction.
+     *
+     * @return The delay or <em>null</em> if the value is no valid delay
+     */
+    private static Duration parseDelay(String value)
+    {
+        try
+        {
+            double seconds = Double.parseDouble(value);
+            if (seconds < 0d || Double.isNaN(seconds) || Double.isInfinite(seconds))
+            {
+                return null;
+            }
+            return Duration.ofMillis((long) Math.min(seconds * 1000d, Long.MAX_VALUE));
+        }
+        catch (NumberFormatException nfEx)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the crawler may read the given URL. Only the path and the query of the URL are considered, the
+     * caller has to ensure that these rules belong to the host of the URL.
+     *
+     * @param url
+     *         The absolute URL to check
+     *
+     * @return <em>true</em> if the URL may be read, <em>false</em> if a rule disallows it
+     *
+     * @throws IllegalArgumentException
+     *         If the URL is no absolute URL
+     */
+    public boolean isAllowed(String url) throws IllegalArgumentException
+    {
+        int scheme = url.indexOf("://");
+        if (scheme < 0)
+        {
+            throw new IllegalArgumentException("No valid URL provided! Found " + url);
+        }
+        int start = scheme + 3;
+        int end = url.length();
+        while (start < end && url.charAt(start) != '/' && url.charAt(start) != '?' && url.charAt(start) != '#')
+        {
+            start++;
+        }
+        int fragment = url.indexOf('#', start);
+        if (fragment >= 0)
+        {
+            end = fragment;
+        }
+        if (start == end || url.charAt(start) != '/')
+        {
+            // an empty path is the root path
+            return this.isPathAllowed("/" + url.substring(start, end));
+        }
+        return this.isAllowed(url, start, end);
+    }
+
+    /**
+     * Returns whether the crawler may read the given path.
+     *
+     * @param path
+     *         The path and query of an URL, starting with a slash
+     *
+     * @return <em>true</em> if the path may be read, <em>false</em> if a rule disallows it
+     */
+    public boolean isPathAllowed(String path)
+    {
+        return this.isAllowed(path, 0, path.length());
+    }
+
+    private boolean isAllowed(String url, int start, int end)
+    {
+        if (end - start == ROBOTS_TXT.length() && url.startsWith(ROBOTS_TXT, start))
+        {
+            return true;
+        }
+        for (Rule rule : this.rules)
+        {
+            if (rule.matches(url, start, end))
+            {
+                return rule.allow;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time the crawler should wait between two requests to the host, as declared via the non-standard
+     * <em>crawl-delay</em> field.
+     *
+     * @return The crawl delay or <em>null</em> if none was declared
+     */
+    public Duration getCrawlDelay()
+    {
+        return this.crawlDelay;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("RobotsTxt[");
+        for (Rule rule : this.rules)
+        {
+            builder.append(rule).append(", ");
+        }
+        return builder.append("crawlDelay=").append(this.crawlDelay).append("]").toString();
+    }
+}
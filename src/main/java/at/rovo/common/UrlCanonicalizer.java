@@ -0,0 +1,203 @@
+package at.rovo.common;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Rewrites URLs into a canonical form so that URLs which only differ in their notation, but refer to the same
+ * resource, are recognized as the same URL. The canonical form
+ * <ul>
+ * <li>has a lower case scheme and host, and a host without a trailing dot</li>
+ * <li>omits the port if it is the default port of the scheme</li>
+ * <li>has a path of at least <em>/</em>, without any <em>.</em> and <em>..</em> segments</li>
+ * <li>percent-encodes only characters which may not appear literally, using upper case hex digits</li>
+ * <li>omits an empty query and any fragment, as the fragment is never sent to the server</li>
+ * </ul>
+ * The order of query parameters is kept, as servers may interpret it.
+ */
+public final class UrlCanonicalizer
+{
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private UrlCanonicalizer()
+    {
+
+    }
+
+    /**
+     * Returns the canonical form of the given URL.
+     *
+     * @param url
+     *         The absolute URL to canonicalize
+     *
+     * @return The canonical form of the URL
+     *
+     * @throws IllegalArgumentException
+     *         If the URL is not a valid absolute URL
+     */
+    public static String canonicalize(String url)
+    {
+        if (null == url)
+        {
+            throw new IllegalArgumentException("No URL provided");
+        }
+        URL parsed;
+        try
+        {
+            parsed = new URL(url.trim());
+        }
+        catch (MalformedURLException muEx)
+        {
+            throw new IllegalArgumentException("Invalid URL " + url, muEx);
+        }
+        String host = parsed.getHost();
+        if (null == host || host.isEmpty())
+        {
+            throw new IllegalArgumentException("URL " + url + " has no host");
+        }
+
+        StringBuilder sb = new StringBuilder(url.length() + 8);
+        sb.append(parsed.getProtocol()).append("://");
+        if (null != parsed.getUserInfo())
+        {
+            appendEncoded(parsed.getUserInfo(), sb);
+            sb.append('@');
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.endsWith("."))
+        {
+            host = host.substring(0, host.length() - 1);
+        }
+        sb.append(host);
+        if (parsed.getPort() != -1 && parsed.getPort() != parsed.getDefaultPort())
+        {
+            sb.append(':').append(parsed.getPort());
+        }
+
+        StringBuilder path = new StringBuilder(parsed.getPath().length() + 1);
+        appendEncoded(parsed.getPath(), path);
+        sb.append(removeDotSegments(path));
+
+        String query = parsed.getQuery();
+        if (null != query && !query.isEmpty())
+        {
+            sb.append('?');
+            appendEncoded(query, sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the given URL component with a uniform percent-encoding. Escaped unreserved characters are decoded,
+     * escapes are written with upper case hex digits and characters which may not appear literally in a URL are
+     * escaped as UTF-8. A percent sign which does not start a valid escape is escaped itself.
+     */
+    private static void appendEncoded(String component, StringBuilder out)
+    {
+        int length = component.length();
+        for (int i = 0; i < length; i++)
+        {
+            char c = component.charAt(i);
+            if (c == '%')
+            {
+                int high = i + 2 < length ? Character.digit(component.charAt(i + 1), 16) : -1;
+                int low = high != -1 ? Character.digit(component.charAt(i + 2), 16) : -1;
+                if (low == -1)
+                {
+                    out.append("%25");
+                    continue;
+                }
+                char decoded = (char) (high << 4 | low);
+                if (isUnreserved(decoded))
+                {
+                    out.append(decoded);
+                }
+                else
+                {
+                    appendEscape(decoded, out);
+                }
+                i += 2;
+            }
+            else if (c > 0x7F)
+            {
+                int end = Character.isHighSurrogate(c) && i + 1 < length ? i + 2 : i + 1;
+                for (byte b : component.substring(i, end).getBytes(StandardCharsets.UTF_8))
+                {
+                    appendEscape(b & 0xFF, out);
+                }
+                i = end - 1;
+            }
+            else if (c <= 0x20 || c == 0x7F || "\"<>\\^`{|}".indexOf(c) != -1)
+            {
+                appendEscape(c, out);
+            }
+            else
+            {
+                out.append(c);
+            }
+        }
+    }
+
+    private static boolean isUnreserved(char c)
+    {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '.'
+               || c == '_' || c == '~';
+    }
+
+    private static void appendEscape(int b, StringBuilder out)
+    {
+        out.append('%').append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Removes the <em>.</em> and <em>..</em> segments of the given path as specified by RFC 3986, section 5.2.4. An
+     * empty path is turned into <em>/</em>.
+     */
+    private static CharSequence removeDotSegments(StringBuilder path)
+    {
+        if (path.length() == 0)
+        {
+            return "/";
+        }
+        if (path.indexOf("/.") == -1 && path.charAt(0) != '.')
+        {
+            return path;
+        }
+        String[] segments = path.toString().split("/", -1);
+        String[] output = new String[segments.length];
+        int size = 0;
+        for (int i = 0; i < segments.length; i++)
+        {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (".".equals(segment) || "..".equals(segment))
+            {
+                // a trailing dot segment still refers to a directory
+                if ("..".equals(segment) && size > 1)
+                {
+                    size--;
+                }
+                if (last)
+                {
+                    output[size++] = "";
+                }
+            }
+            else
+            {
+                output[size++] = segment;
+            }
+        }
+        StringBuilder sb = new StringBuilder(path.length());
+        for (int i = 0; i < size; i++)
+        {
+            if (i > 0 || !output[0].isEmpty())
+            {
+                sb.append('/');
+            }
+            sb.append(output[i]);
+        }
+        return sb.length() == 0 ? "/" : sb;
+    }
+}
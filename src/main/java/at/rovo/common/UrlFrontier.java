@@ -0,0 +1,777 @@
+package at.rovo.common;
+
+import at.rovo.common.annotations.GuardedBy;
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The URLs of a crawl which still have to be read. URLs are {@link UrlCanonicalizer canonicalized} on adding them, and
+ * each canonical URL is only handed out once: the URLs seen so far are remembered in a {@link MappedBloomFilter}
+ * instead of a set of strings, so hundreds of millions of URLs take a fixed amount of memory outside of the heap. The
+ * price is that a URL which was not seen before is rejected with the configured false-positive probability.
+ * <p>
+ * The seen URLs are stored in the given file, and the URLs which were not handed out yet are kept in a journal next to
+ * it, so a crawl can be continued after a restart by opening the frontier with the same file again. Like the seen URLs,
+ * the pending URLs are not kept on the heap: each added URL is appended to the journal as a line, and the URLs are read
+ * back in order into a small read-ahead buffer when they are handed out. A header at the start of the journal holds
+ * the position of the next URL to hand out and the number of pending URLs, so opening the frontier neither reads nor
+ * replays the journal. Once the URLs handed out take up most of the journal, it is compacted to the pending URLs.
+ * <p>
+ * The guarantees after a crash depend on its kind:
+ * <ul>
+ * <li>If the process dies, for example as it got killed, the bits of the seen URLs are kept by the operating system,
+ * and so is the journal, as each {@link #add(String)}, {@link #addAll(Iterable)} and {@link #poll()} passes its
+ * changes to the operating system before it returns. Only the URLs added by an invocation running at the time of the
+ * crash might be marked as seen but not be pending. The URLs handed out by invocations running at that time might be
+ * handed out once more after the restart. The number of seen URLs is only stored by {@link #sync()} and
+ * {@link #close()} though.</li>
+ * <li>If the operating system crashes or the machine loses power, only the state written to the disk by the last
+ * {@link #sync()} or {@link #close()} is guaranteed to be kept. The filter and the journal are written back
+ * independently of each other, so URLs added after the last sync might be marked as seen but be lost, or be pending
+ * although they were not marked as seen. Crawls which need to bound this loss should invoke {@link #sync()}
+ * periodically.</li>
+ * </ul>
+ * <p>
+ * URLs are handed out in the order they were added. Politeness towards the hosts is up to the consumer, for example by
+ * submitting the URLs to a {@link FetchScheduler}.
+ */
+@ThreadSafe
+public class UrlFrontier implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default probability of rejecting a URL which was not seen before */
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.001d;
+    /** Identifies a journal with a header, <em>URLQ0002</em> in ASCII */
+    private static final long MAGIC = 0x55524C5130303032L;
+    /**
+     * The size of the header of the journal, which holds the marker, the position of the next URL to hand out, the
+     * number of pending URLs and the end of the journal this number refers to
+     */
+    private static final int HEADER_SIZE = 32;
+    /** The line of a journal without header which marks the oldest pending URL as handed out */
+    private static final String POLLED = "-";
+    /** The number of URLs which are read ahead from the journal at most */
+    private static final int READ_AHEAD = 1024;
+    /** The number of bytes which are read from the journal at once */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /** The number of bytes of handed out URLs after which the journal is compacted, unless most URLs are pending */
+    private static final long COMPACTION_THRESHOLD = 64L * 1024 * 1024;
+
+    private final MappedBloomFilter seen;
+    private final Path pendingFile;
+    @GuardedBy("this")
+    private FileChannel journal;
+    /** The lines appended to the journal which were not written yet */
+    @GuardedBy("this")
+    private ByteBuffer appendBuffer = ByteBuffer.allocate(8192);
+    @GuardedBy("this")
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+    /** The position of the next URL to hand out */
+    @GuardedBy("this")
+    private long head;
+    /** The position after the last line written to the journal */
+    @GuardedBy("this")
+    private long end;
+    @GuardedBy("this")
+    private long pendingCount;
+    /** The URLs read ahead from the journal in a ring, starting with the URL at the head */
+    @GuardedBy("this")
+    private final String[] readAhead = new String[READ_AHEAD];
+    /** The position after each URL read ahead */
+    @GuardedBy("this")
+    private final long[] readAheadEnds = new long[READ_AHEAD];
+    @GuardedBy("this")
+    private int readAheadFirst = 0;
+    @GuardedBy("this")
+    private int readAheadCount = 0;
+    /** The position of the line following the URLs read ahead */
+    @GuardedBy("this")
+    private long readPosition;
+    @GuardedBy("this")
+    private boolean closed = false;
+
+    /**
+     * Opens the frontier stored in the given file, or creates a new frontier if the file does not exist yet. The
+     * remembered URLs are rejected by mistake with a probability of {@value #DEFAULT_FALSE_POSITIVE_PROBABILITY}.
+     *
+     * @param seenFile
+     *         The file the seen URLs are stored in
+     * @param expectedUrls
+     *         The number of URLs which are expected to be seen by a new frontier
+     *
+     * @throws IOException
+     *         If the files of the frontier could not be read or created
+     */
+    public UrlFrontier(Path seenFile, long expectedUrls) throws IOException
+    {
+        this(seenFile, expectedUrls, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * Opens the frontier stored in the given file, or creates a new frontier if the file does not exist yet. An
+     * existing frontier keeps the dimensions it was created with.
+     *
+     * @param seenFile
+     *         The file the seen URLs are stored in
+     * @param expectedUrls
+     *         The number of URLs which are expected to be seen by a new frontier
+     * @param falsePositiveProbability
+     *         The probability of a new frontier to reject a URL which was not seen before, once the expected number of
+     *         URLs was seen
+     *
+     * @throws IOException
+     *         If the files of the frontier could not be read or created
+     */
+    public UrlFrontier(Path seenFile, long expectedUrls, double falsePositiveProbability) throws IOException
+    {
+        this.seen = MappedBloomFilter.open(seenFile, expectedUrls, falsePositiveProbability);
+        this.pendingFile = seenFile.resolveSibling(seenFile.getFileName() + ".pending");
+        try
+        {
+            synchronized (this)
+            {
+                this.openJournal();
+            }
+        }
+        catch (IOException ioEx)
+        {
+            synchronized (this)
+            {
+                if (null != this.journal)
+                {
+                    this.journal.close();
+                }
+            }
+            this.seen.close();
+            throw ioEx;
+        }
+    }
+
+    /**
+     * Opens the journal of a previous run, or creates a new journal. The pending URLs are counted from the header,
+     * only the lines which were appended after the header was written the last time are read.
+     */
+    @GuardedBy("this")
+    private void openJournal() throws IOException
+    {
+        if (Files.exists(this.pendingFile) && !hasHeader(this.pendingFile))
+        {
+            this.convertJournal();
+        }
+        this.journal = FileChannel.open(this.pendingFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        if (this.journal.size() == 0L)
+        {
+            this.head = HEADER_SIZE;
+            this.end = HEADER_SIZE;
+            this.pendingCount = 0L;
+        }
+        else
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(this.journal, header, 0L);
+            header.flip();
+            if (header.getLong() != MAGIC)
+            {
+                throw new IOException(this.pendingFile + " is no journal of pending URLs");
+            }
+            long head = header.getLong();
+            long count = header.getLong();
+            long checkpoint = header.getLong();
+            this.end = dropIncompleteLine(this.journal, HEADER_SIZE, this.pendingFile);
+            if (head < HEADER_SIZE || head > this.end)
+            {
+                // the header was written back by the operating system but the lines were not
+                LOG.warn("The pending URLs of {} were lost", this.pendingFile);
+                head = this.end;
+                count = 0L;
+            }
+            else if (checkpoint < head || checkpoint > this.end)
+            {
+                count = this.countLines(head, this.end);
+            }
+            else
+            {
+                count += this.countLines(checkpoint, this.end);
+            }
+            this.head = head;
+            this.pendingCount = count;
+        }
+        this.readPosition = this.head;
+        this.writeHeader();
+        LOG.debug("Continuing with {} pending URLs from {}", this.pendingCount, this.pendingFile);
+        if (this.isCompactionDue())
+        {
+            this.compact();
+        }
+    }
+
+    private static boolean hasHeader(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() == 0L)
+            {
+                return true;
+            }
+            if (channel.size() < HEADER_SIZE)
+            {
+                return false;
+            }
+            ByteBuffer magic = ByteBuffer.allocate(8);
+            readFully(channel, magic, 0L);
+            return magic.getLong(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Converts a journal without header, as written by earlier versions, in which each handed out URL is marked by a
+     * line containing a single <em>-</em>. As URLs are handed out in the order they were added, the n-th of these
+     * lines marks the n-th URL, so the journal is converted in two passes without keeping any URL in memory.
+     */
+    @GuardedBy("this")
+    private void convertJournal() throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(this.pendingFile, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE))
+        {
+            dropIncompleteLine(channel, 0L, this.pendingFile);
+        }
+        long urls = 0L;
+        long handedOut = 0L;
+        try (BufferedReader reader = Files.newBufferedReader(this.pendingFile, StandardCharsets.UTF_8))
+        {
+            String line;
+            while (null != (line = reader.readLine()))
+            {
+                if (POLLED.equals(line))
+                {
+                    handedOut++;
+                }
+                else if (!line.isEmpty())
+                {
+                    urls++;
+                }
+            }
+        }
+        Path temp = this.pendingFile.resolveSibling(this.pendingFile.getFileName() + ".tmp");
+        try (BufferedReader reader = Files.newBufferedReader(this.pendingFile, StandardCharsets.UTF_8);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp)))
+        {
+            out.write(new byte[HEADER_SIZE]);
+            long skipped = 0L;
+            String line;
+            while (null != (line = reader.readLine()))
+            {
+                if (line.isEmpty() || POLLED.equals(line))
+                {
+                    continue;
+                }
+                if (skipped < handedOut)
+                {
+                    skipped++;
+                    continue;
+                }
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC).putLong(HEADER_SIZE).putLong(Math.max(0L, urls - handedOut)).putLong(channel.size());
+            header.flip();
+            writeFully(channel, header, 0L);
+        }
+        Files.move(temp, this.pendingFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.debug("Converted {} to a journal with {} pending URLs", this.pendingFile, urls - handedOut);
+    }
+
+    /**
+     * Removes the last line of the journal if the process died while writing it, so a truncated URL is not handed out.
+     *
+     * @return The size of the journal afterwards
+     */
+    static long dropIncompleteLine(FileChannel channel, long start, Path file) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = channel.size();
+        long position = end;
+        while (position > start)
+        {
+            int length = (int) Math.min(buffer.capacity(), position - start);
+            position -= length;
+            buffer.clear().limit(length);
+            readFully(channel, buffer, position);
+            for (int i = length - 1; i >= 0; i--)
+            {
+                if (buffer.get(i) == '\n')
+                {
+                    if (position + i + 1 < end)
+                    {
+                        LOG.debug("Dropping incomplete last line of {}", file);
+                        channel.truncate(position + i + 1);
+                    }
+                    return position + i + 1;
+                }
+            }
+        }
+        if (start < end)
+        {
+            LOG.debug("Dropping incomplete last line of {}", file);
+            channel.truncate(start);
+        }
+        return Math.min(start, end);
+    }
+
+    /**
+     * Counts the non-empty lines of the journal between the given positions, which both have to start a line.
+     */
+    @GuardedBy("this")
+    private long countLines(long from, long to) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        long lines = 0L;
+        byte previous = '\n';
+        for (long position = from; position < to; )
+        {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+            readFully(this.journal, buffer, position);
+            for (int i = 0; i < buffer.limit(); i++)
+            {
+                byte b = buffer.get(i);
+                if (b == '\n' && previous != '\n')
+                {
+                    lines++;
+                }
+                previous = b;
+            }
+            position += buffer.limit();
+        }
+        return lines;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        int start = buffer.position();
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position() - start) < 0)
+            {
+                throw new EOFException("Unexpected end of journal");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        int start = buffer.position();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+
+    /**
+     * Writes the position of the next URL to hand out and the number of pending URLs to the header of the journal.
+     */
+    @GuardedBy("this")
+    private void writeHeader() throws IOException
+    {
+        this.headerBuffer.clear();
+        this.headerBuffer.putLong(MAGIC).putLong(this.head).putLong(this.pendingCount).putLong(this.end);
+        this.headerBuffer.flip();
+        writeFully(this.journal, this.headerBuffer, 0L);
+    }
+
+    /**
+     * Appends the given URL to the journal. The line is only buffered until {@link #flushJournal()} is invoked.
+     */
+    @GuardedBy("this")
+    private void appendToJournal(String url) throws IOException
+    {
+        byte[] line = url.getBytes(StandardCharsets.UTF_8);
+        if (line.length + 1 > this.appendBuffer.remaining())
+        {
+            this.writeAppended();
+            if (line.length + 1 > this.appendBuffer.capacity())
+            {
+                this.appendBuffer = ByteBuffer.allocate(line.length + 1);
+            }
+        }
+        this.appendBuffer.put(line).put((byte) '\n');
+    }
+
+    @GuardedBy("this")
+    private void writeAppended() throws IOException
+    {
+        this.appendBuffer.flip();
+        int length = this.appendBuffer.remaining();
+        writeFully(this.journal, this.appendBuffer, this.end);
+        this.end += length;
+        this.appendBuffer.clear();
+    }
+
+    /**
+     * Passes the lines appended to the journal and the header to the operating system, which keeps them if the process
+     * dies.
+     */
+    @GuardedBy("this")
+    private void flushJournal() throws IOException
+    {
+        this.writeAppended();
+        this.writeHeader();
+    }
+
+    /**
+     * Reads the URLs following the ones read ahead so far from the journal, until the read-ahead buffer is full or the
+     * end of the journal was reached.
+     */
+    @GuardedBy("this")
+    private void readAhead() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        while (this.readAheadCount < READ_AHEAD && this.readPosition < this.end)
+        {
+            int length = (int) Math.min(buffer.capacity(), this.end - this.readPosition);
+            buffer.clear().limit(length);
+            readFully(this.journal, buffer, this.readPosition);
+            int lineStart = 0;
+            for (int i = 0; i < length && this.readAheadCount < READ_AHEAD; i++)
+            {
+                if (buffer.get(i) == '\n')
+                {
+                    if (i > lineStart)
+                    {
+                        int index = (this.readAheadFirst + this.readAheadCount) % READ_AHEAD;
+                        this.readAhead[index] = new String(buffer.array(), lineStart, i - lineStart,
+                                                           StandardCharsets.UTF_8);
+                        this.readAheadEnds[index] = this.readPosition + i + 1;
+                        this.readAheadCount++;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart == 0)
+            {
+                // the line is longer than the buffer
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+            this.readPosition += lineStart;
+        }
+    }
+
+    @GuardedBy("this")
+    private boolean isCompactionDue()
+    {
+        long handedOut = this.head - HEADER_SIZE;
+        return handedOut >= COMPACTION_THRESHOLD && handedOut >= this.end - this.head;
+    }
+
+    /**
+     * Rewrites the journal so it only contains the pending URLs. The journal is written to a temporary file first, so
+     * a failure does not lose the current journal.
+     *
+     * @throws IOException
+     *         If the journal could not be rewritten
+     */
+    synchronized void compact() throws IOException
+    {
+        this.writeAppended();
+        long handedOut = this.head - HEADER_SIZE;
+        Path temp = this.pendingFile.resolveSibling(this.pendingFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC).putLong(HEADER_SIZE).putLong(this.pendingCount).putLong(this.end - handedOut);
+            header.flip();
+            writeFully(out, header, 0L);
+            out.position(HEADER_SIZE);
+            for (long position = this.head; position < this.end; )
+            {
+                position += this.journal.transferTo(position, this.end - position, out);
+            }
+            out.force(false);
+        }
+        this.journal.close();
+        boolean moved = false;
+        try
+        {
+            Files.move(temp, this.pendingFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        }
+        finally
+        {
+            this.journal = FileChannel.open(this.pendingFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        if (moved)
+        {
+            this.head -= handedOut;
+            this.end -= handedOut;
+            this.readPosition -= handedOut;
+            for (int i = 0; i < this.readAheadCount; i++)
+            {
+                this.readAheadEnds[(this.readAheadFirst + i) % READ_AHEAD] -= handedOut;
+            }
+            LOG.debug("Compacted {} to {} pending URLs", this.pendingFile, this.pendingCount);
+        }
+    }
+
+    /**
+     * Adds the given URL to the frontier unless it was seen before.
+     *
+     * @param url
+     *         The absolute URL to add
+     *
+     * @return <em>true</em> if the URL was added, <em>false</em> if it was seen before, is a false positive or is no
+     *         valid absolute URL
+     *
+     * @throws UncheckedIOException
+     *         If the URL could not be written to the journal
+     */
+    public boolean add(String url)
+    {
+        String canonical = canonicalize(url);
+        if (null == canonical)
+        {
+            return false;
+        }
+        synchronized (this)
+        {
+            try
+            {
+                boolean added = this.addCanonical(canonical);
+                this.flushJournal();
+                return added;
+            }
+            catch (IOException ioEx)
+            {
+                throw new UncheckedIOException("Could not add " + canonical + " to " + this.pendingFile, ioEx);
+            }
+        }
+    }
+
+    private static String canonicalize(String url)
+    {
+        try
+        {
+            return UrlCanonicalizer.canonicalize(url);
+        }
+        catch (IllegalArgumentException iaEx)
+        {
+            LOG.debug("Ignoring invalid URL {}", url);
+            return null;
+        }
+    }
+
+    @GuardedBy("this")
+    private boolean addCanonical(String canonical) throws IOException
+    {
+        if (this.closed || !this.seen.put(canonical))
+        {
+            return false;
+        }
+        this.appendToJournal(canonical);
+        this.pendingCount++;
+        return true;
+    }
+
+    /**
+     * Adds all of the given URLs which were not seen before to the frontier.
+     *
+     * @param urls
+     *         The absolute URLs to add
+     *
+     * @return The number of URLs which were added
+     *
+     * @throws UncheckedIOException
+     *         If the URLs could not be written to the journal
+     */
+    public int addAll(Iterable<String> urls)
+    {
+        int added = 0;
+        synchronized (this)
+        {
+            try
+            {
+                for (String url : urls)
+                {
+                    String canonical = canonicalize(url);
+                    if (null != canonical && this.addCanonical(canonical))
+                    {
+                        added++;
+                    }
+                }
+                // the journal is written once for all URLs
+                this.flushJournal();
+            }
+            catch (IOException ioEx)
+            {
+                throw new UncheckedIOException("Could not add URLs to " + this.pendingFile, ioEx);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Checks whether the given URL was added to the frontier before.
+     *
+     * @param url
+     *         The absolute URL to look up
+     *
+     * @return <em>true</em> if the URL was seen before or is a false positive, <em>false</em> if it was not seen or is
+     *         no valid absolute URL
+     */
+    public boolean isSeen(String url)
+    {
+        try
+        {
+            return this.seen.mightContain(UrlCanonicalizer.canonicalize(url));
+        }
+        catch (IllegalArgumentException iaEx)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Hands out the URL which was added the earliest of all URLs not handed out yet.
+     *
+     * @return The canonical form of the next URL to read or <em>null</em> if no URL is pending
+     *
+     * @throws UncheckedIOException
+     *         If the journal could not be read or written
+     */
+    public synchronized String poll()
+    {
+        if (this.closed || this.pendingCount == 0L)
+        {
+            return null;
+        }
+        try
+        {
+            if (this.readAheadCount == 0)
+            {
+                this.readAhead();
+                if (this.readAheadCount == 0)
+                {
+                    LOG.warn("Found no pending URL in {} although {} were expected", this.pendingFile,
+                             this.pendingCount);
+                    this.pendingCount = 0L;
+                    this.writeHeader();
+                    return null;
+                }
+            }
+            String url = this.readAhead[this.readAheadFirst];
+            this.head = this.readAheadEnds[this.readAheadFirst];
+            this.readAhead[this.readAheadFirst] = null;
+            this.readAheadFirst = (this.readAheadFirst + 1) % READ_AHEAD;
+            this.readAheadCount--;
+            this.pendingCount--;
+            this.writeHeader();
+            if (this.isCompactionDue())
+            {
+                this.compact();
+            }
+            return url;
+        }
+        catch (IOException ioEx)
+        {
+            throw new UncheckedIOException("Could not hand out a pending URL of " + this.pendingFile, ioEx);
+        }
+    }
+
+    /**
+     * Returns the number of URLs which were not handed out yet.
+     *
+     * @return The number of pending URLs
+     */
+    public synchronized long getPendingCount()
+    {
+        return this.pendingCount;
+    }
+
+    /**
+     * Returns the number of distinct URLs seen so far, including those seen before the frontier was reopened.
+     *
+     * @return The number of seen URLs
+     */
+    public long getSeenCount()
+    {
+        return this.seen.getCount();
+    }
+
+    /**
+     * Writes the seen URLs and the journal of the pending URLs to the disk, so they are kept even if the operating
+     * system crashes. This is an expensive operation, which should only be invoked every few seconds or minutes.
+     *
+     * @throws IOException
+     *         If the journal could not be written
+     */
+    public synchronized void sync() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        this.flushJournal();
+        this.journal.force(false);
+        this.seen.flush();
+    }
+
+    /**
+     * Writes the journal of the pending URLs to the disk and closes it along with the file of the seen URLs.
+     *
+     * @throws IOException
+     *         If the pending URLs could not be stored
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        this.closed = true;
+        try
+        {
+            this.flushJournal();
+            this.journal.force(false);
+        }
+        finally
+        {
+            try
+            {
+                this.journal.close();
+            }
+            finally
+            {
+                this.seen.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "UrlFrontier[pending=" + this.getPendingCount() + ", seen=" + this.getSeenCount() + "]";
+    }
+}
@@ -1,14 +1,45 @@
 package at.rovo.common;
 
+import at.rovo.common.annotations.ThreadSafe;
+import at.rovo.common.http.AsyncHttpTransport;
+import at.rovo.common.http.CachingDnsResolver;
+import at.rovo.common.http.CachingHttpTransport;
+import at.rovo.common.http.HedgingHttpTransport;
+import at.rovo.common.http.HttpCache;
+import at.rovo.common.http.HttpClientTransport;
+import at.rovo.common.http.HttpTransport;
+import at.rovo.common.http.PooledHttpTransport;
+import at.rovo.common.http.Request;
+import at.rovo.common.http.Response;
+import at.rovo.common.warc.WarcWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,29 +50,111 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Some pages require cookies to be set to present their content or even redirect to further pages. <em>UrlReader</em>
  * is capable of reading those pages too.
+ * <p>
+ * The actual HTTP exchange is delegated to a {@link HttpTransport}. Unless a transport is specified on creating an
+ * instance, all instances share a {@link PooledHttpTransport} which keeps connections alive and reuses them for further
+ * requests to the same host. A connection is handed back to the pool once the {@link Scanner} returned by {@link
+ * #read(String)} or the {@link LineReader} returned by {@link #readLines(String)} got closed, so callers of those
+ * methods should close the returned reader once they are done with it. The connection of a reader which is dropped
+ * without being closed is only closed once the reader was garbage collected. Hosts which are read with many concurrent
+ * requests, like CDNs, are better read via a {@link HttpClientTransport} created for HTTP/2, which multiplexes the
+ * requests to a host over a single connection and falls back to HTTP/1.1 for hosts not supporting HTTP/2. Cookies,
+ * redirects and the detection of the charset are handled the same for either protocol.
+ * <p>
+ * Instances may be shared among threads. Each read keeps its own state and only releases the connection it opened
+ * itself, {@link #getRealURL()}, {@link #getStatusCode()} and their siblings report the last page the calling thread
+ * read synchronously.
+ * <p>
+ * Content which should not be decoded into characters, for example because it is only hashed or stored, can be read as
+ * raw bytes via {@link #readChannel(String)} or written straight to a file via {@link #transferTo(String,
+ * WritableByteChannel)}.
+ * <p>
+ * Consumers which only extract parts of a page, like its links or text, can have the page reported as a stream of tags
+ * and text via {@link #tokenize(String, HtmlHandler)} instead of reading it into a string which is parsed again.
+ * <p>
+ * Pages are requested with <em>gzip</em> or <em>deflate</em> compression. Compressed content is decoded while it is
+ * read, so all read methods, including the raw byte ones, provide the content uncompressed.
+ * <p>
+ * Pages which are read repeatedly, like on recrawling a site, should be read via a {@link CachingHttpTransport}. It
+ * revalidates previously read pages with conditional requests and serves their content from a {@link HttpCache} if the
+ * server reports them as not modified.
+ * <p>
+ * Reading a page is bounded by a connect and a read timeout and, if set, by a total timeout covering all redirects,
+ * retries and the transfer of the content. Failures which are likely transient, like a <em>503</em> response or a
+ * reset connection, are retried as specified by the {@link RetryPolicy}. Hosts with an occasional slow response can be
+ * read via a {@link HedgingHttpTransport}, which sends a second request once the first one takes unusually long.
+ * <p>
+ * The exchanges of all pages read, including their headers and redirects, can be archived into WARC files via a {@link
+ * WarcWriter}, so pages can be processed again later without going back to the network.
+ * <p>
+ * Crawls which know their hosts up front can connect to them before the first page is read via {@link
+ * #preconnect(Collection)}. The DNS lookups of a {@link PooledHttpTransport} provided on creating an instance can be
+ * cached by setting a {@link CachingDnsResolver} on the transport.
+ * <p>
+ * Whether a crawler may read a page according to the <em>robots.txt</em> of its host can be checked via a {@link
+ * RobotsCache}, which fetches the file of each host once and shares the parsed rules among all threads.
  *
  * @author Roman Vottner
  */
+@ThreadSafe
 @SuppressWarnings("unused")
 public class UrlReader
 {
     /** The logger of this class */
     private static Logger LOG = LoggerFactory.getLogger(UrlReader.class.getName());
-    /** The cookie received from a visited page */
-    private List<Cookie> cookies = new ArrayList<>();
-    /** The original URL of a page */
-    private String originURL = null;
-    /** The URL after a redirect */
-    private String realURL = null;
+    /** The transport shared by all instances which were not created with a dedicated transport */
+    private static final HttpTransport DEFAULT_TRANSPORT = new PooledHttpTransport();
+    /** The transport used to exchange requests with remote endpoints */
+    private final HttpTransport transport;
+    /** The default number of asynchronous downloads which may be in flight at the same time */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 64;
+    /** The default number of redirects which are followed while reading a single page */
+    public static final int DEFAULT_MAX_REDIRECTS = 20;
+    /** The default time to wait for a connection to be established */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    /** The default time to wait for the response headers and for each further chunk of content */
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+    /** The permanent redirects shared by all instances which were not assigned a dedicated cache */
+    private static final RedirectCache DEFAULT_REDIRECT_CACHE = new RedirectCache();
+    /** The number of bytes moved at once by {@link #transferTo(String, WritableByteChannel)} */
+    private static final int TRANSFER_CHUNK_SIZE = 64 * 1024;
+    /** Limits the number of asynchronous downloads in flight */
+    private volatile AsyncLimiter limiter = new AsyncLimiter(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    /** The cookies received from visited pages */
+    private volatile CookieJar cookieJar = new CookieJar();
+    /** The permanent redirects observed so far */
+    private volatile RedirectCache redirectCache = DEFAULT_REDIRECT_CACHE;
+    /** The maximum number of redirects followed while reading a single page */
+    private volatile int maxRedirects = DEFAULT_MAX_REDIRECTS;
+    /** The value of the <em>User-Agent</em> header, or <em>null</em> to use the one of the transport */
+    private volatile String userAgent = null;
+    /** Is notified once a page was read */
+    private volatile FetchListener fetchListener = null;
+    /** Archives the exchanges of all pages read */
+    private volatile WarcWriter warcWriter = null;
+    /** The time to wait for a connection to be established */
+    private volatile Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    /** The time to wait for the response headers and for each further chunk of content */
+    private volatile Duration readTimeout = DEFAULT_READ_TIMEOUT;
+    /** The time reading a page may take at most, including all redirects and retries */
+    private volatile Duration totalTimeout = null;
+    /** Decides whether a page is read again after reading it failed */
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    /** The number of content bytes received, which might have been compressed */
+    private final AtomicLong compressedBytes = new AtomicLong();
+    /** The number of content bytes after any compression was removed */
+    private final AtomicLong decompressedBytes = new AtomicLong();
+    /** The state of the page the calling thread read last */
+    private final ThreadLocal<FetchState> lastFetch = new ThreadLocal<>();
     /** Specifies if the output should contain line-breaks */
-    private boolean includeLineBreaks;
+    private final boolean includeLineBreaks;
 
     /**
      * Creates a new instance of this class.
      */
     public UrlReader()
     {
-        includeLineBreaks = false;
+        this(false, DEFAULT_TRANSPORT);
     }
 
     /**
@@ -53,13 +166,46 @@ public class UrlReader
      */
     public UrlReader(boolean includeLineBreaks)
     {
+        this(includeLineBreaks, DEFAULT_TRANSPORT);
+    }
+
+    /**
+     * Creates a new instance of this class which uses the provided transport to exchange requests with remote
+     * endpoints.
+     *
+     * @param transport
+     *         The transport to send requests with
+     */
+    public UrlReader(HttpTransport transport)
+    {
+        this(false, transport);
+    }
+
+    /**
+     * Creates a new instance of this class which uses the provided transport to exchange requests with remote
+     * endpoints and specifies to either include line breaks in the output if <em>includeLineBreaks</em> is set to true
+     * or to omit them if this argument is set to false.
+     *
+     * @param includeLineBreaks
+     *         If set to true specifies to include line breaks within the output, otherwise line breaks will be omitted
+     * @param transport
+     *         The transport to send requests with
+     */
+    public UrlReader(boolean includeLineBreaks, HttpTransport transport)
+    {
+        if (null == transport)
+        {
+            throw new IllegalArgumentException("No transport provided");
+        }
         this.includeLineBreaks = includeLineBreaks;
+        this.transport = transport;
     }
 
     /**
      * Reads the content of a web document by downloading the content of the specified page.
      * <p>
-     * If any redirects are necessary, this method will follow these to read the content of the page.
+     * If any redirects are necessary, this method will follow these to read the content of the page. The connection the
+     * content is read from is released once the returned scanner is closed.
      *
      * @param url
      *         The URL of the HTML page to load
@@ -74,105 +220,369 @@ public class UrlReader
      */
     public Scanner read(String url) throws IOException, IllegalArgumentException
     {
-        this.checkURL(url);
+        Response response = this.fetch(url);
+        return new Scanner(this.newReader(response));
+    }
 
-        // used an approach presented by tim_yates at stackoverflow.com
-        // (http://stackoverflow.com/questions/7055957/httpurlconnection-to-get-title-of-the-content-and-got-moved-permanently)
-        // as pages from nytimes require cookies
-        HttpURLConnection httpConn;
-        InputStreamReader reader = null;
-        this.originURL = url;
-        this.realURL = url;
-        int responseCode = 500;
-        while (responseCode != 200 && url != null)
-        {
-            httpConn = (HttpURLConnection) new URL(url).openConnection();
-            httpConn.setInstanceFollowRedirects(false);
+    /**
+     * Reads the content of a web document like {@link #read(String)} does, but provides its lines via a {@link
+     * LineReader} instead of a {@link Scanner}. The line reader splits the content into lines the same way, but hands
+     * each line out as a view of its buffer instead of a new string, which makes reading large pages considerably
+     * faster.
+     * <p>
+     * If any redirects are necessary, this method will follow these to read the content of the page. The connection the
+     * content is read from is released once the returned reader is closed.
+     *
+     * @param url
+     *         The URL of the HTML page to load
+     *
+     * @return The reader providing the lines of the HTML page the URL was referring too (after any redirects)
+     *
+     * @throws IOException
+     *         If an exception during loading the content of the page is thrown
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    public LineReader readLines(String url) throws IOException, IllegalArgumentException
+    {
+        Response response = this.fetch(url);
+        return new LineReader(this.newReader(response));
+    }
+
+    /**
+     * Reads the content of a web document like {@link #readLines(String)} does, but provides the decoded characters
+     * as they are, so callers can limit or transform them before splitting them into lines.
+     * <p>
+     * If any redirects are necessary, this method will follow these to read the content of the page. The connection the
+     * content is read from is released once the returned reader is closed.
+     *
+     * @param url
+     *         The URL of the document to load
+     *
+     * @return The reader providing the characters of the document the URL was referring too (after any redirects)
+     *
+     * @throws IOException
+     *         If an exception during loading the content of the document is thrown
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    Reader readCharacters(String url) throws IOException, IllegalArgumentException
+    {
+        return this.newReader(this.fetch(url));
+    }
+
+    /**
+     * Reads the content of a web document as raw bytes without decoding them into characters. This is useful if the
+     * content should be hashed, stored or forwarded as is. Reading the channel into a direct {@link ByteBuffer} which
+     * is reused for each read keeps the content off the heap entirely.
+     * <p>
+     * If any redirects are necessary, this method will follow these to read the content of the page. The connection the
+     * content is read from is released once the returned channel is closed.
+     *
+     * @param url
+     *         The URL of the document to load
+     *
+     * @return A channel providing the bytes of the document the URL was referring too (after any redirects)
+     *
+     * @throws IOException
+     *         If an exception during loading the content of the document is thrown
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    public ReadableByteChannel readChannel(String url) throws IOException, IllegalArgumentException
+    {
+        return new ResponseChannel(this.fetch(url));
+    }
 
-            // If we got a cookie last time round, then add it to our request
-            if (!cookies.isEmpty())
+    /**
+     * Downloads the content of a web document and writes its raw bytes to the given channel. If the target is a
+     * {@link FileChannel} the content is written starting at the current position of the channel and the position is
+     * advanced by the number of bytes written. The content is moved in chunks through a direct buffer, so a large
+     * download never materializes on the heap.
+     * <p>
+     * If any redirects are necessary, this method will follow these to read the content of the page.
+     *
+     * @param url
+     *         The URL of the document to load
+     * @param target
+     *         The channel to write the content to
+     *
+     * @return The number of bytes written to the target
+     *
+     * @throws IOException
+     *         If the content could not be downloaded or written to the target
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    public long transferTo(String url, WritableByteChannel target) throws IOException, IllegalArgumentException
+    {
+        try (ReadableByteChannel source = this.readChannel(url))
+        {
+            if (target instanceof FileChannel)
             {
-                StringBuilder cookieString = new StringBuilder();
-                for (Cookie cookie : cookies)
+                FileChannel file = (FileChannel) target;
+                long start = file.position();
+                long position = start;
+                long transferred;
+                while ((transferred = file.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0)
                 {
-                    for (String key : cookie.getCustomValues().keySet())
-                    {
-                        if (cookieString.toString().contains(key))
-                        {
-                            continue;
-                        }
-                        String value = cookie.getCustomValues().get(key);
-                        if (null != value && !"".equals(value))
-                        {
-                            if (cookieString.length() > 0)
-                            {
-                                cookieString.append("; ");
-                            }
-                            cookieString.append(key).append("=").append(value);
-                        }
-                    }
+                    position += transferred;
                 }
-                LOG.trace("Adding cookie to request: {}", cookieString);
-                httpConn.addRequestProperty("Cookie", cookieString.toString());
+                file.position(position);
+                return position - start;
             }
 
-            httpConn.setUseCaches(true);
-            httpConn.connect();
-
-            responseCode = httpConn.getResponseCode();
-            // Get the response code, and the location to jump to (in case of a redirect)
-            //			int responseCode = httpConn.getResponseCode();
-            String location = httpConn.getHeaderField("Location");
-            if (location != null)
+            ByteBuffer buffer = ByteBuffer.allocateDirect(TRANSFER_CHUNK_SIZE);
+            long total = 0;
+            while (source.read(buffer) != -1)
             {
-                this.realURL = location;
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    total += target.write(buffer);
+                }
+                buffer.clear();
             }
-            LOG.trace("Invoking {} resulted in a '{} {}' response code. Location URL: {}", url, responseCode,
-                      httpConn.getResponseMessage(), location);
+            return total;
+        }
+    }
+
+    /**
+     * Reads the content of a HTML page and reports its tags, attributes and text to the given handler while the content
+     * is downloaded, so the page is never held in memory as a whole. The handler may stop reading the page at any time,
+     * for example once it found the title of the page, in which case the remainder of the page is not downloaded.
+     * <p>
+     * If any redirects are necessary, this method will follow these to read the content of the page. The connection the
+     * content is read from is released once this method returns.
+     *
+     * @param url
+     *         The URL of the HTML page to load
+     * @param handler
+     *         The handler to report the tokens of the page to
+     *
+     * @return <em>true</em> if the whole page was read, <em>false</em> if the handler stopped reading the page
+     *
+     * @throws IOException
+     *         If an exception during loading the content of the page is thrown
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided or no handler is provided
+     * @see HtmlTokenizer
+     */
+    public boolean tokenize(String url, HtmlHandler handler) throws IOException, IllegalArgumentException
+    {
+        HtmlTokenizer tokenizer = new HtmlTokenizer(handler);
+        try (Response response = this.fetch(url))
+        {
+            return tokenizer.tokenize(this.newReader(response));
+        }
+    }
+
+    /**
+     * Requests the given URL and follows any redirects until the final response is received. The state of the read is
+     * published to the calling thread, so the getters of this instance report it.
+     *
+     * @param url
+     *         The URL to request
+     *
+     * @return The final response whose body contains the content of the document
+     *
+     * @throws IOException
+     *         If an exception during loading the content of the page is thrown
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
+     */
+    private Response fetch(String url) throws IOException, IllegalArgumentException
+    {
+        this.checkURL(url);
 
-            // Try and get a cookie the site will set, we will pass this next time round
-            // cookie = handleCookie(cookie, httpConn.getHeaderField("Set-Cookie"));
-            List<String> cookieStrings = httpConn.getHeaderFields().get("Set-Cookie");
-            if (null != cookieStrings)
+        FetchState state = new FetchState(url);
+        this.lastFetch.set(state);
+        FetchRecorder recorder = this.createRecorder(url);
+        Deadline deadline = Deadline.after(this.totalTimeout);
+        RetryPolicy policy = this.retryPolicy;
+        int retries = 0;
+        try
+        {
+            while (true)
             {
-                for (String cookieString : cookieStrings)
+                try
+                {
+                    return this.fetchOnce(url, state, recorder, deadline);
+                }
+                catch (IOException ioEx)
                 {
-                    if (cookieString != null && !"".equals(cookieString))
+                    Duration delay = this.getRetryDelay(policy, retries, ioEx, state.retryAfter, deadline);
+                    if (null == delay)
                     {
-                        cookies.add(new Cookie(cookieString));
+                        throw ioEx;
                     }
+                    LOG.debug("Reading {} failed, retrying in {} ms. Reason: {}", url, delay.toMillis(),
+                              ioEx.getLocalizedMessage());
+                    sleep(delay);
+                    retries++;
+                    recorder.restart();
                 }
             }
+        }
+        catch (IOException ioEx)
+        {
+            recorder.failed(ioEx);
+            throw ioEx;
+        }
+    }
 
-            if (null != reader)
+    /**
+     * Requests the given URL once, starting at the cached target of a permanent redirect of the URL if available, and
+     * follows any redirects until the final response is received.
+     *
+     * @param url
+     *         The URL to request
+     * @param state
+     *         The state of reading the page
+     * @param recorder
+     *         Records the figures of the hops
+     * @param deadline
+     *         The deadline reading the page has to be completed by
+     *
+     * @return The final response whose body contains the content of the document
+     *
+     * @throws IOException
+     *         If an exception during loading the content of the page is thrown
+     */
+    private Response fetchOnce(String url, FetchState state, FetchRecorder recorder, Deadline deadline)
+            throws IOException
+    {
+        String target = this.redirectCache.getTarget(url);
+        if (null != target)
+        {
+            try
             {
-                reader.close();
+                return this.follow(url, target, state, recorder, deadline);
             }
-
-            Charset charset = StandardCharsets.UTF_8;
-            String contentType = httpConn.getHeaderField("Content-Type");
-            if (null != contentType && contentType.toLowerCase().contains("charset"))
+            catch (IOException ioEx)
             {
-                String[] segments = contentType.toLowerCase().split(";");
-                for (String segment : segments)
+                if (state.statusCode == -1)
                 {
-                    if (segment.contains("charset"))
-                    {
-                        String[] kv = segment.split("=");
-                        LOG.trace("Using charset {} for content received from {}", kv[1], url);
-                        charset = Charset.forName(kv[1]);
-                        break;
-                    }
+                    throw ioEx;
                 }
+                // the permanent redirect might have been withdrawn, so follow the redirects from the start again
+                LOG.debug("Cached redirect of {} to {} failed, following redirects again. Reason: {}", url, target,
+                          ioEx.getLocalizedMessage());
+                this.redirectCache.remove(url);
+                recorder.restart();
+            }
+        }
+        return this.follow(url, url, state, recorder, deadline);
+    }
+
+    /**
+     * Determines the time to wait for before reading a page again after the previous attempt failed.
+     *
+     * @param policy
+     *         The policy deciding on retries
+     * @param retries
+     *         The number of retries performed so far
+     * @param failure
+     *         The exception the previous attempt failed with
+     * @param retryAfter
+     *         The time the server asked to wait for in its last response or <em>null</em> if it did not ask to wait
+     * @param deadline
+     *         The deadline reading the page has to be completed by
+     *
+     * @return The time to wait for or <em>null</em> if the page should not be read again
+     */
+    private Duration getRetryDelay(RetryPolicy policy, int retries, IOException failure, Duration retryAfter,
+                                   Deadline deadline)
+    {
+        Duration delay;
+        if (failure instanceof StatusException)
+        {
+            int status = ((StatusException) failure).statusCode;
+            delay = policy.isRetryable(status) ? policy.getDelay(retries, retryAfter) : null;
+        }
+        else
+        {
+            delay = policy.isRetryable(failure) ? policy.getDelay(retries, null) : null;
+        }
+        return null != delay && deadline.allows(delay) ? delay : null;
+    }
+
+    private static void sleep(Duration delay) throws InterruptedIOException
+    {
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+        }
+        catch (InterruptedException iEx)
+        {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ioEx = new InterruptedIOException("Interrupted while waiting for a retry");
+            ioEx.initCause(iEx);
+            throw ioEx;
+        }
+    }
+
+    /**
+     * Requests the given URL and follows any redirects until the final response is received.
+     *
+     * @param origin
+     *         The URL a caller requested to read
+     * @param url
+     *         The URL to request first, which is either the origin or the cached target of a permanent redirect of
+     *         the origin
+     * @param state
+     *         The state of reading the page
+     * @param recorder
+     *         Records the figures of the hops
+     * @param deadline
+     *         The deadline reading the page has to be completed by
+     *
+     * @return The final response whose body contains the content of the document
+     *
+     * @throws IOException
+     *         If an exception during loading the content of the page is thrown
+     */
+    private Response follow(String origin, String url, FetchState state, FetchRecorder recorder, Deadline deadline)
+            throws IOException
+    {
+        // used an approach presented by tim_yates at stackoverflow.com
+        // (http://stackoverflow.com/questions/7055957/httpurlconnection-to-get-title-of-the-content-and-got-moved-permanently)
+        // as pages from nytimes require cookies
+        Response response = null;
+        state.reset(url);
+        RedirectChain chain = new RedirectChain(this.maxRedirects);
+        int responseCode = 500;
+        while (responseCode != 200 && url != null)
+        {
+            if (null != response)
+            {
+                // hand the connection of the previous hop back so a redirect to the same host can reuse it
+                response.close();
             }
-            reader = new InputStreamReader(httpConn.getInputStream(), charset);
-            url = location;
+            deadline.check(url);
+            Request request = this.createRequest(url, deadline);
+            chain.visit(url, request.getHeader("Cookie"));
+            recorder.requestSent(request.getUrl());
+            response = this.archive(request, this.transport.execute(request));
+            recorder.responseReceived(response);
+            responseCode = response.getStatusCode();
+            chain.received(responseCode, !response.getHeaders("Set-Cookie").isEmpty());
+            url = this.processResponse(url, response, state);
         }
-        if (reader == null)
+        if (response == null)
         {
             throw new IOException("Could not read input source");
         }
-        return new Scanner(reader);
+        chain.storeIn(this.redirectCache, origin);
+        this.archiveRedirect(origin, response);
+        response = this.decode(response, recorder);
+        InputStream guarded = deadline.guard(response.getBody(), response.getUrl().toExternalForm());
+        if (guarded != response.getBody())
+        {
+            response = new Response(response.getUrl(), response.getStatusCode(), response.getStatusMessage(),
+                                    response.getHeaders(), guarded);
+        }
+        return response;
     }
 
     /**
@@ -193,97 +603,1076 @@ public class UrlReader
     {
         this.checkURL(url);
 
-        StringBuilder buffer = new StringBuilder();
         try
         {
-            Scanner scanner = read(url);
-            while (scanner.hasNextLine())
-            {
-                String line = scanner.nextLine();
-
-                String curHTML = buffer.toString();
-                if (curHTML.endsWith(" ") && !line.startsWith(" "))
-                {
-                    buffer.append(line);
-                }
-                else if (curHTML.endsWith(" ") && line.startsWith(" "))
-                {
-                    buffer.append(line.trim());
-                }
-                else if (!curHTML.endsWith(" ") && line.startsWith(" "))
-                {
-                    buffer.append(line);
-                }
-                else if (!line.trim().equals(""))
-                {
-                    buffer.append(" ");
-                    buffer.append(line);
-                }
-                // add a line break if requested
-                if (this.includeLineBreaks)
-                {
-                    buffer.append("\n");
-                }
-            }
+            return this.loadPage(url);
         }
         catch (IOException ioEx)
         {
             LOG.warn("Could not read {}! Reason: {}", url, ioEx.getLocalizedMessage());
             return null;
         }
-        return buffer.toString();
     }
 
-    private void checkURL(String url)
+    /**
+     * Reads the content of a web document like {@link #readPage(String)} does, but propagates any failure to the
+     * caller.
+     *
+     * @param url
+     *         The URL of the HTML page to load
+     *
+     * @return The content of the HTML page the URL was referring too (after any redirects)
+     *
+     * @throws IOException
+     *         If the page could not be read
+     */
+    String loadPage(String url) throws IOException
     {
-        if (!url.startsWith("http://") && !url.startsWith("https://"))
+        try (LineReader lines = this.readLines(url))
         {
-            throw new IllegalArgumentException("No valid URL provided! Found " + url);
+            return this.assemblePage(lines);
         }
     }
 
     /**
-     * Returns the original URL this instance was requested to load a page from.
+     * Reads the content of a web document asynchronously without blocking the calling thread while the content is
+     * downloaded. Any redirects are followed like on {@link #readPage(String)}.
+     * <p>
+     * The download is performed by the transport of this instance if it is an {@link AsyncHttpTransport}, otherwise a
+     * shared {@link HttpClientTransport} is used. At most {@link #getMaxConcurrentRequests()} downloads of this instance
+     * are in flight at the same time, further downloads are queued until a running download completes. Cancelling the
+     * returned future either removes the download from the queue or aborts the running exchange.
+     *
+     * @param url
+     *         The URL of the HTML page to load
+     *
+     * @return A future which completes with the content of the HTML page the URL was referring too (after any
+     * redirects) contained in a single String object, or completes exceptionally with an {@link IOException} if the
+     * page could not be read
      *
-     * @return The original URL as provided by a caller
+     * @throws IllegalArgumentException
+     *         If no valid URL is provided
      */
-    public String getOriginURL()
+    public CompletableFuture<String> readPageAsync(String url) throws IllegalArgumentException
     {
-        return this.originURL;
+        this.checkURL(url);
+
+        AsyncHttpTransport asyncTransport = this.transport instanceof AsyncHttpTransport
+                                            ? (AsyncHttpTransport) this.transport
+                                            : AsyncTransportHolder.DEFAULT_ASYNC_TRANSPORT;
+        AsyncExchange exchange = new AsyncExchange(url);
+        CompletableFuture<String> page = this.limiter.submit(() -> {
+            FetchRecorder recorder = this.createRecorder(url);
+            exchange.recorder = recorder;
+            Deadline deadline = Deadline.after(this.totalTimeout);
+            CompletableFuture<String> content = this.fetchAsync(asyncTransport, url, exchange, deadline,
+                                                                this.retryPolicy, 0).thenApply(response -> {
+                Response decoded;
+                try
+                {
+                    decoded = this.decode(response, recorder);
+                }
+                catch (IOException ioEx)
+                {
+                    throw new CompletionException(ioEx);
+                }
+                try (LineReader lines = new LineReader(this.newReader(decoded)))
+                {
+                    return this.assemblePage(lines);
+                }
+                catch (IOException ioEx)
+                {
+                    throw new CompletionException(ioEx);
+                }
+            });
+            Duration remaining = deadline.remaining();
+            if (null != remaining)
+            {
+                Executor timer = CompletableFuture.delayedExecutor(remaining.toNanos(), TimeUnit.NANOSECONDS);
+                timer.execute(() -> {
+                    if (content.completeExceptionally(
+                            new SocketTimeoutException("Deadline for reading " + url + " exceeded")))
+                    {
+                        exchange.cancel();
+                    }
+                });
+            }
+            return content;
+        });
+        page.whenComplete((content, failure) -> {
+            if (page.isCancelled())
+            {
+                exchange.cancel();
+            }
+            FetchRecorder recorder = exchange.recorder;
+            if (null != failure && null != recorder)
+            {
+                recorder.failed(failure instanceof CompletionException && null != failure.getCause()
+                                ? failure.getCause() : failure);
+            }
+        });
+        return page;
     }
 
     /**
-     * Returns the URL of a downloaded page after any redirect occurred.
+     * Requests the given URL asynchronously like {@link #fetchOnceAsync(AsyncHttpTransport, String, AsyncExchange,
+     * Deadline)} does, but attempts to read the page again as long as the retry policy permits it.
+     *
+     * @param asyncTransport
+     *         The transport to send the requests with
+     * @param url
+     *         The URL to request
+     * @param exchange
+     *         Tracks the exchange currently in flight so it can be aborted on cancellation
+     * @param deadline
+     *         The deadline reading the page has to be completed by
+     * @param policy
+     *         The policy deciding on retries
+     * @param retries
+     *         The number of retries performed so far
      *
-     * @return The real URL of the document
+     * @return A future which completes with the response of the last hop
      */
-    public String getRealURL()
+    private CompletableFuture<Response> fetchAsync(AsyncHttpTransport asyncTransport, String url,
+                                                   AsyncExchange exchange, Deadline deadline, RetryPolicy policy,
+                                                   int retries)
     {
-        return this.realURL;
+        return this.fetchOnceAsync(asyncTransport, url, exchange, deadline).handle((response, failure) -> {
+            if (null == failure)
+            {
+                return CompletableFuture.completedFuture(response);
+            }
+            Throwable cause = failure instanceof CompletionException && null != failure.getCause()
+                              ? failure.getCause() : failure;
+            Duration delay = cause instanceof IOException && !exchange.cancelled
+                             ? this.getRetryDelay(policy, retries, (IOException) cause, exchange.state.retryAfter,
+                                                  deadline)
+                             : null;
+            if (null == delay)
+            {
+                CompletableFuture<Response> failed = new CompletableFuture<>();
+                failed.completeExceptionally(cause);
+                return failed;
+            }
+            LOG.debug("Reading {} failed, retrying in {} ms. Reason: {}", url, delay.toMillis(),
+                      cause.getLocalizedMessage());
+            exchange.recorder.restart();
+            Executor delayed = CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS);
+            return CompletableFuture.runAsync(() -> { }, delayed).thenCompose(
+                    ignored -> this.fetchAsync(asyncTransport, url, exchange, deadline, policy, retries + 1));
+        }).thenCompose(response -> response);
     }
 
     /**
-     * An entrance point to downloading pages which uses a URL specified as parameter and prints its content to the
-     * specified log4j2 log file.
-     * <p>
-     * The page to download should be provided as the first argument. Any other arguments will be ignored.
+     * Requests the given URL asynchronously, starting at the cached target of a permanent redirect of the URL if
+     * available, and follows any redirects the same way {@link #read(String)} does.
      *
-     * @param args
-     *         The arguments passed to UrlReader - only the first is used which should be the URL of the page to read
+     * @param asyncTransport
+     *         The transport to send the requests with
+     * @param url
+     *         The URL to request
+     * @param exchange
+     *         Tracks the exchange currently in flight so it can be aborted on cancellation
+     * @param deadline
+     *         The deadline reading the page has to be completed by
      *
-     * @throws IOException
-     *         If any exception during downloading and reading the page occurred.
+     * @return A future which completes with the response of the last hop
      */
-    public static void main(String[] args) throws IOException
+    private CompletableFuture<Response> fetchOnceAsync(AsyncHttpTransport asyncTransport, String url,
+                                                       AsyncExchange exchange, Deadline deadline)
     {
-        UrlReader reader = new UrlReader();
-        String url = args[0];
-        Scanner scanner = reader.read(url);
-        LOG.debug("Reading origin url: {}", reader.getOriginURL());
-        LOG.debug("Reading real url: {}", reader.getRealURL());
-        while (scanner.hasNextLine())
+        String target = this.redirectCache.getTarget(url);
+        if (null == target)
         {
-            LOG.debug(scanner.nextLine());
+            return this.followAsync(asyncTransport, url, url, exchange, deadline);
+        }
+        return this.followAsync(asyncTransport, url, target, exchange, deadline).handle((response, failure) -> {
+            if (null == failure)
+            {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (exchange.state.statusCode == -1)
+            {
+                CompletableFuture<Response> failed = new CompletableFuture<>();
+                failed.completeExceptionally(failure);
+                return failed;
+            }
+            // the permanent redirect might have been withdrawn, so follow the redirects from the start again
+            LOG.debug("Cached redirect of {} to {} failed, following redirects again. Reason: {}", url, target,
+                      failure.getLocalizedMessage());
+            this.redirectCache.remove(url);
+            exchange.recorder.restart();
+            return this.followAsync(asyncTransport, url, url, exchange, deadline);
+        }).thenCompose(response -> response);
+    }
+
+    /**
+     * Requests the given URL asynchronously and follows any redirects until the final response is received.
+     *
+     * @param asyncTransport
+     *         The transport to send the requests with
+     * @param origin
+     *         The URL a caller requested to read
+     * @param url
+     *         The URL to request first
+     * @param exchange
+     *         Tracks the exchange currently in flight so it can be aborted on cancellation
+     * @param deadline
+     *         The deadline reading the page has to be completed by
+     *
+     * @return A future which completes with the response of the last hop
+     */
+    private CompletableFuture<Response> followAsync(AsyncHttpTransport asyncTransport, String origin, String url,
+                                                    AsyncExchange exchange, Deadline deadline)
+    {
+        exchange.state.reset(url);
+        RedirectChain chain = new RedirectChain(this.maxRedirects);
+        return this.readAsync(asyncTransport, url, exchange, chain, deadline).thenApply(response -> {
+            chain.storeIn(this.redirectCache, origin);
+            this.archiveRedirect(origin, response);
+            return response;
+        });
+    }
+
+    /**
+     * Sends a request for the given URL and follows any redirects the same way {@link #read(String)} does.
+     *
+     * @param asyncTransport
+     *         The transport to send the requests with
+     * @param url
+     *         The URL to request
+     * @param exchange
+     *         Tracks the exchange currently in flight so it can be aborted on cancellation
+     * @param chain
+     *         The hops followed so far
+     * @param deadline
+     *         The deadline reading the page has to be completed by
+     *
+     * @return A future which completes with the response of the last hop
+     */
+    private CompletableFuture<Response> readAsync(AsyncHttpTransport asyncTransport, String url,
+                                                  AsyncExchange exchange, RedirectChain chain, Deadline deadline)
+    {
+        Request request;
+        try
+        {
+            deadline.check(url);
+            request = this.createRequest(url, deadline);
+            chain.visit(url, request.getHeader("Cookie"));
+            exchange.recorder.requestSent(request.getUrl());
+        }
+        catch (IOException ioEx)
+        {
+            CompletableFuture<Response> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ioEx);
+            return failed;
+        }
+        return exchange.start(asyncTransport.executeAsync(request)).thenCompose(received -> {
+            Response response = this.archive(request, received);
+            String location;
+            try
+            {
+                exchange.recorder.responseReceived(response);
+                chain.received(response.getStatusCode(), !response.getHeaders("Set-Cookie").isEmpty());
+                location = this.processResponse(url, response, exchange.state);
+                if (response.getStatusCode() == 200 || null == location)
+                {
+                    return CompletableFuture.completedFuture(response);
+                }
+                // the body is already buffered, but closing it completes the archived exchange of the hop
+                response.close();
+            }
+            catch (IOException ioEx)
+            {
+                throw new CompletionException(ioEx);
+            }
+            return this.readAsync(asyncTransport, location, exchange, chain, deadline);
+        });
+    }
+
+    /**
+     * Creates the request for the given URL and adds any cookies received so far. The timeouts of the request are
+     * limited to the time left until the deadline expires.
+     *
+     * @param url
+     *         The URL to request
+     * @param deadline
+     *         The deadline reading the page has to be completed by
+     *
+     * @return The request to send
+     *
+     * @throws IOException
+     *         If the URL is malformed
+     */
+    private Request createRequest(String url, Deadline deadline) throws IOException
+    {
+        Request request = new Request(new URL(url));
+        request.setHeader("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING);
+        request.setConnectTimeout(deadline.cap(this.connectTimeout));
+        request.setReadTimeout(deadline.cap(this.readTimeout));
+        String userAgent = this.userAgent;
+        if (null != userAgent)
+        {
+            request.setHeader("User-Agent", userAgent);
+        }
+
+        // If we got a cookie last time round, then add it to our request
+        String cookieHeader = this.cookieJar.getCookieHeader(request.getUrl());
+        if (null != cookieHeader)
+        {
+            LOG.trace("Adding cookie to request: {}", cookieHeader);
+            request.addHeader("Cookie", cookieHeader);
+        }
+        return request;
+    }
+
+    /**
+     * Processes the response of a single hop by storing the cookies the site set and determining the location to jump
+     * to in case of a redirect.
+     *
+     * @param url
+     *         The URL which was requested
+     * @param response
+     *         The response received for the URL
+     * @param state
+     *         The state of reading the page, which is updated with the figures of the response
+     *
+     * @return The absolute location to jump to or <em>null</em> if the response does not redirect to a further location
+     *
+     * @throws IOException
+     *         If the response indicates an error or redirects to an invalid location, in which case the response is
+     *         closed
+     */
+    private String processResponse(String url, Response response, FetchState state) throws IOException
+    {
+        // Get the response code, and the location to jump to (in case of a redirect)
+        int responseCode = response.getStatusCode();
+        state.statusCode = responseCode;
+        state.retryAfter = parseRetryAfter(response.getHeader("Retry-After"));
+        String location = response.getHeader("Location");
+        if (location != null)
+        {
+            try
+            {
+                location = RedirectChain.resolve(url, location);
+            }
+            catch (IOException ioEx)
+            {
+                response.close();
+                throw ioEx;
+            }
+            state.realURL = location;
+        }
+        LOG.trace("Invoking {} resulted in a '{} {}' response code. Location URL: {}", url, responseCode,
+                  response.getStatusMessage(), location);
+
+        // Try and get a cookie the site will set, we will pass this next time round
+        for (String cookieString : response.getHeaders("Set-Cookie"))
+        {
+            if (cookieString != null && !"".equals(cookieString))
+            {
+                this.cookieJar.store(response.getUrl(), new Cookie(cookieString));
+            }
+        }
+
+        if (responseCode >= 400)
+        {
+            response.close();
+            throw new StatusException(responseCode, url);
+        }
+        return location;
+    }
+
+    /**
+     * Hands the given exchange to the WARC writer of this instance, if any.
+     *
+     * @param request
+     *         The request which was sent
+     * @param response
+     *         The response received for the request
+     *
+     * @return The response to read the body from, which archives the exchange once the body was read or closed
+     */
+    private Response archive(Request request, Response response)
+    {
+        WarcWriter writer = this.warcWriter;
+        return null != writer ? writer.archive(request, response) : response;
+    }
+
+    /**
+     * Archives the URL a page was requested with and the URL it was finally read from if the page was redirected.
+     *
+     * @param origin
+     *         The URL a caller requested to read
+     * @param response
+     *         The final response of the page
+     */
+    private void archiveRedirect(String origin, Response response)
+    {
+        WarcWriter writer = this.warcWriter;
+        String realURL = response.getUrl().toExternalForm();
+        if (null == writer || origin.equals(realURL))
+        {
+            return;
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("originURL", origin);
+        fields.put("realURL", realURL);
+        try
+        {
+            writer.writeMetadata(origin, fields);
+        }
+        catch (IOException ioEx)
+        {
+            LOG.warn("Could not archive the redirect of {}. Reason: {}", origin, ioEx.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Creates the recorder for reading the page of the given URL.
+     *
+     * @param url
+     *         The URL of the page to read
+     *
+     * @return The recorder which notifies the fetch listener of this instance
+     */
+    private FetchRecorder createRecorder(String url)
+    {
+        return new FetchRecorder(url, this.fetchListener, this.compressedBytes, this.decompressedBytes);
+    }
+
+    /**
+     * Wraps the body of the final response of a page into a stream which removes any content coding and counts the
+     * bytes received and decoded.
+     *
+     * @param response
+     *         The final response of a page
+     * @param recorder
+     *         Records the number of bytes received and decoded
+     *
+     * @return The response providing the decoded content
+     *
+     * @throws IOException
+     *         If the decoding could not be started, in which case the response is closed
+     */
+    private Response decode(Response response, FetchRecorder recorder) throws IOException
+    {
+        try
+        {
+            return ContentDecoder.decode(response, recorder);
+        }
+        catch (IOException ioEx)
+        {
+            response.close();
+            throw ioEx;
+        }
+    }
+
+    /**
+     * Creates a reader which decodes the content of the response with the charset detected by {@link
+     * CharsetDetector}. The response is closed if the start of its content could not be read.
+     *
+     * @param response
+     *         The response whose content should be decoded
+     *
+     * @return The reader providing the characters of the content
+     *
+     * @throws IOException
+     *         If the start of the content could not be read
+     */
+    private Reader newReader(Response response) throws IOException
+    {
+        try
+        {
+            return CharsetDetector.newReader(response.getBody(), response.getHeader("Content-Type"));
+        }
+        catch (IOException ioEx)
+        {
+            response.close();
+            throw ioEx;
+        }
+    }
+
+    /**
+     * Assembles the lines provided by the line reader into a single string.
+     *
+     * @param lines
+     *         The reader providing the lines of the page
+     *
+     * @return The content of the page
+     *
+     * @throws IOException
+     *         If reading the page failed before its end was reached, for example as a timeout elapsed
+     */
+    private String assemblePage(LineReader lines) throws IOException
+    {
+        PageAssembler page = new PageAssembler(this.includeLineBreaks);
+        CharSequence line;
+        while (null != (line = lines.readLine()))
+        {
+            page.appendLine(line);
+        }
+        return page.toString();
+    }
+
+    /**
+     * Resolves the hosts of the given URLs and opens a connection to each of them ahead of the first request, so
+     * reading the first page of a known host does not have to wait for the DNS lookup and the handshakes. Connections
+     * are bounded by the connect timeout of this instance and are kept open as long as the transport keeps idle
+     * connections open.
+     * <p>
+     * Connections can only be opened in advance if this instance reads via a {@link PooledHttpTransport}, which is the
+     * case unless a different transport was provided on creating this instance.
+     *
+     * @param urls
+     *         The URLs whose hosts should be connected to
+     *
+     * @return The number of distinct hosts a connection is available for, 0 if the transport does not keep connections
+     *
+     * @throws IllegalArgumentException
+     *         If one of the URLs is invalid
+     */
+    public int preconnect(Collection<String> urls) throws IllegalArgumentException
+    {
+        List<URL> targets = new ArrayList<>(urls.size());
+        for (String url : urls)
+        {
+            this.checkURL(url);
+            try
+            {
+                targets.add(new URL(url));
+            }
+            catch (MalformedURLException muEx)
+            {
+                throw new IllegalArgumentException("No valid URL provided! Found " + url, muEx);
+            }
+        }
+        if (!(this.transport instanceof PooledHttpTransport))
+        {
+            LOG.debug("Transport {} does not keep connections, not preconnecting", this.transport);
+            return 0;
+        }
+        return ((PooledHttpTransport) this.transport).preconnect(targets, this.connectTimeout);
+    }
+
+    private void checkURL(String url)
+    {
+        if (!url.startsWith("http://") && !url.startsWith("https://"))
+        {
+            throw new IllegalArgumentException("No valid URL provided! Found " + url);
+        }
+    }
+
+    /**
+     * Returns the original URL the calling thread last requested to load a page from via this instance. Pages read
+     * asynchronously are not considered.
+     *
+     * @return The original URL as provided by a caller or <em>null</em> if the calling thread did not read a page yet
+     */
+    public String getOriginURL()
+    {
+        FetchState state = this.lastFetch.get();
+        return null != state ? state.originURL : null;
+    }
+
+    /**
+     * Returns the URL of the page the calling thread last downloaded via this instance after any redirect occurred.
+     * Pages read asynchronously are not considered.
+     *
+     * @return The real URL of the document or <em>null</em> if the calling thread did not read a page yet
+     */
+    public String getRealURL()
+    {
+        FetchState state = this.lastFetch.get();
+        return null != state ? state.realURL : null;
+    }
+
+    /**
+     * Returns the store of the cookies received from visited pages.
+     *
+     * @return The cookies of this instance
+     */
+    public CookieJar getCookieJar()
+    {
+        return this.cookieJar;
+    }
+
+    /**
+     * Sets the store of the cookies which are sent along with requests and which receives the cookies set by visited
+     * pages. As the store is thread-safe, it may be shared by multiple instances.
+     *
+     * @param cookieJar
+     *         The store of the cookies to use
+     */
+    public void setCookieJar(CookieJar cookieJar)
+    {
+        if (null == cookieJar)
+        {
+            throw new IllegalArgumentException("No cookie jar provided");
+        }
+        this.cookieJar = cookieJar;
+    }
+
+    /**
+     * Returns the cache of the permanent redirects observed while reading pages. Unless a dedicated cache was set, all
+     * instances share the same cache.
+     *
+     * @return The redirect cache of this instance
+     */
+    public RedirectCache getRedirectCache()
+    {
+        return this.redirectCache;
+    }
+
+    /**
+     * Sets the cache of the permanent redirects which is consulted before a page is requested and which receives the
+     * permanent redirects observed while reading pages.
+     *
+     * @param redirectCache
+     *         The redirect cache to use
+     */
+    public void setRedirectCache(RedirectCache redirectCache)
+    {
+        if (null == redirectCache)
+        {
+            throw new IllegalArgumentException("No redirect cache provided");
+        }
+        this.redirectCache = redirectCache;
+    }
+
+    /**
+     * Returns the maximum number of redirects which are followed while reading a single page.
+     *
+     * @return The maximum number of redirects
+     */
+    public int getMaxRedirects()
+    {
+        return this.maxRedirects;
+    }
+
+    /**
+     * Sets the maximum number of redirects which are followed while reading a single page. Reading a page which
+     * requires more redirects fails.
+     *
+     * @param maxRedirects
+     *         The maximum number of redirects
+     */
+    public void setMaxRedirects(int maxRedirects)
+    {
+        if (maxRedirects < 0)
+        {
+            throw new IllegalArgumentException("The maximum number of redirects must not be negative");
+        }
+        this.maxRedirects = maxRedirects;
+    }
+
+    /**
+     * Returns the value of the <em>User-Agent</em> header sent with each request.
+     *
+     * @return The user agent or <em>null</em> if the default of the transport applies
+     */
+    public String getUserAgent()
+    {
+        return this.userAgent;
+    }
+
+    /**
+     * Sets the value of the <em>User-Agent</em> header sent with each request, which identifies the crawler to the
+     * sites it reads.
+     *
+     * @param userAgent
+     *         The user agent or <em>null</em> to use the default of the transport
+     */
+    public void setUserAgent(String userAgent)
+    {
+        if (null != userAgent && userAgent.isBlank())
+        {
+            throw new IllegalArgumentException("The user agent must not be blank");
+        }
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Returns the time to wait for a connection to be established, including the TLS handshake.
+     *
+     * @return The connect timeout or <em>null</em> if the default of the transport applies
+     */
+    public Duration getConnectTimeout()
+    {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Sets the time to wait for a connection to be established, including the TLS handshake. Defaults to {@link
+     * #DEFAULT_CONNECT_TIMEOUT}.
+     *
+     * @param connectTimeout
+     *         The connect timeout or <em>null</em> to apply the default of the transport
+     */
+    public void setConnectTimeout(Duration connectTimeout)
+    {
+        this.connectTimeout = checkTimeout(connectTimeout);
+    }
+
+    /**
+     * Returns the time to wait for the response headers and for each further chunk of the content.
+     *
+     * @return The read timeout or <em>null</em> if the default of the transport applies
+     */
+    public Duration getReadTimeout()
+    {
+        return this.readTimeout;
+    }
+
+    /**
+     * Sets the time to wait for the response headers and for each further chunk of the content. Defaults to {@link
+     * #DEFAULT_READ_TIMEOUT}.
+     *
+     * @param readTimeout
+     *         The read timeout or <em>null</em> to apply the default of the transport
+     */
+    public void setReadTimeout(Duration readTimeout)
+    {
+        this.readTimeout = checkTimeout(readTimeout);
+    }
+
+    /**
+     * Returns the time reading a page may take at most, including all redirects, retries and the transfer of the
+     * content.
+     *
+     * @return The total timeout or <em>null</em> if reading a page is only limited by the connect and read timeouts
+     */
+    public Duration getTotalTimeout()
+    {
+        return this.totalTimeout;
+    }
+
+    /**
+     * Sets the time reading a page may take at most, including all redirects, retries and the transfer of the content.
+     * The content returned by {@link #read(String)} and {@link #readChannel(String)} fails to be read once the time
+     * passed. By default reading a page is only limited by the connect and read timeouts.
+     *
+     * @param totalTimeout
+     *         The total timeout or <em>null</em> to not limit the total time
+     */
+    public void setTotalTimeout(Duration totalTimeout)
+    {
+        this.totalTimeout = checkTimeout(totalTimeout);
+    }
+
+    private static Duration checkTimeout(Duration timeout)
+    {
+        if (null != timeout && (timeout.isNegative() || timeout.isZero()))
+        {
+            throw new IllegalArgumentException("Timeouts have to be positive");
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the policy which decides whether a page is read again after reading it failed.
+     *
+     * @return The retry policy of this instance
+     */
+    public RetryPolicy getRetryPolicy()
+    {
+        return this.retryPolicy;
+    }
+
+    /**
+     * Sets the policy which decides whether a page is read again after reading it failed. Defaults to {@link
+     * RetryPolicy#DEFAULT}.
+     *
+     * @param retryPolicy
+     *         The retry policy to apply or <em>null</em> to never read a page again
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = null != retryPolicy ? retryPolicy : RetryPolicy.NONE;
+    }
+
+    /**
+     * Returns the listener which is notified once a page was read.
+     *
+     * @return The fetch listener of this instance or <em>null</em> if no listener was set
+     */
+    public FetchListener getFetchListener()
+    {
+        return this.fetchListener;
+    }
+
+    /**
+     * Sets the listener which is notified with the figures of each page read, like the number of redirects, the
+     * number of bytes received and the time to the first byte. A {@link FetchMetricsRegistry} aggregates these figures
+     * per host.
+     *
+     * @param fetchListener
+     *         The listener to notify or <em>null</em> to stop notifying a listener
+     */
+    public void setFetchListener(FetchListener fetchListener)
+    {
+        this.fetchListener = fetchListener;
+    }
+
+    /**
+     * Returns the writer the exchanges of all pages read are archived with.
+     *
+     * @return The WARC writer or <em>null</em> if no exchanges are archived
+     */
+    public WarcWriter getWarcWriter()
+    {
+        return this.warcWriter;
+    }
+
+    /**
+     * Sets the writer the exchanges of all pages read are archived with. Each hop of a page is archived with its
+     * request and response headers and the body as received, and the URL a redirected page was requested with is
+     * archived along with the URL it was read from. The body of a hop is archived once it was read to its end or
+     * closed, so the readers returned by {@link #read(String)} and {@link #readLines(String)} have to be closed.
+     * Archived pages can be read again without going back to the network via a {@link
+     * at.rovo.common.warc.WarcReplayTransport}.
+     *
+     * @param warcWriter
+     *         The writer to archive the exchanges with or <em>null</em> to stop archiving exchanges
+     */
+    public void setWarcWriter(WarcWriter warcWriter)
+    {
+        this.warcWriter = warcWriter;
+    }
+
+    /**
+     * Returns the number of content bytes this instance received so far. For content which was transferred compressed,
+     * this is the number of compressed bytes.
+     *
+     * @return The number of content bytes received
+     */
+    public long getCompressedBytes()
+    {
+        return this.compressedBytes.get();
+    }
+
+    /**
+     * Returns the number of content bytes this instance provided to its callers so far, which is the number of bytes
+     * received after any compression was removed. Comparing this value with {@link #getCompressedBytes()} yields the
+     * transfer volume saved by compression.
+     *
+     * @return The number of decoded content bytes
+     */
+    public long getDecompressedBytes()
+    {
+        return this.decompressedBytes.get();
+    }
+
+    /**
+     * Returns the HTTP status code of the last response the calling thread received while reading a page via this
+     * instance. If the page was redirected, this is the status code of the response of the final location. Pages read
+     * asynchronously are not considered.
+     *
+     * @return The status code of the last response or -1 if no response was received yet
+     */
+    public int getStatusCode()
+    {
+        FetchState state = this.lastFetch.get();
+        return null != state ? state.statusCode : -1;
+    }
+
+    /**
+     * Returns the time the server asked to wait for via the <em>Retry-After</em> header of the last response the
+     * calling thread received while reading a page via this instance. Servers send this header mostly along with a
+     * <em>429 Too Many Requests</em> or <em>503 Service Unavailable</em> response.
+     *
+     * @return The time to wait for before sending further requests to the server or <em>null</em> if the last response
+     * did not contain a valid <em>Retry-After</em> header
+     */
+    public Duration getRetryAfter()
+    {
+        FetchState state = this.lastFetch.get();
+        return null != state ? state.retryAfter : null;
+    }
+
+    /**
+     * Parses the value of a <em>Retry-After</em> header, which is either a number of seconds or a HTTP date.
+     *
+     * @param value
+     *         The value of the header
+     *
+     * @return The time to wait for, which is zero for dates in the past, or <em>null</em> if no valid value was
+     * provided
+     */
+    private static Duration parseRetryAfter(String value)
+    {
+        if (null == value || value.trim().isEmpty())
+        {
+            return null;
+        }
+        String trimmed = value.trim();
+        try
+        {
+            if (Character.isDigit(trimmed.charAt(0)))
+            {
+                return Duration.ofSeconds(Long.parseLong(trimmed));
+            }
+            Instant date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(Instant.now(), date);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        }
+        catch (NumberFormatException | DateTimeParseException ex)
+        {
+            LOG.debug("Ignoring invalid Retry-After header {}", value);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the transport which is shared by all instances that were not created with a dedicated transport.
+     *
+     * @return The shared default transport
+     */
+    static HttpTransport getDefaultTransport()
+    {
+        return DEFAULT_TRANSPORT;
+    }
+
+    /**
+     * Returns the number of asynchronous downloads this instance keeps in flight at the same time.
+     *
+     * @return The maximum number of concurrent asynchronous downloads
+     */
+    public int getMaxConcurrentRequests()
+    {
+        return this.limiter.getMaxConcurrent();
+    }
+
+    /**
+     * Sets the number of asynchronous downloads this instance keeps in flight at the same time. Downloads which were
+     * already requested are not affected by this change.
+     *
+     * @param maxConcurrentRequests
+     *         The maximum number of concurrent asynchronous downloads
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests)
+    {
+        this.limiter = new AsyncLimiter(maxConcurrentRequests);
+    }
+
+    /**
+     * Lazily initializes the transport used for asynchronous downloads if the transport of an instance does not support
+     * asynchronous exchanges.
+     */
+    private static final class AsyncTransportHolder
+    {
+        private static final AsyncHttpTransport DEFAULT_ASYNC_TRANSPORT = new HttpClientTransport();
+    }
+
+    /**
+     * The figures of reading a single page. Each read keeps its own state, so threads sharing an instance do not see
+     * the responses of each other.
+     */
+    private static final class FetchState
+    {
+        /** The original URL of the page */
+        private final String originURL;
+        /** The URL after a redirect */
+        private volatile String realURL;
+        /** The status code of the last response received */
+        private volatile int statusCode = -1;
+        /** The time the server of the last response asked to wait for before sending further requests */
+        private volatile Duration retryAfter = null;
+
+        private FetchState(String originURL)
+        {
+            this.originURL = originURL;
+            this.realURL = originURL;
+        }
+
+        private void reset(String url)
+        {
+            this.realURL = url;
+            this.statusCode = -1;
+            this.retryAfter = null;
+        }
+    }
+
+    /**
+     * Signals that a page could not be read as the server responded with an error status.
+     */
+    private static final class StatusException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        private StatusException(int statusCode, String url)
+        {
+            super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+            this.statusCode = statusCode;
+        }
+    }
+
+    /**
+     * Keeps track of the hop of an asynchronous download which is currently in flight so that it can be aborted once
+     * the download got cancelled.
+     */
+    private static final class AsyncExchange
+    {
+        /** The figures of the download */
+        private final FetchState state;
+        /** Records the figures of the download */
+        private volatile FetchRecorder recorder = null;
+        private volatile boolean cancelled = false;
+        private volatile Future<?> current = null;
+
+        private AsyncExchange(String url)
+        {
+            this.state = new FetchState(url);
+        }
+
+        private <T> CompletableFuture<T> start(CompletableFuture<T> hop)
+        {
+            this.current = hop;
+            if (this.cancelled)
+            {
+                hop.cancel(true);
+            }
+            return hop;
+        }
+
+        private void cancel()
+        {
+            this.cancelled = true;
+            Future<?> hop = this.current;
+            if (null != hop)
+            {
+                hop.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * An entrance point to downloading pages which uses a URL specified as parameter and prints its content to the
+     * specified log4j2 log file.
+     * <p>
+     * The page to download should be provided as the first argument. Any other arguments will be ignored.
+     *
+     * @param args
+     *         The arguments passed to UrlReader - only the first is used which should be the URL of the page to read
+     *
+     * @throws IOException
+     *         If any exception during downloading and reading the page occurred.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        UrlReader reader = new UrlReader();
+        String url = args[0];
+        try (LineReader lines = reader.readLines(url))
+        {
+            LOG.debug("Reading origin url: {}", reader.getOriginURL());
+            LOG.debug("Reading real url: {}", reader.getRealURL());
+            CharSequence line;
+            while (null != (line = lines.readLine()))
+            {
+                LOG.debug("{}", line);
+            }
         }
     }
 }
@@ -0,0 +1,23 @@
+package at.rovo.common.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link HttpTransport} which is furthermore able to exchange requests without blocking the calling thread. The
+ * future returned by {@link #executeAsync(Request)} completes once the whole response was received, so the body of
+ * the returned {@link Response} is already buffered in memory and reading it will not block.
+ */
+public interface AsyncHttpTransport extends HttpTransport
+{
+    /**
+     * Sends the provided request to the endpoint the request is targeted at without blocking the calling thread.
+     * Cancelling the returned future aborts the exchange.
+     *
+     * @param request
+     *         The request to send
+     *
+     * @return A future which is completed with the response of the endpoint, once the body was received completely,
+     * or completed exceptionally if the exchange failed
+     */
+    CompletableFuture<Response> executeAsync(Request request);
+}
@@ -0,0 +1,353 @@
+package at.rovo.common.http;
+
+import at.rovo.common.Histogram;
+import at.rovo.common.annotations.ThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link DnsResolver} which caches the addresses of up to <em>maxEntries</em> hosts for a fixed time. Successful
+ * lookups are kept for <em>ttl</em>, failed lookups for the usually shorter <em>negativeTtl</em>, so unknown hosts do
+ * not trigger a lookup on every request either. The time-to-live of the DNS records themselves is not available via the
+ * JDK, therefore the TTLs are configured like the <em>networkaddress.cache.ttl</em> and
+ * <em>networkaddress.cache.negative.ttl</em> security properties of the JVM.
+ * <p>
+ * Lookups are performed by a bounded pool of daemon threads on behalf of the delegate resolver. Concurrent requests for
+ * the same host share a single lookup, and {@link #resolveAsync(String)} and {@link #preResolve(Collection)} allow to
+ * resolve hosts without blocking the calling thread or one after the other. Hits, misses, failures and the time taken
+ * by the lookups are counted, so the effect of the cache can be monitored.
+ */
+@ThreadSafe
+public class CachingDnsResolver implements DnsResolver
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default time in milliseconds the addresses of a host are cached */
+    public static final long DEFAULT_TTL_MILLIS = 60000L;
+    /** The default time in milliseconds a failed lookup is cached */
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 10000L;
+    /** The default number of hosts whose addresses are cached */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    /** The number of lookups which are performed concurrently */
+    private static final int MAX_CONCURRENT_LOOKUPS = 16;
+
+    private final DnsResolver resolver;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    /** The time the lookups of the delegate took in microseconds */
+    private final Histogram resolutionTimes = new Histogram();
+
+    /**
+     * A cached lookup. The lookup is pending until its future is completed, pending lookups never expire.
+     */
+    private static final class Entry
+    {
+        private final CompletableFuture<InetAddress[]> addresses = new CompletableFuture<>();
+        private volatile long expiresAt;
+        private volatile boolean pending = true;
+
+        private boolean isExpired(long now)
+        {
+            return !this.pending && now - this.expiresAt >= 0L;
+        }
+    }
+
+    /**
+     * Creates a new resolver which caches the lookups of the {@link DnsResolver#SYSTEM system resolver} of up to
+     * {@link #DEFAULT_MAX_ENTRIES} hosts, successful lookups for {@link #DEFAULT_TTL_MILLIS} and failed lookups for
+     * {@link #DEFAULT_NEGATIVE_TTL_MILLIS} milliseconds.
+     */
+    public CachingDnsResolver()
+    {
+        this(SYSTEM, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a new resolver which caches the lookups of the given resolver.
+     *
+     * @param resolver
+     *         The resolver to perform the actual lookups
+     * @param ttl
+     *         The time the addresses of a host are cached
+     * @param negativeTtl
+     *         The time a failed lookup is cached, zero to not cache failures
+     * @param unit
+     *         The time unit of both TTLs
+     * @param maxEntries
+     *         The maximum number of hosts whose lookups are cached
+     */
+    public CachingDnsResolver(DnsResolver resolver, long ttl, long negativeTtl, TimeUnit unit, int maxEntries)
+    {
+        if (null == resolver)
+        {
+            throw new IllegalArgumentException("No resolver provided");
+        }
+        if (ttl < 0L || negativeTtl < 0L)
+        {
+            throw new IllegalArgumentException("TTLs must not be negative, found " + ttl + " and " + negativeTtl);
+        }
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("At least one entry has to be cached");
+        }
+        this.resolver = resolver;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.negativeTtlNanos = unit.toNanos(negativeTtl);
+        this.maxEntries = maxEntries;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(MAX_CONCURRENT_LOOKUPS, MAX_CONCURRENT_LOOKUPS, 30L, TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "dns-resolver-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException
+    {
+        try
+        {
+            return this.resolveAsync(host).get();
+        }
+        catch (ExecutionException eEx)
+        {
+            if (eEx.getCause() instanceof UnknownHostException)
+            {
+                // rethrown as a new exception, so the stack trace shows the caller
+                UnknownHostException uhEx = new UnknownHostException(eEx.getCause().getMessage());
+                uhEx.initCause(eEx.getCause());
+                throw uhEx;
+            }
+            throw new IllegalStateException("Resolving " + host + " failed", eEx.getCause());
+        }
+        catch (InterruptedException iEx)
+        {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException("Interrupted while resolving " + host);
+        }
+    }
+
+    /**
+     * Returns the addresses of the given host without blocking. The returned future is completed immediately if the
+     * lookup of the host is cached, otherwise once the pending lookup of the host completes.
+     *
+     * @param host
+     *         The host name or literal IP address to resolve
+     *
+     * @return A future which is completed with a copy of the addresses of the host or exceptionally with an {@link
+     * UnknownHostException} if the host could not be resolved
+     */
+    public CompletableFuture<InetAddress[]> resolveAsync(String host)
+    {
+        if (null == host || host.isEmpty())
+        {
+            throw new IllegalArgumentException("No host provided");
+        }
+        long now = System.nanoTime();
+        Entry entry = this.entries.get(host);
+        if (null == entry || entry.isExpired(now))
+        {
+            Entry created = new Entry();
+            entry = this.entries.compute(host, (key, current) -> null != current && !current.isExpired(now)
+                                                                 ? current : created);
+            if (entry == created)
+            {
+                this.misses.increment();
+                if (this.entries.size() > this.maxEntries)
+                {
+                    this.evict(now);
+                }
+                this.executor.execute(() -> this.lookup(host, created));
+            }
+            else
+            {
+                this.hits.increment();
+            }
+        }
+        else
+        {
+            this.hits.increment();
+        }
+        // callers may modify the returned array, the cached one has to stay intact
+        return entry.addresses.thenApply(InetAddress[]::clone);
+    }
+
+    private void lookup(String host, Entry entry)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            InetAddress[] addresses = this.resolver.resolve(host);
+            long end = System.nanoTime();
+            this.resolutionTimes.record(TimeUnit.NANOSECONDS.toMicros(end - start));
+            entry.expiresAt = end + this.ttlNanos;
+            entry.pending = false;
+            entry.addresses.complete(addresses);
+        }
+        catch (UnknownHostException | RuntimeException ex)
+        {
+            long end = System.nanoTime();
+            this.resolutionTimes.record(TimeUnit.NANOSECONDS.toMicros(end - start));
+            this.failures.increment();
+            LOG.trace("Could not resolve {}. Reason: {}", host, ex.getLocalizedMessage());
+            entry.expiresAt = end + this.negativeTtlNanos;
+            entry.pending = false;
+            entry.addresses.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Removes the expired entries and, if still too many hosts are cached, further entries until a tenth of the
+     * capacity is free again, so not every new host has to scan the cache.
+     */
+    private synchronized void evict(long now)
+    {
+        if (this.entries.size() <= this.maxEntries)
+        {
+            return;
+        }
+        this.entries.values().removeIf(entry -> entry.isExpired(now));
+        int target = this.maxEntries - this.maxEntries / 10;
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (this.entries.size() > target && iterator.hasNext())
+        {
+            // pending lookups are kept so their waiting callers still share the lookup
+            if (!iterator.next().pending)
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Resolves the given hosts concurrently and waits until all lookups completed. Hosts whose lookup is cached are not
+     * resolved again.
+     *
+     * @param hosts
+     *         The hosts to resolve
+     */
+    @Override
+    public void preResolve(Collection<String> hosts)
+    {
+        List<CompletableFuture<InetAddress[]>> lookups = new LinkedHashSet<>(hosts).stream()
+                .filter(host -> null != host && !host.isEmpty())
+                .map(this::resolveAsync)
+                .collect(Collectors.toList());
+        try
+        {
+            // failures are reported once the host is resolved again
+            CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).exceptionally(failure -> null).get();
+        }
+        catch (ExecutionException eEx)
+        {
+            LOG.trace("Resolving hosts failed. Reason: {}", eEx.getLocalizedMessage());
+        }
+        catch (InterruptedException iEx)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes the cached lookup of the given host, so it is resolved again on the next request.
+     *
+     * @param host
+     *         The host to resolve again
+     */
+    public void invalidate(String host)
+    {
+        this.entries.remove(host);
+    }
+
+    /**
+     * Removes all cached lookups.
+     */
+    public void clear()
+    {
+        this.entries.clear();
+    }
+
+    /**
+     * Returns the number of hosts whose lookup is currently cached, including expired and pending lookups.
+     *
+     * @return The number of cached lookups
+     */
+    public int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the number of requests which were answered by a cached or pending lookup.
+     *
+     * @return The number of cache hits
+     */
+    public long getHitCount()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of requests which triggered a lookup.
+     *
+     * @return The number of cache misses
+     */
+    public long getMissCount()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the number of lookups which failed.
+     *
+     * @return The number of failed lookups
+     */
+    public long getFailureCount()
+    {
+        return this.failures.sum();
+    }
+
+    /**
+     * Returns the time the lookups of the delegate resolver took, including failed lookups. Cache hits are not
+     * recorded.
+     *
+     * @return The histogram of the lookup times in microseconds
+     */
+    public Histogram getResolutionTimes()
+    {
+        return this.resolutionTimes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CachingDnsResolver[entries=" + this.entries.size() + ", hits=" + this.hits.sum() + ", misses="
+               + this.misses.sum() + ", failures=" + this.failures.sum() + ", meanResolutionMicros="
+               + this.resolutionTimes.getMean() + "]";
+    }
+}
@@ -0,0 +1,407 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HttpTransport} decorator which revalidates previously received responses with conditional requests. If a
+ * {@link HttpCache} holds a response for the URL of a <em>GET</em> request, the request is sent with an
+ * <em>If-None-Match</em> and <em>If-Modified-Since</em> header carrying the validators of the stored response. A
+ * <em>304 Not Modified</em> answer is then replaced by the stored response, so the body is only transferred if the
+ * resource actually changed.
+ * <p>
+ * Responses with status 200 which carry an <em>ETag</em> or a <em>Last-Modified</em> header, are not marked with
+ * <em>Cache-Control: no-store</em> and do not vary by any request header other than <em>Accept-Encoding</em> are copied
+ * into the cache while the caller reads the body. Small bodies are copied into memory, larger ones are streamed into a
+ * file of the cache directory. A response is only stored once its body was read completely, a response which got
+ * closed early is never stored. Stored responses are always revalidated, regardless of any freshness information, so a
+ * changed resource is never missed. A revalidated response only gets its headers updated in the cache.
+ * <p>
+ * Requests which already carry their own validators, and requests using other methods than <em>GET</em>, are passed to
+ * the underlying transport unmodified.
+ */
+@ThreadSafe
+public class CachingHttpTransport implements HttpTransport
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final HttpTransport transport;
+    private final HttpCache cache;
+
+    /**
+     * Creates a new transport which caches the responses received via the given transport in the provided cache.
+     *
+     * @param transport
+     *         The transport performing the actual exchange
+     * @param cache
+     *         The cache to store responses in
+     */
+    public CachingHttpTransport(HttpTransport transport, HttpCache cache)
+    {
+        if (null == transport || null == cache)
+        {
+            throw new IllegalArgumentException("Both a transport and a cache have to be provided");
+        }
+        this.transport = transport;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the cache responses are stored in.
+     *
+     * @return The cache of this transport
+     */
+    public HttpCache getCache()
+    {
+        return this.cache;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException
+    {
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || null != request.getHeader("If-None-Match")
+            || null != request.getHeader("If-Modified-Since"))
+        {
+            return this.transport.execute(request);
+        }
+
+        HttpCache.Entry cached = this.cache.get(request.getUrl());
+        InputStream cachedBody = null;
+        if (null != cached)
+        {
+            // the body is opened up front, so a body file evicted in the meantime is noticed before revalidating
+            try
+            {
+                cachedBody = this.cache.openBody(cached);
+            }
+            catch (IOException ioEx)
+            {
+                LOG.debug("Could not open cached body of {}. Reason: {}", request.getUrl(), ioEx.getLocalizedMessage());
+                this.cache.remove(request.getUrl());
+                cached = null;
+            }
+        }
+        if (null != cached)
+        {
+            if (null != cached.getETag())
+            {
+                request.setHeader("If-None-Match", cached.getETag());
+            }
+            if (null != cached.getLastModified())
+            {
+                request.setHeader("If-Modified-Since", cached.getLastModified());
+            }
+        }
+
+        Response response;
+        try
+        {
+            response = this.transport.execute(request);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            closeQuietly(cachedBody);
+            throw ex;
+        }
+        if (null != cached && response.getStatusCode() == 304)
+        {
+            response.close();
+            this.cache.recordHit();
+            LOG.trace("Serving {} from cache as it was not modified", request.getUrl());
+            HttpCache.Entry updated = cached.update(response.getHeaders());
+            this.cache.update(updated);
+            // cookies are never stored, only those set by the 304 response itself are passed on
+            return updated.toResponse(response.getHeaders("Set-Cookie"), cachedBody);
+        }
+
+        closeQuietly(cachedBody);
+        this.cache.recordMiss();
+        if (null != cached)
+        {
+            this.cache.remove(request.getUrl());
+        }
+        if (!this.isCacheable(response))
+        {
+            return response;
+        }
+        return new Response(response.getUrl(), response.getStatusCode(), response.getStatusMessage(),
+                            response.getHeaders(), new CachingInputStream(response, this.cache));
+    }
+
+    private boolean isCacheable(Response response)
+    {
+        if (response.getStatusCode() != 200
+            || (null == response.getHeader("ETag") && null == response.getHeader("Last-Modified")))
+        {
+            return false;
+        }
+        for (String cacheControl : response.getHeaders("Cache-Control"))
+        {
+            if (cacheControl.toLowerCase(Locale.ROOT).contains("no-store"))
+            {
+                return false;
+            }
+        }
+        String contentLength = response.getHeader("Content-Length");
+        if (null != contentLength)
+        {
+            try
+            {
+                if (Long.parseLong(contentLength.trim()) > this.cache.getMaxEntryBytes())
+                {
+                    return false;
+                }
+            }
+            catch (NumberFormatException nfEx)
+            {
+                return false;
+            }
+        }
+        // the cache holds a single response per URL, so it can only serve responses varying by their encoding,
+        // which is the same for all requests of this transport
+        for (String vary : response.getHeaders("Vary"))
+        {
+            for (String header : vary.split(","))
+            {
+                String name = header.trim();
+                if (!name.isEmpty() && !"Accept-Encoding".equalsIgnoreCase(name))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.transport.close();
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (null != closeable)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException ioEx)
+            {
+                // nothing left to do
+            }
+        }
+    }
+
+    /**
+     * Collects a body in memory and hands out the collected bytes without copying them if the buffer is filled exactly,
+     * which is the case if the body was announced with its length.
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream
+    {
+        private BodyBuffer(int size)
+        {
+            super(size);
+        }
+
+        private byte[] toBody()
+        {
+            return this.count == this.buf.length ? this.buf : Arrays.copyOf(this.buf, this.count);
+        }
+    }
+
+    /**
+     * Copies the body of a response while it is read by the caller and stores the response in the cache once the end
+     * of the body was reached. The body is copied into memory as long as it fits into the memory tier of the cache and
+     * is streamed into a file of the cache directory from then on.
+     */
+    private static final class CachingInputStream extends FilterInputStream
+    {
+        private final Response response;
+        private final HttpCache cache;
+        /** The copy of the body in memory or <em>null</em> if the body is copied to {@link #file} or not at all */
+        private BodyBuffer copy;
+        /** The file the body is copied to if it is too large for memory */
+        private Path file = null;
+        private OutputStream fileCopy = null;
+        private long length = 0L;
+
+        private CachingInputStream(Response response, HttpCache cache)
+        {
+            super(response.getBody());
+            this.response = response;
+            this.cache = cache;
+            long expected = 8192L;
+            String contentLength = response.getHeader("Content-Length");
+            if (null != contentLength)
+            {
+                // the response was checked to announce a valid length before
+                expected = Long.parseLong(contentLength.trim());
+            }
+            this.copy = new BodyBuffer((int) Math.max(0L, Math.min(expected, cache.getMaxMemoryEntryBytes())));
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int read = super.read();
+            if (read == -1)
+            {
+                this.complete();
+            }
+            else
+            {
+                this.copy(new byte[] { (byte) read }, 0, 1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = super.read(b, off, len);
+            if (read == -1)
+            {
+                this.complete();
+            }
+            else
+            {
+                this.copy(b, off, read);
+            }
+            return read;
+        }
+
+        /**
+         * Copies the given bytes of the body, moving the copy from memory to a file once it exceeds the memory tier.
+         * A body which exceeds both tiers or can not be written to a file is not copied at all.
+         */
+        private void copy(byte[] b, int off, int len)
+        {
+            if (null == this.copy && null == this.fileCopy)
+            {
+                return;
+            }
+            this.length += len;
+            try
+            {
+                if (null != this.copy)
+                {
+                    if (this.length <= this.cache.getMaxMemoryEntryBytes())
+                    {
+                        this.copy.write(b, off, len);
+                        return;
+                    }
+                    if (this.length > this.cache.getMaxDiskEntryBytes())
+                    {
+                        this.discard();
+                        return;
+                    }
+                    this.file = this.cache.newTempFile();
+                    this.fileCopy = new BufferedOutputStream(Files.newOutputStream(this.file));
+                    this.copy.writeTo(this.fileCopy);
+                    this.copy = null;
+                }
+                if (this.length > this.cache.getMaxDiskEntryBytes())
+                {
+                    this.discard();
+                    return;
+                }
+                this.fileCopy.write(b, off, len);
+            }
+            catch (IOException ioEx)
+            {
+                LOG.warn("Could not copy the body of {} to the cache. Reason: {}", this.response.getUrl(),
+                         ioEx.getLocalizedMessage());
+                this.discard();
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            // skipped bytes can not be copied, so the response can not be stored anymore
+            this.discard();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        private void complete()
+        {
+            Map<String, List<String>> headers = this.response.getHeaders();
+            if (null != this.copy)
+            {
+                this.cache.put(new HttpCache.Entry(this.response.getUrl(), this.response.getStatusCode(),
+                                                   this.response.getStatusMessage(), headers, this.copy.toBody()));
+                this.copy = null;
+            }
+            else if (null != this.fileCopy)
+            {
+                try
+                {
+                    this.fileCopy.close();
+                }
+                catch (IOException ioEx)
+                {
+                    LOG.warn("Could not copy the body of {} to the cache. Reason: {}", this.response.getUrl(),
+                             ioEx.getLocalizedMessage());
+                    this.discard();
+                    return;
+                }
+                this.fileCopy = null;
+                this.cache.put(this.response.getUrl(), this.response.getStatusCode(),
+                               this.response.getStatusMessage(), headers, this.file, this.length);
+                this.file = null;
+            }
+        }
+
+        /**
+         * Stops copying the body and removes any copy made so far.
+         */
+        private void discard()
+        {
+            this.copy = null;
+            closeQuietly(this.fileCopy);
+            this.fileCopy = null;
+            if (null != this.file)
+            {
+                try
+                {
+                    Files.deleteIfExists(this.file);
+                }
+                catch (IOException ioEx)
+                {
+                    LOG.warn("Could not remove {}. Reason: {}", this.file, ioEx.getLocalizedMessage());
+                }
+                this.file = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.discard();
+            super.close();
+        }
+    }
+}
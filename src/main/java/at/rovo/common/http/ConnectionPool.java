@@ -0,0 +1,344 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.GuardedBy;
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of keep-alive connections which are grouped by their {@link Route}. At most
+ * <em>maxConnectionsPerRoute</em> connections are leased or idle per route at any time. Callers requesting a connection
+ * to a route which already reached its limit are blocked until a connection of that route is released or the lease
+ * timeout expired.
+ * <p>
+ * Idle connections are reused in last-in-first-out order so the most recently used, and thus warmest, connection is
+ * handed out first. Connections which were idle for longer than the keep-alive time are closed by a background task,
+ * which also drops the state of routes without any idle or leased connection, so a crawl contacting millions of hosts
+ * only keeps the routes currently in use.
+ */
+@ThreadSafe
+final class ConnectionPool
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    /** Idle time in milliseconds after which a connection is checked for being closed by the peer before reuse */
+    private static final long VALIDATE_AFTER_INACTIVITY = 2000L;
+
+    /**
+     * Opens new connections for a route if no idle connection is available.
+     */
+    interface Connector
+    {
+        PooledConnection connect(Route route) throws IOException;
+    }
+
+    /**
+     * The idle connections and the available permits of a single route.
+     */
+    private static final class RoutePool
+    {
+        private final Semaphore permits;
+        @GuardedBy("this")
+        private final Deque<PooledConnection> idle = new ArrayDeque<>();
+        /** The number of connections which are leased or waited for */
+        @GuardedBy("this")
+        private int users = 0;
+        /** Whether the pool was removed from the routes as it was unused, so it must not be used anymore */
+        @GuardedBy("this")
+        private boolean removed = false;
+
+        private RoutePool(int maxConnections)
+        {
+            this.permits = new Semaphore(maxConnections, true);
+        }
+    }
+
+    private final ConcurrentMap<Route, RoutePool> routes = new ConcurrentHashMap<>();
+    private final int maxConnectionsPerRoute;
+    private final long keepAliveMillis;
+    private final long leaseTimeoutMillis;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    ConnectionPool(int maxConnectionsPerRoute, long keepAliveMillis, long leaseTimeoutMillis)
+    {
+        if (maxConnectionsPerRoute < 1)
+        {
+            throw new IllegalArgumentException("At least one connection per route is required");
+        }
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.keepAliveMillis = keepAliveMillis;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(keepAliveMillis / 2, 100L);
+        this.evictor.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    int getMaxConnectionsPerRoute()
+    {
+        return this.maxConnectionsPerRoute;
+    }
+
+    long getKeepAliveMillis()
+    {
+        return this.keepAliveMillis;
+    }
+
+    /**
+     * Leases a connection to the given route. An idle connection is reused if available, otherwise a new connection
+     * is opened via the provided connector.
+     *
+     * @param route
+     *         The route to lease a connection for
+     * @param connector
+     *         Opens a new connection if no idle connection can be reused
+     *
+     * @return A connection to the route which needs to be handed back via {@link #release(PooledConnection, boolean)}
+     *
+     * @throws IOException
+     *         If no connection became available within the lease timeout or a new connection could not be opened
+     */
+    PooledConnection lease(Route route, Connector connector) throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IOException("Connection pool was already closed");
+        }
+        RoutePool routePool = this.use(route);
+        try
+        {
+            if (!routePool.permits.tryAcquire(this.leaseTimeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                this.unuse(routePool);
+                throw new IOException("Timeout waiting for a connection to " + route + " after "
+                                      + this.leaseTimeoutMillis + " ms");
+            }
+        }
+        catch (InterruptedException iEx)
+        {
+            this.unuse(routePool);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + route, iEx);
+        }
+
+        try
+        {
+            long now = System.currentTimeMillis();
+            while (true)
+            {
+                PooledConnection connection;
+                synchronized (routePool)
+                {
+                    connection = routePool.idle.pollFirst();
+                }
+                if (null == connection)
+                {
+                    break;
+                }
+                if (connection.isExpired(now)
+                    || (now - connection.getIdleSince() > VALIDATE_AFTER_INACTIVITY && connection.isStale()))
+                {
+                    LOG.trace("Discarding stale connection {}", connection);
+                    connection.close();
+                    continue;
+                }
+                LOG.trace("Reusing connection {}", connection);
+                connection.beginExchange();
+                return connection;
+            }
+            PooledConnection connection = connector.connect(route);
+            LOG.trace("Opened new connection {}", connection);
+            connection.beginExchange();
+            return connection;
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            this.unuse(routePool);
+            routePool.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the pool of the given route and registers a further user of it, which keeps the pool from being removed.
+     */
+    private RoutePool use(Route route)
+    {
+        while (true)
+        {
+            RoutePool routePool = this.routes.computeIfAbsent(route, r -> new RoutePool(this.maxConnectionsPerRoute));
+            synchronized (routePool)
+            {
+                if (!routePool.removed)
+                {
+                    routePool.users++;
+                    return routePool;
+                }
+            }
+            // the pool was removed by the evictor in the meantime, so a new one is created
+        }
+    }
+
+    private void unuse(RoutePool routePool)
+    {
+        synchronized (routePool)
+        {
+            routePool.users--;
+        }
+    }
+
+    /**
+     * Hands a leased connection back to the pool. A connection which is not reusable is closed instead of being kept
+     * as idle connection.
+     *
+     * @param connection
+     *         The connection to release
+     * @param reusable
+     *         Whether the connection is in a state which allows to send a further request on it
+     * @param keepAliveMillis
+     *         The maximum time in milliseconds the connection may stay idle, which might be lower than the keep-alive
+     *         time of the pool if the server announced a shorter timeout
+     */
+    void release(PooledConnection connection, boolean reusable, long keepAliveMillis)
+    {
+        // the pool of a leased connection is never removed, as the connection counts as user of the pool
+        RoutePool routePool = this.routes.get(connection.getRoute());
+        boolean keep = reusable && !this.closed && null != routePool;
+        if (keep)
+        {
+            connection.markIdle(System.currentTimeMillis(), Math.min(keepAliveMillis, this.keepAliveMillis));
+        }
+        if (null != routePool)
+        {
+            synchronized (routePool)
+            {
+                if (keep)
+                {
+                    routePool.idle.offerFirst(connection);
+                }
+                routePool.users--;
+            }
+            routePool.permits.release();
+        }
+        if (keep)
+        {
+            LOG.trace("Released connection {} to the pool", connection);
+        }
+        else
+        {
+            connection.close();
+        }
+    }
+
+    /**
+     * Hands a leased connection back to the pool using the keep-alive time of the pool.
+     *
+     * @param connection
+     *         The connection to release
+     * @param reusable
+     *         Whether the connection is in a state which allows to send a further request on it
+     */
+    void release(PooledConnection connection, boolean reusable)
+    {
+        this.release(connection, reusable, this.keepAliveMillis);
+    }
+
+    /**
+     * Returns the number of idle connections for the given route.
+     *
+     * @param route
+     *         The route to return the number of idle connections for
+     *
+     * @return The number of idle connections kept for the route
+     */
+    int getIdleCount(Route route)
+    {
+        RoutePool routePool = this.routes.get(route);
+        if (null == routePool)
+        {
+            return 0;
+        }
+        synchronized (routePool)
+        {
+            return routePool.idle.size();
+        }
+    }
+
+    /**
+     * Closes all idle connections whose keep-alive time expired.
+     */
+    void evictExpired()
+    {
+        this.evict(false);
+    }
+
+    /**
+     * Closes all idle connections regardless of their keep-alive time.
+     */
+    void evictAll()
+    {
+        this.evict(true);
+    }
+
+    private void evict(boolean all)
+    {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> evicted = new ArrayList<>();
+        for (Map.Entry<Route, RoutePool> route : this.routes.entrySet())
+        {
+            RoutePool routePool = route.getValue();
+            synchronized (routePool)
+            {
+                Iterator<PooledConnection> iter = routePool.idle.iterator();
+                while (iter.hasNext())
+                {
+                    PooledConnection connection = iter.next();
+                    if (all || connection.isExpired(now))
+                    {
+                        iter.remove();
+                        evicted.add(connection);
+                    }
+                }
+                if (routePool.idle.isEmpty() && routePool.users == 0)
+                {
+                    // lease() creates a new pool once it notices that this one was removed
+                    routePool.removed = true;
+                    this.routes.remove(route.getKey(), routePool);
+                }
+            }
+        }
+        for (PooledConnection connection : evicted)
+        {
+            LOG.trace("Evicting idle connection {}", connection);
+            connection.close();
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the eviction task. Connections which are currently leased are closed once
+     * they are released.
+     */
+    void close()
+    {
+        this.closed = true;
+        this.evictor.shutdownNow();
+        this.evictAll();
+    }
+}
@@ -0,0 +1,52 @@
+package at.rovo.common.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+
+/**
+ * Resolves the addresses of a host before a {@link PooledHttpTransport} connects to it. Implementations may cache
+ * lookups or resolve hosts ahead of time via {@link #preResolve(Collection)}.
+ */
+public interface DnsResolver
+{
+    /** The resolver of the JVM, which is subject to the caching configured by <em>networkaddress.cache.ttl</em> */
+    DnsResolver SYSTEM = InetAddress::getAllByName;
+
+    /**
+     * Returns the addresses of the given host.
+     *
+     * @param host
+     *         The host name or literal IP address to resolve
+     *
+     * @return The addresses of the host, in the order they should be tried
+     *
+     * @throws UnknownHostException
+     *         If the host could not be resolved
+     */
+    InetAddress[] resolve(String host) throws UnknownHostException;
+
+    /**
+     * Resolves the given hosts ahead of time, so a later {@link #resolve(String)} does not have to wait for the lookup.
+     * Returns once all hosts were looked up. Failures are ignored, they are reported once the host is resolved again.
+     * The default implementation resolves the hosts one after the other, which only pays off if the resolver caches
+     * its results, as {@link #SYSTEM} does.
+     *
+     * @param hosts
+     *         The hosts to resolve
+     */
+    default void preResolve(Collection<String> hosts)
+    {
+        for (String host : hosts)
+        {
+            try
+            {
+                this.resolve(host);
+            }
+            catch (UnknownHostException uhEx)
+            {
+                // reported on the actual lookup
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package at.rovo.common.http;
+
+/**
+ * Receives timing events of the connections a {@link HttpTransport} establishes. The events cover the phases which
+ * precede the first exchange on a new connection and are therefore invisible to the caller of the transport. A
+ * connection which is reused from a pool does not cause any of these events.
+ * <p>
+ * Listeners are invoked on the thread which establishes the connection and should therefore return quickly. All methods
+ * have an empty default implementation, so a listener only needs to implement the events it is interested in.
+ */
+public interface ExchangeListener
+{
+    /** A listener which ignores all events */
+    ExchangeListener NONE = new ExchangeListener()
+    {
+    };
+
+    /**
+     * Invoked once the addresses of a host were resolved.
+     *
+     * @param host
+     *         The host which was resolved
+     * @param durationNanos
+     *         The time the lookup took in nanoseconds
+     */
+    default void dnsResolved(String host, long durationNanos)
+    {
+
+    }
+
+    /**
+     * Invoked once a TCP connection to a host was established.
+     *
+     * @param host
+     *         The host the connection was established to
+     * @param durationNanos
+     *         The time establishing the connection took in nanoseconds, including any failed attempts on further
+     *         addresses of the host
+     */
+    default void connected(String host, long durationNanos)
+    {
+
+    }
+
+    /**
+     * Invoked once the TLS handshake on a new connection completed.
+     *
+     * @param host
+     *         The host the handshake was performed with
+     * @param durationNanos
+     *         The time the handshake took in nanoseconds
+     */
+    default void tlsHandshakeCompleted(String host, long durationNanos)
+    {
+
+    }
+
+    /**
+     * Invoked if no connection to a host could be established.
+     *
+     * @param host
+     *         The host which could not be reached
+     * @param durationNanos
+     *         The time spent on trying to establish a connection in nanoseconds
+     */
+    default void connectFailed(String host, long durationNanos)
+    {
+
+    }
+}
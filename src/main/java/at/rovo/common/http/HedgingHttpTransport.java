@@ -0,0 +1,360 @@
+package at.rovo.common.http;
+
+import at.rovo.common.Histogram;
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HttpTransport} decorator which cuts the tail latency of a host by sending a second, hedged request if the
+ * response headers of the first request did not arrive within the usual time. The usual time is the given percentile,
+ * by default the 95th, of the time the recent requests to the host took until their headers were received. Whichever
+ * request is answered first wins, the response of the other request is closed as soon as it arrives.
+ * <p>
+ * The latencies of a host are timed in windows of up to {@value #WINDOW_SAMPLES} requests or one minute, and the
+ * percentile is taken from the current window once it has enough samples, otherwise from the previous one. So the
+ * hedge delay follows a host which becomes faster or slower instead of being dominated by its whole history. The
+ * latencies of at most {@value #MAX_HOSTS} hosts are kept, and hosts which were not requested for a while make room for
+ * new ones.
+ * <p>
+ * Only idempotent <em>GET</em> and <em>HEAD</em> requests are hedged, and only once enough requests to the host were
+ * timed to tell a slow response apart from a usual one. To keep the additional load on the hosts bounded, at most the
+ * given share of all requests, by default 10%, is hedged. Note that a hedged request needs a connection of its own, so
+ * hedging has no effect if the underlying transport only opens a single connection per host.
+ * <p>
+ * Requests are sent by a pool of daemon threads while the calling thread waits for the first response.
+ */
+@ThreadSafe
+public class HedgingHttpTransport implements HttpTransport
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default percentile of the header latency after which a request is hedged */
+    public static final double DEFAULT_PERCENTILE = 95d;
+    /** The default share of requests which may be hedged */
+    public static final double DEFAULT_MAX_HEDGE_RATIO = 0.1d;
+    /** The number of requests to a host which have to be timed before requests to the host are hedged */
+    private static final int MIN_SAMPLES = 20;
+    /** The number of requests to a host after which a new window of latencies is started */
+    private static final int WINDOW_SAMPLES = 1000;
+    /** The time after which a new window of latencies is started once the window has enough samples */
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1L);
+    /**
+     * The number of hosts whose latencies are tracked, once exceeded the hosts which were not requested for a window,
+     * or else the host requested least recently, are dropped
+     */
+    private static final int MAX_HOSTS = 1024;
+
+    private final HttpTransport transport;
+    private final double percentile;
+    private final double maxHedgeRatio;
+    private final ConcurrentMap<String, Latency> latencies = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new transport which hedges requests sent via the given transport after the 95th percentile of the
+     * header latency of the host and hedges at most 10% of all requests.
+     *
+     * @param transport
+     *         The transport performing the actual exchange
+     */
+    public HedgingHttpTransport(HttpTransport transport)
+    {
+        this(transport, DEFAULT_PERCENTILE, DEFAULT_MAX_HEDGE_RATIO);
+    }
+
+    /**
+     * Creates a new transport which hedges requests sent via the given transport.
+     *
+     * @param transport
+     *         The transport performing the actual exchange
+     * @param percentile
+     *         The percentile of the header latency of a host after which a request to the host is hedged, between 0
+     *         and 100
+     * @param maxHedgeRatio
+     *         The share of all requests which may be hedged at most, between 0 and 1
+     */
+    public HedgingHttpTransport(HttpTransport transport, double percentile, double maxHedgeRatio)
+    {
+        if (null == transport)
+        {
+            throw new IllegalArgumentException("No transport provided");
+        }
+        if (percentile <= 0d || percentile >= 100d)
+        {
+            throw new IllegalArgumentException("The percentile has to be between 0 and 100, found " + percentile);
+        }
+        if (maxHedgeRatio < 0d || maxHedgeRatio > 1d)
+        {
+            throw new IllegalArgumentException("The hedge ratio has to be between 0 and 1, found " + maxHedgeRatio);
+        }
+        this.transport = transport;
+        this.percentile = percentile;
+        this.maxHedgeRatio = maxHedgeRatio;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "hedging-transport-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the number of requests which were hedged so far.
+     *
+     * @return The number of hedged requests
+     */
+    public long getHedgeCount()
+    {
+        return this.hedges.sum();
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException
+    {
+        String method = request.getMethod();
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method))
+        {
+            return this.transport.execute(request);
+        }
+        this.requests.increment();
+        Latency latency = this.getLatency(request.getUrl().getHost());
+        Histogram window = null == latency ? null : latency.getWindow();
+        if (null == window)
+        {
+            long start = System.nanoTime();
+            Response response = this.transport.execute(request);
+            record(latency, start);
+            return response;
+        }
+
+        CompletableFuture<Response> winner = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        this.executor.execute(() -> this.attempt(request, latency, winner, outstanding));
+        long hedgeDelay = window.getValueAtPercentile(this.percentile);
+        try
+        {
+            try
+            {
+                return winner.get(hedgeDelay, TimeUnit.MICROSECONDS);
+            }
+            catch (TimeoutException tEx)
+            {
+                if (this.hedges.sum() < this.requests.sum() * this.maxHedgeRatio)
+                {
+                    this.hedges.increment();
+                    outstanding.incrementAndGet();
+                    Request hedge = copy(request);
+                    LOG.debug("Hedging {} after {} ms", request, hedgeDelay / 1000L);
+                    this.executor.execute(() -> this.attempt(hedge, latency, winner, outstanding));
+                }
+                return winner.get();
+            }
+        }
+        catch (InterruptedException iEx)
+        {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ioEx = new InterruptedIOException("Interrupted while waiting for " + request);
+            // any response arriving from now on is closed as the future is already completed
+            winner.completeExceptionally(ioEx);
+            throw ioEx;
+        }
+        catch (ExecutionException eEx)
+        {
+            Throwable cause = eEx.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not execute " + request, cause);
+        }
+    }
+
+    /**
+     * Executes one of the possibly two requests sent for the same resource and completes the given future with its
+     * response if it was answered first. The future only fails once all requests failed.
+     */
+    private void attempt(Request request, Latency latency, CompletableFuture<Response> winner,
+                         AtomicInteger outstanding)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            Response response = this.transport.execute(request);
+            record(latency, start);
+            if (!winner.complete(response))
+            {
+                closeQuietly(response);
+            }
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            if (outstanding.decrementAndGet() == 0)
+            {
+                winner.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private Latency getLatency(String host)
+    {
+        long now = System.nanoTime();
+        Latency latency = this.latencies.get(host);
+        if (null == latency)
+        {
+            if (this.latencies.size() >= MAX_HOSTS)
+            {
+                this.evict(now);
+            }
+            latency = this.latencies.computeIfAbsent(host, h -> new Latency(now));
+        }
+        latency.lastUsed = now;
+        return latency;
+    }
+
+    /**
+     * Makes room for a further host by dropping the hosts which were not requested within the last window, or the host
+     * which was requested least recently if all hosts were requested within the last window. Concurrent requests to
+     * new hosts may exceed the maximum number of hosts briefly.
+     */
+    private void evict(long now)
+    {
+        Map.Entry<String, Latency> leastRecent = null;
+        long maxIdle = Long.MIN_VALUE;
+        boolean removed = false;
+        for (Map.Entry<String, Latency> entry : this.latencies.entrySet())
+        {
+            long idle = now - entry.getValue().lastUsed;
+            if (idle >= WINDOW_NANOS)
+            {
+                removed |= this.latencies.remove(entry.getKey(), entry.getValue());
+            }
+            else if (idle > maxIdle)
+            {
+                maxIdle = idle;
+                leastRecent = entry;
+            }
+        }
+        if (!removed && null != leastRecent)
+        {
+            this.latencies.remove(leastRecent.getKey(), leastRecent.getValue());
+        }
+    }
+
+    private static void record(Latency latency, long start)
+    {
+        if (null != latency)
+        {
+            long now = System.nanoTime();
+            latency.record(TimeUnit.NANOSECONDS.toMicros(now - start), now);
+        }
+    }
+
+    private static Request copy(Request request)
+    {
+        Request copy = new Request(request.getUrl());
+        copy.setMethod(request.getMethod());
+        copy.setConnectTimeout(request.getConnectTimeout());
+        copy.setReadTimeout(request.getReadTimeout());
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet())
+        {
+            for (String value : header.getValue())
+            {
+                copy.addHeader(header.getKey(), value);
+            }
+        }
+        return copy;
+    }
+
+    private static void closeQuietly(Response response)
+    {
+        try
+        {
+            response.close();
+        }
+        catch (IOException ioEx)
+        {
+            LOG.debug("Could not close the response of the slower request {}", response.getUrl(), ioEx);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.executor.shutdownNow();
+        this.transport.close();
+    }
+
+    /**
+     * The header latencies of a host in microseconds, kept in a current and a previous window. The current window is
+     * replaced by a new one once it is full or old, which turns it into the previous window.
+     */
+    @ThreadSafe
+    private static final class Latency
+    {
+        private volatile Histogram current = new Histogram();
+        /** The time the current window was started at in nanoseconds */
+        private volatile long currentSince;
+        private volatile Histogram previous = null;
+        /** The time the host was requested the last time in nanoseconds */
+        private volatile long lastUsed;
+
+        private Latency(long now)
+        {
+            this.currentSince = now;
+            this.lastUsed = now;
+        }
+
+        private void record(long micros, long now)
+        {
+            Histogram window = this.current;
+            window.record(micros);
+            long count = window.getCount();
+            if (count >= WINDOW_SAMPLES || (count >= MIN_SAMPLES && now - this.currentSince >= WINDOW_NANOS))
+            {
+                this.rotate(window, now);
+            }
+        }
+
+        private synchronized void rotate(Histogram full, long now)
+        {
+            // concurrent requests may see the same full window, only the first one starts a new window
+            if (this.current == full)
+            {
+                this.previous = full;
+                this.currentSince = now;
+                this.current = new Histogram();
+            }
+        }
+
+        /**
+         * Returns the window the hedge delay is taken from, or <em>null</em> if too few requests were timed yet.
+         */
+        private Histogram getWindow()
+        {
+            Histogram window = this.current;
+            if (window.getCount() >= MIN_SAMPLES)
+            {
+                return window;
+            }
+            return this.previous;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package at.rovo.common.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Encodes HTTP/1.1 requests and decodes the status line and headers of HTTP/1.1 responses.
+ */
+final class Http1Codec
+{
+    /** The maximum number of bytes a single status or header line may contain */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    /** The user agent to send if the request does not specify one */
+    private static final String USER_AGENT = "Java/" + System.getProperty("java.version");
+
+    private Http1Codec()
+    {
+
+    }
+
+    /**
+     * Writes the request line and the headers of the request to the provided stream and flushes it.
+     *
+     * @param request
+     *         The request to write
+     * @param out
+     *         The stream to write the request to
+     *
+     * @throws IOException
+     *         If the request could not be written
+     */
+    static void writeRequest(Request request, OutputStream out) throws IOException
+    {
+        URL url = request.getUrl();
+        String target = url.getFile();
+        if (null == target || target.isEmpty())
+        {
+            target = "/";
+        }
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getMethod()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        if (null == request.getHeader("Host"))
+        {
+            head.append("Host: ").append(url.getHost());
+            if (url.getPort() != -1 && url.getPort() != url.getDefaultPort())
+            {
+                head.append(':').append(url.getPort());
+            }
+            head.append("\r\n");
+        }
+        if (null == request.getHeader("User-Agent"))
+        {
+            head.append("User-Agent: ").append(USER_AGENT).append("\r\n");
+        }
+        if (null == request.getHeader("Accept"))
+        {
+            head.append("Accept: */*\r\n");
+        }
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet())
+        {
+            for (String value : header.getValue())
+            {
+                head.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        head.append("\r\n");
+
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Reads the status line of a response.
+     *
+     * @param in
+     *         The stream to read the status line from
+     *
+     * @return The HTTP version, the status code and the reason phrase of the response
+     *
+     * @throws IOException
+     *         If the stream ended before a status line was received or the status line is malformed
+     */
+    static String[] readStatusLine(InputStream in) throws IOException
+    {
+        String line = readLine(in);
+        if (null == line)
+        {
+            throw new EOFException("Connection closed before a response was received");
+        }
+        // HTTP-version SP status-code SP [ reason-phrase ]
+        int firstSpace = line.indexOf(' ');
+        if (!line.startsWith("HTTP/") || firstSpace == -1 || line.length() < firstSpace + 4)
+        {
+            throw new ProtocolException("Invalid status line: " + line);
+        }
+        String version = line.substring(0, firstSpace);
+        String code = line.substring(firstSpace + 1, firstSpace + 4);
+        String message = line.length() > firstSpace + 5 ? line.substring(firstSpace + 5) : "";
+        return new String[] {version, code, message};
+    }
+
+    /**
+     * Reads header lines until the empty line terminating the header section is reached.
+     *
+     * @param in
+     *         The stream to read the headers from
+     *
+     * @return The headers keyed by their case-insensitive name
+     *
+     * @throws IOException
+     *         If the stream ended before the header section was terminated
+     */
+    static Map<String, List<String>> readHeaders(InputStream in) throws IOException
+    {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty())
+        {
+            int colon = line.indexOf(':');
+            if (colon <= 0)
+            {
+                // ignore malformed header lines
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            List<String> values = headers.get(name);
+            if (null == values)
+            {
+                values = new ArrayList<>(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+        if (null == line)
+        {
+            throw new EOFException("Connection closed while reading response headers");
+        }
+        return headers;
+    }
+
+    /**
+     * Reads a single line terminated by either <em>CRLF</em> or a single <em>LF</em>. The line terminator is not
+     * part of the returned string.
+     *
+     * @param in
+     *         The stream to read the line from
+     *
+     * @return The line read or <em>null</em> if the stream ended before any byte was read
+     *
+     * @throws IOException
+     *         If the line exceeds the maximum line length or the stream could not be read
+     */
+    static String readLine(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1)
+        {
+            if (b == '\n')
+            {
+                int length = line.size();
+                byte[] bytes = line.toByteArray();
+                if (length > 0 && bytes[length - 1] == '\r')
+                {
+                    length--;
+                }
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            if (line.size() >= MAX_LINE_LENGTH)
+            {
+                throw new ProtocolException("Line exceeds the maximum length of " + MAX_LINE_LENGTH + " bytes");
+            }
+            line.write(b);
+        }
+        if (line.size() == 0)
+        {
+            return null;
+        }
+        throw new EOFException("Connection closed within a line");
+    }
+}
@@ -0,0 +1,945 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.GuardedBy;
+import at.rovo.common.annotations.Immutable;
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the responses received for <em>GET</em> requests together with their <em>ETag</em> and
+ * <em>Last-Modified</em> validators, so a {@link CachingHttpTransport} is able to revalidate a resource with a
+ * conditional request and serve the stored body if the server responds with <em>304 Not Modified</em>.
+ * <p>
+ * Responses are held in an in-memory tier which is bounded by the total number of body bytes and evicts the least
+ * recently used responses first. If a directory is provided, each stored response is also written to this directory,
+ * which survives evictions from memory as well as restarts of the application and is loaded back into memory on its
+ * next use. The files are bounded by their total size as well and the least recently used ones are deleted first. A
+ * response whose files can not be read, for example as they got truncated, is treated as if no response was stored.
+ * <p>
+ * A single body may take up to 1/8 of a tier. Bodies which are too large for the memory tier are streamed into a file
+ * while they are read and are served from that file, so they never have to fit onto the heap. The headers of a
+ * response are kept in a file of their own, so revalidating a response only rewrites its headers and not its body.
+ * <p>
+ * Headers which only apply to the connection a response was received on and the cookies set by a response are not
+ * stored, as they must not be replayed when the stored response is served again.
+ */
+@ThreadSafe
+public class HttpCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default number of body bytes kept in memory */
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+    /** The default number of bytes of the files written to the cache directory */
+    public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+    /** Identifies the format of the header files written to the cache directory */
+    private static final int FILE_FORMAT = 0x48434302;
+    /** The share of a tier a single body may take up at most */
+    private static final int ENTRY_SHARE = 8;
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * A stored response, whose body is either held in memory, kept in a file of the cache directory or both.
+     */
+    @Immutable
+    static final class Entry
+    {
+        private final URL url;
+        private final int statusCode;
+        private final String statusMessage;
+        private final Map<String, List<String>> headers;
+        /** The body or <em>null</em> if it is only kept in {@link #bodyFile} */
+        private final byte[] body;
+        private final long bodyLength;
+        /** The file the body is kept in or <em>null</em> if it is only held in memory */
+        private final Path bodyFile;
+
+        Entry(URL url, int statusCode, String statusMessage, Map<String, List<String>> headers, byte[] body)
+        {
+            this(url, statusCode, statusMessage, headers, body, body.length, null);
+        }
+
+        private Entry(URL url, int statusCode, String statusMessage, Map<String, List<String>> headers, byte[] body,
+                      long bodyLength, Path bodyFile)
+        {
+            this.url = url;
+            this.statusCode = statusCode;
+            this.statusMessage = null != statusMessage ? statusMessage : "";
+            // the Connection header may name further headers which only apply to the connection
+            Set<String> connectionHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (Map.Entry<String, List<String>> header : headers.entrySet())
+            {
+                if ("Connection".equalsIgnoreCase(header.getKey()))
+                {
+                    for (String value : header.getValue())
+                    {
+                        for (String token : value.split(","))
+                        {
+                            connectionHeaders.add(token.trim());
+                        }
+                    }
+                }
+            }
+            Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Map.Entry<String, List<String>> header : headers.entrySet())
+            {
+                if (null != header.getKey() && !isHopByHop(header.getKey()) && !isCookie(header.getKey())
+                    && !connectionHeaders.contains(header.getKey()))
+                {
+                    copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+                }
+            }
+            this.headers = Collections.unmodifiableMap(copy);
+            this.body = body;
+            this.bodyLength = bodyLength;
+            this.bodyFile = bodyFile;
+        }
+
+        String getHeader(String name)
+        {
+            List<String> values = this.headers.get(name);
+            return null == values || values.isEmpty() ? null : values.get(0);
+        }
+
+        String getETag()
+        {
+            return this.getHeader("ETag");
+        }
+
+        String getLastModified()
+        {
+            return this.getHeader("Last-Modified");
+        }
+
+        Map<String, List<String>> getHeaders()
+        {
+            return this.headers;
+        }
+
+        /**
+         * Creates a response which serves the stored body, as opened via {@link #openBody(Entry)}, along with the given
+         * cookies, which were set by the <em>304 Not Modified</em> response the stored response got revalidated with.
+         */
+        Response toResponse(List<String> setCookies, InputStream body)
+        {
+            if (setCookies.isEmpty())
+            {
+                return new Response(this.url, this.statusCode, this.statusMessage, this.headers, body);
+            }
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            headers.putAll(this.headers);
+            headers.put("Set-Cookie", setCookies);
+            return new Response(this.url, this.statusCode, this.statusMessage, headers, body);
+        }
+
+        /**
+         * Returns a copy of this entry whose headers got updated by the headers of a <em>304 Not Modified</em>
+         * response as demanded by RFC 7234 section 4.3.4.
+         */
+        Entry update(Map<String, List<String>> notModifiedHeaders)
+        {
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            headers.putAll(this.headers);
+            for (Map.Entry<String, List<String>> header : notModifiedHeaders.entrySet())
+            {
+                if (!"Content-Length".equalsIgnoreCase(header.getKey()))
+                {
+                    headers.put(header.getKey(), header.getValue());
+                }
+            }
+            return new Entry(this.url, this.statusCode, this.statusMessage, headers, this.body, this.bodyLength,
+                             this.bodyFile);
+        }
+
+        /**
+         * Returns a copy of this entry whose body is kept in the given file.
+         */
+        private Entry withBodyFile(Path bodyFile)
+        {
+            return new Entry(this.url, this.statusCode, this.statusMessage, this.headers, this.body, this.bodyLength,
+                             bodyFile);
+        }
+
+        /**
+         * Checks whether the header only applies to the connection the response was received on as listed by RFC 7230
+         * section 6.1.
+         */
+        private static boolean isHopByHop(String name)
+        {
+            return "Connection".equalsIgnoreCase(name) || "Keep-Alive".equalsIgnoreCase(name)
+                   || "Transfer-Encoding".equalsIgnoreCase(name) || "TE".equalsIgnoreCase(name)
+                   || "Trailer".equalsIgnoreCase(name) || "Upgrade".equalsIgnoreCase(name)
+                   || "Proxy-Authenticate".equalsIgnoreCase(name) || "Proxy-Authorization".equalsIgnoreCase(name);
+        }
+
+        /**
+         * Checks whether the header sets a cookie, which must only be processed once.
+         */
+        private static boolean isCookie(String name)
+        {
+            return "Set-Cookie".equalsIgnoreCase(name) || "Set-Cookie2".equalsIgnoreCase(name);
+        }
+    }
+
+    private final long maxMemoryBytes;
+    private final Path directory;
+    private final long maxDiskBytes;
+    /** The responses held in memory ordered from the least to the most recently used one */
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long memoryBytes = 0L;
+    /**
+     * The sizes of the files in the cache directory by their name ordered from the least to the most recently used
+     * one, or <em>null</em> if the directory was not scanned yet
+     */
+    @GuardedBy("diskLock")
+    private LinkedHashMap<String, Long> files = null;
+    @GuardedBy("diskLock")
+    private long diskBytes = 0L;
+    private final Object diskLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new in-memory cache which holds up to {@link #DEFAULT_MAX_MEMORY_BYTES} body bytes.
+     */
+    public HttpCache()
+    {
+        this(DEFAULT_MAX_MEMORY_BYTES, null);
+    }
+
+    /**
+     * Creates a new in-memory cache which holds up to the given number of body bytes.
+     *
+     * @param maxMemoryBytes
+     *         The maximum number of body bytes kept in memory
+     */
+    public HttpCache(long maxMemoryBytes)
+    {
+        this(maxMemoryBytes, null);
+    }
+
+    /**
+     * Creates a new cache which holds up to the given number of body bytes in memory and additionally writes every
+     * stored response to the given directory, whose files may take up to {@link #DEFAULT_MAX_DISK_BYTES}.
+     *
+     * @param maxMemoryBytes
+     *         The maximum number of body bytes kept in memory
+     * @param directory
+     *         The directory to store responses in or <em>null</em> if responses should only be kept in memory
+     */
+    public HttpCache(long maxMemoryBytes, Path directory)
+    {
+        this(maxMemoryBytes, directory, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    /**
+     * Creates a new cache which holds up to the given number of body bytes in memory and additionally writes every
+     * stored response to the given directory.
+     *
+     * @param maxMemoryBytes
+     *         The maximum number of body bytes kept in memory
+     * @param directory
+     *         The directory to store responses in or <em>null</em> if responses should only be kept in memory
+     * @param maxDiskBytes
+     *         The maximum number of bytes of the files in the directory
+     */
+    public HttpCache(long maxMemoryBytes, Path directory, long maxDiskBytes)
+    {
+        if (maxMemoryBytes < 0 || maxDiskBytes < 0)
+        {
+            throw new IllegalArgumentException("The maximum memory and disk size must not be negative");
+        }
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * Returns the maximum size of a single response body which is stored by this cache.
+     *
+     * @return The maximum number of bytes of a cacheable body
+     */
+    long getMaxEntryBytes()
+    {
+        // a response which does not fit into memory is still worth storing on disk
+        return Math.max(this.getMaxMemoryEntryBytes(), this.getMaxDiskEntryBytes());
+    }
+
+    /**
+     * Returns the maximum size of a single response body which is held in memory.
+     *
+     * @return The maximum number of bytes of a body in memory
+     */
+    long getMaxMemoryEntryBytes()
+    {
+        return this.maxMemoryBytes / ENTRY_SHARE;
+    }
+
+    /**
+     * Returns the maximum size of a single response body which is kept in the cache directory.
+     *
+     * @return The maximum number of bytes of a body on disk or 0 if responses are only kept in memory
+     */
+    long getMaxDiskEntryBytes()
+    {
+        return null == this.directory ? 0L : this.maxDiskBytes / ENTRY_SHARE;
+    }
+
+    /**
+     * Creates a temporary file in the cache directory. A body too large for memory is written to such a file while it
+     * is read, and the file is handed to {@link #put(URL, int, String, Map, Path, long)} once the body is complete.
+     *
+     * @return The new empty file
+     *
+     * @throws IOException
+     *         If the file could not be created
+     */
+    Path newTempFile() throws IOException
+    {
+        Files.createDirectories(this.directory);
+        return Files.createTempFile(this.directory, null, TEMP_SUFFIX);
+    }
+
+    /**
+     * Opens the stored body of the given entry.
+     *
+     * @throws IOException
+     *         If the body is kept in a file which could not be opened, for example as it got evicted in the meantime
+     */
+    InputStream openBody(Entry entry) throws IOException
+    {
+        if (null != entry.body)
+        {
+            return new ByteArrayInputStream(entry.body);
+        }
+        return new BufferedInputStream(Files.newInputStream(entry.bodyFile));
+    }
+
+    /**
+     * Looks up the response stored for the given URL.
+     */
+    Entry get(URL url)
+    {
+        String key = url.toExternalForm();
+        synchronized (this)
+        {
+            Entry entry = this.memory.get(key);
+            if (null != entry)
+            {
+                return entry;
+            }
+        }
+        if (null == this.directory)
+        {
+            return null;
+        }
+        Entry entry = this.readFile(key);
+        if (null != entry)
+        {
+            this.putInMemory(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the given response, whose body is held in memory, replacing any response previously stored for its URL.
+     */
+    void put(Entry entry)
+    {
+        String key = entry.url.toExternalForm();
+        Entry stored = entry;
+        if (null != this.directory)
+        {
+            Path temp = null;
+            Path bodyFile = null;
+            try
+            {
+                temp = this.newTempFile();
+                Files.write(temp, entry.body);
+                bodyFile = this.commitBody(key, temp, entry.bodyLength);
+            }
+            catch (IOException ioEx)
+            {
+                LOG.warn("Could not write cached response for {}. Reason: {}", key, ioEx.getLocalizedMessage());
+                this.deleteQuietly(temp);
+            }
+            if (null != bodyFile)
+            {
+                stored = entry.withBodyFile(bodyFile);
+                this.writeHeaders(key, stored);
+            }
+        }
+        this.putInMemory(key, stored);
+    }
+
+    /**
+     * Stores the given response, whose body was written to a file created via {@link #newTempFile()}, replacing any
+     * response previously stored for its URL. The file is moved into place or deleted.
+     */
+    void put(URL url, int statusCode, String statusMessage, Map<String, List<String>> headers, Path temp,
+             long bodyLength)
+    {
+        String key = url.toExternalForm();
+        synchronized (this)
+        {
+            Entry removed = this.memory.remove(key);
+            if (null != removed && null != removed.body)
+            {
+                this.memoryBytes -= removed.body.length;
+            }
+        }
+        Path bodyFile = this.commitBody(key, temp, bodyLength);
+        if (null != bodyFile)
+        {
+            this.writeHeaders(key, new Entry(url, statusCode, statusMessage, headers, null, bodyLength, bodyFile));
+        }
+    }
+
+    /**
+     * Replaces the headers of a stored response after it got revalidated, which leaves its body untouched.
+     */
+    void update(Entry entry)
+    {
+        String key = entry.url.toExternalForm();
+        this.putInMemory(key, entry);
+        if (null != entry.bodyFile)
+        {
+            this.writeHeaders(key, entry);
+        }
+    }
+
+    /**
+     * Removes the response stored for the given URL.
+     */
+    void remove(URL url)
+    {
+        String key = url.toExternalForm();
+        synchronized (this)
+        {
+            Entry removed = this.memory.remove(key);
+            if (null != removed && null != removed.body)
+            {
+                this.memoryBytes -= removed.body.length;
+            }
+        }
+        if (null != this.directory)
+        {
+            Path file = this.fileOf(key);
+            String bodyName = this.readBodyName(file);
+            this.deleteFile(file);
+            if (null != bodyName)
+            {
+                this.deleteFile(this.directory.resolve(bodyName));
+            }
+        }
+    }
+
+    private synchronized void putInMemory(String key, Entry entry)
+    {
+        Entry previous = this.memory.remove(key);
+        if (null != previous && null != previous.body)
+        {
+            this.memoryBytes -= previous.body.length;
+        }
+        if (null == entry.body || entry.body.length > this.getMaxMemoryEntryBytes())
+        {
+            return;
+        }
+        this.memory.put(key, entry);
+        this.memoryBytes += entry.body.length;
+        Iterator<Entry> iterator = this.memory.values().iterator();
+        while (this.memoryBytes > this.maxMemoryBytes && iterator.hasNext())
+        {
+            this.memoryBytes -= iterator.next().body.length;
+            iterator.remove();
+        }
+    }
+
+    private Path fileOf(String key)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return this.directory.resolve(name.toString());
+        }
+        catch (NoSuchAlgorithmException nsaEx)
+        {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(nsaEx);
+        }
+    }
+
+    private void deleteFile(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException ioEx)
+        {
+            LOG.warn("Could not remove cached response {}. Reason: {}", file, ioEx.getLocalizedMessage());
+        }
+        synchronized (this.diskLock)
+        {
+            if (null != this.files)
+            {
+                Long size = this.files.remove(file.getFileName().toString());
+                if (null != size)
+                {
+                    this.diskBytes -= size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans the cache directory for the files written by a previous run unless it was scanned already.
+     */
+    @GuardedBy("diskLock")
+    private void scanDirectory()
+    {
+        if (null != this.files)
+        {
+            return;
+        }
+        this.files = new LinkedHashMap<>(16, 0.75f, true);
+        if (!Files.isDirectory(this.directory))
+        {
+            return;
+        }
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory))
+        {
+            for (Path file : stream)
+            {
+                if (!file.getFileName().toString().endsWith(TEMP_SUFFIX))
+                {
+                    found.add(file);
+                }
+            }
+        }
+        catch (IOException ioEx)
+        {
+            LOG.warn("Could not scan cache directory {}. Reason: {}", this.directory, ioEx.getLocalizedMessage());
+        }
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        for (Path file : found)
+        {
+            try
+            {
+                attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+            }
+            catch (IOException ioEx)
+            {
+                // removed in the meantime
+            }
+        }
+        // the modification time is the best guess of the last use of a file written by a previous run
+        attributes.entrySet().stream()
+                .sorted(Comparator.comparing(file -> file.getValue().lastModifiedTime()))
+                .forEach(file -> {
+                    this.files.put(file.getKey().getFileName().toString(), file.getValue().size());
+                    this.diskBytes += file.getValue().size();
+                });
+    }
+
+    /**
+     * Records the use of the given file and deletes the least recently used files while the files take up more than the
+     * configured disk size.
+     *
+     * @param file
+     *         The file which was used
+     * @param size
+     *         The current size of the file or -1 if the file was only read
+     */
+    private void touchFile(Path file, long size)
+    {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this.diskLock)
+        {
+            this.scanDirectory();
+            String name = file.getFileName().toString();
+            Long previous = this.files.get(name);
+            if (size >= 0L)
+            {
+                this.files.put(name, size);
+                this.diskBytes += size - (null != previous ? previous : 0L);
+            }
+            Iterator<Map.Entry<String, Long>> iterator = this.files.entrySet().iterator();
+            while (this.diskBytes > this.maxDiskBytes && iterator.hasNext())
+            {
+                Map.Entry<String, Long> eldest = iterator.next();
+                this.diskBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+        for (String name : evicted)
+        {
+            try
+            {
+                Files.deleteIfExists(this.directory.resolve(name));
+            }
+            catch (IOException ioEx)
+            {
+                LOG.warn("Could not evict cached response {}. Reason: {}", name, ioEx.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Moves a completely written body into place under a name of its own, so the body a header file refers to is never
+     * replaced underneath it. The body previously stored for the key is removed.
+     *
+     * @return The file the body was moved to or <em>null</em> if the body is too large or could not be moved, in which
+     *         case any response stored for the key is removed
+     */
+    private Path commitBody(String key, Path temp, long bodyLength)
+    {
+        Path headerFile = this.fileOf(key);
+        String previous = this.readBodyName(headerFile);
+        if (null != previous)
+        {
+            this.deleteFile(this.directory.resolve(previous));
+        }
+        if (bodyLength > this.getMaxDiskEntryBytes())
+        {
+            this.deleteQuietly(temp);
+            this.deleteFile(headerFile);
+            return null;
+        }
+        String tempName = temp.getFileName().toString();
+        Path bodyFile = this.directory.resolve(headerFile.getFileName() + "-"
+                                               + tempName.substring(0, tempName.length() - TEMP_SUFFIX.length())
+                                               + BODY_SUFFIX);
+        try
+        {
+            Files.move(temp, bodyFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ioEx)
+        {
+            LOG.warn("Could not write cached response for {} to {}. Reason: {}", key, bodyFile,
+                     ioEx.getLocalizedMessage());
+            this.deleteQuietly(temp);
+            this.deleteFile(headerFile);
+            return null;
+        }
+        this.touchFile(bodyFile, bodyLength);
+        return bodyFile;
+    }
+
+    /**
+     * Writes the status and the headers of the given response along with the name of its body file.
+     */
+    private void writeHeaders(String key, Entry entry)
+    {
+        Path file = this.fileOf(key);
+        Path temp = null;
+        try
+        {
+            temp = this.newTempFile();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(FILE_FORMAT);
+                out.writeUTF(key);
+                out.writeInt(entry.statusCode);
+                out.writeUTF(entry.statusMessage);
+                out.writeInt(entry.headers.size());
+                for (Map.Entry<String, List<String>> header : entry.headers.entrySet())
+                {
+                    out.writeUTF(header.getKey());
+                    out.writeInt(header.getValue().size());
+                    for (String value : header.getValue())
+                    {
+                        out.writeUTF(value);
+                    }
+                }
+                out.writeUTF(entry.bodyFile.getFileName().toString());
+                out.writeLong(entry.bodyLength);
+            }
+            long size = Files.size(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.touchFile(file, size);
+        }
+        catch (IOException ioEx)
+        {
+            LOG.warn("Could not write cached response for {} to {}. Reason: {}", key, file,
+                     ioEx.getLocalizedMessage());
+            this.deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Returns the name of the body file the given header file refers to, or <em>null</em> if no valid header file
+     * exists.
+     */
+    private String readBodyName(Path file)
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            long size = Files.size(file);
+            if (in.readInt() != FILE_FORMAT)
+            {
+                return null;
+            }
+            in.readUTF();
+            in.readInt();
+            in.readUTF();
+            int headerCount = checkCount(in.readInt(), size);
+            for (int i = 0; i < headerCount; i++)
+            {
+                in.readUTF();
+                int valueCount = checkCount(in.readInt(), size);
+                for (int j = 0; j < valueCount; j++)
+                {
+                    in.readUTF();
+                }
+            }
+            return checkBodyName(in.readUTF(), file);
+        }
+        catch (IOException ioEx)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Checks that the name of a body file read from the given header file belongs to that header file, so a corrupt
+     * file can not refer to any other file.
+     *
+     * @throws IOException
+     *         If the name does not belong to the header file
+     */
+    private static String checkBodyName(String bodyName, Path headerFile) throws IOException
+    {
+        if (!bodyName.startsWith(headerFile.getFileName() + "-") || !bodyName.endsWith(BODY_SUFFIX)
+            || bodyName.indexOf('/') >= 0 || bodyName.indexOf('\\') >= 0)
+        {
+            throw new IOException("Corrupt cache file, found invalid body file " + bodyName);
+        }
+        return bodyName;
+    }
+
+    private void deleteQuietly(Path temp)
+    {
+        if (null != temp)
+        {
+            try
+            {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException ioEx)
+            {
+                // nothing left to do
+            }
+        }
+    }
+
+    private Entry readFile(String key)
+    {
+        Path file = this.fileOf(key);
+        Path bodyFile = null;
+        Entry entry;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            // the counts are checked against the file size, so a corrupt file can not trigger a huge allocation
+            long size = Files.size(file);
+            if (in.readInt() != FILE_FORMAT)
+            {
+                throw new IOException("Unknown cache file format");
+            }
+            if (!key.equals(in.readUTF()))
+            {
+                return null;
+            }
+            int statusCode = in.readInt();
+            String statusMessage = in.readUTF();
+            int headerCount = checkCount(in.readInt(), size);
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < headerCount; i++)
+            {
+                String name = in.readUTF();
+                int valueCount = checkCount(in.readInt(), size);
+                List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++)
+                {
+                    values.add(in.readUTF());
+                }
+                headers.put(name, values);
+            }
+            bodyFile = this.directory.resolve(checkBodyName(in.readUTF(), file));
+            long bodyLength = in.readLong();
+            if (bodyLength != Files.size(bodyFile))
+            {
+                throw new IOException("Corrupt cache file, expected a body of " + bodyLength + " bytes");
+            }
+            byte[] body = null;
+            if (bodyLength <= this.getMaxMemoryEntryBytes())
+            {
+                body = Files.readAllBytes(bodyFile);
+                if (body.length != bodyLength)
+                {
+                    throw new IOException("Corrupt cache file, expected a body of " + bodyLength + " bytes");
+                }
+            }
+            entry = new Entry(new URL(key), statusCode, statusMessage, headers, body, bodyLength, bodyFile);
+        }
+        catch (NoSuchFileException nsfEx)
+        {
+            if (null != bodyFile)
+            {
+                // the body got evicted
+                this.deleteFile(file);
+            }
+            return null;
+        }
+        catch (IOException ioEx)
+        {
+            LOG.warn("Discarding cached response for {} from {}. Reason: {}", key, file, ioEx.getLocalizedMessage());
+            this.deleteFile(file);
+            if (null != bodyFile)
+            {
+                this.deleteFile(bodyFile);
+            }
+            return null;
+        }
+        this.touchFile(file, -1L);
+        this.touchFile(bodyFile, -1L);
+        return entry;
+    }
+
+    /**
+     * Checks a count read from a cache file, which can not exceed the size of the file.
+     *
+     * @throws IOException
+     *         If the count is negative or larger than the file
+     */
+    private static int checkCount(int count, long fileSize) throws IOException
+    {
+        if (count < 0 || count > fileSize)
+        {
+            throw new IOException("Corrupt cache file, found invalid count " + count);
+        }
+        return count;
+    }
+
+    void recordHit()
+    {
+        this.hits.incrementAndGet();
+    }
+
+    void recordMiss()
+    {
+        this.misses.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of requests which were answered with <em>304 Not Modified</em> and therefore served from this
+     * cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getHitCount()
+    {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of requests for which the body had to be transferred, either because no response was stored
+     * yet or because the stored response was outdated.
+     *
+     * @return The number of cache misses
+     */
+    public long getMissCount()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the number of responses currently held in memory.
+     *
+     * @return The number of responses in memory
+     */
+    public synchronized int getMemoryEntryCount()
+    {
+        return this.memory.size();
+    }
+
+    /**
+     * Returns the number of body bytes currently held in memory.
+     *
+     * @return The number of bytes held in memory
+     */
+    public synchronized long getMemoryBytes()
+    {
+        return this.memoryBytes;
+    }
+
+    /**
+     * Returns the number of bytes of the files in the cache directory. The directory is scanned on the first access
+     * after creating this cache.
+     *
+     * @return The number of bytes on disk or 0 if responses are only kept in memory
+     */
+    public long getDiskBytes()
+    {
+        if (null == this.directory)
+        {
+            return 0L;
+        }
+        synchronized (this.diskLock)
+        {
+            this.scanDirectory();
+            return this.diskBytes;
+        }
+    }
+
+    /**
+     * Removes all responses held in memory. Responses written to the cache directory are kept.
+     */
+    public synchronized void clearMemory()
+    {
+        this.memory.clear();
+        this.memoryBytes = 0L;
+    }
+}
@@ -0,0 +1,362 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.net.ConnectException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AsyncHttpTransport} implementation which is based on the non-blocking {@link HttpClient} of the JDK. The
+ * client manages its own pool of connections, and requests sent via {@link #executeAsync(Request)} do not occupy a
+ * thread while waiting for the endpoint to respond.
+ * <p>
+ * Headers which are controlled by the client itself, like <em>Host</em> or <em>Connection</em>, are not passed on.
+ * Likewise the connect timeout of a request is ignored, as the client applies its own connect timeout to all requests,
+ * while the read timeout of a request limits the time until the response headers are received.
+ * <p>
+ * A transport created for {@link HttpClient.Version#HTTP_2 HTTP/2} multiplexes all concurrent requests to an origin
+ * as streams over a single connection, instead of opening a connection per request. HTTP/2 is negotiated via ALPN for
+ * <em>https</em> URLs and via an <em>h2c</em> upgrade of the first request for <em>http</em> URLs, so concurrent
+ * requests sent before the first response of an origin arrived may still open connections of their own. Origins which
+ * only speak HTTP/1.1 are remembered and sent plain HTTP/1.1 requests from then on. If an origin fails an HTTP/2
+ * exchange before it ever answered via HTTP/2, for example as it mishandles the upgrade, it is likewise fallen back to
+ * HTTP/1.1 and idempotent requests are retried once.
+ * <p>
+ * Cancelling a future returned by {@link #executeAsync(Request)} cancels the exchange of the client, which aborts the
+ * exchange and releases its connection or stream on Java 16 and later. Earlier versions of the client ignore the
+ * cancellation, so the response is still received but dropped.
+ */
+@ThreadSafe
+public class HttpClientTransport implements AsyncHttpTransport
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The headers the client does not allow to be set on a request */
+    private static final Collection<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static
+    {
+        // the connection-specific headers are managed by the client and must not appear in HTTP/2 requests
+        RESTRICTED_HEADERS.addAll(Arrays.asList("Connection", "Content-Length", "Expect", "Host", "Keep-Alive",
+                                                "Proxy-Connection", "TE", "Transfer-Encoding", "Upgrade"));
+    }
+
+    /** The number of origins whose protocol version is remembered, further origins are always tried via HTTP/2 */
+    private static final int MAX_ORIGINS = 10_000;
+
+    private final HttpClient client;
+    /** The protocol version each origin answered with, only tracked if the client prefers HTTP/2 */
+    private final ConcurrentMap<String, HttpClient.Version> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new transport backed by a HTTP/1.1 client which does not follow redirects on its own.
+     */
+    public HttpClientTransport()
+    {
+        this(HttpClient.Version.HTTP_1_1);
+    }
+
+    /**
+     * Creates a new transport backed by a client which prefers the given protocol version and does not follow
+     * redirects on its own. A client preferring {@link HttpClient.Version#HTTP_2} falls back to HTTP/1.1 for each
+     * origin which does not support HTTP/2.
+     *
+     * @param version
+     *         The preferred protocol version
+     */
+    public HttpClientTransport(HttpClient.Version version)
+    {
+        this(HttpClient.newBuilder()
+                       .version(version)
+                       .followRedirects(HttpClient.Redirect.NEVER)
+                       .build());
+    }
+
+    /**
+     * Creates a new transport backed by the provided client. As redirects are followed by the caller of the
+     * transport, the client must not follow redirects on its own.
+     *
+     * @param client
+     *         The client to send requests with
+     */
+    public HttpClientTransport(HttpClient client)
+    {
+        if (null == client)
+        {
+            throw new IllegalArgumentException("No client provided");
+        }
+        if (client.followRedirects() != HttpClient.Redirect.NEVER)
+        {
+            throw new IllegalArgumentException("The client must not follow redirects on its own");
+        }
+        this.client = client;
+    }
+
+    /**
+     * Returns the client requests are sent with.
+     *
+     * @return The underlying HTTP client
+     */
+    public HttpClient getClient()
+    {
+        return this.client;
+    }
+
+    /**
+     * Returns the protocol version the origin of the given URL answered with so far.
+     *
+     * @param url
+     *         A URL of the origin to look up
+     *
+     * @return The protocol version of the origin or <em>null</em> if the client does not prefer HTTP/2 or the origin
+     *         was not contacted yet
+     */
+    public HttpClient.Version getVersion(URL url)
+    {
+        return this.versions.get(origin(url));
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException
+    {
+        boolean http2 = this.isHttp2(request);
+        try
+        {
+            HttpResponse<InputStream> response =
+                    this.client.send(this.toHttpRequest(request, http2), HttpResponse.BodyHandlers.ofInputStream());
+            this.recordVersion(request, response.version());
+            return new Response(request.getUrl(), response.statusCode(), "", response.headers().map(),
+                                response.body());
+        }
+        catch (InterruptedException iEx)
+        {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ioEx = new InterruptedIOException("Interrupted while requesting " + request);
+            ioEx.initCause(iEx);
+            throw ioEx;
+        }
+        catch (IOException ioEx)
+        {
+            if (!http2 || !this.fallBack(request, ioEx))
+            {
+                throw ioEx;
+            }
+            return this.execute(request);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request)
+    {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        // the exchange currently in flight, which changes if the request is retried via HTTP/1.1
+        AtomicReference<CompletableFuture<?>> exchange = new AtomicReference<>();
+        result.whenComplete((response, failure) -> {
+            CompletableFuture<?> sent = exchange.get();
+            if (result.isCancelled() && null != sent)
+            {
+                sent.cancel(true);
+            }
+        });
+        this.sendAsync(request, result, exchange);
+        return result;
+    }
+
+    /**
+     * Sends the given request via the client and completes the result with its response, unless the result was
+     * cancelled.
+     *
+     * @param request
+     *         The request to send
+     * @param result
+     *         The future returned to the caller
+     * @param exchange
+     *         Holds the exchange of the client which is currently in flight
+     */
+    private void sendAsync(Request request, CompletableFuture<Response> result,
+                           AtomicReference<CompletableFuture<?>> exchange)
+    {
+        boolean http2 = this.isHttp2(request);
+        HttpRequest httpRequest;
+        try
+        {
+            httpRequest = this.toHttpRequest(request, http2);
+        }
+        catch (IOException ioEx)
+        {
+            result.completeExceptionally(ioEx);
+            return;
+        }
+        // like the synchronous exchange, the body is streamed instead of being held in memory completely
+        CompletableFuture<HttpResponse<InputStream>> sent =
+                this.client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+        exchange.set(sent);
+        if (result.isCancelled())
+        {
+            // cancelled before the exchange was published
+            sent.cancel(true);
+            return;
+        }
+        sent.whenComplete((httpResponse, failure) -> {
+            if (null == failure)
+            {
+                this.recordVersion(request, httpResponse.version());
+                if (!result.complete(new Response(request.getUrl(), httpResponse.statusCode(), "",
+                                                  httpResponse.headers().map(), httpResponse.body())))
+                {
+                    // the result was cancelled while the headers arrived, so nobody will read or close the body
+                    closeQuietly(httpResponse.body());
+                }
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException && null != failure.getCause()
+                              ? failure.getCause() : failure;
+            if (http2 && !result.isDone() && cause instanceof IOException
+                && this.fallBack(request, (IOException) cause))
+            {
+                this.sendAsync(request, result, exchange);
+                return;
+            }
+            result.completeExceptionally(cause);
+        });
+    }
+
+    private static void closeQuietly(InputStream body)
+    {
+        try
+        {
+            body.close();
+        }
+        catch (IOException ioEx)
+        {
+            LOG.debug("Could not close the body of a cancelled response", ioEx);
+        }
+    }
+
+    /**
+     * Checks whether the given request is sent via HTTP/2, which is the case if the client prefers HTTP/2 and the
+     * origin of the request was not found to only speak HTTP/1.1.
+     */
+    private boolean isHttp2(Request request)
+    {
+        return this.client.version() == HttpClient.Version.HTTP_2
+               && this.versions.get(origin(request.getUrl())) != HttpClient.Version.HTTP_1_1;
+    }
+
+    private void recordVersion(Request request, HttpClient.Version version)
+    {
+        if (this.client.version() != HttpClient.Version.HTTP_2)
+        {
+            return;
+        }
+        String origin = origin(request.getUrl());
+        if (this.versions.size() < MAX_ORIGINS || this.versions.containsKey(origin))
+        {
+            if (version != this.versions.put(origin, version) && version == HttpClient.Version.HTTP_1_1)
+            {
+                LOG.debug("{} does not support HTTP/2, using HTTP/1.1", origin);
+            }
+        }
+    }
+
+    /**
+     * Falls back to HTTP/1.1 for the origin of the given request if its HTTP/2 exchange failed in a way a HTTP/1.1
+     * exchange might not, before the origin ever answered via HTTP/2. Failures to connect and timeouts are not
+     * protocol specific and are left to the caller.
+     *
+     * @return <em>true</em> if the request should be retried via HTTP/1.1
+     */
+    private boolean fallBack(Request request, IOException failure)
+    {
+        if (failure instanceof ConnectException || failure instanceof HttpTimeoutException
+            || failure instanceof InterruptedIOException)
+        {
+            return false;
+        }
+        String origin = origin(request.getUrl());
+        if (this.versions.get(origin) == HttpClient.Version.HTTP_2)
+        {
+            return false;
+        }
+        if (this.versions.size() >= MAX_ORIGINS && !this.versions.containsKey(origin))
+        {
+            return false;
+        }
+        this.versions.put(origin, HttpClient.Version.HTTP_1_1);
+        LOG.debug("HTTP/2 exchange with {} failed, falling back to HTTP/1.1", origin, failure);
+        String method = request.getMethod();
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method);
+    }
+
+    /**
+     * Returns the origin of the given URL, which is the unit HTTP/2 connections are shared by.
+     */
+    private static String origin(URL url)
+    {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return url.getProtocol().toLowerCase(Locale.ROOT) + "://" + url.getHost().toLowerCase(Locale.ROOT) + ':' + port;
+    }
+
+    private HttpRequest toHttpRequest(Request request, boolean http2) throws IOException
+    {
+        HttpRequest.Builder builder;
+        try
+        {
+            builder = HttpRequest.newBuilder(request.getUrl().toURI());
+        }
+        catch (URISyntaxException | IllegalArgumentException ex)
+        {
+            throw new IOException("Invalid URL " + request.getUrl(), ex);
+        }
+        builder.method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+        if (this.client.version() == HttpClient.Version.HTTP_2 && !http2)
+        {
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        // the client applies its connect timeout to all requests, so only the time to the response can be limited
+        if (null != request.getReadTimeout())
+        {
+            builder.timeout(request.getReadTimeout());
+        }
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet())
+        {
+            if (RESTRICTED_HEADERS.contains(header.getKey()))
+            {
+                LOG.trace("Skipping restricted header {} of request {}", header.getKey(), request);
+                continue;
+            }
+            for (String value : header.getValue())
+            {
+                builder.header(header.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void close()
+    {
+        // the connections of the client are released once the client becomes unreachable
+    }
+}
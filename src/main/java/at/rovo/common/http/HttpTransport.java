@@ -0,0 +1,30 @@
+package at.rovo.common.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Defines the transport layer which is used by {@link at.rovo.common.UrlReader} to exchange a single HTTP request with
+ * a remote endpoint. Implementations only perform the actual exchange and must not follow any redirects themselves, as
+ * redirects, cookies and the decoding of the content are handled by the caller.
+ * <p>
+ * The {@link Response} returned by {@link #execute(Request)} holds on to the underlying connection until its body was
+ * either fully consumed or the response got closed. Callers therefore have to close every response they receive in
+ * order to hand the connection back to the transport.
+ */
+public interface HttpTransport extends Closeable
+{
+    /**
+     * Sends the provided request to the endpoint the request is targeted at and returns the response of the endpoint
+     * once the status line and the response headers were received.
+     *
+     * @param request
+     *         The request to send
+     *
+     * @return The response received for the request, which needs to be closed by the caller
+     *
+     * @throws IOException
+     *         If the connection to the endpoint could not be established or the exchange failed
+     */
+    Response execute(Request request) throws IOException;
+}
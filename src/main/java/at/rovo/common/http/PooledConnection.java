@@ -0,0 +1,165 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A socket connection to a {@link Route} which is managed by a {@link ConnectionPool}. A connection is either leased by
+ * exactly one exchange or idle within the pool, therefore no synchronization is needed.
+ */
+@NotThreadSafe
+final class PooledConnection
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Route route;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    /** The number of exchanges which were performed on this connection */
+    private int exchanges = 0;
+    /** The point in time (in milliseconds) the connection was returned to the pool */
+    private long idleSince = 0L;
+    /** The point in time (in milliseconds) after which this connection must not be reused anymore */
+    private long expiresAt = Long.MAX_VALUE;
+
+    PooledConnection(Route route, Socket socket) throws IOException
+    {
+        this.route = route;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    Route getRoute()
+    {
+        return this.route;
+    }
+
+    InputStream getInputStream()
+    {
+        return this.in;
+    }
+
+    OutputStream getOutputStream()
+    {
+        return this.out;
+    }
+
+    /**
+     * Marks the start of a new exchange on this connection.
+     */
+    void beginExchange()
+    {
+        this.exchanges++;
+    }
+
+    /**
+     * Specifies whether this connection was already used by a previous exchange.
+     *
+     * @return <em>true</em> if the connection was taken from the pool of idle connections
+     */
+    boolean isReused()
+    {
+        return this.exchanges > 1;
+    }
+
+    /**
+     * Marks this connection as idle.
+     *
+     * @param now
+     *         The current time in milliseconds
+     * @param keepAliveMillis
+     *         The time in milliseconds this connection may stay idle before it must not be reused anymore
+     */
+    void markIdle(long now, long keepAliveMillis)
+    {
+        this.idleSince = now;
+        this.expiresAt = now + keepAliveMillis;
+    }
+
+    long getIdleSince()
+    {
+        return this.idleSince;
+    }
+
+    boolean isExpired(long now)
+    {
+        return now >= this.expiresAt;
+    }
+
+    /**
+     * Checks whether the remote endpoint closed this idle connection. A connection which is closed by the peer
+     * signals the end of the stream, while a connection which is still alive will not deliver any data at all and
+     * therefore time out immediately.
+     *
+     * @return <em>true</em> if the connection should not be used anymore
+     */
+    boolean isStale()
+    {
+        if (this.socket.isClosed() || this.socket.isInputShutdown() || this.socket.isOutputShutdown())
+        {
+            return true;
+        }
+        try
+        {
+            if (this.in.available() > 0)
+            {
+                // unexpected data on an idle connection
+                return true;
+            }
+            int soTimeout = this.socket.getSoTimeout();
+            try
+            {
+                this.socket.setSoTimeout(1);
+                // either the end of the stream or unexpected data, both render the connection useless
+                this.in.read();
+                return true;
+            }
+            catch (SocketTimeoutException stEx)
+            {
+                return false;
+            }
+            finally
+            {
+                this.socket.setSoTimeout(soTimeout);
+            }
+        }
+        catch (IOException ioEx)
+        {
+            return true;
+        }
+    }
+
+    void setReadTimeout(int readTimeout) throws IOException
+    {
+        this.socket.setSoTimeout(readTimeout);
+    }
+
+    void close()
+    {
+        try
+        {
+            this.socket.close();
+        }
+        catch (IOException ioEx)
+        {
+            LOG.trace("Could not close connection to {}. Reason: {}", this.route, ioEx.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.route + " [" + this.socket.getLocalPort() + "]";
+    }
+}
@@ -0,0 +1,527 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HttpTransport} implementation which speaks HTTP/1.1 over plain or TLS sockets kept in a bounded pool of
+ * keep-alive connections. Connections are grouped by scheme, host and port, and at most
+ * <em>maxConnectionsPerRoute</em> connections are open to a single route at any time. Once the body of a response was
+ * read completely, or the response was closed, the connection is handed back to the pool and reused by the next request
+ * to the same route. Therefore a chain of redirects or repeated requests to the same host only pay the TCP and TLS
+ * handshake once.
+ * <p>
+ * Connections which stayed idle for longer than the configured keep-alive time, or the keep-alive timeout announced by
+ * the server, are closed by a background task. As a connection is only released once its response got closed, callers
+ * should close each {@link Response} they received. The connection of a response whose body was dropped without being
+ * closed is closed once the body was garbage collected, until then it counts against the limit of its route.
+ * <p>
+ * Requests which have to be sent via a proxy, as configured by the <em>http.proxyHost</em> and
+ * <em>https.proxyHost</em> system properties or a custom {@link ProxySelector}, are not pooled but sent via a {@link
+ * UrlConnectionTransport}, which honors the proxy configuration of the JVM.
+ * <p>
+ * Host names are resolved via the {@link DnsResolver} set with {@link #setDnsResolver(DnsResolver)}, by default the
+ * resolver of the JVM. A {@link CachingDnsResolver} keeps the lookups in a cache of its own. To take DNS lookups and
+ * handshakes off the critical path of the first requests to known hosts, {@link #preconnect(Collection, Duration)}
+ * resolves the hosts and parks an open connection to each of them in the pool.
+ */
+@ThreadSafe
+public class PooledHttpTransport implements HttpTransport
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default number of connections which may be open to a single route */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+    /** The default time in milliseconds an idle connection is kept open */
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000L;
+    /** The default time in milliseconds to wait for a connection if all connections of a route are in use */
+    public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 60000L;
+
+    private final ConnectionPool pool;
+    /** Sends the requests which have to go through a proxy */
+    private final UrlConnectionTransport proxyTransport = new UrlConnectionTransport();
+    /** Is notified about the connections established by this transport */
+    private volatile ExchangeListener listener = ExchangeListener.NONE;
+    /** Resolves the hosts this transport connects to */
+    private volatile DnsResolver dnsResolver = DnsResolver.SYSTEM;
+
+    /**
+     * Creates a new transport with a pool allowing {@link #DEFAULT_MAX_CONNECTIONS_PER_ROUTE} connections per route
+     * which are kept open for {@link #DEFAULT_KEEP_ALIVE_MILLIS} milliseconds when idle.
+     */
+    public PooledHttpTransport()
+    {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new transport with a pool allowing <em>maxConnectionsPerRoute</em> connections per route which are
+     * kept open for the specified keep-alive time when idle.
+     *
+     * @param maxConnectionsPerRoute
+     *         The maximum number of connections which may be open to a single route
+     * @param keepAliveTime
+     *         The time an idle connection is kept open
+     * @param unit
+     *         The time unit of the keep-alive time
+     */
+    public PooledHttpTransport(int maxConnectionsPerRoute, long keepAliveTime, TimeUnit unit)
+    {
+        this(maxConnectionsPerRoute, keepAliveTime, unit.convert(DEFAULT_LEASE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS),
+             unit);
+    }
+
+    /**
+     * Creates a new transport with a pool allowing <em>maxConnectionsPerRoute</em> connections per route which are
+     * kept open for the specified keep-alive time when idle.
+     *
+     * @param maxConnectionsPerRoute
+     *         The maximum number of connections which may be open to a single route
+     * @param keepAliveTime
+     *         The time an idle connection is kept open
+     * @param leaseTimeout
+     *         The time to wait for a connection if all connections to a route are in use
+     * @param unit
+     *         The time unit of the keep-alive time and the lease timeout
+     */
+    public PooledHttpTransport(int maxConnectionsPerRoute, long keepAliveTime, long leaseTimeout, TimeUnit unit)
+    {
+        this.pool = new ConnectionPool(maxConnectionsPerRoute, unit.toMillis(keepAliveTime),
+                                       unit.toMillis(leaseTimeout));
+    }
+
+    /**
+     * Returns the maximum number of connections which may be open to a single route.
+     *
+     * @return The maximum number of connections per route
+     */
+    public int getMaxConnectionsPerRoute()
+    {
+        return this.pool.getMaxConnectionsPerRoute();
+    }
+
+    /**
+     * Sets the listener which is notified about the DNS lookup, the TCP connect and the TLS handshake of every new
+     * connection this transport establishes.
+     *
+     * @param listener
+     *         The listener to notify or <em>null</em> to stop notifying a listener
+     */
+    public void setExchangeListener(ExchangeListener listener)
+    {
+        this.listener = null != listener ? listener : ExchangeListener.NONE;
+    }
+
+    /**
+     * Sets the resolver which looks up the addresses of the hosts this transport connects to.
+     *
+     * @param dnsResolver
+     *         The resolver to use or <em>null</em> to use the {@link DnsResolver#SYSTEM resolver of the JVM}
+     */
+    public void setDnsResolver(DnsResolver dnsResolver)
+    {
+        this.dnsResolver = null != dnsResolver ? dnsResolver : DnsResolver.SYSTEM;
+    }
+
+    /**
+     * Returns the resolver which looks up the addresses of the hosts this transport connects to.
+     *
+     * @return The resolver in use
+     */
+    public DnsResolver getDnsResolver()
+    {
+        return this.dnsResolver;
+    }
+
+    /**
+     * Opens a connection to each distinct route of the given URLs ahead of the first request and parks it in the pool,
+     * so the first requests to these hosts skip the DNS lookup and the TCP and TLS handshakes. The hosts are resolved
+     * via {@link DnsResolver#preResolve(Collection)} first, afterwards the connections are established concurrently.
+     * Routes which already have an idle connection, and routes which are reached via a proxy, are not connected again.
+     * Parked connections are closed like any other idle connection once the keep-alive time elapsed.
+     *
+     * @param urls
+     *         The URLs whose hosts should be connected to
+     * @param connectTimeout
+     *         The time to wait for each connection to be established or <em>null</em> to wait without limit
+     *
+     * @return The number of routes an idle connection is available for
+     */
+    public int preconnect(Collection<URL> urls, Duration connectTimeout)
+    {
+        Set<Route> routes = new LinkedHashSet<>();
+        for (URL url : urls)
+        {
+            String scheme = url.getProtocol();
+            if (("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) && !url.getHost().isEmpty()
+                && !isProxied(url))
+            {
+                routes.add(Route.of(url));
+            }
+        }
+        if (routes.isEmpty())
+        {
+            return 0;
+        }
+        this.dnsResolver.preResolve(routes.stream().map(Route::getHost).collect(Collectors.toSet()));
+
+        int timeout = toMillis(connectTimeout);
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(routes.size(), 16), runnable -> {
+            Thread thread = new Thread(runnable, "preconnect-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            List<CompletableFuture<Boolean>> connects = new ArrayList<>(routes.size());
+            for (Route route : routes)
+            {
+                connects.add(CompletableFuture.supplyAsync(() -> this.preconnect(route, timeout), executor));
+            }
+            int connected = 0;
+            for (CompletableFuture<Boolean> connect : connects)
+            {
+                if (connect.get())
+                {
+                    connected++;
+                }
+            }
+            return connected;
+        }
+        catch (ExecutionException eEx)
+        {
+            throw new IllegalStateException("Preconnecting failed", eEx.getCause());
+        }
+        catch (InterruptedException iEx)
+        {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean preconnect(Route route, int connectTimeout)
+    {
+        if (this.pool.getIdleCount(route) > 0)
+        {
+            return true;
+        }
+        try
+        {
+            PooledConnection connection = this.pool.lease(route, leased -> this.connect(leased, connectTimeout));
+            this.pool.release(connection, true);
+            return true;
+        }
+        catch (IOException ioEx)
+        {
+            LOG.debug("Could not preconnect to {}. Reason: {}", route, ioEx.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException
+    {
+        if (isProxied(request.getUrl()))
+        {
+            return this.proxyTransport.execute(request);
+        }
+        Route route = Route.of(request.getUrl());
+        int connectTimeout = toMillis(request.getConnectTimeout());
+        int readTimeout = toMillis(request.getReadTimeout());
+        while (true)
+        {
+            PooledConnection connection = this.pool.lease(route, leased -> this.connect(leased, connectTimeout));
+            try
+            {
+                // reused connections still carry the read timeout of the previous request
+                connection.setReadTimeout(readTimeout);
+                Http1Codec.writeRequest(request, connection.getOutputStream());
+                return this.readResponse(request, connection);
+            }
+            catch (IOException ioEx)
+            {
+                this.pool.release(connection, false);
+                if (!connection.isReused())
+                {
+                    throw ioEx;
+                }
+                // the server might have closed the idle connection in the meantime, retry on a further connection
+                LOG.trace("Exchange on reused connection {} failed, retrying. Reason: {}", connection,
+                          ioEx.getLocalizedMessage());
+            }
+        }
+    }
+
+    private Response readResponse(Request request, PooledConnection connection) throws IOException
+    {
+        while (true)
+        {
+            String[] statusLine = Http1Codec.readStatusLine(connection.getInputStream());
+            int statusCode = parseStatusCode(statusLine[1]);
+            Map<String, List<String>> headers = Http1Codec.readHeaders(connection.getInputStream());
+            // skip any interim responses like 100 Continue or 103 Early Hints
+            if (statusCode >= 200 || statusCode == 101)
+            {
+                return this.createResponse(request, connection, statusLine, statusCode, headers);
+            }
+        }
+    }
+
+    private Response createResponse(Request request, PooledConnection connection, String[] statusLine,
+                                    int statusCode, Map<String, List<String>> headers) throws IOException
+    {
+        boolean keepAlive = isKeepAlive(statusLine[0], request, headers);
+        long keepAliveMillis = parseKeepAliveTimeout(headers, this.pool.getKeepAliveMillis());
+
+        ResponseBodyInputStream.Framing framing;
+        long contentLength = -1L;
+        String transferEncoding = firstValue(headers, "Transfer-Encoding");
+        String contentLengthHeader = firstValue(headers, "Content-Length");
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || statusCode == 204 || statusCode == 304)
+        {
+            framing = ResponseBodyInputStream.Framing.FIXED_LENGTH;
+            contentLength = 0L;
+        }
+        else if (null != transferEncoding && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked"))
+        {
+            framing = ResponseBodyInputStream.Framing.CHUNKED;
+        }
+        else if (null != contentLengthHeader)
+        {
+            framing = ResponseBodyInputStream.Framing.FIXED_LENGTH;
+            try
+            {
+                contentLength = Long.parseLong(contentLengthHeader.trim());
+            }
+            catch (NumberFormatException nfEx)
+            {
+                contentLength = -1L;
+            }
+            if (contentLength < 0)
+            {
+                throw new IOException("Invalid Content-Length header: " + contentLengthHeader);
+            }
+        }
+        else
+        {
+            framing = ResponseBodyInputStream.Framing.UNTIL_CLOSE;
+        }
+
+        ResponseBodyInputStream body =
+                new ResponseBodyInputStream(this.pool, connection, framing, contentLength, keepAlive, keepAliveMillis);
+        return new Response(request.getUrl(), statusCode, statusLine[2], headers, body);
+    }
+
+    /**
+     * Checks whether requests to the given URL have to be sent via a proxy according to the default {@link
+     * ProxySelector} of the JVM.
+     */
+    private static boolean isProxied(URL url)
+    {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (null == selector)
+        {
+            return false;
+        }
+        try
+        {
+            for (Proxy proxy : selector.select(url.toURI()))
+            {
+                if (proxy.type() != Proxy.Type.DIRECT)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        catch (URISyntaxException | IllegalArgumentException ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Converts the timeout to milliseconds as expected by sockets, where zero disables the timeout.
+     */
+    private static int toMillis(Duration timeout)
+    {
+        return null == timeout ? 0 : UrlConnectionTransport.toMillis(timeout);
+    }
+
+    private PooledConnection connect(Route route, int connectTimeout) throws IOException
+    {
+        ExchangeListener listener = this.listener;
+        long start = System.nanoTime();
+        InetAddress[] addresses;
+        try
+        {
+            addresses = this.dnsResolver.resolve(route.getHost());
+        }
+        catch (IOException ioEx)
+        {
+            listener.connectFailed(route.getHost(), System.nanoTime() - start);
+            throw ioEx;
+        }
+        long resolved = System.nanoTime();
+        listener.dnsResolved(route.getHost(), resolved - start);
+
+        IOException lastException = null;
+        for (InetAddress address : addresses)
+        {
+            Socket socket = new Socket();
+            try
+            {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(new InetSocketAddress(address, route.getPort()), connectTimeout);
+                long connected = System.nanoTime();
+                listener.connected(route.getHost(), connected - resolved);
+                if (route.isSecure())
+                {
+                    // the handshake is bounded by the connect timeout, the read timeout is set on leasing
+                    socket.setSoTimeout(connectTimeout);
+                    socket = this.startTls(socket, route);
+                    listener.tlsHandshakeCompleted(route.getHost(), System.nanoTime() - connected);
+                }
+                return new PooledConnection(route, socket);
+            }
+            catch (IOException ioEx)
+            {
+                LOG.trace("Could not connect to {} via {}. Reason: {}", route, address, ioEx.getLocalizedMessage());
+                socket.close();
+                lastException = ioEx;
+            }
+        }
+        listener.connectFailed(route.getHost(), System.nanoTime() - start);
+        throw null != lastException ? lastException : new IOException("No address found for " + route.getHost());
+    }
+
+    private Socket startTls(Socket socket, Route route) throws IOException
+    {
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, route.getHost(), route.getPort(), true);
+        SSLParameters parameters = sslSocket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(parameters);
+        sslSocket.startHandshake();
+        return sslSocket;
+    }
+
+    private static int parseStatusCode(String code) throws IOException
+    {
+        try
+        {
+            return Integer.parseInt(code);
+        }
+        catch (NumberFormatException nfEx)
+        {
+            throw new IOException("Invalid status code: " + code);
+        }
+    }
+
+    private static boolean isKeepAlive(String version, Request request, Map<String, List<String>> headers)
+    {
+        String requestConnection = request.getHeader("Connection");
+        if (null != requestConnection && "close".equalsIgnoreCase(requestConnection.trim()))
+        {
+            return false;
+        }
+        String connection = firstValue(headers, "Connection");
+        if (null != connection)
+        {
+            String value = connection.toLowerCase(Locale.ROOT);
+            if (value.contains("close"))
+            {
+                return false;
+            }
+            if (value.contains("keep-alive"))
+            {
+                return true;
+            }
+        }
+        // HTTP/1.1 connections are persistent by default, HTTP/1.0 ones only on request
+        return !"HTTP/1.0".equals(version);
+    }
+
+    private static long parseKeepAliveTimeout(Map<String, List<String>> headers, long defaultMillis)
+    {
+        String keepAlive = firstValue(headers, "Keep-Alive");
+        if (null == keepAlive)
+        {
+            return defaultMillis;
+        }
+        for (String parameter : keepAlive.split(","))
+        {
+            String[] kv = parameter.trim().split("=", 2);
+            if (kv.length == 2 && "timeout".equalsIgnoreCase(kv[0].trim()))
+            {
+                try
+                {
+                    return Math.min(defaultMillis, Long.parseLong(kv[1].trim()) * 1000L);
+                }
+                catch (NumberFormatException nfEx)
+                {
+                    return defaultMillis;
+                }
+            }
+        }
+        return defaultMillis;
+    }
+
+    private static String firstValue(Map<String, List<String>> headers, String name)
+    {
+        List<String> values = headers.get(name);
+        return null == values || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Closes all connections which are currently idle.
+     */
+    public void closeIdleConnections()
+    {
+        this.pool.evictAll();
+    }
+
+    /**
+     * Closes all idle connections and stops the background eviction. Connections which are currently in use are closed
+     * as soon as their response is closed.
+     */
+    @Override
+    public void close()
+    {
+        this.pool.close();
+    }
+}
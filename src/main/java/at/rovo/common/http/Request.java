@@ -0,0 +1,186 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A HTTP request which should be sent via a {@link HttpTransport} to the endpoint identified by the URL of the request.
+ * Header names are treated case-insensitive.
+ */
+@NotThreadSafe
+public class Request
+{
+    /** The URL of the resource to request */
+    private final URL url;
+    /** The HTTP method to use */
+    private String method = "GET";
+    /** The headers to send along with the request */
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    /** The maximum time to wait for a connection to the endpoint to be established */
+    private Duration connectTimeout = null;
+    /** The maximum time to wait for further data of the response */
+    private Duration readTimeout = null;
+
+    /**
+     * Creates a new <em>GET</em> request for the provided URL.
+     *
+     * @param url
+     *         The URL of the resource to request
+     */
+    public Request(URL url)
+    {
+        if (null == url)
+        {
+            throw new IllegalArgumentException("No URL provided");
+        }
+        this.url = url;
+    }
+
+    /**
+     * Returns the URL of the requested resource.
+     *
+     * @return The URL of the requested resource
+     */
+    public URL getUrl()
+    {
+        return this.url;
+    }
+
+    /**
+     * Returns the HTTP method of this request.
+     *
+     * @return The HTTP method of this request
+     */
+    public String getMethod()
+    {
+        return this.method;
+    }
+
+    /**
+     * Sets the HTTP method of this request. Only methods which do not send a request body, like <em>GET</em> or
+     * <em>HEAD</em>, are supported.
+     *
+     * @param method
+     *         The HTTP method to use
+     */
+    public void setMethod(String method)
+    {
+        this.method = method;
+    }
+
+    /**
+     * Returns the maximum time the transport waits for a new connection to the endpoint to be established, including
+     * the TLS handshake.
+     *
+     * @return The connect timeout or <em>null</em> if the default of the transport applies
+     */
+    public Duration getConnectTimeout()
+    {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Sets the maximum time the transport waits for a new connection to the endpoint to be established, including the
+     * TLS handshake.
+     *
+     * @param connectTimeout
+     *         The connect timeout or <em>null</em> to apply the default of the transport
+     */
+    public void setConnectTimeout(Duration connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Returns the maximum time the transport waits for the response headers and for each further chunk of the response
+     * body.
+     *
+     * @return The read timeout or <em>null</em> if the default of the transport applies
+     */
+    public Duration getReadTimeout()
+    {
+        return this.readTimeout;
+    }
+
+    /**
+     * Sets the maximum time the transport waits for the response headers and for each further chunk of the response
+     * body.
+     *
+     * @param readTimeout
+     *         The read timeout or <em>null</em> to apply the default of the transport
+     */
+    public void setReadTimeout(Duration readTimeout)
+    {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Replaces all values of the header with the given name with the provided value.
+     *
+     * @param name
+     *         The name of the header to set
+     * @param value
+     *         The value of the header
+     */
+    public void setHeader(String name, String value)
+    {
+        List<String> values = new ArrayList<>(1);
+        values.add(value);
+        this.headers.put(name, values);
+    }
+
+    /**
+     * Adds the provided value to the values of the header with the given name.
+     *
+     * @param name
+     *         The name of the header to add a value for
+     * @param value
+     *         The value to add
+     */
+    public void addHeader(String name, String value)
+    {
+        List<String> values = this.headers.get(name);
+        if (null == values)
+        {
+            values = new ArrayList<>(1);
+            this.headers.put(name, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * Returns the first value of the header with the given name.
+     *
+     * @param name
+     *         The name of the header to return the value for
+     *
+     * @return The first value of the header or <em>null</em> if no such header was set
+     */
+    public String getHeader(String name)
+    {
+        List<String> values = this.headers.get(name);
+        return null == values || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Returns an unmodifiable view of all headers of this request.
+     *
+     * @return The headers of this request
+     */
+    public Map<String, List<String>> getHeaders()
+    {
+        return Collections.unmodifiableMap(this.headers);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.method + " " + this.url;
+    }
+}
@@ -0,0 +1,162 @@
+package at.rovo.common.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The response of an endpoint to a {@link Request} sent via a {@link HttpTransport}. Header names are treated
+ * case-insensitive.
+ * <p>
+ * The connection the response was received on is held until the body was read completely or the response was closed.
+ * A response should therefore always be closed once it is not needed anymore.
+ */
+public class Response implements Closeable
+{
+    /** The URL the response was received from */
+    private final URL url;
+    /** The HTTP status code of the response */
+    private final int statusCode;
+    /** The reason phrase of the status line */
+    private final String statusMessage;
+    /** The headers of the response */
+    private final Map<String, List<String>> headers;
+    /** The body of the response */
+    private final InputStream body;
+
+    /**
+     * Creates a new response.
+     *
+     * @param url
+     *         The URL the response was received from
+     * @param statusCode
+     *         The HTTP status code of the response
+     * @param statusMessage
+     *         The reason phrase of the status line
+     * @param headers
+     *         The headers of the response
+     * @param body
+     *         The body of the response or <em>null</em> if the response has no body
+     */
+    public Response(URL url, int statusCode, String statusMessage, Map<String, List<String>> headers,
+                    InputStream body)
+    {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (null != headers)
+        {
+            for (Map.Entry<String, List<String>> header : headers.entrySet())
+            {
+                if (null != header.getKey())
+                {
+                    this.headers.put(header.getKey(), header.getValue());
+                }
+            }
+        }
+        this.body = null != body ? body : new ByteArrayInputStream(new byte[0]);
+    }
+
+    /**
+     * Returns the URL this response was received from.
+     *
+     * @return The URL of the requested resource
+     */
+    public URL getUrl()
+    {
+        return this.url;
+    }
+
+    /**
+     * Returns the HTTP status code of this response.
+     *
+     * @return The status code of this response
+     */
+    public int getStatusCode()
+    {
+        return this.statusCode;
+    }
+
+    /**
+     * Returns the reason phrase of the status line of this response.
+     *
+     * @return The reason phrase of this response
+     */
+    public String getStatusMessage()
+    {
+        return this.statusMessage;
+    }
+
+    /**
+     * Returns the first value of the header with the given name.
+     *
+     * @param name
+     *         The name of the header to return the value for
+     *
+     * @return The first value of the header or <em>null</em> if the response does not contain such a header
+     */
+    public String getHeader(String name)
+    {
+        List<String> values = this.headers.get(name);
+        return null == values || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Returns all values of the header with the given name.
+     *
+     * @param name
+     *         The name of the header to return the values for
+     *
+     * @return The values of the header which might be empty if the response does not contain such a header
+     */
+    public List<String> getHeaders(String name)
+    {
+        List<String> values = this.headers.get(name);
+        return null == values ? Collections.<String>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Returns an unmodifiable view of all headers of this response.
+     *
+     * @return The headers of this response
+     */
+    public Map<String, List<String>> getHeaders()
+    {
+        return Collections.unmodifiableMap(this.headers);
+    }
+
+    /**
+     * Returns the body of this response. Reading the body to its end releases the underlying connection.
+     *
+     * @return The body of the response
+     */
+    public InputStream getBody()
+    {
+        return this.body;
+    }
+
+    /**
+     * Closes the body of this response and releases the underlying connection.
+     *
+     * @throws IOException
+     *         If the body could not be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.body.close();
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.statusCode + " " + this.statusMessage + " (" + this.url + ")";
+    }
+}
@@ -0,0 +1,310 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.NotThreadSafe;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.Cleaner;
+import java.net.ProtocolException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The body of a response received on a {@link PooledConnection}. The body is either delimited by a
+ * <em>Content-Length</em> header, by <em>chunked</em> transfer coding or by the peer closing the connection.
+ * <p>
+ * As soon as the end of the body is reached the connection is handed back to its {@link ConnectionPool}. Closing the
+ * stream before the end of the body was reached will try to skip the remaining bytes, if only a few are left, so that
+ * the connection can still be reused. Otherwise the connection is closed.
+ * <p>
+ * Callers which drop the stream without reading it to its end or closing it, like a partly read {@link
+ * java.util.Scanner} which is never closed, would otherwise hold a connection of the route forever. Therefore the
+ * connection is closed and its slot in the pool released once such a stream was garbage collected.
+ */
+@NotThreadSafe
+final class ResponseBodyInputStream extends InputStream
+{
+    /** The maximum number of remaining bytes which are skipped on closing to keep the connection alive */
+    private static final long MAX_DRAIN_BYTES = 64 * 1024;
+    /** Releases the connections of streams which were garbage collected before they were released */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Defines how the end of the body is determined.
+     */
+    enum Framing
+    {
+        /** The body has a length specified by the <em>Content-Length</em> header */
+        FIXED_LENGTH,
+        /** The body is transmitted in chunks */
+        CHUNKED,
+        /** The body ends when the peer closes the connection */
+        UNTIL_CLOSE
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Lease lease;
+    private final Cleaner.Cleanable cleanable;
+    private final InputStream in;
+    private final Framing framing;
+    private final boolean keepAlive;
+    private final long keepAliveMillis;
+    /** The remaining bytes of the body or of the current chunk */
+    private long remaining;
+    private boolean endOfBody = false;
+    private boolean released = false;
+    private final byte[] single = new byte[1];
+
+    ResponseBodyInputStream(ConnectionPool pool, PooledConnection connection, Framing framing, long contentLength,
+                            boolean keepAlive, long keepAliveMillis)
+    {
+        this.lease = new Lease(pool, connection);
+        this.cleanable = CLEANER.register(this, this.lease);
+        this.in = connection.getInputStream();
+        this.framing = framing;
+        this.keepAlive = keepAlive && framing != Framing.UNTIL_CLOSE;
+        this.keepAliveMillis = keepAliveMillis;
+        this.remaining = framing == Framing.FIXED_LENGTH ? contentLength : 0L;
+        if (framing == Framing.FIXED_LENGTH && contentLength == 0L)
+        {
+            this.reachedEnd();
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int read = this.read(this.single, 0, 1);
+        return read == -1 ? -1 : this.single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (this.released && !this.endOfBody)
+        {
+            throw new IOException("Stream closed");
+        }
+        if (this.endOfBody)
+        {
+            return -1;
+        }
+        if (length == 0)
+        {
+            return 0;
+        }
+        try
+        {
+            switch (this.framing)
+            {
+                case FIXED_LENGTH:
+                    return this.readFixed(buffer, offset, length);
+                case CHUNKED:
+                    return this.readChunked(buffer, offset, length);
+                default:
+                    return this.readUntilClose(buffer, offset, length);
+            }
+        }
+        catch (IOException ioEx)
+        {
+            this.discard();
+            throw ioEx;
+        }
+    }
+
+    private int readFixed(byte[] buffer, int offset, int length) throws IOException
+    {
+        int read = this.in.read(buffer, offset, (int) Math.min(length, this.remaining));
+        if (read == -1)
+        {
+            throw new EOFException("Connection closed with " + this.remaining + " bytes of the body remaining");
+        }
+        this.remaining -= read;
+        if (this.remaining == 0)
+        {
+            this.reachedEnd();
+        }
+        return read;
+    }
+
+    private int readChunked(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (this.remaining == 0)
+        {
+            this.remaining = this.readChunkSize();
+            if (this.remaining == 0)
+            {
+                // skip any trailers
+                Http1Codec.readHeaders(this.in);
+                this.reachedEnd();
+                return -1;
+            }
+        }
+        int read = this.in.read(buffer, offset, (int) Math.min(length, this.remaining));
+        if (read == -1)
+        {
+            throw new EOFException("Connection closed within a chunk");
+        }
+        this.remaining -= read;
+        if (this.remaining == 0)
+        {
+            String crlf = Http1Codec.readLine(this.in);
+            if (null == crlf || !crlf.isEmpty())
+            {
+                throw new ProtocolException("Chunk not terminated by CRLF");
+            }
+        }
+        return read;
+    }
+
+    private long readChunkSize() throws IOException
+    {
+        String line = Http1Codec.readLine(this.in);
+        if (null == line)
+        {
+            throw new EOFException("Connection closed before the next chunk size");
+        }
+        int extension = line.indexOf(';');
+        String size = (extension != -1 ? line.substring(0, extension) : line).trim();
+        try
+        {
+            long chunkSize = Long.parseLong(size, 16);
+            if (chunkSize < 0)
+            {
+                throw new ProtocolException("Negative chunk size: " + line);
+            }
+            return chunkSize;
+        }
+        catch (NumberFormatException nfEx)
+        {
+            throw new ProtocolException("Invalid chunk size: " + line);
+        }
+    }
+
+    private int readUntilClose(byte[] buffer, int offset, int length) throws IOException
+    {
+        int read = this.in.read(buffer, offset, length);
+        if (read == -1)
+        {
+            this.reachedEnd();
+        }
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        if (this.endOfBody || this.released)
+        {
+            return 0;
+        }
+        int available = this.in.available();
+        return this.framing == Framing.UNTIL_CLOSE ? available : (int) Math.min(available, this.remaining);
+    }
+
+    /**
+     * Closes the body and releases the underlying connection. If only a few bytes of the body remain, these are
+     * skipped so the connection can be reused, otherwise the connection is closed.
+     */
+    @Override
+    public void close()
+    {
+        if (this.released)
+        {
+            return;
+        }
+        if (this.keepAlive && (this.framing == Framing.CHUNKED || this.remaining <= MAX_DRAIN_BYTES))
+        {
+            this.drain();
+        }
+        if (!this.released)
+        {
+            this.discard();
+        }
+    }
+
+    private void drain()
+    {
+        byte[] buffer = new byte[8192];
+        long drained = 0;
+        try
+        {
+            while (!this.endOfBody && drained <= MAX_DRAIN_BYTES)
+            {
+                int read = this.read(buffer, 0, buffer.length);
+                if (read == -1)
+                {
+                    break;
+                }
+                drained += read;
+            }
+        }
+        catch (IOException ioEx)
+        {
+            // the connection was already discarded by read
+        }
+    }
+
+    private void reachedEnd()
+    {
+        this.endOfBody = true;
+        if (!this.released)
+        {
+            this.released = true;
+            this.lease.release(this.keepAlive, this.keepAliveMillis);
+            this.cleanable.clean();
+        }
+    }
+
+    private void discard()
+    {
+        if (!this.released)
+        {
+            this.released = true;
+            this.lease.release(false, 0L);
+            this.cleanable.clean();
+        }
+    }
+
+    /**
+     * Hands the connection of a body back to its pool exactly once. Besides the stream this is invoked by the {@link
+     * #CLEANER} if the stream was garbage collected, therefore it must not reference the stream.
+     */
+    private static final class Lease implements Runnable
+    {
+        private final ConnectionPool pool;
+        private final PooledConnection connection;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(ConnectionPool pool, PooledConnection connection)
+        {
+            this.pool = pool;
+            this.connection = connection;
+        }
+
+        private void release(boolean reusable, long keepAliveMillis)
+        {
+            if (this.released.compareAndSet(false, true))
+            {
+                this.pool.release(this.connection, reusable, keepAliveMillis);
+            }
+        }
+
+        /**
+         * Closes the connection of a stream which was garbage collected before it was released.
+         */
+        @Override
+        public void run()
+        {
+            if (this.released.compareAndSet(false, true))
+            {
+                LOG.debug("Body of a response received on {} was dropped without being closed, closing the connection",
+                          this.connection);
+                this.pool.release(this.connection, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.Immutable;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * The target of a connection, identified by the scheme, the host and the port of an URL. Connections are only reused
+ * for requests which share the same route.
+ */
+@Immutable
+final class Route
+{
+    private final String scheme;
+    private final String host;
+    private final int port;
+
+    Route(String scheme, String host, int port)
+    {
+        this.scheme = scheme.toLowerCase(Locale.ROOT);
+        this.host = host.toLowerCase(Locale.ROOT);
+        this.port = port;
+    }
+
+    /**
+     * Returns the route of the provided URL.
+     *
+     * @param url
+     *         The URL to return the route for
+     *
+     * @return The route connections to the URL are established on
+     */
+    static Route of(URL url)
+    {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return new Route(url.getProtocol(), url.getHost(), port);
+    }
+
+    String getScheme()
+    {
+        return this.scheme;
+    }
+
+    String getHost()
+    {
+        return this.host;
+    }
+
+    int getPort()
+    {
+        return this.port;
+    }
+
+    boolean isSecure()
+    {
+        return "https".equals(this.scheme);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 17;
+        hash = hash * 31 + this.scheme.hashCode();
+        hash = hash * 31 + this.host.hashCode();
+        hash = hash * 31 + this.port;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (this == other)
+        {
+            return true;
+        }
+        if (!(other instanceof Route))
+        {
+            return false;
+        }
+        Route route = (Route) other;
+        return this.port == route.port && this.host.equals(route.host) && this.scheme.equals(route.scheme);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.scheme + "://" + this.host + ":" + this.port;
+    }
+}
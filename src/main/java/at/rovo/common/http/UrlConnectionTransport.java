@@ -0,0 +1,63 @@
+package at.rovo.common.http;
+
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link HttpTransport} implementation which delegates the exchange to {@link HttpURLConnection}. Connection reuse is
+ * left to the keep-alive cache of the JVM, which is only able to reuse a connection if the body of a response was read
+ * completely before it got closed.
+ */
+@ThreadSafe
+public class UrlConnectionTransport implements HttpTransport
+{
+    @Override
+    public Response execute(Request request) throws IOException
+    {
+        HttpURLConnection httpConn = (HttpURLConnection) request.getUrl().openConnection();
+        httpConn.setRequestMethod(request.getMethod());
+        httpConn.setInstanceFollowRedirects(false);
+        if (null != request.getConnectTimeout())
+        {
+            httpConn.setConnectTimeout(toMillis(request.getConnectTimeout()));
+        }
+        if (null != request.getReadTimeout())
+        {
+            httpConn.setReadTimeout(toMillis(request.getReadTimeout()));
+        }
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet())
+        {
+            for (String value : header.getValue())
+            {
+                httpConn.addRequestProperty(header.getKey(), value);
+            }
+        }
+        httpConn.setUseCaches(true);
+        httpConn.connect();
+
+        int responseCode = httpConn.getResponseCode();
+        InputStream body = responseCode >= 400 ? httpConn.getErrorStream() : httpConn.getInputStream();
+        return new Response(request.getUrl(), responseCode, httpConn.getResponseMessage(),
+                            httpConn.getHeaderFields(), body);
+    }
+
+    /**
+     * Converts the timeout to milliseconds, where timeouts below a millisecond are rounded up as zero would disable the
+     * timeout.
+     */
+    static int toMillis(Duration timeout)
+    {
+        return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, timeout.toMillis()));
+    }
+
+    @Override
+    public void close()
+    {
+        // connections are managed by the JVM
+    }
+}
@@ -0,0 +1,505 @@
+package at.rovo.common.warc;
+
+import at.rovo.common.annotations.Immutable;
+import at.rovo.common.annotations.ThreadSafe;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides random access to the records of WARC files whose records are compressed as gzip members of their own, like
+ * the files written by {@link WarcWriter}. The offset of each record is taken from the index file written next to a
+ * WARC file. If there is no index file, or the WARC file contains records which are not indexed yet, for example as
+ * the writer was killed, the missing records are located by decompressing the file once on opening it.
+ * <p>
+ * Records are read with positional reads, so a reader can be used by multiple threads. {@link #getResponse(String)}
+ * returns the latest response captured for a URI, which allows to replay archived pages via a {@link
+ * WarcReplayTransport} without going back to the network.
+ */
+@ThreadSafe
+public class WarcReader implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The number of decompressed bytes of a record which are searched for its header while locating records */
+    private static final int MAX_HEADER_LENGTH = 16 * 1024;
+
+    private final List<Path> files = new ArrayList<>();
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> responses = new HashMap<>();
+
+    /**
+     * Opens the given WARC file, or all WARC files of the given directory in the order of their names.
+     *
+     * @param path
+     *         A WARC file or a directory containing WARC files ending with <em>.warc.gz</em>
+     *
+     * @throws IOException
+     *         If a file could not be opened or is no valid WARC file
+     */
+    public WarcReader(Path path) throws IOException
+    {
+        if (Files.isDirectory(path))
+        {
+            try (Stream<Path> list = Files.list(path))
+            {
+                this.files.addAll(list.filter(file -> file.getFileName().toString().endsWith(WarcWriter.EXTENSION))
+                                      .sorted()
+                                      .collect(Collectors.toList()));
+            }
+        }
+        else
+        {
+            this.files.add(path);
+        }
+        try
+        {
+            for (Path file : this.files)
+            {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                this.channels.add(channel);
+                this.index(this.channels.size() - 1, file, channel);
+            }
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            this.close();
+            throw ex;
+        }
+        for (Entry entry : this.entries)
+        {
+            if ("response".equals(entry.type) && null != entry.targetUri)
+            {
+                this.responses.put(entry.targetUri, entry);
+            }
+        }
+    }
+
+    /**
+     * Adds the entries of the given file from its index file and locates any records which are not indexed.
+     */
+    private void index(int fileIndex, Path file, FileChannel channel) throws IOException
+    {
+        List<Entry> indexed = new ArrayList<>();
+        Path indexFile = file.resolveSibling(file.getFileName() + WarcWriter.INDEX_EXTENSION);
+        if (Files.exists(indexFile))
+        {
+            try
+            {
+                readIndex(fileIndex, file, indexFile, indexed);
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                LOG.warn("Ignoring invalid index {}. Reason: {}", indexFile, ex.getLocalizedMessage());
+                indexed.clear();
+            }
+        }
+        Entry last = indexed.isEmpty() ? null : indexed.get(indexed.size() - 1);
+        long end = null != last ? last.offset + last.length : 0L;
+        if (end > channel.size())
+        {
+            throw new IOException("WARC file " + file + " is shorter than its index");
+        }
+        this.entries.addAll(indexed);
+        if (end < channel.size())
+        {
+            LOG.debug("Locating the records of {} after offset {}", file, end);
+            this.scan(fileIndex, file, channel, end);
+        }
+    }
+
+    private static void readIndex(int fileIndex, Path file, Path indexFile, List<Entry> entries) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8))
+        {
+            String line;
+            while (null != (line = reader.readLine()))
+            {
+                if (line.isEmpty())
+                {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != 5)
+                {
+                    throw new IOException("Invalid index line " + line);
+                }
+                entries.add(new Entry(fileIndex, file, Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                                      fields[2], fields[3], "-".equals(fields[4]) ? null : fields[4]));
+            }
+        }
+    }
+
+    /**
+     * Locates the records from the given offset to the end of the file by decompressing their gzip members. A
+     * truncated record at the end of the file, as left by a writer which was killed, is ignored.
+     */
+    private void scan(int fileIndex, Path file, FileChannel channel, long offset) throws IOException
+    {
+        MemberScanner scanner = new MemberScanner(channel, offset);
+        try
+        {
+            while (scanner.hasNext())
+            {
+                long start = scanner.position();
+                byte[] header = scanner.next();
+                Map<String, String> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                WarcRecord.readHeader(new ByteArrayInputStream(header), fields);
+                this.entries.add(new Entry(fileIndex, file, start, scanner.position() - start,
+                                           fields.get("WARC-Type"), fields.get("WARC-Record-ID"),
+                                           fields.get("WARC-Target-URI")));
+            }
+        }
+        catch (EOFException eofEx)
+        {
+            LOG.warn("Ignoring the truncated record of {} at offset {}", file, scanner.memberStart);
+        }
+        finally
+        {
+            scanner.close();
+        }
+    }
+
+    /**
+     * Returns the entries of all records in the order they appear in the files.
+     *
+     * @return An unmodifiable list of the entries
+     */
+    public List<Entry> getEntries()
+    {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /**
+     * Reads the latest <em>response</em> record captured for the given URI.
+     *
+     * @param targetUri
+     *         The URI the response was received from
+     *
+     * @return The response record or <em>null</em> if no response was captured for the URI
+     *
+     * @throws IOException
+     *         If the record could not be read
+     */
+    public WarcRecord getResponse(String targetUri) throws IOException
+    {
+        Entry entry = this.responses.get(targetUri);
+        return null != entry ? this.read(entry) : null;
+    }
+
+    /**
+     * Reads the record of the given entry.
+     *
+     * @param entry
+     *         An entry returned by {@link #getEntries()}
+     *
+     * @return The record of the entry
+     *
+     * @throws IOException
+     *         If the record could not be read
+     */
+    public WarcRecord read(Entry entry) throws IOException
+    {
+        if (entry.length > Integer.MAX_VALUE)
+        {
+            throw new IOException("WARC record " + entry.recordId + " is too large");
+        }
+        FileChannel channel = this.channels.get(entry.fileIndex);
+        ByteBuffer compressed = ByteBuffer.allocate((int) entry.length);
+        while (compressed.hasRemaining())
+        {
+            if (channel.read(compressed, entry.offset + compressed.position()) == -1)
+            {
+                throw new EOFException("WARC record " + entry.recordId + " exceeds " + entry.file);
+            }
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()), 8192))
+        {
+            return WarcRecord.parse(in);
+        }
+    }
+
+    /**
+     * Closes the WARC files.
+     *
+     * @throws IOException
+     *         If a file could not be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        IOException failure = null;
+        for (FileChannel channel : this.channels)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException ioEx)
+            {
+                failure = ioEx;
+            }
+        }
+        if (null != failure)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * The location and identity of a record within the WARC files of a reader.
+     */
+    @Immutable
+    public static final class Entry
+    {
+        private final int fileIndex;
+        private final Path file;
+        private final long offset;
+        private final long length;
+        private final String type;
+        private final String recordId;
+        private final String targetUri;
+
+        private Entry(int fileIndex, Path file, long offset, long length, String type, String recordId,
+                      String targetUri)
+        {
+            this.fileIndex = fileIndex;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.type = type;
+            this.recordId = recordId;
+            this.targetUri = targetUri;
+        }
+
+        /**
+         * Returns the WARC file containing the record.
+         *
+         * @return The file of the record
+         */
+        public Path getFile()
+        {
+            return this.file;
+        }
+
+        /**
+         * Returns the offset of the compressed record within its file.
+         *
+         * @return The offset of the record
+         */
+        public long getOffset()
+        {
+            return this.offset;
+        }
+
+        /**
+         * Returns the number of bytes the compressed record takes.
+         *
+         * @return The compressed length of the record
+         */
+        public long getLength()
+        {
+            return this.length;
+        }
+
+        /**
+         * Returns the type of the record.
+         *
+         * @return The type of the record, like <em>response</em>
+         */
+        public String getType()
+        {
+            return this.type;
+        }
+
+        /**
+         * Returns the identifier of the record.
+         *
+         * @return The record ID
+         */
+        public String getRecordId()
+        {
+            return this.recordId;
+        }
+
+        /**
+         * Returns the URI the content of the record was captured from.
+         *
+         * @return The target URI or <em>null</em> if the record has none
+         */
+        public String getTargetUri()
+        {
+            return this.targetUri;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.type + " " + this.targetUri + " @" + this.offset + "+" + this.length;
+        }
+    }
+
+    /**
+     * Steps through the gzip members of a file and provides the start of the decompressed content of each member.
+     */
+    private static final class MemberScanner implements Closeable
+    {
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] output = new byte[64 * 1024];
+        /** The position within the file the buffer was filled from */
+        private long bufferPosition;
+        private long memberStart;
+
+        private MemberScanner(FileChannel channel, long position)
+        {
+            this.channel = channel;
+            this.bufferPosition = position;
+            this.buffer.limit(0);
+        }
+
+        private long position()
+        {
+            return this.bufferPosition + this.buffer.position();
+        }
+
+        private boolean hasNext() throws IOException
+        {
+            return this.buffer.hasRemaining() || this.fill();
+        }
+
+        private boolean fill() throws IOException
+        {
+            this.bufferPosition += this.buffer.position();
+            this.buffer.clear();
+            int read = this.channel.read(this.buffer, this.bufferPosition);
+            this.buffer.flip();
+            return read > 0;
+        }
+
+        private int read() throws IOException
+        {
+            if (!this.buffer.hasRemaining() && !this.fill())
+            {
+                throw new EOFException("Unexpected end of gzip member");
+            }
+            return this.buffer.get() & 0xFF;
+        }
+
+        private void skip(int bytes) throws IOException
+        {
+            for (int i = 0; i < bytes; i++)
+            {
+                this.read();
+            }
+        }
+
+        /**
+         * Decompresses the next member and returns the start of its content.
+         */
+        private byte[] next() throws IOException
+        {
+            this.memberStart = this.position();
+            if (this.read() != 0x1F || this.read() != 0x8B || this.read() != 8)
+            {
+                throw new IOException("No gzip member found at offset " + this.memberStart);
+            }
+            int flags = this.read();
+            this.skip(6);
+            if ((flags & FEXTRA) != 0)
+            {
+                this.skip(this.read() | this.read() << 8);
+            }
+            if ((flags & FNAME) != 0)
+            {
+                while (this.read() != 0)
+                {
+                    // skip the file name
+                }
+            }
+            if ((flags & FCOMMENT) != 0)
+            {
+                while (this.read() != 0)
+                {
+                    // skip the comment
+                }
+            }
+            if ((flags & FHCRC) != 0)
+            {
+                this.skip(2);
+            }
+
+            byte[] header = new byte[MAX_HEADER_LENGTH];
+            int headerLength = 0;
+            this.inflater.reset();
+            try
+            {
+                while (!this.inflater.finished())
+                {
+                    if (this.inflater.needsInput())
+                    {
+                        if (!this.buffer.hasRemaining() && !this.fill())
+                        {
+                            throw new EOFException("Unexpected end of gzip member");
+                        }
+                        this.inflater.setInput(this.buffer.array(), this.buffer.position(), this.buffer.remaining());
+                        this.buffer.position(this.buffer.limit());
+                    }
+                    int inflated = this.inflater.inflate(this.output);
+                    if (inflated == 0 && this.inflater.needsDictionary())
+                    {
+                        throw new IOException("Invalid gzip member at offset " + this.memberStart);
+                    }
+                    int copied = Math.min(inflated, header.length - headerLength);
+                    System.arraycopy(this.output, 0, header, headerLength, copied);
+                    headerLength += copied;
+                }
+            }
+            catch (DataFormatException dfEx)
+            {
+                throw new IOException("Invalid gzip member at offset " + this.memberStart, dfEx);
+            }
+            // hand the input the inflater did not consume back to the buffer
+            this.buffer.position(this.buffer.limit() - this.inflater.getRemaining());
+            // the CRC and the size of the content
+            this.skip(8);
+            return headerLength < header.length ? Arrays.copyOf(header, headerLength) : header;
+        }
+
+        @Override
+        public void close()
+        {
+            this.inflater.end();
+        }
+    }
+}
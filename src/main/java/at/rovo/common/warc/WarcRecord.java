@@ -0,0 +1,319 @@
+package at.rovo.common.warc;
+
+import at.rovo.common.annotations.Immutable;
+import at.rovo.common.http.Response;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A single record of a WARC file as read by a {@link WarcReader}. A record consists of named header fields, like its
+ * type and the URI it was captured from, and a content block. The block of a <em>response</em> record is the HTTP
+ * response as received, including its status line and headers, and can be turned back into a {@link Response} via
+ * {@link #toResponse()}.
+ */
+@Immutable
+public final class WarcRecord
+{
+    /** The maximum number of bytes of a header line */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final String version;
+    private final Map<String, String> headers;
+    private final byte[] content;
+
+    private WarcRecord(String version, Map<String, String> headers, byte[] content)
+    {
+        this.version = version;
+        this.headers = headers;
+        this.content = content;
+    }
+
+    /**
+     * Parses the record at the start of the given stream, which has to provide the record uncompressed.
+     *
+     * @param in
+     *         The stream providing the record
+     *
+     * @return The parsed record
+     *
+     * @throws IOException
+     *         If the record could not be read or is malformed
+     */
+    static WarcRecord parse(InputStream in) throws IOException
+    {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String version = readHeader(in, headers);
+        String contentLength = headers.get("Content-Length");
+        if (null == contentLength)
+        {
+            throw new IOException("WARC record " + headers.get("WARC-Record-ID") + " has no Content-Length");
+        }
+        int length;
+        try
+        {
+            length = Integer.parseInt(contentLength.trim());
+        }
+        catch (NumberFormatException nfEx)
+        {
+            throw new IOException("Invalid Content-Length " + contentLength + " of WARC record", nfEx);
+        }
+        byte[] content = in.readNBytes(length);
+        if (content.length < length)
+        {
+            throw new EOFException("WARC record " + headers.get("WARC-Record-ID") + " is truncated");
+        }
+        return new WarcRecord(version, Collections.unmodifiableMap(headers), content);
+    }
+
+    /**
+     * Reads the version line and the header fields of a record, which are followed by its content block.
+     *
+     * @param in
+     *         The stream providing the record
+     * @param headers
+     *         The map to add the header fields to
+     *
+     * @return The version of the record
+     *
+     * @throws IOException
+     *         If the header could not be read or the stream does not start with a record
+     */
+    static String readHeader(InputStream in, Map<String, String> headers) throws IOException
+    {
+        String version = readLine(in);
+        if (null == version || !version.startsWith("WARC/"))
+        {
+            throw new IOException("No WARC record found, starting with " + version);
+        }
+        readFields(in, headers);
+        return version;
+    }
+
+    /**
+     * Reads header fields up to and including the empty line which terminates them.
+     */
+    private static void readFields(InputStream in, Map<String, String> fields) throws IOException
+    {
+        String line;
+        while (null != (line = readLine(in)) && !line.isEmpty())
+        {
+            int colon = line.indexOf(':');
+            if (colon > 0)
+            {
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                fields.merge(name, value, (first, next) -> first + ", " + next);
+            }
+        }
+    }
+
+    /**
+     * Reads a line terminated by <em>\r\n</em> or <em>\n</em>.
+     *
+     * @return The line without its terminator or <em>null</em> if the end of the stream was reached
+     */
+    private static String readLine(InputStream in) throws IOException
+    {
+        byte[] line = new byte[128];
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1 && b != '\n')
+        {
+            if (length == line.length)
+            {
+                if (length == MAX_LINE_LENGTH)
+                {
+                    throw new IOException("Header line exceeds " + MAX_LINE_LENGTH + " bytes");
+                }
+                line = Arrays.copyOf(line, Math.min(MAX_LINE_LENGTH, length * 2));
+            }
+            line[length++] = (byte) b;
+        }
+        if (b == -1 && length == 0)
+        {
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r')
+        {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the WARC version the record was written with.
+     *
+     * @return The version of the record, like <em>WARC/1.1</em>
+     */
+    public String getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * Returns the type of this record.
+     *
+     * @return The type of the record, like <em>response</em>, <em>request</em> or <em>metadata</em>
+     */
+    public String getType()
+    {
+        return this.headers.get("WARC-Type");
+    }
+
+    /**
+     * Returns the identifier of this record.
+     *
+     * @return The record ID, like <em>&lt;urn:uuid:...&gt;</em>
+     */
+    public String getRecordId()
+    {
+        return this.headers.get("WARC-Record-ID");
+    }
+
+    /**
+     * Returns the URI the content of this record was captured from.
+     *
+     * @return The target URI or <em>null</em> if the record has none, like a <em>warcinfo</em> record
+     */
+    public String getTargetUri()
+    {
+        return this.headers.get("WARC-Target-URI");
+    }
+
+    /**
+     * Returns the time the content of this record was captured.
+     *
+     * @return The capture time or <em>null</em> if the record has no valid date
+     */
+    public Instant getDate()
+    {
+        String date = this.headers.get("WARC-Date");
+        try
+        {
+            return null != date ? Instant.parse(date) : null;
+        }
+        catch (DateTimeParseException dtpEx)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of the header field with the given name, which is treated case-insensitive. Values of fields
+     * which occur multiple times are joined by a comma.
+     *
+     * @param name
+     *         The name of the header field
+     *
+     * @return The value of the field or <em>null</em> if the record has no such field
+     */
+    public String getHeader(String name)
+    {
+        return this.headers.get(name);
+    }
+
+    /**
+     * Returns all header fields of this record.
+     *
+     * @return An unmodifiable view of the header fields
+     */
+    public Map<String, String> getHeaders()
+    {
+        return this.headers;
+    }
+
+    /**
+     * Returns the content block of this record.
+     *
+     * @return A copy of the content block
+     */
+    public byte[] getContent()
+    {
+        return this.content.clone();
+    }
+
+    /**
+     * Returns the fields of a <em>warcinfo</em> or <em>metadata</em> record, whose content block consists of named
+     * fields like the header of a record.
+     *
+     * @return The fields of the content block in the order they appear
+     *
+     * @throws IOException
+     *         If the content block could not be parsed
+     */
+    public Map<String, String> getContentFields() throws IOException
+    {
+        Map<String, String> fields = new LinkedHashMap<>();
+        readFields(new ByteArrayInputStream(this.content), fields);
+        return fields;
+    }
+
+    /**
+     * Turns the HTTP response captured by this <em>response</em> record back into a response, so the content can be
+     * processed as if it was just received. The body is provided as it was received, so a content coding still has to
+     * be removed. The body is incomplete if the record is marked with a <em>WARC-Truncated</em> field.
+     *
+     * @return The captured response
+     *
+     * @throws IOException
+     *         If this is no response record or its content is no valid HTTP response
+     */
+    public Response toResponse() throws IOException
+    {
+        if (!"response".equals(this.getType()))
+        {
+            throw new IOException("WARC record " + this.getRecordId() + " is a " + this.getType() + " record");
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(this.content);
+        String statusLine = readLine(in);
+        String[] status = null != statusLine ? statusLine.split(" ", 3) : new String[0];
+        if (status.length < 2 || !status[0].startsWith("HTTP/"))
+        {
+            throw new IOException("Invalid status line " + statusLine + " in WARC record " + this.getRecordId());
+        }
+        int statusCode;
+        try
+        {
+            statusCode = Integer.parseInt(status[1]);
+        }
+        catch (NumberFormatException nfEx)
+        {
+            throw new IOException("Invalid status line " + statusLine + " in WARC record " + this.getRecordId(),
+                                  nfEx);
+        }
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while (null != (line = readLine(in)) && !line.isEmpty())
+        {
+            int colon = line.indexOf(':');
+            if (colon > 0)
+            {
+                headers.computeIfAbsent(line.substring(0, colon).trim(), name -> new ArrayList<>())
+                       .add(line.substring(colon + 1).trim());
+            }
+        }
+        // the remaining bytes of the stream are the body
+        return new Response(new URL(this.getTargetUri()), statusCode, status.length > 2 ? status[2] : "", headers,
+                            in);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WarcRecord[type=" + this.getType() + ", id=" + this.getRecordId() + ", uri=" + this.getTargetUri()
+               + ", length=" + this.content.length + "]";
+    }
+}
@@ -0,0 +1,75 @@
+package at.rovo.common.warc;
+
+import at.rovo.common.annotations.ThreadSafe;
+import at.rovo.common.http.HttpTransport;
+import at.rovo.common.http.Request;
+import at.rovo.common.http.Response;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HttpTransport} which answers requests with the responses archived in WARC files instead of sending them. A
+ * {@link at.rovo.common.UrlReader} using this transport reads archived pages like it read them originally, including
+ * their redirects, cookies and content coding, without going back to the network. The latest response archived for the
+ * URL of a request is returned regardless of the headers of the request.
+ */
+@ThreadSafe
+public class WarcReplayTransport implements HttpTransport
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final WarcReader reader;
+
+    /**
+     * Creates a new transport which replays the responses provided by the given reader. The reader is closed once the
+     * transport is closed.
+     *
+     * @param reader
+     *         The reader providing the archived responses
+     */
+    public WarcReplayTransport(WarcReader reader)
+    {
+        if (null == reader)
+        {
+            throw new IllegalArgumentException("No reader provided");
+        }
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the archived response to the URL of the given request.
+     *
+     * @param request
+     *         The request to answer
+     *
+     * @return The archived response
+     *
+     * @throws FileNotFoundException
+     *         If no response was archived for the URL of the request
+     * @throws IOException
+     *         If the archived response could not be read
+     */
+    @Override
+    public Response execute(Request request) throws IOException
+    {
+        WarcRecord record = this.reader.getResponse(request.getUrl().toExternalForm());
+        if (null == record)
+        {
+            throw new FileNotFoundException("No response to " + request.getUrl() + " was archived");
+        }
+        if (null != record.getHeader("WARC-Truncated"))
+        {
+            LOG.debug("Replaying truncated response {} of {}", record.getRecordId(), request.getUrl());
+        }
+        return record.toResponse();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.reader.close();
+    }
+}
@@ -0,0 +1,834 @@
+package at.rovo.common.warc;
+
+import at.rovo.common.annotations.GuardedBy;
+import at.rovo.common.annotations.ThreadSafe;
+import at.rovo.common.http.Request;
+import at.rovo.common.http.Response;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes HTTP exchanges into WARC files, the format web archives are stored in, so fetched pages can be kept together
+ * with their headers and redirects in a few large files instead of millions of small ones, and replayed later via a
+ * {@link WarcReader}. Each exchange is written as a <em>response</em> record holding the response as received,
+ * followed by a <em>request</em> record holding the request headers.
+ * <p>
+ * Each record is compressed as a gzip member of its own, so a single record can be read without decompressing the
+ * records before it. Records are compressed by the thread writing them and appended to the current file with a single
+ * write, so only the append itself is serialized. Once a file exceeds the maximum file size, by default {@value
+ * #DEFAULT_MAX_FILE_SIZE} bytes, a new file is started. Each file starts with a <em>warcinfo</em> record and is
+ * accompanied by an index file listing the offset, length, type and target URI of each record.
+ * <p>
+ * Responses are archived via {@link #archive(Request, Response)}, which copies the body while the caller reads it and
+ * writes the exchange once the body was read to its end or closed. The body is stored as it was received, including
+ * any content coding. Bodies which were closed early or exceed {@value #MAX_CONTENT_LENGTH} bytes are stored
+ * incomplete and marked with a <em>WARC-Truncated</em> field. Bodies and compressed records are only kept in memory up
+ * to {@value #SPILL_THRESHOLD} bytes and moved to a temporary file in the directory of the WARC files beyond that, so
+ * archiving large responses does not fill the heap.
+ */
+@ThreadSafe
+public class WarcWriter implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The default size after which a new file is started */
+    public static final long DEFAULT_MAX_FILE_SIZE = 1L << 30;
+    /** The maximum number of body bytes which are stored per response */
+    public static final int MAX_CONTENT_LENGTH = 32 * 1024 * 1024;
+    /** The number of bytes of a body or a compressed record which are kept in memory before moving them to a file */
+    static final int SPILL_THRESHOLD = 1024 * 1024;
+    /** The extension of the WARC files */
+    static final String EXTENSION = ".warc.gz";
+    /** The extension appended to the name of a WARC file to name its index file */
+    static final String INDEX_EXTENSION = ".idx";
+
+    private static final String VERSION = "WARC/1.1";
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final DateTimeFormatter FILE_DATE =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS").withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxFileSize;
+    private final AtomicLong records = new AtomicLong();
+
+    @GuardedBy("this")
+    private Path file;
+    @GuardedBy("this")
+    private FileChannel channel;
+    @GuardedBy("this")
+    private FileChannel indexChannel;
+    @GuardedBy("this")
+    private long fileSize;
+    @GuardedBy("this")
+    private int serial = 0;
+    @GuardedBy("this")
+    private boolean closed = false;
+
+    /**
+     * Creates a new writer which starts a new file once the current one exceeds {@value #DEFAULT_MAX_FILE_SIZE} bytes.
+     *
+     * @param directory
+     *         The directory the files are written to
+     * @param prefix
+     *         The start of the names of the files, which is followed by the time a file was started and its number
+     *
+     * @throws IOException
+     *         If the directory could not be created
+     */
+    public WarcWriter(Path directory, String prefix) throws IOException
+    {
+        this(directory, prefix, DEFAULT_MAX_FILE_SIZE);
+    }
+
+    /**
+     * Creates a new writer. Files are only created once the first record is written.
+     *
+     * @param directory
+     *         The directory the files are written to
+     * @param prefix
+     *         The start of the names of the files, which is followed by the time a file was started and its number
+     * @param maxFileSize
+     *         The size after which a new file is started, a single exchange is never split across files though
+     *
+     * @throws IOException
+     *         If the directory could not be created
+     */
+    public WarcWriter(Path directory, String prefix, long maxFileSize) throws IOException
+    {
+        if (null == directory || null == prefix || prefix.isEmpty())
+        {
+            throw new IllegalArgumentException("Both a directory and a file name prefix have to be provided");
+        }
+        if (maxFileSize < 1)
+        {
+            throw new IllegalArgumentException("The maximum file size has to be positive, found " + maxFileSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Returns the file records are currently appended to.
+     *
+     * @return The current file or <em>null</em> if no record was written yet
+     */
+    public synchronized Path getCurrentFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Returns the number of records written so far, not including the <em>warcinfo</em> records starting each file.
+     *
+     * @return The number of written records
+     */
+    public long getRecordCount()
+    {
+        return this.records.get();
+    }
+
+    /**
+     * Returns a response whose body copies the content of the given response while it is read. Once the body was read
+     * to its end or closed, the exchange is written as a <em>response</em> and a <em>request</em> record. A failure to
+     * write the exchange is logged, but not passed to the reader of the body.
+     *
+     * @param request
+     *         The request which was sent
+     * @param response
+     *         The response received for the request
+     *
+     * @return The response to read the body from instead of the given one
+     */
+    public Response archive(Request request, Response response)
+    {
+        return new Response(response.getUrl(), response.getStatusCode(), response.getStatusMessage(),
+                            response.getHeaders(), new ArchivingInputStream(this, request, response));
+    }
+
+    /**
+     * Writes a <em>metadata</em> record consisting of the given fields.
+     *
+     * @param targetUri
+     *         The URI the metadata refers to
+     * @param fields
+     *         The names and values of the fields to write
+     *
+     * @throws IOException
+     *         If the record could not be written
+     */
+    public void writeMetadata(String targetUri, Map<String, String> fields) throws IOException
+    {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> field : fields.entrySet())
+        {
+            writeField(block, field.getKey(), field.getValue());
+        }
+        Record record = new Record("metadata", targetUri, "application/warc-fields", Instant.now());
+        this.write(record.encode(this.directory, block.toByteArray(), null));
+    }
+
+    /**
+     * Writes the exchange of the given request and response, whose body was copied into the given buffer.
+     */
+    void writeExchange(Request request, Response response, Instant date, SpillBuffer body, String truncated)
+            throws IOException
+    {
+        String uri = request.getUrl().toExternalForm();
+        Record responseRecord = new Record("response", uri, "application/http;msgtype=response", date);
+        if (null != truncated)
+        {
+            responseRecord.field("WARC-Truncated", truncated);
+        }
+        ByteArrayOutputStream responseBlock = new ByteArrayOutputStream(512);
+        String message = null != response.getStatusMessage() ? response.getStatusMessage() : "";
+        writeLine(responseBlock, "HTTP/1.1 " + response.getStatusCode() + " " + message);
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet())
+        {
+            // the body is stored without the chunked transfer coding
+            if (!"Transfer-Encoding".equalsIgnoreCase(header.getKey()))
+            {
+                for (String value : header.getValue())
+                {
+                    writeField(responseBlock, header.getKey(), value);
+                }
+            }
+        }
+        responseBlock.write(CRLF);
+
+        Record requestRecord = new Record("request", uri, "application/http;msgtype=request", date);
+        requestRecord.field("WARC-Concurrent-To", responseRecord.id);
+        ByteArrayOutputStream requestBlock = new ByteArrayOutputStream(256);
+        URL url = request.getUrl();
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        writeLine(requestBlock, request.getMethod() + " " + target + " HTTP/1.1");
+        if (null == request.getHeader("Host"))
+        {
+            writeField(requestBlock, "Host", url.getPort() != -1 ? url.getHost() + ":" + url.getPort() : url.getHost());
+        }
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet())
+        {
+            for (String value : header.getValue())
+            {
+                writeField(requestBlock, header.getKey(), value);
+            }
+        }
+        requestBlock.write(CRLF);
+
+        EncodedRecord encodedResponse = responseRecord.encode(this.directory, responseBlock.toByteArray(), body);
+        EncodedRecord encodedRequest = null;
+        try
+        {
+            encodedRequest = requestRecord.encode(this.directory, requestBlock.toByteArray(), null);
+        }
+        finally
+        {
+            if (null == encodedRequest)
+            {
+                encodedResponse.data.delete();
+            }
+        }
+        this.write(encodedResponse, encodedRequest);
+    }
+
+    /**
+     * Appends the given compressed records to the current file, starting a new file beforehand if the records would
+     * exceed the maximum file size. The temporary files of the records are deleted afterwards.
+     */
+    private void write(EncodedRecord... encoded) throws IOException
+    {
+        try
+        {
+            this.writeRecords(encoded);
+        }
+        finally
+        {
+            for (EncodedRecord record : encoded)
+            {
+                record.data.delete();
+            }
+        }
+    }
+
+    private synchronized void writeRecords(EncodedRecord... encoded) throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IOException("WARC writer for " + this.directory + " is closed");
+        }
+        long length = 0L;
+        for (EncodedRecord record : encoded)
+        {
+            length += record.data.size();
+        }
+        if (null == this.channel || this.fileSize > 0 && this.fileSize + length > this.maxFileSize)
+        {
+            this.startFile();
+        }
+        this.append(encoded);
+        this.records.addAndGet(encoded.length);
+    }
+
+    @GuardedBy("this")
+    private void append(EncodedRecord... encoded) throws IOException
+    {
+        ByteBuffer[] buffers = new ByteBuffer[encoded.length];
+        StringBuilder index = new StringBuilder();
+        long offset = this.fileSize;
+        for (int i = 0; i < encoded.length; i++)
+        {
+            buffers[i] = encoded[i].data.toBuffer();
+            index.append(encoded[i].record.toIndexLine(offset, encoded[i].data.size()));
+            offset += encoded[i].data.size();
+        }
+        this.channel.position(this.fileSize);
+        for (int i = 0; i < encoded.length; )
+        {
+            if (null == buffers[i])
+            {
+                encoded[i].data.transferTo(this.channel);
+                i++;
+                continue;
+            }
+            // records kept in memory are appended with a single gathering write
+            int end = i;
+            while (end < encoded.length && null != buffers[end])
+            {
+                end++;
+            }
+            writeFully(this.channel, Arrays.copyOfRange(buffers, i, end));
+            i = end;
+        }
+        this.fileSize = offset;
+        writeFully(this.indexChannel, ByteBuffer.wrap(index.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer... buffers) throws IOException
+    {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining())
+        {
+            channel.write(buffers);
+        }
+    }
+
+    @GuardedBy("this")
+    private void startFile() throws IOException
+    {
+        this.closeFile();
+        Instant now = Instant.now();
+        String name = String.format("%s-%s-%05d%s", this.prefix, FILE_DATE.format(now), this.serial++, EXTENSION);
+        Path next = this.directory.resolve(name);
+        FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        FileChannel indexChannel;
+        try
+        {
+            indexChannel = FileChannel.open(next.resolveSibling(name + INDEX_EXTENSION),
+                                            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        catch (IOException ioEx)
+        {
+            channel.close();
+            throw ioEx;
+        }
+        this.file = next;
+        this.channel = channel;
+        this.indexChannel = indexChannel;
+        this.fileSize = 0L;
+        LOG.debug("Writing WARC records to {}", next);
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        writeField(block, "software", "at.rovo.common UrlReader");
+        writeField(block, "format", "WARC File Format 1.1");
+        Record warcinfo = new Record("warcinfo", null, "application/warc-fields", now);
+        warcinfo.field("WARC-Filename", name);
+        EncodedRecord encoded = warcinfo.encode(this.directory, block.toByteArray(), null);
+        try
+        {
+            this.append(encoded);
+        }
+        finally
+        {
+            encoded.data.delete();
+        }
+    }
+
+    @GuardedBy("this")
+    private void closeFile() throws IOException
+    {
+        if (null == this.channel)
+        {
+            return;
+        }
+        try (FileChannel channel = this.channel; FileChannel indexChannel = this.indexChannel)
+        {
+            channel.force(false);
+            indexChannel.force(false);
+        }
+        finally
+        {
+            this.channel = null;
+            this.indexChannel = null;
+        }
+    }
+
+    /**
+     * Forces the records written so far to the storage device.
+     *
+     * @throws IOException
+     *         If the records could not be written
+     */
+    public synchronized void flush() throws IOException
+    {
+        if (null != this.channel)
+        {
+            this.channel.force(false);
+            this.indexChannel.force(false);
+        }
+    }
+
+    /**
+     * Closes the current file. Responses which are still read are not archived anymore.
+     *
+     * @throws IOException
+     *         If the current file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        this.closed = true;
+        this.closeFile();
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException
+    {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+
+    private static void writeField(OutputStream out, String name, String value) throws IOException
+    {
+        // line breaks would end the field, and with it the header, early
+        writeLine(out, name + ": " + value.replace('\r', ' ').replace('\n', ' '));
+    }
+
+    /**
+     * The header of a record to write.
+     */
+    private static final class Record
+    {
+        private final String type;
+        private final String targetUri;
+        private final String id = "<urn:uuid:" + UUID.randomUUID() + ">";
+        private final ByteArrayOutputStream header = new ByteArrayOutputStream(512);
+
+        private Record(String type, String targetUri, String contentType, Instant date) throws IOException
+        {
+            this.type = type;
+            this.targetUri = targetUri;
+            writeLine(this.header, VERSION);
+            this.field("WARC-Type", type);
+            this.field("WARC-Record-ID", this.id);
+            this.field("WARC-Date", date.truncatedTo(ChronoUnit.SECONDS).toString());
+            if (null != targetUri)
+            {
+                this.field("WARC-Target-URI", targetUri);
+            }
+            this.field("Content-Type", contentType);
+        }
+
+        private void field(String name, String value) throws IOException
+        {
+            writeField(this.header, name, value);
+        }
+
+        /**
+         * Compresses the record into a gzip member of its own. The content block consists of the given bytes followed
+         * by the given body, if any. The member is kept in memory or in a temporary file of the given directory,
+         * depending on its size.
+         */
+        private EncodedRecord encode(Path directory, byte[] block, SpillBuffer body) throws IOException
+        {
+            long length = block.length + (null != body ? body.size() : 0L);
+            this.field("Content-Length", Long.toString(length));
+            this.header.write(CRLF);
+            SpillBuffer compressed = new SpillBuffer(directory, (int) Math.min(256 + length / 3, SPILL_THRESHOLD));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192))
+            {
+                this.header.writeTo(gzip);
+                gzip.write(block);
+                if (null != body)
+                {
+                    body.writeTo(gzip);
+                }
+                gzip.write(CRLF);
+                gzip.write(CRLF);
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                compressed.delete();
+                throw ex;
+            }
+            return new EncodedRecord(this, compressed);
+        }
+
+        private String toIndexLine(long offset, long length)
+        {
+            String uri = null != this.targetUri ? this.targetUri.replaceAll("\\s", "%20") : "-";
+            return offset + "\t" + length + "\t" + this.type + "\t" + this.id + "\t" + uri + "\n";
+        }
+    }
+
+    private static final class EncodedRecord
+    {
+        private final Record record;
+        private final SpillBuffer data;
+
+        private EncodedRecord(Record record, SpillBuffer data)
+        {
+            this.record = record;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Collects bytes in memory and moves them to a temporary file once they exceed {@value #SPILL_THRESHOLD} bytes.
+     * Closing the buffer only ends writing to it, the temporary file is removed by {@link #delete()}.
+     */
+    static final class SpillBuffer extends OutputStream
+    {
+        private final Path directory;
+        private byte[] data;
+        private long size = 0L;
+        private Path file;
+        private OutputStream fileOut;
+
+        SpillBuffer(Path directory, int initialCapacity)
+        {
+            this.directory = directory;
+            this.data = new byte[Math.max(16, initialCapacity)];
+        }
+
+        long size()
+        {
+            return this.size;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (null == this.file && this.size + len > SPILL_THRESHOLD)
+            {
+                Path spill = Files.createTempFile(this.directory, "warc-", ".tmp");
+                try
+                {
+                    this.fileOut = new BufferedOutputStream(Files.newOutputStream(spill), 64 * 1024);
+                }
+                catch (IOException ioEx)
+                {
+                    Files.deleteIfExists(spill);
+                    throw ioEx;
+                }
+                this.file = spill;
+                this.fileOut.write(this.data, 0, (int) this.size);
+                this.data = null;
+            }
+            if (null != this.file)
+            {
+                if (null == this.fileOut)
+                {
+                    throw new IOException("Buffer " + this.file + " was closed");
+                }
+                this.fileOut.write(b, off, len);
+            }
+            else
+            {
+                if (this.size + len > this.data.length)
+                {
+                    this.data = Arrays.copyOf(this.data, (int) Math.min(SPILL_THRESHOLD,
+                                                                          Math.max(this.size + len,
+                                                                                   2L * this.data.length)));
+                }
+                System.arraycopy(b, off, this.data, (int) this.size, len);
+            }
+            this.size += len;
+        }
+
+        /**
+         * Returns the bytes of the buffer if it is kept in memory.
+         *
+         * @return The bytes of the buffer or <em>null</em> if they were moved to a file
+         */
+        ByteBuffer toBuffer()
+        {
+            return null == this.file ? ByteBuffer.wrap(this.data, 0, (int) this.size) : null;
+        }
+
+        /**
+         * Writes the bytes of the buffer to the given stream.
+         */
+        void writeTo(OutputStream out) throws IOException
+        {
+            this.close();
+            if (null == this.file)
+            {
+                out.write(this.data, 0, (int) this.size);
+            }
+            else
+            {
+                // a failed write might have left more bytes in the file than were counted
+                try (InputStream in = Files.newInputStream(this.file))
+                {
+                    byte[] buffer = new byte[64 * 1024];
+                    for (long remaining = this.size; remaining > 0; )
+                    {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read == -1)
+                        {
+                            throw new EOFException("Buffer " + this.file + " is shorter than expected");
+                        }
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the bytes of the buffer to the given channel at its position and advances the position.
+         */
+        void transferTo(FileChannel target) throws IOException
+        {
+            this.close();
+            if (null == this.file)
+            {
+                writeFully(target, this.toBuffer());
+                return;
+            }
+            try (FileChannel in = FileChannel.open(this.file, StandardOpenOption.READ))
+            {
+                for (long position = 0L; position < this.size; )
+                {
+                    position += in.transferTo(position, this.size - position, target);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (null != this.fileOut)
+            {
+                OutputStream out = this.fileOut;
+                this.fileOut = null;
+                out.close();
+            }
+        }
+
+        /**
+         * Releases the bytes of the buffer and removes its temporary file, if any.
+         */
+        void delete()
+        {
+            this.data = null;
+            if (null == this.file)
+            {
+                return;
+            }
+            try
+            {
+                this.close();
+                Files.deleteIfExists(this.file);
+            }
+            catch (IOException ioEx)
+            {
+                LOG.debug("Could not delete {}. Reason: {}", this.file, ioEx.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Copies the body of a response while it is read by the caller and writes the exchange once the body was read to
+     * its end or closed.
+     */
+    private static final class ArchivingInputStream extends FilterInputStream
+    {
+        private final WarcWriter writer;
+        private final Request request;
+        private final Response response;
+        /** The time the response was received */
+        private final Instant date = Instant.now();
+        private final SpillBuffer copy;
+        private String truncated = null;
+        private boolean written = false;
+
+        private ArchivingInputStream(WarcWriter writer, Request request, Response response)
+        {
+            super(response.getBody());
+            this.copy = new SpillBuffer(writer.directory, 8192);
+            this.writer = writer;
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int read = this.readArchived(super.read());
+            if (read != -1)
+            {
+                this.copy(new byte[] {(byte) read}, 0, 1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = this.readArchived(super.read(b, off, len));
+            if (read > 0)
+            {
+                this.copy(b, off, read);
+            }
+            return read;
+        }
+
+        private int readArchived(int read)
+        {
+            if (read == -1)
+            {
+                this.complete();
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            // skipped bytes are read anyway, as they have to be archived
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            int read = this.read(skipped, 0, skipped.length);
+            return Math.max(0, read);
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        private void copy(byte[] b, int off, int len)
+        {
+            if (null != this.truncated)
+            {
+                return;
+            }
+            if (this.copy.size() + len > MAX_CONTENT_LENGTH)
+            {
+                this.truncated = "length";
+                return;
+            }
+            try
+            {
+                this.copy.write(b, off, len);
+            }
+            catch (IOException ioEx)
+            {
+                // the body is archived as far as it could be copied
+                LOG.debug("Could not copy the body of {}. Reason: {}", this.request.getUrl(),
+                          ioEx.getLocalizedMessage());
+                this.truncated = "unspecified";
+            }
+        }
+
+        private void complete()
+        {
+            if (this.written)
+            {
+                return;
+            }
+            this.written = true;
+            try
+            {
+                this.writer.writeExchange(this.request, this.response, this.date, this.copy, this.truncated);
+            }
+            catch (IOException ioEx)
+            {
+                LOG.warn("Could not archive the response of {}. Reason: {}", this.request.getUrl(),
+                         ioEx.getLocalizedMessage());
+            }
+            finally
+            {
+                this.copy.delete();
+            }
+        }
+
+        /**
+         * Checks whether the whole body was read although its end was not reached yet, which is known if the response
+         * declares the length of its body.
+         */
+        private boolean isComplete()
+        {
+            String contentLength = this.response.getHeader("Content-Length");
+            try
+            {
+                return null != contentLength && Long.parseLong(contentLength.trim()) == this.copy.size();
+            }
+            catch (NumberFormatException nfEx)
+            {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!this.written && null == this.truncated && !this.isComplete())
+            {
+                // the rest of the body was not read, so only the start of it can be archived
+                this.truncated = "unspecified";
+            }
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                this.complete();
+            }
+        }
+    }
+}
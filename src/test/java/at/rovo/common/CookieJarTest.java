@@ -0,0 +1,195 @@
+package at.rovo.common;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that a {@link CookieJar} matches cookies against requests by their domain and path, expires them according to
+ * their <em>Max-Age</em> and <em>Expires</em> attributes, replaces cookies with the same name, domain and path, rejects
+ * cookies for public suffixes and does not serve outdated headers from its per-host cache.
+ */
+@Category(UnitTest.class)
+public class CookieJarTest
+{
+    private final CookieJar jar = new CookieJar();
+
+    private void store(String url, String header) throws MalformedURLException
+    {
+        this.jar.store(new URL(url), new Cookie(header));
+    }
+
+    private String header(String url) throws MalformedURLException
+    {
+        return this.jar.getCookieHeader(new URL(url));
+    }
+
+    @Test
+    public void testDomainMatching() throws MalformedURLException
+    {
+        this.store("http://www.example.com/", "host=1");
+        this.store("http://www.example.com/", "domain=2; Domain=example.com");
+        this.store("http://www.example.com/", "dotted=3; Domain=.EXAMPLE.com");
+        Assert.assertEquals("host=1; domain=2; dotted=3", this.header("http://www.example.com/"));
+        // cookies without domain attribute are only sent to the host which set them
+        Assert.assertEquals("domain=2; dotted=3", this.header("http://example.com/"));
+        Assert.assertEquals("domain=2; dotted=3", this.header("http://a.b.example.com/"));
+        Assert.assertNull(this.header("http://notexample.com/"));
+        Assert.assertNull(this.header("http://example.org/"));
+
+        // a host can not set cookies for a sibling or a subdomain
+        this.store("http://www.example.com/", "sibling=4; Domain=mail.example.com");
+        this.store("http://www.example.com/", "sub=5; Domain=a.www.example.com");
+        Assert.assertEquals("domain=2; dotted=3", this.header("http://mail.example.com/"));
+        Assert.assertEquals(3, this.jar.size());
+    }
+
+    @Test
+    public void testIpAddress() throws MalformedURLException
+    {
+        this.store("http://192.168.0.1/", "ip=1");
+        this.store("http://192.168.0.1/", "suffix=2; Domain=168.0.1");
+        Assert.assertEquals("ip=1", this.header("http://192.168.0.1/"));
+        Assert.assertNull(this.header("http://10.192.168.0.1/"));
+    }
+
+    @Test
+    public void testPathMatching() throws MalformedURLException
+    {
+        this.store("http://example.com/", "root=1; Path=/");
+        this.store("http://example.com/", "docs=2; Path=/docs");
+        this.store("http://example.com/", "slash=3; Path=/docs/");
+        // the default path is the directory of the request path
+        this.store("http://example.com/docs/api/index.html", "default=4");
+        Assert.assertEquals("root=1", this.header("http://example.com/"));
+        Assert.assertEquals("root=1", this.header("http://example.com/docsearch"));
+        Assert.assertEquals("docs=2; root=1", this.header("http://example.com/docs"));
+        Assert.assertEquals("slash=3; docs=2; root=1", this.header("http://example.com/docs/"));
+        Assert.assertEquals("default=4; slash=3; docs=2; root=1", this.header("http://example.com/docs/api/x"));
+        Assert.assertEquals("slash=3; docs=2; root=1", this.header("http://example.com/docs/apis"));
+    }
+
+    @Test
+    public void testSecure() throws MalformedURLException
+    {
+        this.store("https://example.com/", "plain=1");
+        this.store("https://example.com/", "secure=2; Secure");
+        Assert.assertEquals("plain=1; secure=2", this.header("https://example.com/"));
+        Assert.assertEquals("plain=1", this.header("http://example.com/"));
+    }
+
+    @Test
+    public void testMaxAgeAndExpires() throws MalformedURLException
+    {
+        String past = "Expires=Thu, 01 Jan 1970 00:00:10 GMT";
+        String future = "Expires=Fri, 31 Dec 9999 23:59:59 GMT";
+        // Max-Age takes precedence over Expires
+        this.store("http://example.com/", "maxAge=1; Max-Age=3600; " + past);
+        this.store("http://example.com/", "expired=2; Max-Age=0; " + future);
+        this.store("http://example.com/", "negative=3; Max-Age=-1");
+        this.store("http://example.com/", "future=4; " + future);
+        this.store("http://example.com/", "past=5; " + past);
+        // an invalid Max-Age is ignored, so Expires applies
+        this.store("http://example.com/", "invalid=6; Max-Age=soon; " + past);
+        this.store("http://example.com/", "session=7");
+        Assert.assertEquals("maxAge=1; future=4; session=7", this.header("http://example.com/"));
+        Assert.assertEquals(3, this.jar.size());
+
+        // an expired cookie removes the stored one
+        this.store("http://example.com/", "future=4; Max-Age=0");
+        Assert.assertEquals("maxAge=1; session=7", this.header("http://example.com/"));
+        Assert.assertEquals(2, this.jar.size());
+    }
+
+    @Test
+    public void testReplaceByName() throws MalformedURLException
+    {
+        this.store("http://example.com/", "id=1");
+        this.store("http://example.com/", "id=2");
+        Assert.assertEquals("id=2", this.header("http://example.com/"));
+        // cookies with the same name but a different domain or path are kept side by side
+        this.store("http://example.com/", "id=3; Path=/a");
+        this.store("http://www.example.com/", "id=4; Domain=www.example.com");
+        Assert.assertEquals(3, this.jar.size());
+        Assert.assertEquals("id=3; id=2", this.header("http://example.com/a"));
+        Assert.assertEquals("id=4", this.header("http://www.example.com/"));
+        // whether a cookie is restricted to its host is no part of its identity, and the replacing cookie keeps the
+        // position of the replaced one
+        this.store("http://www.example.com/", "id=5; Domain=example.com");
+        Assert.assertEquals(3, this.jar.size());
+        Assert.assertEquals("id=5; id=4", this.header("http://www.example.com/"));
+        this.store("http://example.com/", "id=6");
+        Assert.assertEquals("id=4", this.header("http://www.example.com/"));
+        Assert.assertEquals("id=3; id=6", this.header("http://example.com/a"));
+    }
+
+    @Test
+    public void testHeaderCacheInvalidation() throws MalformedURLException
+    {
+        this.store("http://www.example.com/", "a=1");
+        Assert.assertEquals("a=1", this.header("http://www.example.com/"));
+        // a cookie of a parent domain invalidates the cached header of the host
+        this.store("http://example.com/", "b=2; Domain=example.com");
+        Assert.assertEquals("a=1; b=2", this.header("http://www.example.com/"));
+        // so does replacing or removing a cookie, a replaced cookie keeps its position though
+        this.store("http://www.example.com/", "a=3");
+        Assert.assertEquals("a=3; b=2", this.header("http://www.example.com/"));
+        this.store("http://example.com/", "b=2; Domain=example.com; Max-Age=0");
+        Assert.assertEquals("a=3", this.header("http://www.example.com/"));
+        // a domain whose first cookie arrives after the header was cached is picked up too
+        this.store("http://x.www.example.com/", "c=4; Domain=www.example.com");
+        Assert.assertEquals("a=3; c=4", this.header("http://www.example.com/"));
+        // cookies of unrelated hosts do not change the header
+        this.store("http://example.org/", "d=5");
+        Assert.assertEquals("a=3; c=4", this.header("http://www.example.com/"));
+        this.jar.clear();
+        Assert.assertNull(this.header("http://www.example.com/"));
+    }
+
+    @Test
+    public void testPublicSuffix() throws MalformedURLException
+    {
+        this.store("http://www.example.com/", "tld=1; Domain=com");
+        this.store("http://www.example.co.uk/", "registry=2; Domain=co.uk");
+        this.store("http://www.example.co.uk/", "site=3; Domain=example.co.uk");
+        this.store("http://foo.github.io/", "private=4; Domain=github.io");
+        Assert.assertNull(this.header("http://other.com/"));
+        Assert.assertNull(this.header("http://other.co.uk/"));
+        Assert.assertNull(this.header("http://bar.github.io/"));
+        Assert.assertEquals("site=3", this.header("http://www.example.co.uk/"));
+        Assert.assertEquals(1, this.jar.size());
+
+        // a public suffix may set a cookie for itself, which is only sent back to it
+        this.store("http://co.uk/", "self=5; Domain=co.uk");
+        Assert.assertEquals("self=5", this.header("http://co.uk/"));
+        Assert.assertEquals("site=3", this.header("http://www.example.co.uk/"));
+    }
+
+    @Test
+    public void testPublicSuffixRules() throws IOException
+    {
+        PublicSuffixList list = PublicSuffixList.parse(new StringReader(
+                "// comment\n\nuk\nco.uk  trailing text\n*.ck\n!www.ck\n\u00f6sterreich.example\n"));
+        Assert.assertTrue(list.isPublicSuffix("uk"));
+        Assert.assertTrue(list.isPublicSuffix("co.uk"));
+        Assert.assertFalse(list.isPublicSuffix("example.co.uk"));
+        // a top-level domain is a public suffix even if it is not listed
+        Assert.assertTrue(list.isPublicSuffix("test"));
+        Assert.assertFalse(list.isPublicSuffix("example.test"));
+        Assert.assertTrue(list.isPublicSuffix("ck"));
+        Assert.assertTrue(list.isPublicSuffix("anything.ck"));
+        Assert.assertFalse(list.isPublicSuffix("www.ck"));
+        Assert.assertFalse(list.isPublicSuffix("a.anything.ck"));
+        Assert.assertTrue(list.isPublicSuffix("xn--sterreich-z7a.example"));
+
+        CookieJar jar = new CookieJar(list);
+        jar.store(new URL("http://a.anything.ck/"), new Cookie("wild=1; Domain=anything.ck"));
+        jar.store(new URL("http://a.www.ck/"), new Cookie("exception=2; Domain=www.ck"));
+        Assert.assertNull(jar.getCookieHeader(new URL("http://b.anything.ck/")));
+        Assert.assertEquals("exception=2", jar.getCookieHeader(new URL("http://www.ck/")));
+    }
+}
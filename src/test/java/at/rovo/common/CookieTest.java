@@ -0,0 +1,179 @@
+package at.rovo.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks the parsing of <em>Set-Cookie</em> headers and that cookies, which are identified by their name, domain and
+ * path only, fulfill the contract of {@link Object#equals(Object)} and {@link Object#hashCode()}.
+ */
+@Category(UnitTest.class)
+public class CookieTest
+{
+    /** Headers of cookies with the same and with different identities */
+    private static final List<String> HEADERS = Arrays.asList(
+            "id=1",
+            "id=2; Secure",
+            "ID=1",
+            "id=1; Domain=example.com",
+            "id=2; domain=.example.com",
+            "id=1; Domain=EXAMPLE.com",
+            "id=1; Domain=example.org",
+            "id=1; Domain=",
+            "id=1; Domain=.",
+            // the Kelvin sign folds to a lower case k
+            "id=1; Domain=ma\u212Aer.com",
+            "id=1; Domain=maker.com",
+            "id=1; Path=/",
+            "id=1; Path=/a",
+            "id=1; Path=/A",
+            "id=1; Path=",
+            "id=1; Domain=example.com; Path=/a",
+            "id=3; Path=/a; Domain=example.com; Max-Age=10",
+            "other=1; Domain=example.com; Path=/a",
+            "=1",
+            "1");
+
+    @Test
+    public void testParse()
+    {
+        Cookie cookie = new Cookie(" session = a=b=c ; Domain=.Example.com; Path=/app; Secure; HttpOnly; "
+                                   + "SameSite=Lax; Max-Age=3600; Priority=High");
+        Assert.assertEquals("session", cookie.getName());
+        Assert.assertEquals("a=b=c", cookie.getValue());
+        Assert.assertEquals(".Example.com", cookie.getDomain());
+        Assert.assertEquals("/app", cookie.getPath());
+        Assert.assertEquals("3600", cookie.getMaxAge());
+        Assert.assertEquals("Lax", cookie.getSameSite());
+        Assert.assertTrue(cookie.isSecure());
+        Assert.assertTrue(cookie.isHttpOnly());
+        Assert.assertNull(cookie.getExpires());
+        Assert.assertEquals(-1L, cookie.getExpiresAt());
+        Map<String, String> customValues = cookie.getCustomValues();
+        Assert.assertEquals(2, customValues.size());
+        Assert.assertEquals("a=b=c", customValues.get("session"));
+        Assert.assertEquals("High", customValues.get("Priority"));
+    }
+
+    @Test
+    public void testExpires()
+    {
+        Cookie cookie = new Cookie("id=1; Expires=Wed, 21 Oct 2015 07:28:00 GMT");
+        Assert.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", cookie.getExpires());
+        Assert.assertEquals(1445412480000L, cookie.getExpiresAt());
+        // the parsed date is cached
+        Assert.assertEquals(1445412480000L, cookie.getExpiresAt());
+
+        Assert.assertEquals(-1L, new Cookie("id=1; Expires=tomorrow").getExpiresAt());
+    }
+
+    @Test
+    public void testEqualsIdentity()
+    {
+        Assert.assertEquals(new Cookie("id=1"), new Cookie("id=2; Secure; Max-Age=10"));
+        Assert.assertEquals(new Cookie("id=1; Domain=example.com"), new Cookie("id=2; Domain=.EXAMPLE.COM"));
+        Assert.assertEquals(new Cookie("id=1; Domain=example.com; Path=/a"),
+                            new Cookie("id=2; Path=/a; Domain=example.com"));
+        // an empty domain is ignored like a missing one
+        Assert.assertEquals(new Cookie("id=1"), new Cookie("id=1; Domain="));
+
+        Assert.assertNotEquals(new Cookie("id=1"), new Cookie("ID=1"));
+        Assert.assertNotEquals(new Cookie("id=1"), new Cookie("id=1; Domain=example.com"));
+        Assert.assertNotEquals(new Cookie("id=1; Path=/a"), new Cookie("id=1; Path=/A"));
+        Assert.assertNotEquals(new Cookie("id=1"), new Cookie("id=1; Path=/"));
+        Assert.assertNotEquals(new Cookie("id=1"), null);
+        Assert.assertNotEquals(new Cookie("id=1"), "id=1");
+    }
+
+    @Test
+    public void testEqualsIsReflexiveAndSymmetric()
+    {
+        for (String header : HEADERS)
+        {
+            Cookie cookie = new Cookie(header);
+            Assert.assertEquals(header, cookie, cookie);
+            Assert.assertEquals(header, cookie, new Cookie(header));
+            for (String otherHeader : HEADERS)
+            {
+                Cookie other = new Cookie(otherHeader);
+                Assert.assertEquals(header + " <-> " + otherHeader, cookie.equals(other), other.equals(cookie));
+            }
+        }
+    }
+
+    @Test
+    public void testEqualsIsTransitive()
+    {
+        for (String a : HEADERS)
+        {
+            for (String b : HEADERS)
+            {
+                for (String c : HEADERS)
+                {
+                    if (new Cookie(a).equals(new Cookie(b)) && new Cookie(b).equals(new Cookie(c)))
+                    {
+                        Assert.assertEquals(a + " -> " + c, new Cookie(a), new Cookie(c));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHashCodeIsConsistentWithEquals()
+    {
+        for (String header : HEADERS)
+        {
+            Cookie cookie = new Cookie(header);
+            for (String otherHeader : HEADERS)
+            {
+                Cookie other = new Cookie(otherHeader);
+                if (cookie.equals(other))
+                {
+                    Assert.assertEquals(header + " <-> " + otherHeader, cookie.hashCode(), other.hashCode());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSet()
+    {
+        Set<Cookie> cookies = new HashSet<>();
+        Assert.assertTrue(cookies.add(new Cookie("id=1; Domain=example.com; Path=/")));
+        Assert.assertFalse(cookies.add(new Cookie("id=2; Domain=.Example.com; Path=/; Secure")));
+        Assert.assertTrue(cookies.add(new Cookie("id=1; Domain=example.com; Path=/a")));
+        Assert.assertTrue(cookies.add(new Cookie("id=1; Domain=example.org; Path=/")));
+        Assert.assertTrue(cookies.add(new Cookie("lang=en; Domain=example.com; Path=/")));
+        Assert.assertEquals(4, cookies.size());
+        Assert.assertTrue(cookies.contains(new Cookie("id=3; Path=/; Domain=EXAMPLE.COM")));
+        Assert.assertTrue(cookies.remove(new Cookie("lang=de; Domain=example.com; Path=/")));
+        Assert.assertEquals(3, cookies.size());
+    }
+
+    @Test
+    public void testMap()
+    {
+        Map<Cookie, String> values = new HashMap<>();
+        for (String header : HEADERS)
+        {
+            Cookie cookie = new Cookie(header);
+            values.put(cookie, cookie.getValue());
+        }
+        // a newer cookie with the same identity replaces the value, but the key stays the cookie stored first
+        Cookie newer = new Cookie("id=4; Domain=example.com; Path=/a; Secure");
+        Assert.assertEquals("3", values.put(newer, newer.getValue()));
+        Assert.assertEquals("4", values.get(new Cookie("id=5; Path=/a; Domain=.example.com")));
+        for (Map.Entry<Cookie, String> entry : values.entrySet())
+        {
+            Assert.assertEquals(entry.getValue(), values.get(new Cookie(entry.getKey().toString())));
+        }
+    }
+}
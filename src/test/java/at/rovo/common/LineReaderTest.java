@@ -0,0 +1,152 @@
+package at.rovo.common;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that {@link LineReader} splits lines like {@link Scanner#nextLine()} does, also if terminators are split
+ * across reads, lines are longer than the buffer or the reader returns fewer characters than requested.
+ */
+@Category(UnitTest.class)
+public class LineReaderTest
+{
+    /** The characters random inputs are made of, which contain each terminator several times */
+    private static final char[] ALPHABET = {'a', 'b', ' ', '\u00E4', '\n', '\n', '\r', '\r', '\u0085', '\u2028',
+                                            '\u2029'};
+
+    /**
+     * Returns at most the given number of characters per read, like a network stream which is slow to fill.
+     */
+    private static final class ShortReader extends FilterReader
+    {
+        private final Random random;
+        private final int maxRead;
+
+        ShortReader(Reader reader, Random random, int maxRead)
+        {
+            super(reader);
+            this.random = random;
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException
+        {
+            return super.read(buffer, offset, Math.min(length, 1 + this.random.nextInt(this.maxRead)));
+        }
+    }
+
+    private static List<String> scannerLines(String input)
+    {
+        List<String> lines = new ArrayList<>();
+        try (Scanner scanner = new Scanner(input))
+        {
+            while (scanner.hasNextLine())
+            {
+                lines.add(scanner.nextLine());
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> readLines(Reader reader, int bufferSize) throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        try (LineReader lineReader = new LineReader(reader, bufferSize))
+        {
+            CharSequence line;
+            while (null != (line = lineReader.readLine()))
+            {
+                lines.add(line.toString());
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> readLines(String input, int bufferSize) throws IOException
+    {
+        return readLines(new StringReader(input), bufferSize);
+    }
+
+    @Test
+    public void testRandomInput() throws IOException
+    {
+        Random random = new Random(42L);
+        for (int run = 0; run < 2000; run++)
+        {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(200);
+            for (int i = 0; i < length; i++)
+            {
+                // long runs of letters make lines longer than the buffer
+                input.append(random.nextInt(4) == 0 ? ALPHABET[random.nextInt(ALPHABET.length)] : 'x');
+            }
+            String text = input.toString();
+            List<String> expected = scannerLines(text);
+            int bufferSize = 1 + random.nextInt(8);
+            Assert.assertEquals("Input: " + Arrays.toString(text.toCharArray()), expected,
+                                readLines(new ShortReader(new StringReader(text), random, 3), bufferSize));
+            Assert.assertEquals(expected, readLines(text, bufferSize));
+        }
+    }
+
+    @Test
+    public void testCarriageReturnLineFeedAcrossFills() throws IOException
+    {
+        // with a buffer of 2 characters the \r is the last character of the first fill and the \n the first of the next
+        for (int bufferSize = 1; bufferSize <= 4; bufferSize++)
+        {
+            Assert.assertEquals(Arrays.asList("a", "b"), readLines("a\r\nb", bufferSize));
+            Assert.assertEquals(Arrays.asList("a", "", "b"), readLines("a\r\r\nb", bufferSize));
+            Assert.assertEquals(Arrays.asList("a", "", "b"), readLines("a\n\r\nb", bufferSize));
+            Assert.assertEquals(Arrays.asList("", "", "a"), readLines("\r\n\na", bufferSize));
+        }
+    }
+
+    @Test
+    public void testTrailingTerminator() throws IOException
+    {
+        Assert.assertEquals(Arrays.asList("a", "b"), readLines("a\nb\n", 4));
+        Assert.assertEquals(Arrays.asList("a", "b"), readLines("a\nb\r\n", 4));
+        Assert.assertEquals(Arrays.asList("a", "b"), readLines("a\nb\r", 4));
+        Assert.assertEquals(Arrays.asList("a", ""), readLines("a\n\n", 4));
+        Assert.assertEquals(Arrays.asList(""), readLines("\n", 4));
+        Assert.assertEquals(Arrays.asList(), readLines("", 4));
+    }
+
+    @Test
+    public void testUnicodeSeparators() throws IOException
+    {
+        String input = "a\u0085b\u2028c\u2029d\u2028\n";
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d", ""), readLines(input, 3));
+        Assert.assertEquals(scannerLines(input), readLines(input, 3));
+    }
+
+    @Test
+    public void testLinesLongerThanBuffer() throws IOException
+    {
+        char[] chars = new char[10_000];
+        Arrays.fill(chars, 'x');
+        String longLine = new String(chars);
+        String input = "short\n" + longLine + "\r\n" + longLine + "\nend";
+        Assert.assertEquals(Arrays.asList("short", longLine, longLine, "end"), readLines(input, 16));
+        Assert.assertEquals(Arrays.asList("short", longLine, longLine, "end"),
+                            readLines(new ShortReader(new StringReader(input), new Random(1L), 100), 16));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBufferSize()
+    {
+        new LineReader(new StringReader(""), 0);
+    }
+}
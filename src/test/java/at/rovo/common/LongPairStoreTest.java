@@ -0,0 +1,242 @@
+package at.rovo.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that a {@link LongPairStore} keeps its pairs across segment boundaries, across closing and reopening it and
+ * when saving a temporary store, and that sorting spans all segments. The stores use segments of 16 pairs, so a few
+ * hundred pairs cross many segment boundaries.
+ */
+@Category(UnitTest.class)
+public class LongPairStoreTest
+{
+    /** Segments of 16 pairs */
+    private static final int SEGMENT_BITS = 4;
+    private static final int PAIRS = 1000;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = Files.createTempDirectory("pairs");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(this.directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * Returns random pairs with many duplicate values, including the extreme values.
+     */
+    private static List<long[]> randomPairs(long seed)
+    {
+        Random random = new Random(seed);
+        long[] values = {Long.MIN_VALUE, -1L, 0L, 1L, 42L, Long.MAX_VALUE};
+        List<long[]> pairs = new ArrayList<>();
+        for (int i = 0; i < PAIRS; i++)
+        {
+            long first = random.nextInt(4) == 0 ? values[random.nextInt(values.length)] : random.nextInt(50) - 25;
+            long last = random.nextInt(4) == 0 ? values[random.nextInt(values.length)] : random.nextInt(50) - 25;
+            pairs.add(new long[] {first, last});
+        }
+        return pairs;
+    }
+
+    private static void append(LongPairStore store, List<long[]> pairs) throws IOException
+    {
+        for (long[] pair : pairs)
+        {
+            store.append(pair[0], pair[1]);
+        }
+    }
+
+    private static void assertPairs(List<long[]> expected, LongPairStore store)
+    {
+        Assert.assertEquals(expected.size(), store.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            Assert.assertEquals("first value of pair " + i, expected.get(i)[0], store.getFirst(i));
+            Assert.assertEquals("last value of pair " + i, expected.get(i)[1], store.getLast(i));
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException
+    {
+        Path file = this.directory.resolve("pairs.store");
+        List<long[]> pairs = randomPairs(1L);
+        try (LongPairStore store = LongPairStore.create(file, SEGMENT_BITS))
+        {
+            append(store, pairs.subList(0, 500));
+            assertPairs(pairs.subList(0, 500), store);
+        }
+        // the file is shrunk to the pairs on closing
+        Assert.assertEquals(4096L + 500L * 16L, Files.size(file));
+        try (LongPairStore store = LongPairStore.open(file, SEGMENT_BITS))
+        {
+            assertPairs(pairs.subList(0, 500), store);
+            append(store, pairs.subList(500, PAIRS));
+            assertPairs(pairs, store);
+        }
+        // the layout of the file does not depend on the segment size
+        try (LongPairStore store = LongPairStore.open(file))
+        {
+            assertPairs(pairs, store);
+            store.set(999L, 7L, 8L);
+            Assert.assertEquals(Pair.of(7L, 8L), store.get(999L));
+            Assert.assertEquals(Pair.of(pairs.get(16)[0], pairs.get(16)[1]), store.asList().get(16));
+        }
+    }
+
+    @Test
+    public void testSegmentBoundaries() throws IOException
+    {
+        Path file = this.directory.resolve("pairs.store");
+        try (LongPairStore store = LongPairStore.create(file, SEGMENT_BITS))
+        {
+            for (int i = 0; i < 48; i++)
+            {
+                store.append(i, -i);
+                Assert.assertEquals(i + 1, store.size());
+                Assert.assertEquals(i, store.getFirst(i));
+                Assert.assertEquals(-i, store.getLast(i));
+            }
+        }
+        // reopening a file which ends exactly at a segment boundary maps no further segment until a pair is appended
+        try (LongPairStore store = LongPairStore.open(file, SEGMENT_BITS))
+        {
+            Assert.assertEquals(48L, store.size());
+            store.append(48L, -48L);
+            Assert.assertEquals(47L, store.getFirst(47L));
+            Assert.assertEquals(-48L, store.getLast(48L));
+        }
+        Assert.assertEquals(4096L + 49L * 16L, Files.size(file));
+    }
+
+    private void assertSorted(boolean byFirst) throws IOException
+    {
+        List<long[]> pairs = randomPairs(byFirst ? 2L : 3L);
+        int key = byFirst ? 0 : 1;
+        Comparator<long[]> order = Comparator.<long[]>comparingLong(pair -> pair[key])
+                                             .thenComparingLong(pair -> pair[1 - key]);
+        List<long[]> sorted = new ArrayList<>(pairs);
+        sorted.sort(order);
+        Path file = this.directory.resolve("sorted.store");
+        try (LongPairStore store = LongPairStore.create(file, SEGMENT_BITS))
+        {
+            append(store, pairs);
+            if (byFirst)
+            {
+                store.sortByFirst();
+            }
+            else
+            {
+                store.sortByLast();
+            }
+            assertPairs(sorted, store);
+        }
+        try (LongPairStore store = LongPairStore.open(file, SEGMENT_BITS))
+        {
+            assertPairs(sorted, store);
+        }
+    }
+
+    @Test
+    public void testSortByFirst() throws IOException
+    {
+        this.assertSorted(true);
+    }
+
+    @Test
+    public void testSortByLast() throws IOException
+    {
+        this.assertSorted(false);
+    }
+
+    @Test
+    public void testSaveTemporaryStore() throws IOException
+    {
+        Path target = this.directory.resolve("saved.store");
+        List<long[]> pairs = randomPairs(4L);
+        try (LongPairStore store = LongPairStore.createTemporary(SEGMENT_BITS))
+        {
+            append(store, pairs);
+            store.saveTo(target);
+            // the store stays usable after saving it
+            store.append(1L, 2L);
+        }
+        Assert.assertEquals(4096L + PAIRS * 16L, Files.size(target));
+        try (LongPairStore store = LongPairStore.open(target, SEGMENT_BITS))
+        {
+            assertPairs(pairs, store);
+        }
+    }
+
+    @Test
+    public void testInvalidAccess() throws IOException
+    {
+        Path file = this.directory.resolve("pairs.store");
+        LongPairStore store = LongPairStore.create(file, SEGMENT_BITS);
+        store.append(1L, 2L);
+        try
+        {
+            store.getFirst(1L);
+            Assert.fail("Read a pair beyond the end of the store");
+        }
+        catch (IndexOutOfBoundsException expected)
+        {
+            // the store holds a single pair only
+        }
+        store.close();
+        try
+        {
+            store.getFirst(0L);
+            Assert.fail("Read a pair of a closed store");
+        }
+        catch (IllegalStateException expected)
+        {
+            // the mappings were released
+        }
+
+        Path other = this.directory.resolve("other");
+        Files.write(other, new byte[8192]);
+        try
+        {
+            LongPairStore.open(other).close();
+            Assert.fail("Opened a file which is no pair store");
+        }
+        catch (IOException expected)
+        {
+            // the file lacks the marker
+        }
+        Files.write(other, "no store".getBytes(StandardCharsets.UTF_8));
+        try
+        {
+            LongPairStore.open(other).close();
+            Assert.fail("Opened a file which is no pair store");
+        }
+        catch (IOException expected)
+        {
+            // the file lacks the marker
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package at.rovo.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that {@link PageAssembler} joins the lines of a page exactly like the algorithm <em>UrlReader</em> used
+ * before, which inspected the whole content assembled so far on every line.
+ */
+@Category(UnitTest.class)
+public class PageAssemblerTest
+{
+    /** Lines covering blanks, tabs and empty lines at either end */
+    private static final List<String> LINES = Arrays.asList(
+            "<html>",
+            "<head><title>Test</title></head>",
+            "",
+            "   ",
+            "  <body>",
+            "<p>first paragraph ",
+            " continued with a leading blank",
+            "\tindented with a tab",
+            "ends with a tab\t",
+            "  <p>blanks on both sides  ",
+            "   and the next one as well   ",
+            "\t\t",
+            "text",
+            "",
+            "more text ",
+            "",
+            "  </body>",
+            "</html>");
+
+    @Test
+    public void testWithoutLineBreaks()
+    {
+        Assert.assertEquals(assembleAsBefore(LINES, false), assemble(LINES, false));
+    }
+
+    @Test
+    public void testWithLineBreaks()
+    {
+        Assert.assertEquals(assembleAsBefore(LINES, true), assemble(LINES, true));
+    }
+
+    @Test
+    public void testEmptyPage()
+    {
+        List<String> lines = new ArrayList<>();
+        Assert.assertEquals("", assemble(lines, false));
+        Assert.assertEquals("", assemble(lines, true));
+    }
+
+    @Test
+    public void testRandomLines()
+    {
+        // lines built from characters which affect the joining, so all combinations of line ends are covered
+        char[] alphabet = { ' ', ' ', '\t', '\u000B', 'a', 'b', '<', '>' };
+        Random random = new Random(42L);
+        for (int page = 0; page < 500; page++)
+        {
+            List<String> lines = new ArrayList<>();
+            int lineCount = random.nextInt(30);
+            for (int i = 0; i < lineCount; i++)
+            {
+                char[] line = new char[random.nextInt(8)];
+                for (int j = 0; j < line.length; j++)
+                {
+                    line[j] = alphabet[random.nextInt(alphabet.length)];
+                }
+                lines.add(new String(line));
+            }
+            Assert.assertEquals("Page " + lines, assembleAsBefore(lines, false), assemble(lines, false));
+            Assert.assertEquals("Page " + lines, assembleAsBefore(lines, true), assemble(lines, true));
+        }
+    }
+
+    private static String assemble(List<String> lines, boolean includeLineBreaks)
+    {
+        PageAssembler assembler = new PageAssembler(includeLineBreaks);
+        for (String line : lines)
+        {
+            assembler.appendLine(line);
+        }
+        return assembler.toString();
+    }
+
+    /**
+     * The algorithm <em>UrlReader</em> assembled pages with before it was replaced by {@link PageAssembler}.
+     */
+    private static String assembleAsBefore(List<String> lines, boolean includeLineBreaks)
+    {
+        StringBuilder buffer = new StringBuilder();
+        for (String line : lines)
+        {
+            String curHTML = buffer.toString();
+            if (curHTML.endsWith(" ") && !line.startsWith(" "))
+            {
+                buffer.append(line);
+            }
+            else if (curHTML.endsWith(" ") && line.startsWith(" "))
+            {
+                buffer.append(line.trim());
+            }
+            else if (!curHTML.endsWith(" ") && line.startsWith(" "))
+            {
+                buffer.append(line);
+            }
+            else if (!line.trim().equals(""))
+            {
+                buffer.append(" ");
+                buffer.append(line);
+            }
+            // add a line break if requested
+            if (includeLineBreaks)
+            {
+                buffer.append("\n");
+            }
+        }
+        return buffer.toString();
+    }
+}
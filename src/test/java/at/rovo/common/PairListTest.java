@@ -0,0 +1,254 @@
+package at.rovo.common;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that the pair lists sort their pairs like {@link Arrays#sort(Object[])} sorts the according pair objects, on
+ * random data with many duplicates and on sizes around the insertion sort threshold, and that {@link Pair}, {@link
+ * IntPair} and {@link LongDoublePair} keep the contracts of <em>equals</em>, <em>hashCode</em> and
+ * <em>compareTo</em>, including <em>NaN</em> and <em>-0.0</em>.
+ */
+@Category(UnitTest.class)
+public class PairListTest
+{
+    private static final int[] SIZES = { 0, 1, 2, 15, 16, 17, 100, 1000, 10000 };
+    /** A small range of values, so most pairs have duplicates */
+    private static final int RANGE = 8;
+    private static final double[] DOUBLES =
+            { Double.NaN, Double.NEGATIVE_INFINITY, -1.5, -0.0, 0.0, 1.5, Double.POSITIVE_INFINITY };
+    private static final String[] STRINGS = { null, "", "a", "ab", "b", "B" };
+
+    private final Random random = new Random(42L);
+
+    @Test
+    public void testIntPairListSortsLikeArraysSort()
+    {
+        for (int size : SIZES)
+        {
+            IntPairList list = new IntPairList();
+            IntPair[] expected = new IntPair[size];
+            for (int i = 0; i < size; i++)
+            {
+                int first = this.random.nextInt(RANGE) - RANGE / 2;
+                int last = this.random.nextInt(RANGE) - RANGE / 2;
+                list.add(first, last);
+                expected[i] = new IntPair(first, last);
+            }
+            list.sort();
+            Arrays.sort(expected);
+
+            Assert.assertEquals(size, list.size());
+            for (int i = 0; i < size; i++)
+            {
+                Assert.assertEquals("size " + size + ", index " + i, expected[i], list.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testIntPairListSortsExtremeValues()
+    {
+        // values whose difference overflows an int must still be ordered correctly
+        int[] values = { Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE };
+        IntPairList list = new IntPairList();
+        IntPair[] expected = new IntPair[values.length * values.length];
+        int n = 0;
+        for (int first : values)
+        {
+            for (int last : values)
+            {
+                expected[n++] = new IntPair(first, last);
+            }
+        }
+        for (int i = expected.length - 1; i >= 0; i--)
+        {
+            list.add(expected[i].getFirst(), expected[i].getLast());
+        }
+        list.sort();
+        Arrays.sort(expected);
+
+        for (int i = 0; i < expected.length; i++)
+        {
+            Assert.assertEquals(expected[i], list.get(i));
+        }
+    }
+
+    @Test
+    public void testLongDoublePairListSortsLikeArraysSort()
+    {
+        for (int size : SIZES)
+        {
+            LongDoublePairList list = new LongDoublePairList();
+            LongDoublePair[] expected = new LongDoublePair[size];
+            for (int i = 0; i < size; i++)
+            {
+                long first = this.random.nextInt(RANGE) + (long) Integer.MAX_VALUE;
+                double last = DOUBLES[this.random.nextInt(DOUBLES.length)];
+                list.add(first, last);
+                expected[i] = new LongDoublePair(first, last);
+            }
+            list.sort();
+            Arrays.sort(expected);
+
+            Assert.assertEquals(size, list.size());
+            for (int i = 0; i < size; i++)
+            {
+                // equals compares the bit patterns, so -0.0 and 0.0 as well as NaN are told apart correctly
+                Assert.assertEquals("size " + size + ", index " + i, expected[i], list.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testObjIntPairListSortsLikeArraysSort()
+    {
+        for (int size : SIZES)
+        {
+            ObjIntPairList<String> list = new ObjIntPairList<>();
+            ObjIntPair<String>[] expected = this.fillRandomly(list, size, false);
+            list.sort();
+            Arrays.sort(expected);
+
+            Assert.assertEquals(size, list.size());
+            for (int i = 0; i < size; i++)
+            {
+                Assert.assertEquals("size " + size + ", index " + i, expected[i], list.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testObjIntPairListSortsWithComparator()
+    {
+        Comparator<String> comparator = String.CASE_INSENSITIVE_ORDER.reversed();
+        Comparator<String> firstComparator = Comparator.nullsFirst(comparator);
+        for (int size : SIZES)
+        {
+            ObjIntPairList<String> list = new ObjIntPairList<>();
+            ObjIntPair<String>[] expected = this.fillRandomly(list, size, true);
+            list.sort(comparator);
+            // the comparator only decides on the first elements, so pairs which it considers equal, like "b" and "B",
+            // are ordered by their last values
+            Arrays.sort(expected, Comparator.comparing((ObjIntPair<String> pair) -> pair.getFirst(), firstComparator)
+                                            .thenComparingInt(ObjIntPair::getLast));
+
+            Assert.assertEquals(size, list.size());
+            for (int i = 0; i < size; i++)
+            {
+                String message = "size " + size + ", index " + i;
+                Assert.assertEquals(message, 0, firstComparator.compare(expected[i].getFirst(), list.getFirst(i)));
+                Assert.assertEquals(message, expected[i].getLast(), list.getLast(i));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ObjIntPair<String>[] fillRandomly(ObjIntPairList<String> list, int size, boolean withNulls)
+    {
+        ObjIntPair<String>[] pairs = new ObjIntPair[size];
+        int from = withNulls ? 0 : 1;
+        for (int i = 0; i < size; i++)
+        {
+            String first = STRINGS[from + this.random.nextInt(STRINGS.length - from)];
+            int last = this.random.nextInt(RANGE);
+            list.add(first, last);
+            pairs[i] = new ObjIntPair<>(first, last);
+        }
+        return pairs;
+    }
+
+    @Test
+    public void testIntPairContract()
+    {
+        IntPair[] pairs = {
+                new IntPair(0, 0), new IntPair(0, 0), new IntPair(0, 1), new IntPair(1, 0),
+                new IntPair(Integer.MIN_VALUE, Integer.MAX_VALUE), new IntPair(Integer.MAX_VALUE, Integer.MIN_VALUE)
+        };
+        assertContract(pairs);
+    }
+
+    @Test
+    public void testLongDoublePairContract()
+    {
+        LongDoublePair[] pairs = new LongDoublePair[2 * 2 * (DOUBLES.length + 1)];
+        int n = 0;
+        for (long first : new long[] { 0L, Long.MIN_VALUE })
+        {
+            for (double last : DOUBLES)
+            {
+                // every pair is added twice, so equal but distinct instances are compared as well
+                pairs[n++] = new LongDoublePair(first, last);
+                pairs[n++] = new LongDoublePair(first, last);
+            }
+            // a NaN with another bit pattern is still the same value for Double.equals and Double.compare
+            pairs[n++] = new LongDoublePair(first, Double.longBitsToDouble(0x7ff8000000000001L));
+            pairs[n++] = new LongDoublePair(first, Double.longBitsToDouble(0x7ff8000000000001L));
+        }
+        assertContract(pairs);
+
+        Assert.assertEquals(new LongDoublePair(1L, Double.NaN), new LongDoublePair(1L, Double.NaN));
+        Assert.assertNotEquals(new LongDoublePair(1L, 0.0), new LongDoublePair(1L, -0.0));
+        Assert.assertTrue(new LongDoublePair(1L, -0.0).compareTo(new LongDoublePair(1L, 0.0)) < 0);
+        Assert.assertTrue(new LongDoublePair(1L, Double.POSITIVE_INFINITY).compareTo(
+                new LongDoublePair(1L, Double.NaN)) < 0);
+    }
+
+    @Test
+    public void testPairContract()
+    {
+        @SuppressWarnings("unchecked")
+        Pair<String, Double>[] pairs = new Pair[] {
+                new Pair<>("a", 1.0), Pair.of("a", 1.0), new Pair<>("a", -0.0), Pair.of("a", 0.0),
+                new Pair<>("a", Double.NaN), Pair.of("a", Double.NaN), new Pair<>(null, 1.0), Pair.of(null, 1.0),
+                new Pair<>("a", null), Pair.of("a", null), new Pair<>(null, null), Pair.of(null, null),
+                new Pair<>("b", Double.NEGATIVE_INFINITY)
+        };
+        assertContract(pairs);
+
+        // mutable and immutable pairs with the same elements are equal
+        Assert.assertEquals(new Pair<>("a", 1.0), Pair.of("a", 1.0));
+        Assert.assertEquals(Pair.of("a", 1.0), new Pair<>("a", 1.0));
+        Assert.assertNotEquals(new Pair<>("a", 0.0), new Pair<>("a", -0.0));
+        Assert.assertTrue(Pair.of(null, 1.0).compareTo(Pair.of("", 1.0)) < 0);
+        Assert.assertTrue(Pair.of("a", (Double) null).compareTo(Pair.of("a", Double.NEGATIVE_INFINITY)) < 0);
+    }
+
+    /**
+     * Checks that <em>equals</em> is reflexive and symmetric and consistent with <em>compareTo</em>, that equal pairs
+     * have the same hash code and that <em>compareTo</em> is antisymmetric and transitive on all given pairs.
+     */
+    private static <T extends Comparable<T>> void assertContract(T[] pairs)
+    {
+        for (T x : pairs)
+        {
+            Assert.assertEquals(x, x);
+            Assert.assertEquals(0, x.compareTo(x));
+            Assert.assertNotEquals(x, null);
+            Assert.assertNotEquals(x, new Object());
+            for (T y : pairs)
+            {
+                String message = x + " vs " + y;
+                boolean equal = x.equals(y);
+                Assert.assertEquals(message, equal, y.equals(x));
+                Assert.assertEquals(message, equal, x.compareTo(y) == 0);
+                if (equal)
+                {
+                    Assert.assertEquals(message, x.hashCode(), y.hashCode());
+                }
+                Assert.assertEquals(message, Integer.signum(x.compareTo(y)), -Integer.signum(y.compareTo(x)));
+                for (T z : pairs)
+                {
+                    if (x.compareTo(y) <= 0 && y.compareTo(z) <= 0)
+                    {
+                        Assert.assertTrue(message + " vs " + z, x.compareTo(z) <= 0);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package at.rovo.common;
+
+import at.rovo.common.http.HttpTransport;
+import at.rovo.common.http.Request;
+import at.rovo.common.http.Response;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks the matching of <em>robots.txt</em> rules against the examples of RFC 9309, and that a {@link RobotsCache}
+ * handles the status codes of the file as the RFC demands.
+ */
+@Category(UnitTest.class)
+public class RobotsTxtTest
+{
+    /** The example of RFC 9309 section 5.1 */
+    private static final String RFC_EXAMPLE = "User-Agent: *\n"
+                                              + "Disallow: *.gif$\n"
+                                              + "Disallow: /example/\n"
+                                              + "Allow: /publications/\n"
+                                              + "\n"
+                                              + "User-Agent: foobot\n"
+                                              + "Disallow:/\n"
+                                              + "Allow:/example/page.html\n"
+                                              + "Allow:/example/allowed.gif\n"
+                                              + "\n"
+                                              + "User-Agent: barbot\n"
+                                              + "User-Agent: bazbot\n"
+                                              + "Disallow: /example/page.html\n"
+                                              + "\n"
+                                              + "User-Agent: quxbot\n";
+
+    @Test
+    public void testRfcExample()
+    {
+        RobotsTxt any = RobotsTxt.parse(RFC_EXAMPLE, "otherbot");
+        Assert.assertFalse(any.isPathAllowed("/image.gif"));
+        Assert.assertTrue(any.isPathAllowed("/image.gif?size=large"));
+        Assert.assertFalse(any.isPathAllowed("/example/"));
+        Assert.assertFalse(any.isPathAllowed("/example/page.html"));
+        Assert.assertTrue(any.isPathAllowed("/publications/"));
+        // the allow rule is longer than the pattern of the gif rule
+        Assert.assertTrue(any.isPathAllowed("/publications/cover.gif"));
+        Assert.assertTrue(any.isPathAllowed("/"));
+
+        RobotsTxt foobot = RobotsTxt.parse(RFC_EXAMPLE, "FooBot/1.0 (+https://example.com/bot)");
+        Assert.assertFalse(foobot.isPathAllowed("/"));
+        Assert.assertFalse(foobot.isPathAllowed("/publications/"));
+        Assert.assertTrue(foobot.isPathAllowed("/example/page.html"));
+        Assert.assertTrue(foobot.isPathAllowed("/example/allowed.gif"));
+        Assert.assertFalse(foobot.isPathAllowed("/example/disallowed.gif"));
+        // the robots.txt file itself is always allowed
+        Assert.assertTrue(foobot.isPathAllowed("/robots.txt"));
+
+        // consecutive user-agent lines share the group
+        for (String agent : new String[] {"barbot", "bazbot"})
+        {
+            RobotsTxt robots = RobotsTxt.parse(RFC_EXAMPLE, agent);
+            Assert.assertFalse(robots.isPathAllowed("/example/page.html"));
+            Assert.assertTrue(robots.isPathAllowed("/example/other.html"));
+            // the rules of the '*' group do not apply to a crawler with a group of its own
+            Assert.assertTrue(robots.isPathAllowed("/image.gif"));
+        }
+
+        // a group without rules allows everything
+        RobotsTxt quxbot = RobotsTxt.parse(RFC_EXAMPLE, "quxbot");
+        Assert.assertTrue(quxbot.isPathAllowed("/example/page.html"));
+        Assert.assertTrue(quxbot.isPathAllowed("/image.gif"));
+    }
+
+    @Test
+    public void testGroupMerging()
+    {
+        // RFC 9309 section 2.2.1: the groups of a crawler are combined
+        String content = "user-agent: ExampleBot\n"
+                         + "disallow: /foo\n"
+                         + "disallow: /bar\n"
+                         + "\n"
+                         + "user-agent: *\n"
+                         + "disallow: /other\n"
+                         + "\n"
+                         + "user-agent: ExampleBot\n"
+                         + "disallow: /baz\n";
+        RobotsTxt robots = RobotsTxt.parse(content, "examplebot");
+        Assert.assertFalse(robots.isPathAllowed("/foo"));
+        Assert.assertFalse(robots.isPathAllowed("/bar/x"));
+        Assert.assertFalse(robots.isPathAllowed("/baz"));
+        Assert.assertTrue(robots.isPathAllowed("/other"));
+
+        RobotsTxt any = RobotsTxt.parse(content, "otherbot");
+        Assert.assertTrue(any.isPathAllowed("/foo"));
+        Assert.assertFalse(any.isPathAllowed("/other"));
+    }
+
+    @Test
+    public void testLongestMatch()
+    {
+        // RFC 9309 section 2.2.2: the most specific rule wins, and an allow rule on a tie
+        RobotsTxt robots = RobotsTxt.parse("User-agent: *\n"
+                                           + "Allow: /example/page/\n"
+                                           + "Disallow: /example/page/disallowed.gif\n"
+                                           + "Disallow: /tie\n"
+                                           + "Allow: /tie\n"
+                                           + "Disallow: /t*e\n"
+                                           + "Allow: /t*e\n", "examplebot");
+        Assert.assertTrue(robots.isPathAllowed("/example/page/"));
+        Assert.assertTrue(robots.isPathAllowed("/example/page/allowed.gif"));
+        Assert.assertFalse(robots.isPathAllowed("/example/page/disallowed.gif"));
+        Assert.assertTrue(robots.isPathAllowed("/tie"));
+        Assert.assertTrue(robots.isPathAllowed("/tree"));
+    }
+
+    @Test
+    public void testSpecialCharacters()
+    {
+        // RFC 9309 section 2.2.3
+        RobotsTxt robots = RobotsTxt.parse("User-agent: *\n"
+                                           + "Disallow: /path/file-with-a-*.html\n"
+                                           + "Disallow: /path/foo-$\n"
+                                           + "Disallow: /a*b*c$\n"
+                                           + "Disallow: /*.php$\n", "examplebot");
+        Assert.assertFalse(robots.isPathAllowed("/path/file-with-a-wildcard.html"));
+        Assert.assertFalse(robots.isPathAllowed("/path/file-with-a-.html"));
+        Assert.assertTrue(robots.isPathAllowed("/path/file-with-a-wildcard.htm"));
+        Assert.assertFalse(robots.isPathAllowed("/path/foo-"));
+        Assert.assertTrue(robots.isPathAllowed("/path/foo-bar"));
+        // the wildcards have to backtrack to find the last c
+        Assert.assertFalse(robots.isPathAllowed("/abcbc"));
+        Assert.assertFalse(robots.isPathAllowed("/axxbyycbzc"));
+        Assert.assertTrue(robots.isPathAllowed("/axxbyycbzcd"));
+        Assert.assertTrue(robots.isPathAllowed("/acb"));
+        Assert.assertFalse(robots.isPathAllowed("/index.php"));
+        Assert.assertFalse(robots.isPathAllowed("/dir/x.php.php"));
+        Assert.assertTrue(robots.isPathAllowed("/index.php?x=1"));
+        Assert.assertTrue(robots.isPathAllowed("/index.phps"));
+    }
+
+    @Test
+    public void testEncoding()
+    {
+        // RFC 9309 section 2.2.2: rules and paths are compared in their percent-encoded form
+        RobotsTxt robots = RobotsTxt.parse("User-agent: *\n"
+                                           + "Disallow: /foo/bar/\u30c4\n"
+                                           + "Disallow: /baz/%e3%83%84\n"
+                                           + "Disallow: /q?a=b\n"
+                                           + "Disallow: /~joe/\n", "examplebot");
+        Assert.assertFalse(robots.isPathAllowed("/foo/bar/%E3%83%84"));
+        Assert.assertFalse(robots.isPathAllowed("/baz/%E3%83%84"));
+        Assert.assertFalse(robots.isAllowed("https://example.com/q?a=b&c=d#top"));
+        Assert.assertTrue(robots.isAllowed("https://example.com/q?a=c"));
+        Assert.assertFalse(robots.isPathAllowed("/~joe/index.html"));
+        Assert.assertTrue(robots.isAllowed("https://example.com"));
+    }
+
+    @Test
+    public void testCommentsAndCrawlDelay()
+    {
+        RobotsTxt robots = RobotsTxt.parse("# comment\n"
+                                           + "User-agent: examplebot # our crawler\n"
+                                           + "Crawl-delay: 2.5\n"
+                                           + "Disallow: /private # not public\n"
+                                           + "Disallow:\n"
+                                           + "invalid line\n", "examplebot");
+        Assert.assertEquals(Duration.ofMillis(2500L), robots.getCrawlDelay());
+        Assert.assertFalse(robots.isPathAllowed("/private"));
+        Assert.assertTrue(robots.isPathAllowed("/public"));
+        Assert.assertSame(RobotsTxt.ALLOW_ALL, RobotsTxt.parse("", "examplebot"));
+    }
+
+    /**
+     * Answers the requests of each host with a fixed status and counts the requests per host.
+     */
+    private static final class StatusTransport implements HttpTransport
+    {
+        private final Map<String, Integer> statusCodes = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        private final List<String> userAgents = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public Response execute(Request request) throws IOException
+        {
+            String host = request.getUrl().getHost();
+            this.requests.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+            this.userAgents.add(request.getHeader("User-Agent"));
+            Integer status = this.statusCodes.get(host);
+            if (null == status)
+            {
+                throw new ConnectException("Connection refused by " + host);
+            }
+            byte[] body = "User-agent: *\nDisallow: /private\n".getBytes(StandardCharsets.UTF_8);
+            Map<String, List<String>> headers = new ConcurrentHashMap<>();
+            headers.put("Content-Type", Collections.singletonList("text/plain"));
+            return new Response(request.getUrl(), status, "Status " + status, headers,
+                                new ByteArrayInputStream(status == 200 ? body : new byte[0]));
+        }
+
+        private int getRequestCount(String host)
+        {
+            AtomicInteger count = this.requests.get(host);
+            return null != count ? count.get() : 0;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    @Test
+    public void testCacheStatusHandling() throws InterruptedException
+    {
+        StatusTransport transport = new StatusTransport();
+        transport.statusCodes.put("ok.example", 200);
+        transport.statusCodes.put("missing.example", 404);
+        transport.statusCodes.put("forbidden.example", 403);
+        transport.statusCodes.put("throttled.example", 429);
+        transport.statusCodes.put("failing.example", 503);
+        RobotsCache cache = new RobotsCache("examplebot/1.0", transport, 100, TimeUnit.HOURS.toMillis(1L), 50L,
+                                            TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(cache.isAllowed("http://ok.example/public"));
+        Assert.assertFalse(cache.isAllowed("http://ok.example/private"));
+        // a 4xx status means there are no rules
+        Assert.assertTrue(cache.isAllowed("http://missing.example/private"));
+        Assert.assertTrue(cache.isAllowed("http://forbidden.example/private"));
+        // too many requests, server and network errors disallow everything
+        Assert.assertFalse(cache.isAllowed("http://throttled.example/"));
+        Assert.assertFalse(cache.isAllowed("http://failing.example/"));
+        Assert.assertFalse(cache.isAllowed("http://unreachable.example/"));
+        Assert.assertEquals(Collections.singleton("examplebot/1.0"), new HashSet<>(transport.userAgents));
+        // the transport might be retried on errors, so only the number of further requests is checked
+        int failing = transport.getRequestCount("failing.example");
+        int throttled = transport.getRequestCount("throttled.example");
+
+        Thread.sleep(100L);
+        transport.statusCodes.put("failing.example", 200);
+        transport.statusCodes.put("missing.example", 200);
+        // the errors are only cached for the error TTL, the other files for the TTL
+        Assert.assertTrue(cache.isAllowed("http://failing.example/public"));
+        Assert.assertFalse(cache.isAllowed("http://failing.example/private"));
+        Assert.assertFalse(cache.isAllowed("http://throttled.example/"));
+        Assert.assertTrue(cache.isAllowed("http://missing.example/private"));
+        Assert.assertFalse(cache.isAllowed("http://ok.example/private"));
+        Assert.assertEquals(failing + 1, transport.getRequestCount("failing.example"));
+        Assert.assertTrue(transport.getRequestCount("throttled.example") > throttled);
+        Assert.assertEquals(1, transport.getRequestCount("missing.example"));
+        Assert.assertEquals(1, transport.getRequestCount("ok.example"));
+    }
+}
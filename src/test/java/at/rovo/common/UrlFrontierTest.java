@@ -0,0 +1,225 @@
+package at.rovo.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that the pending URLs of a {@link UrlFrontier} survive a restart and a crash of the process, and that the
+ * journal keeps its order when it is compacted.
+ */
+@Category(UnitTest.class)
+public class UrlFrontierTest
+{
+    private Path directory;
+    private Path seenFile;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = Files.createTempDirectory("frontier");
+        this.seenFile = this.directory.resolve("seen");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(this.directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static String url(int i)
+    {
+        return "http://host" + (i % 7) + ".example.com/page/" + i;
+    }
+
+    private static List<String> urls(int from, int to)
+    {
+        List<String> urls = new ArrayList<>();
+        for (int i = from; i < to; i++)
+        {
+            urls.add(url(i));
+        }
+        return urls;
+    }
+
+    private static void assertPolled(UrlFrontier frontier, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            Assert.assertEquals(url(i), frontier.poll());
+        }
+    }
+
+    private static Path pendingFile(Path seenFile)
+    {
+        return seenFile.resolveSibling(seenFile.getFileName() + ".pending");
+    }
+
+    /**
+     * Copies the files of an open frontier, as they would be found after the process was killed.
+     */
+    private Path copyOpenFrontier(String name) throws IOException
+    {
+        Path copy = this.directory.resolve(name);
+        Files.copy(this.seenFile, copy);
+        Files.copy(pendingFile(this.seenFile), pendingFile(copy));
+        return copy;
+    }
+
+    @Test
+    public void testRestart() throws IOException
+    {
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            Assert.assertEquals(1000, frontier.addAll(urls(0, 1000)));
+            assertPolled(frontier, 0, 300);
+            Assert.assertEquals(700L, frontier.getPendingCount());
+        }
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            Assert.assertEquals(700L, frontier.getPendingCount());
+            Assert.assertFalse(frontier.add(url(10)));
+            Assert.assertFalse(frontier.add(url(500)));
+            Assert.assertTrue(frontier.add(url(1000)));
+            assertPolled(frontier, 300, 1001);
+            Assert.assertNull(frontier.poll());
+            Assert.assertEquals(0L, frontier.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testCrash() throws IOException
+    {
+        Path copy;
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            frontier.addAll(urls(0, 2000));
+            assertPolled(frontier, 0, 1500);
+            Assert.assertTrue(frontier.add(url(2000)));
+            assertPolled(frontier, 1500, 1600);
+            copy = this.copyOpenFrontier("crashed");
+        }
+        try (UrlFrontier frontier = new UrlFrontier(copy, 10_000))
+        {
+            Assert.assertEquals(401L, frontier.getPendingCount());
+            Assert.assertTrue(frontier.isSeen(url(0)));
+            assertPolled(frontier, 1600, 2001);
+            Assert.assertNull(frontier.poll());
+        }
+    }
+
+    @Test
+    public void testDropIncompleteLine() throws IOException
+    {
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            frontier.addAll(urls(0, 10));
+            frontier.poll();
+        }
+        // the process died while appending a URL
+        Files.write(pendingFile(this.seenFile), "http://host.example.com/trunc".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        long size = Files.size(pendingFile(this.seenFile));
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            Assert.assertEquals(9L, frontier.getPendingCount());
+            Assert.assertTrue(Files.size(pendingFile(this.seenFile)) < size);
+            assertPolled(frontier, 1, 10);
+            Assert.assertNull(frontier.poll());
+        }
+    }
+
+    @Test
+    public void testLinesAfterHeader() throws IOException
+    {
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            frontier.addAll(urls(0, 10));
+            frontier.poll();
+        }
+        // the lines were written back by the operating system, but the header was not
+        Files.write(pendingFile(this.seenFile), (url(10) + "\n" + url(11) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            Assert.assertEquals(11L, frontier.getPendingCount());
+            assertPolled(frontier, 1, 12);
+            Assert.assertNull(frontier.poll());
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException
+    {
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 100_000))
+        {
+            frontier.addAll(urls(0, 5000));
+            assertPolled(frontier, 0, 4000);
+            long size = Files.size(pendingFile(this.seenFile));
+            frontier.compact();
+            Assert.assertTrue(Files.size(pendingFile(this.seenFile)) < size / 2);
+            Assert.assertEquals(1000L, frontier.getPendingCount());
+            assertPolled(frontier, 4000, 4500);
+            frontier.addAll(urls(5000, 5500));
+            frontier.compact();
+        }
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 100_000))
+        {
+            Assert.assertEquals(1000L, frontier.getPendingCount());
+            assertPolled(frontier, 4500, 5500);
+            Assert.assertNull(frontier.poll());
+        }
+    }
+
+    @Test
+    public void testLegacyJournal() throws IOException
+    {
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            frontier.addAll(urls(0, 5));
+        }
+        // earlier versions marked each handed out URL by a dash
+        String journal = url(0) + "\n" + url(1) + "\n-\n" + url(2) + "\n-\n" + url(3) + "\n" + url(4) + "\n-\n";
+        Files.write(pendingFile(this.seenFile), journal.getBytes(StandardCharsets.UTF_8));
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            Assert.assertEquals(2L, frontier.getPendingCount());
+            assertPolled(frontier, 3, 5);
+            Assert.assertNull(frontier.poll());
+        }
+    }
+
+    @Test
+    public void testLongUrl() throws IOException
+    {
+        StringBuilder path = new StringBuilder("http://example.com/");
+        while (path.length() < 200_000)
+        {
+            path.append("segment/");
+        }
+        String longUrl = path.toString();
+        try (UrlFrontier frontier = new UrlFrontier(this.seenFile, 10_000))
+        {
+            frontier.add(url(0));
+            Assert.assertTrue(frontier.add(longUrl));
+            frontier.add(url(1));
+            assertPolled(frontier, 0, 1);
+            Assert.assertEquals(longUrl, frontier.poll());
+            assertPolled(frontier, 1, 2);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package at.rovo.common.http;
+
+import at.rovo.common.IntegrationTest;
+import at.rovo.common.UrlReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that a {@link HttpClientTransport} created for HTTP/2 upgrades plain <em>http</em> connections via
+ * <em>h2c</em> and multiplexes concurrent requests to an origin over a single connection, and that it falls back to
+ * HTTP/1.1 for an origin which mishandles the upgrade.
+ * <p>
+ * The tests run against a minimal local server which answers the upgrade request and every further stream with a fixed
+ * page after a short delay, so the streams of concurrent requests overlap.
+ */
+@Category(IntegrationTest.class)
+public class HttpClientTransportTest
+{
+    private static final String PAGE = "<html>h\u00e4llo</html>";
+
+    private H2cServer server;
+    private HttpClientTransport transport;
+    private UrlReader reader;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.server = new H2cServer();
+        this.transport = new HttpClientTransport(HttpClient.Version.HTTP_2);
+        this.reader = new UrlReader(this.transport);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        this.transport.close();
+        this.server.close();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareConnection() throws Exception
+    {
+        String base = this.server.url("127.0.0.1");
+        Assert.assertEquals(PAGE, this.reader.readPage(base + "/first").trim());
+        Assert.assertEquals(HttpClient.Version.HTTP_2, this.transport.getVersion(new URL(base)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        try
+        {
+            List<Future<String>> pages = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+            {
+                pages.add(executor.submit(() -> this.reader.readPage(base + "/page")));
+            }
+            for (Future<String> page : pages)
+            {
+                Assert.assertEquals(PAGE, page.get(10L, TimeUnit.SECONDS).trim());
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, this.server.connections.get());
+        Assert.assertEquals(21, this.server.streams.get());
+    }
+
+    @Test
+    public void testAsyncRequestsShareConnection() throws Exception
+    {
+        String base = this.server.url("127.0.0.1");
+        Assert.assertEquals(PAGE, this.reader.readPage(base + "/first").trim());
+
+        List<CompletableFuture<String>> pages = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            pages.add(this.reader.readPageAsync(base + "/page"));
+        }
+        for (CompletableFuture<String> page : pages)
+        {
+            Assert.assertEquals(PAGE, page.get(10L, TimeUnit.SECONDS).trim());
+        }
+        Assert.assertEquals(1, this.server.connections.get());
+        Assert.assertEquals(11, this.server.streams.get());
+    }
+
+    @Test
+    public void testBrokenUpgradeFallsBackToHttp11() throws Exception
+    {
+        this.server.brokenUpgrade = true;
+        String base = this.server.url("localhost");
+        Assert.assertEquals(PAGE, this.reader.readPage(base + "/page").trim());
+        Assert.assertEquals(HttpClient.Version.HTTP_1_1, this.transport.getVersion(new URL(base)));
+        // further requests are sent via HTTP/1.1 right away
+        Assert.assertEquals(PAGE, this.reader.readPage(base + "/page").trim());
+        Assert.assertEquals(0, this.server.streams.get());
+    }
+
+    /**
+     * Speaks just enough HTTP/1.1 and HTTP/2 to answer <em>GET</em> requests with {@link #PAGE}. Header blocks are not
+     * decoded, every stream opened by the client is answered the same way.
+     */
+    private static final class H2cServer implements AutoCloseable
+    {
+        private static final int DATA = 0;
+        private static final int HEADERS = 1;
+        private static final int SETTINGS = 4;
+        private static final int PING = 6;
+        private static final int END_STREAM = 1;
+        private static final int ACK = 1;
+        private static final int END_HEADERS = 4;
+        private static final byte[] SWITCHING_PROTOCOLS =
+                "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII);
+
+        private final ServerSocket serverSocket;
+        private final Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger streams = new AtomicInteger();
+        /** Whether the upgrade is confirmed but followed by an invalid frame */
+        private volatile boolean brokenUpgrade = false;
+
+        private H2cServer() throws IOException
+        {
+            this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::accept, "h2c-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private String url(String host)
+        {
+            return "http://" + host + ":" + this.serverSocket.getLocalPort();
+        }
+
+        private void accept()
+        {
+            while (!this.serverSocket.isClosed())
+            {
+                try
+                {
+                    Socket socket = this.serverSocket.accept();
+                    this.connections.incrementAndGet();
+                    this.sockets.add(socket);
+                    Thread connection = new Thread(() -> this.serve(socket), "h2c-connection");
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+                catch (IOException ioEx)
+                {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket)
+        {
+            try (Socket s = socket)
+            {
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = new BufferedOutputStream(s.getOutputStream());
+                String head;
+                while (null != (head = readHead(in)))
+                {
+                    if (head.toLowerCase(Locale.ROOT).contains("upgrade: h2c"))
+                    {
+                        out.write(SWITCHING_PROTOCOLS);
+                        if (this.brokenUpgrade)
+                        {
+                            // a frame of an unknown type on the connection stream, truncated by closing the socket
+                            out.write(new byte[] { 0, 0, 4, 7, 0, 0, 0, 0, 0, 1, 2, 3 });
+                            out.flush();
+                            return;
+                        }
+                        frame(out, SETTINGS, 0, 0, new byte[0]);
+                        out.flush();
+                        this.serveHttp2(new DataInputStream(in), out);
+                        return;
+                    }
+                    byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=UTF-8\r\nContent-Length: "
+                               + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(body);
+                    out.flush();
+                }
+            }
+            catch (IOException ioEx)
+            {
+                // the client closed the connection
+            }
+        }
+
+        private static String readHead(InputStream in) throws IOException
+        {
+            StringBuilder head = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1)
+            {
+                head.append((char) c);
+                if (head.length() >= 4 && head.lastIndexOf("\r\n\r\n") == head.length() - 4)
+                {
+                    return head.toString();
+                }
+            }
+            return null;
+        }
+
+        private void serveHttp2(DataInputStream in, OutputStream out) throws IOException
+        {
+            in.readFully(new byte[24]);
+            // the upgrade request itself is answered on stream 1
+            this.respondLater(out, 1);
+            while (true)
+            {
+                int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int stream = in.readInt() & 0x7FFFFFFF;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == HEADERS)
+                {
+                    this.respondLater(out, stream);
+                }
+                else if ((type == SETTINGS || type == PING) && (flags & ACK) == 0)
+                {
+                    synchronized (out)
+                    {
+                        frame(out, type, ACK, 0, type == PING ? payload : new byte[0]);
+                        out.flush();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Answers the given stream after a delay, so concurrent requests are in flight at the same time.
+         */
+        private void respondLater(OutputStream out, int stream)
+        {
+            this.streams.incrementAndGet();
+            CompletableFuture.delayedExecutor(100L, TimeUnit.MILLISECONDS).execute(() -> {
+                ByteArrayOutputStream headers = new ByteArrayOutputStream();
+                // :status 200 from the static table, then content-type as a literal without indexing
+                headers.write(0x88);
+                headers.write(0x0F);
+                headers.write(31 - 15);
+                byte[] contentType = "text/html; charset=UTF-8".getBytes(StandardCharsets.US_ASCII);
+                headers.write(contentType.length);
+                headers.write(contentType, 0, contentType.length);
+                try
+                {
+                    synchronized (out)
+                    {
+                        frame(out, HEADERS, END_HEADERS, stream, headers.toByteArray());
+                        frame(out, DATA, END_STREAM, stream, PAGE.getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    }
+                }
+                catch (IOException ioEx)
+                {
+                    // the client closed the connection
+                }
+            });
+        }
+
+        private static void frame(OutputStream out, int type, int flags, int stream, byte[] payload)
+                throws IOException
+        {
+            out.write(payload.length >> 16);
+            out.write(payload.length >> 8);
+            out.write(payload.length);
+            out.write(type);
+            out.write(flags);
+            out.write(stream >> 24);
+            out.write(stream >> 16);
+            out.write(stream >> 8);
+            out.write(stream);
+            out.write(payload);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.serverSocket.close();
+            for (Socket socket : this.sockets)
+            {
+                socket.close();
+            }
+        }
+    }
+}
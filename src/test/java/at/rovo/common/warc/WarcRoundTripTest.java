@@ -0,0 +1,274 @@
+package at.rovo.common.warc;
+
+import at.rovo.common.UnitTest;
+import at.rovo.common.http.Request;
+import at.rovo.common.http.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that exchanges written by a {@link WarcWriter} are read back by a {@link WarcReader} and replayed by a {@link
+ * WarcReplayTransport} as they were received, and that the records of a file whose last record was cut off and whose
+ * index is missing or damaged are located again.
+ */
+@Category(UnitTest.class)
+public class WarcRoundTripTest
+{
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = Files.createTempDirectory("warc");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(this.directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static byte[] randomBytes(int length, long seed)
+    {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Response response(String url, int status, byte[] body, String... headers) throws IOException
+    {
+        Map<String, List<String>> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < headers.length; i += 2)
+        {
+            fields.computeIfAbsent(headers[i], name -> new ArrayList<>()).add(headers[i + 1]);
+        }
+        return new Response(new URL(url), status, "OK", fields, new ByteArrayInputStream(body));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Archives the given response and reads its body to the end, like a caller of the transport would.
+     */
+    private static void archive(WarcWriter writer, String url, Response response) throws IOException
+    {
+        Request request = new Request(new URL(url));
+        request.setHeader("Accept", "text/html");
+        try (InputStream body = writer.archive(request, response).getBody())
+        {
+            readAll(body);
+        }
+    }
+
+    private static byte[] replay(WarcReplayTransport transport, String url) throws IOException
+    {
+        Response response = transport.execute(new Request(new URL(url)));
+        try (InputStream body = response.getBody())
+        {
+            return readAll(body);
+        }
+    }
+
+    private List<Path> files(String suffix) throws IOException
+    {
+        try (Stream<Path> list = Files.list(this.directory))
+        {
+            return list.filter(file -> file.getFileName().toString().endsWith(suffix))
+                       .sorted()
+                       .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        byte[] page = "<html>h\u00e4llo</html>".getBytes(StandardCharsets.UTF_8);
+        // random bytes do not compress, so both the body and the compressed record exceed the spill threshold
+        byte[] large = randomBytes(3 * WarcWriter.SPILL_THRESHOLD, 1L);
+        byte[] chunked = randomBytes(10_000, 2L);
+        try (WarcWriter writer = new WarcWriter(this.directory, "test"))
+        {
+            archive(writer, "http://example.com/", response("http://example.com/", 200, page,
+                                                             "Content-Type", "text/html; charset=UTF-8",
+                                                             "Set-Cookie", "a=1",
+                                                             "Set-Cookie", "b=2",
+                                                             "Content-Length", Integer.toString(page.length)));
+            archive(writer, "http://example.com/large", response("http://example.com/large", 200, large));
+            archive(writer, "http://example.com/chunked", response("http://example.com/chunked", 200, chunked,
+                                                                    "Transfer-Encoding", "chunked"));
+            // a body closed before its end is archived as far as it was read
+            Request request = new Request(new URL("http://example.com/closed"));
+            try (InputStream body = writer.archive(request, response("http://example.com/closed", 200, large))
+                                          .getBody())
+            {
+                Assert.assertEquals(1000, body.read(new byte[1000]));
+            }
+            writer.writeMetadata("http://example.com/", Collections.singletonMap("outlinks", "3"));
+            Assert.assertEquals(9L, writer.getRecordCount());
+        }
+        Assert.assertEquals(1, this.files(WarcWriter.EXTENSION).size());
+        Assert.assertEquals(Collections.emptyList(), this.files(".tmp"));
+
+        try (WarcReplayTransport transport = new WarcReplayTransport(new WarcReader(this.directory)))
+        {
+            Response response = transport.execute(new Request(new URL("http://example.com/")));
+            Assert.assertEquals(200, response.getStatusCode());
+            Assert.assertEquals("text/html; charset=UTF-8", response.getHeader("Content-Type"));
+            Assert.assertEquals(Arrays.asList("a=1", "b=2"), response.getHeaders("Set-Cookie"));
+            Assert.assertArrayEquals(page, readAll(response.getBody()));
+            Assert.assertArrayEquals(large, replay(transport, "http://example.com/large"));
+            Assert.assertArrayEquals(chunked, replay(transport, "http://example.com/chunked"));
+            Assert.assertNull(transport.execute(new Request(new URL("http://example.com/chunked")))
+                                       .getHeader("Transfer-Encoding"));
+            Assert.assertArrayEquals(Arrays.copyOf(large, 1000), replay(transport, "http://example.com/closed"));
+            try
+            {
+                transport.execute(new Request(new URL("http://example.com/missing")));
+                Assert.fail("Replayed a response which was not archived");
+            }
+            catch (FileNotFoundException expected)
+            {
+                // no response was archived for the URL
+            }
+        }
+
+        try (WarcReader reader = new WarcReader(this.directory))
+        {
+            List<String> types = new ArrayList<>();
+            for (WarcReader.Entry entry : reader.getEntries())
+            {
+                types.add(entry.getType());
+            }
+            Assert.assertEquals(Arrays.asList("warcinfo", "response", "request", "response", "request", "response",
+                                              "request", "response", "request", "metadata"), types);
+            Assert.assertEquals("unspecified",
+                                reader.getResponse("http://example.com/closed").getHeader("WARC-Truncated"));
+            Assert.assertNull(reader.getResponse("http://example.com/large").getHeader("WARC-Truncated"));
+            WarcRecord request = reader.read(reader.getEntries().get(2));
+            Assert.assertEquals("http://example.com/", request.getTargetUri());
+            Assert.assertTrue(new String(request.getContent(), StandardCharsets.UTF_8)
+                                      .startsWith("GET / HTTP/1.1\r\nHost: example.com\r\n"));
+        }
+    }
+
+    /**
+     * Writes three exchanges and returns the WARC file they were written to.
+     */
+    private Path writeExchanges() throws IOException
+    {
+        try (WarcWriter writer = new WarcWriter(this.directory, "test"))
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                String url = "http://example.com/" + i;
+                archive(writer, url, response(url, 200, randomBytes(5000, i)));
+            }
+            return writer.getCurrentFile();
+        }
+    }
+
+    private static Path indexFile(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + WarcWriter.INDEX_EXTENSION);
+    }
+
+    private static void assertReplayed(Path file, int exchanges) throws IOException
+    {
+        try (WarcReplayTransport transport = new WarcReplayTransport(new WarcReader(file)))
+        {
+            for (int i = 0; i < exchanges; i++)
+            {
+                Assert.assertArrayEquals(randomBytes(5000, i), replay(transport, "http://example.com/" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedRecordWithoutIndex() throws IOException
+    {
+        Path file = this.writeExchanges();
+        // the writer was killed while appending the request record of the last exchange
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 10);
+        }
+        Files.delete(indexFile(file));
+        try (WarcReader reader = new WarcReader(file))
+        {
+            Assert.assertEquals(6, reader.getEntries().size());
+            Assert.assertEquals("response", reader.getEntries().get(5).getType());
+        }
+        assertReplayed(file, 3);
+    }
+
+    @Test
+    public void testDamagedIndex() throws IOException
+    {
+        Path file = this.writeExchanges();
+        Files.write(indexFile(file), "0\tnot a number\n".getBytes(StandardCharsets.UTF_8));
+        try (WarcReader reader = new WarcReader(file))
+        {
+            Assert.assertEquals(7, reader.getEntries().size());
+        }
+        assertReplayed(file, 3);
+    }
+
+    @Test
+    public void testRecordsMissingFromIndex() throws IOException
+    {
+        Path file = this.writeExchanges();
+        // the index lines of the last exchange were not written
+        List<String> lines = Files.readAllLines(indexFile(file), StandardCharsets.UTF_8);
+        Files.write(indexFile(file), lines.subList(0, lines.size() - 2), StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 10);
+        }
+        try (WarcReader reader = new WarcReader(file))
+        {
+            Assert.assertEquals(6, reader.getEntries().size());
+            WarcReader.Entry located = reader.getEntries().get(5);
+            Assert.assertEquals("http://example.com/2", located.getTargetUri());
+            Assert.assertEquals(reader.getEntries().get(4).getOffset() + reader.getEntries().get(4).getLength(),
+                                located.getOffset());
+        }
+        assertReplayed(file, 3);
+    }
+}